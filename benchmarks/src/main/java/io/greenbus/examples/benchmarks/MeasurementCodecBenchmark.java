@@ -0,0 +1,292 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.benchmarks;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import io.greenbus.client.service.proto.Measurements;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.examples.measurements.DecodedMeasurement;
+import io.greenbus.examples.measurements.MeasurementDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes and decodes batches of MeasurementNotification and PointMeasurementValue messages, as
+ * length-delimited sequences in one buffer.
+ *
+ * Messages are decoded both by parsing full messages and with MeasurementDecoder, and each decoded
+ * measurement's point, type, value and time are consumed either way. Scores are the time per batch.
+ * Setup checks that MeasurementDecoder gives the same fields as the generated parser for every message.
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar MeasurementCodecBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeasurementCodecBenchmark {
+
+    @Param({ "1", "100", "1000" })
+    public int batchSize;
+
+    private List<Measurements.MeasurementNotification> notifications;
+    private List<Measurements.PointMeasurementValue> values;
+
+    private byte[] notificationBytes;
+    private int notificationLength;
+    private byte[] valueBytes;
+    private int valueLength;
+    private byte[] encodeBuffer;
+
+    private final MeasurementDecoder decoder = new MeasurementDecoder();
+
+    // Questionable, test and operator blocked (fields 1, 4 and 5 of Quality), in wire form
+    private static final byte[] QUALITY = { 0x08, 0x02, 0x20, 0x01, 0x28, 0x01 };
+
+    @Setup
+    public void setup() throws IOException {
+        final Measurements.Quality quality = Measurements.Quality.parseFrom(QUALITY);
+        final Random random = new Random(1);
+        notifications = new ArrayList<Measurements.MeasurementNotification>(batchSize);
+        values = new ArrayList<Measurements.PointMeasurementValue>(batchSize);
+
+        for (int i = 0; i < batchSize; i++) {
+            final Model.ModelUUID uuid = Model.ModelUUID.newBuilder()
+                    .setValue(new UUID(random.nextLong(), random.nextLong()).toString())
+                    .build();
+            final Measurements.Measurement measurement = measurement(i, random, quality);
+
+            notifications.add(Measurements.MeasurementNotification.newBuilder()
+                    .setPointUuid(uuid)
+                    .setPointName("Equipment" + (i / 10) + ".Point" + (i % 10))
+                    .setValue(measurement)
+                    .build());
+            values.add(Measurements.PointMeasurementValue.newBuilder()
+                    .setPointUuid(uuid)
+                    .setValue(measurement)
+                    .build());
+        }
+
+        encodeBuffer = new byte[64 + batchSize * 256];
+
+        notificationLength = encodeNotifications();
+        notificationBytes = new byte[notificationLength];
+        System.arraycopy(encodeBuffer, 0, notificationBytes, 0, notificationLength);
+
+        valueLength = encodeValues();
+        valueBytes = new byte[valueLength];
+        System.arraycopy(encodeBuffer, 0, valueBytes, 0, valueLength);
+
+        verifyDecoder();
+    }
+
+    /**
+     * Decodes both batches with MeasurementDecoder and compares every field with the message parsed by
+     * Measurement.parseFrom, so the zero-copy scores are for a decoder that gets the same answers.
+     */
+    private void verifyDecoder() throws IOException {
+        final List<String> uuids = new ArrayList<String>(batchSize);
+        final List<String> names = new ArrayList<String>(batchSize);
+        final List<Measurements.Measurement> parsed = new ArrayList<Measurements.Measurement>(batchSize);
+
+        final CodedInputStream input = CodedInputStream.newInstance(notificationBytes, 0, notificationLength);
+        while (!input.isAtEnd()) {
+            final int limit = input.pushLimit(input.readRawVarint32());
+            final Measurements.MeasurementNotification notification = Measurements.MeasurementNotification.parseFrom(input);
+            input.popLimit(limit);
+            uuids.add(notification.getPointUuid().getValue());
+            names.add(notification.getPointName());
+            parsed.add(notification.getValue());
+        }
+
+        final int[] index = new int[1];
+        final int notificationCount = decoder.decodeNotifications(notificationBytes, 0, notificationLength, new MeasurementDecoder.Sink() {
+            @Override
+            public void measurement(DecodedMeasurement measurement) {
+                final int i = index[0]++;
+                check(i, "point name", names.get(i), measurement.getPointName());
+                check(i, uuids.get(i), parsed.get(i), measurement);
+            }
+        });
+        check(-1, "notification count", parsed.size(), notificationCount);
+
+        index[0] = 0;
+        final int valueCount = decoder.decodeValues(valueBytes, 0, valueLength, new MeasurementDecoder.Sink() {
+            @Override
+            public void measurement(DecodedMeasurement measurement) {
+                final int i = index[0]++;
+                check(i, uuids.get(i), parsed.get(i), measurement);
+            }
+        });
+        check(-1, "value count", parsed.size(), valueCount);
+    }
+
+    private static void check(int index, String uuid, Measurements.Measurement expected, DecodedMeasurement actual) {
+        check(index, "point uuid", uuid, actual.getPointUuid());
+        check(index, "type", expected.getType(), actual.getType());
+        check(index, "bool_val", expected.getBoolVal(), actual.getBoolValue());
+        check(index, "int_val", expected.getIntVal(), actual.getIntValue());
+        check(index, "double_val", Double.doubleToLongBits(expected.getDoubleVal()), Double.doubleToLongBits(actual.getDoubleValue()));
+        check(index, "string_val", expected.getStringVal(), actual.getStringValue());
+        check(index, "unit", expected.getUnit(), actual.getUnit());
+        check(index, "time", expected.getTime(), actual.getTime());
+        check(index, "is_device_time", expected.getIsDeviceTime(), actual.isDeviceTime());
+        check(index, "system_time", expected.getSystemTime(), actual.getSystemTime());
+    }
+
+    private static void check(int index, String field, Object expected, Object actual) {
+        if (!expected.equals(actual)) {
+            throw new IllegalStateException("MeasurementDecoder disagrees with parseFrom on " + field +
+                    (index < 0 ? "" : " of message " + index) + ": expected " + expected + ", decoded " + actual);
+        }
+    }
+
+    @Benchmark
+    public int encodeNotifications() throws IOException {
+        final CodedOutputStream output = CodedOutputStream.newInstance(encodeBuffer);
+        for (Measurements.MeasurementNotification notification : notifications) {
+            output.writeRawVarint32(notification.getSerializedSize());
+            notification.writeTo(output);
+        }
+        output.flush();
+        return encodeBuffer.length - output.spaceLeft();
+    }
+
+    @Benchmark
+    public int encodeValues() throws IOException {
+        final CodedOutputStream output = CodedOutputStream.newInstance(encodeBuffer);
+        for (Measurements.PointMeasurementValue value : values) {
+            output.writeRawVarint32(value.getSerializedSize());
+            value.writeTo(output);
+        }
+        output.flush();
+        return encodeBuffer.length - output.spaceLeft();
+    }
+
+    @Benchmark
+    public void decodeNotifications(Blackhole blackhole) throws IOException {
+        final CodedInputStream input = CodedInputStream.newInstance(notificationBytes, 0, notificationLength);
+        while (!input.isAtEnd()) {
+            final int limit = input.pushLimit(input.readRawVarint32());
+            final Measurements.MeasurementNotification notification = Measurements.MeasurementNotification.parseFrom(input);
+            input.popLimit(limit);
+
+            blackhole.consume(notification.getPointUuid().getValue());
+            consume(blackhole, notification.getValue());
+        }
+    }
+
+    @Benchmark
+    public void decodeValues(Blackhole blackhole) throws IOException {
+        final CodedInputStream input = CodedInputStream.newInstance(valueBytes, 0, valueLength);
+        while (!input.isAtEnd()) {
+            final int limit = input.pushLimit(input.readRawVarint32());
+            final Measurements.PointMeasurementValue value = Measurements.PointMeasurementValue.parseFrom(input);
+            input.popLimit(limit);
+
+            blackhole.consume(value.getPointUuid().getValue());
+            consume(blackhole, value.getValue());
+        }
+    }
+
+    @Benchmark
+    public int decodeNotificationsZeroCopy(Blackhole blackhole) throws IOException {
+        return decoder.decodeNotifications(notificationBytes, 0, notificationLength, sink(blackhole));
+    }
+
+    @Benchmark
+    public int decodeValuesZeroCopy(Blackhole blackhole) throws IOException {
+        return decoder.decodeValues(valueBytes, 0, valueLength, sink(blackhole));
+    }
+
+    private static MeasurementDecoder.Sink sink(final Blackhole blackhole) {
+        return new MeasurementDecoder.Sink() {
+            @Override
+            public void measurement(DecodedMeasurement measurement) {
+                blackhole.consume(measurement.getPointUuidOffset());
+                blackhole.consume(measurement.getPointUuidLength());
+                blackhole.consume(measurement.getType());
+                blackhole.consume(measurement.getNumericValue());
+                blackhole.consume(measurement.getTime());
+            }
+        };
+    }
+
+    private static void consume(Blackhole blackhole, Measurements.Measurement measurement) {
+        blackhole.consume(measurement.getType());
+        switch (measurement.getType()) {
+            case INT:
+                blackhole.consume((double) measurement.getIntVal());
+                break;
+            case DOUBLE:
+                blackhole.consume(measurement.getDoubleVal());
+                break;
+            case BOOL:
+                blackhole.consume(measurement.getBoolVal() ? 1.0 : 0.0);
+                break;
+            default:
+                blackhole.consume(Double.NaN);
+        }
+        blackhole.consume(measurement.getTime());
+    }
+
+    /**
+     * Analog, counter, status and text values in turn, as a front end would report them. Counters
+     * include negative and full-width values to exercise the sint64 encoding of int_val, times are
+     * beyond 32 bits, and every measurement carries a non-default quality for the decoder to skip.
+     */
+    private static Measurements.Measurement measurement(int index, Random random, Measurements.Quality quality) {
+        final long time = 1400000000000L + index;
+        final Measurements.Measurement.Builder builder = Measurements.Measurement.newBuilder()
+                .setQuality(quality)
+                .setTime(time)
+                .setIsDeviceTime(index % 2 == 0)
+                .setSystemTime(time + random.nextInt(1000));
+        switch (index % 4) {
+            case 0:
+                return builder.setType(Measurements.Measurement.Type.DOUBLE).setDoubleVal(random.nextGaussian() * 100).setUnit("kW").build();
+            case 1:
+                return builder.setType(Measurements.Measurement.Type.INT).setIntVal(random.nextLong() >> random.nextInt(64)).setUnit("count").build();
+            case 2:
+                return builder.setType(Measurements.Measurement.Type.BOOL).setBoolVal(random.nextBoolean()).setUnit("status").build();
+            default:
+                return builder.setType(Measurements.Measurement.Type.STRING).setStringVal("State" + random.nextInt(10)).setUnit("state").build();
+        }
+    }
+}
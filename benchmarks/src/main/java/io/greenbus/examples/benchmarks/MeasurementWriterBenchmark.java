@@ -0,0 +1,143 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.benchmarks;
+
+import io.greenbus.client.service.proto.Measurements;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.examples.measurements.MeasurementWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formats batches of measurement notifications as text rows, first as the examples built their output
+ * (concatenating the value string and a Date per measurement), then with MeasurementWriter as CSV and
+ * as JSON. Output goes to a stream that counts and discards it. Scores are the time per batch.
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar MeasurementWriterBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeasurementWriterBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Param({ "1000" })
+    public int batchSize;
+
+    private List<Measurements.MeasurementNotification> notifications;
+    private CountingStream stream;
+    private MeasurementWriter csv;
+    private MeasurementWriter json;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(1);
+        notifications = new ArrayList<Measurements.MeasurementNotification>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            final Measurements.Measurement.Builder measurement = Measurements.Measurement.newBuilder()
+                    .setTime(1400000000000L + i * 250);
+            switch (i % 3) {
+                case 0:
+                    measurement.setType(Measurements.Measurement.Type.DOUBLE).setDoubleVal(random.nextGaussian() * 100).setUnit("kW");
+                    break;
+                case 1:
+                    measurement.setType(Measurements.Measurement.Type.INT).setIntVal(random.nextInt(1000000)).setUnit("count");
+                    break;
+                default:
+                    measurement.setType(Measurements.Measurement.Type.BOOL).setBoolVal(random.nextBoolean()).setUnit("status");
+            }
+            notifications.add(Measurements.MeasurementNotification.newBuilder()
+                    .setPointUuid(Model.ModelUUID.newBuilder().setValue(new UUID(random.nextLong(), random.nextLong()).toString()))
+                    .setPointName("Equipment" + (i / 10) + ".Point" + (i % 10))
+                    .setValue(measurement)
+                    .build());
+        }
+
+        stream = new CountingStream();
+        csv = new MeasurementWriter(stream, MeasurementWriter.Format.CSV, 64 * 1024);
+        json = new MeasurementWriter(stream, MeasurementWriter.Format.JSON, 64 * 1024);
+    }
+
+    @Benchmark
+    public long concatenated() throws IOException {
+        for (Measurements.MeasurementNotification notification : notifications) {
+            final Measurements.Measurement measurement = notification.getValue();
+            final String line = notification.getPointUuid().getValue() + "," + notification.getPointName() + "," +
+                    measurement.getType() + "," + MeasurementWriter.valueString(measurement) + "," +
+                    measurement.getUnit() + "," + new Date(measurement.getTime()) + "\n";
+            stream.write(line.getBytes(UTF_8));
+        }
+        return stream.count;
+    }
+
+    @Benchmark
+    public long writerCsv() throws IOException {
+        for (Measurements.MeasurementNotification notification : notifications) {
+            csv.write(notification);
+        }
+        csv.flush();
+        return stream.count;
+    }
+
+    @Benchmark
+    public long writerJson() throws IOException {
+        for (Measurements.MeasurementNotification notification : notifications) {
+            json.write(notification);
+        }
+        json.flush();
+        return stream.count;
+    }
+
+    private static class CountingStream extends OutputStream {
+        private long count = 0;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -34,6 +34,10 @@ import io.greenbus.examples.keyvalues.KeyValuesExample;
 import io.greenbus.examples.measurements.MeasurementHistoryExample;
 import io.greenbus.examples.measurements.MeasurementsExample;
 import io.greenbus.examples.points.PointsExample;
+import io.greenbus.examples.reactive.ReactiveExample;
+import io.greenbus.examples.snapshot.SnapshotExample;
+import io.greenbus.examples.standin.StandInServices;
+import io.greenbus.examples.standin.StandInSettings;
 import io.greenbus.examples.subscriptions.SubscriptionsExample;
 import io.greenbus.util.UserSettings;
 
@@ -47,11 +51,19 @@ public class Examples {
      * This is a "single shot" connection, if an application plans on running for extended periods it should use a
      * ConnectedApplicationManagers to be informed of the connection to the server is acquired or lost.
      *
+     * With -Dio.greenbus.examples.standin=true the examples run offline against the in-process stand-in
+     * services instead, and no configuration files are read.
+     *
      * @param args Command line arguments
      * @throws Exception
      */
     public static void main(String[] args) throws Exception {
 
+        if (Boolean.getBoolean("io.greenbus.examples.standin")) {
+            runStandIn();
+            System.exit(0);
+        }
+
         // Load configuration files from paths provided in environment variables or in default locations
         final String configBaseDir = System.getProperty("io.greenbus.config.base", "");
         final String amqpConfigPath = System.getProperty("io.greenbus.config.amqp", configBaseDir + "io.greenbus.msg.amqp.cfg");
@@ -83,10 +95,33 @@ public class Examples {
         System.exit(0);
     }
 
+    /**
+     * Runs the examples against the in-process stand-in services, without a broker.
+     *
+     * @throws Exception
+     */
+    public static void runStandIn() throws Exception {
+
+        final StandInServices services = new StandInServices(new StandInSettings());
+
+        // The stand-in connection accepts any login
+        final ServiceConnection connection = services.connection();
+
+        final Session session = connection.login("standin", "standin").get(5000, TimeUnit.MILLISECONDS);
+
+        try {
+            runAllExamples(session);
+        } finally {
+            connection.disconnect();
+            services.shutdown();
+        }
+    }
+
     public static void runAllExamples(Session session) throws Exception{
 
         AlarmsExample.getActiveAlarms(session);
         AlarmsExample.alarmLifecycle(session);
+        AlarmsExample.activeAlarmIndex(session);
 
         CommandsExample.getCommands(session);
         CommandsExample.executionLock(session);
@@ -94,37 +129,57 @@ public class Examples {
         CommandsExample.commandBlocking(session);
         CommandsExample.executeControl(session);
         CommandsExample.executeSetpoint(session);
+        CommandsExample.commandSession(session);
+        CommandsExample.pipelinedSetpoints(session);
 
         KeyValuesExample.getKeyValues(session);
+        KeyValuesExample.bulkLoadKeyValues(session);
+        KeyValuesExample.storeLargeValue(session);
         KeyValuesExample.createUpdateRemove(session);
 
         EndpointsExample.getEndpoints(session);
         EndpointsExample.getConnectionStatuses(session);
+        EndpointsExample.connectionStatusBoard(session);
         EndpointsExample.enableDisableEndpoint(session);
 
         EntitiesExample.getEntities(session);
         EntitiesExample.getByType(session);
         EntitiesExample.getImmediateChildren(session);
+        EntitiesExample.relationshipGraph(session);
+        EntitiesExample.queryByTypeIndex(session);
 
         EventsExample.getRecentEvents(session);
         EventsExample.getRecentEventsByType(session);
         EventsExample.searchForEventsBySeverity(session);
         EventsExample.searchForEventsByInterval(session);
+        EventsExample.scanEventsByInterval(session);
+        EventsExample.eventStatistics(session);
 
         EventPublishingExample.publishEvent(session);
         EventPublishingExample.publishEventWithArguments(session);
+        EventPublishingExample.publishEventsInBatches(session);
 
         MeasurementsExample.getMeasurementByPoint(session);
         MeasurementsExample.getMultipleMeasurements(session);
+        MeasurementsExample.getCoalescedMeasurements(session);
 
         MeasurementHistoryExample.getMeasurementHistory(session);
         MeasurementHistoryExample.getMeasurementHistorySince(session);
         MeasurementHistoryExample.getMeasurementHistoryInterval(session);
+        MeasurementHistoryExample.getMeasurementHistoryTrend(session);
 
         PointsExample.getPoints(session);
         PointsExample.getPointByName(session);
         PointsExample.getPointByUuid(session);
 
         SubscriptionsExample.subscribeToMeasurements(session);
+        SubscriptionsExample.subscribeWithDispatcher(session);
+        SubscriptionsExample.subscribeWithConflation(session);
+        SubscriptionsExample.subscribeSharded(session);
+        SubscriptionsExample.subscribeResilient(session);
+
+        SnapshotExample.subscribeFromSnapshot(session);
+
+        ReactiveExample.nonBlockingQueries(session);
     }
 }
@@ -0,0 +1,551 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.alarms;
+
+import io.greenbus.client.service.proto.Envelope;
+import io.greenbus.client.service.proto.EventRequests;
+import io.greenbus.client.service.proto.Events;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.japi.client.service.EventService;
+import io.greenbus.msg.japi.Subscription;
+import io.greenbus.msg.japi.SubscriptionHandler;
+import io.greenbus.msg.japi.SubscriptionResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A client-side index of the active (not removed) alarms, kept current by an alarm subscription.
+ *
+ * The index is seeded by a single paged AlarmQuery and then maintained from alarm notifications, so
+ * alarm panels can be refreshed without querying the event service. Alarms are indexed by state,
+ * severity, event type and subsystem, and every index is ordered by event time. A query walks the
+ * smallest index that matches its filter, in time order, so sorted and filtered pages are answered
+ * in memory without sorting.
+ */
+public class ActiveAlarmIndex implements SubscriptionHandler<Events.AlarmNotification> {
+
+    private static final Events.Alarm.State[] ACTIVE_STATES = {
+            Events.Alarm.State.UNACK_AUDIBLE,
+            Events.Alarm.State.UNACK_SILENT,
+            Events.Alarm.State.ACKNOWLEDGED
+    };
+
+    // Newest first, ties broken by alarm id so that entries are unique
+    private static final Comparator<Entry> NEWEST_FIRST = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            if (a.time != b.time) {
+                return a.time > b.time ? -1 : 1;
+            }
+            return a.id.compareTo(b.id);
+        }
+    };
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<Model.ModelID, Entry> byId = new HashMap<Model.ModelID, Entry>();
+    private final TreeSet<Entry> byTime = new TreeSet<Entry>(NEWEST_FIRST);
+    private final EnumMap<Events.Alarm.State, TreeSet<Entry>> byState = new EnumMap<Events.Alarm.State, TreeSet<Entry>>(Events.Alarm.State.class);
+    private final Map<Integer, TreeSet<Entry>> bySeverity = new HashMap<Integer, TreeSet<Entry>>();
+    private final Map<String, TreeSet<Entry>> byEventType = new HashMap<String, TreeSet<Entry>>();
+    private final Map<String, TreeSet<Entry>> bySubsystem = new HashMap<String, TreeSet<Entry>>();
+
+    private boolean seeding = false;
+    private List<Events.AlarmNotification> buffered = new ArrayList<Events.AlarmNotification>();
+    private Subscription<Events.AlarmNotification> subscription = null;
+
+    /**
+     * Subscribes to alarm notifications and seeds the index with a paged query of the active alarms.
+     * Notifications that arrive while seeding are applied once the seed is complete.
+     *
+     * @param client Event service interface
+     * @param pageSize Number of alarms per page of the seed query
+     * @param timeout Time allowed for each request
+     * @param unit Unit of the timeout
+     * @throws Exception If the subscription or the seed query fails; the subscription is cancelled and the index left empty
+     */
+    public void start(EventService.Client client, int pageSize, long timeout, TimeUnit unit) throws Exception {
+
+        lock.writeLock().lock();
+        try {
+            seeding = true;
+            buffered = new ArrayList<Events.AlarmNotification>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        try {
+            seed(client, pageSize, timeout, unit);
+        } catch (Exception ex) {
+            // Don't leave an open subscription buffering notifications that will never be applied
+            stop();
+            lock.writeLock().lock();
+            try {
+                clear();
+                buffered = new ArrayList<Events.AlarmNotification>();
+                seeding = false;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw ex;
+        }
+    }
+
+    private void seed(EventService.Client client, int pageSize, long timeout, TimeUnit unit) throws Exception {
+
+        final SubscriptionResult<List<Events.Alarm>, Events.AlarmNotification> result =
+                client.subscribeToAlarms(EventRequests.AlarmSubscriptionQuery.newBuilder().build()).get(timeout, unit);
+
+        subscription = result.getSubscription();
+        subscription.start(this);
+
+        Model.ModelID lastId = null;
+        while (true) {
+            final EventRequests.AlarmQuery.Builder query = EventRequests.AlarmQuery.newBuilder()
+                    .addAllAlarmStates(Arrays.asList(ACTIVE_STATES))
+                    .setPageSize(pageSize);
+            if (lastId != null) {
+                query.setLastId(lastId);
+            }
+
+            final List<Events.Alarm> page = client.alarmQuery(query.build()).get(timeout, unit);
+
+            lock.writeLock().lock();
+            try {
+                for (Events.Alarm alarm : page) {
+                    upsert(alarm);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            if (page.size() < pageSize) {
+                break;
+            }
+            lastId = page.get(page.size() - 1).getId();
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (Events.AlarmNotification notification : buffered) {
+                apply(notification);
+            }
+            buffered = new ArrayList<Events.AlarmNotification>();
+            seeding = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Cancels the alarm subscription. The index stops being updated.
+     */
+    public void stop() {
+        if (subscription != null) {
+            subscription.cancel();
+            subscription = null;
+        }
+    }
+
+    /**
+     * Applies an alarm notification to the index.
+     *
+     * @param notification Alarm notification
+     */
+    @Override
+    public void handle(Events.AlarmNotification notification) {
+        lock.writeLock().lock();
+        try {
+            if (seeding) {
+                buffered.add(notification);
+            } else {
+                apply(notification);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of active alarms
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param alarmId Id of an alarm
+     * @return The alarm, or null if it is not active
+     */
+    public Events.Alarm get(Model.ModelID alarmId) {
+        lock.readLock().lock();
+        try {
+            final Entry entry = byId.get(alarmId);
+            return entry == null ? null : entry.alarm;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a page of the active alarms matching a query, in time order.
+     *
+     * @param query Filter, ordering and page
+     * @return Alarms on the requested page
+     */
+    public List<Events.Alarm> query(Query query) {
+        lock.readLock().lock();
+        try {
+            final Iterator<Entry> iterator = candidates(query);
+            final List<Events.Alarm> page = new ArrayList<Events.Alarm>(Math.min(query.limit, 1024));
+
+            int skipped = 0;
+            while (iterator.hasNext() && page.size() < query.limit) {
+                final Entry entry = iterator.next();
+                if (query.matches(entry)) {
+                    if (skipped < query.offset) {
+                        skipped++;
+                    } else {
+                        page.add(entry.alarm);
+                    }
+                }
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param query Filter; ordering and page are ignored
+     * @return Number of active alarms matching the filter
+     */
+    public int count(Query query) {
+        lock.readLock().lock();
+        try {
+            final Iterator<Entry> iterator = candidates(query);
+            int count = 0;
+            while (iterator.hasNext()) {
+                if (query.matches(iterator.next())) {
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void apply(Events.AlarmNotification notification) {
+        final Events.Alarm alarm = notification.getValue();
+        if (notification.getEventType() == Envelope.SubscriptionEventType.REMOVED || alarm.getState() == Events.Alarm.State.REMOVED) {
+            remove(alarm.getId());
+        } else {
+            upsert(alarm);
+        }
+    }
+
+    private void upsert(Events.Alarm alarm) {
+        if (alarm.getState() == Events.Alarm.State.REMOVED) {
+            remove(alarm.getId());
+            return;
+        }
+        remove(alarm.getId());
+
+        final Entry entry = new Entry(alarm);
+        byId.put(alarm.getId(), entry);
+        byTime.add(entry);
+        add(byState, entry.state, entry);
+        add(bySeverity, entry.severity, entry);
+        add(byEventType, entry.eventType, entry);
+        add(bySubsystem, entry.subsystem, entry);
+    }
+
+    private void remove(Model.ModelID alarmId) {
+        final Entry entry = byId.remove(alarmId);
+        if (entry != null) {
+            byTime.remove(entry);
+            remove(byState, entry.state, entry);
+            remove(bySeverity, entry.severity, entry);
+            remove(byEventType, entry.eventType, entry);
+            remove(bySubsystem, entry.subsystem, entry);
+        }
+    }
+
+    private void clear() {
+        byId.clear();
+        byTime.clear();
+        byState.clear();
+        bySeverity.clear();
+        byEventType.clear();
+        bySubsystem.clear();
+    }
+
+    private static <K> void add(Map<K, TreeSet<Entry>> index, K key, Entry entry) {
+        TreeSet<Entry> set = index.get(key);
+        if (set == null) {
+            set = new TreeSet<Entry>(NEWEST_FIRST);
+            index.put(key, set);
+        }
+        set.add(entry);
+    }
+
+    private static <K> void remove(Map<K, TreeSet<Entry>> index, K key, Entry entry) {
+        final TreeSet<Entry> set = index.get(key);
+        if (set != null) {
+            set.remove(entry);
+            if (set.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Picks the secondary index with the fewest entries for the query's filter, and merges the
+     * matching sets of that index in time order.
+     */
+    private Iterator<Entry> candidates(Query query) {
+        List<TreeSet<Entry>> best = null;
+        int bestSize = byTime.size();
+
+        final List<List<TreeSet<Entry>>> dimensions = new ArrayList<List<TreeSet<Entry>>>();
+        if (query.states != null) {
+            dimensions.add(sets(byState, query.states));
+        }
+        if (query.severities != null) {
+            dimensions.add(sets(bySeverity, query.severities));
+        }
+        if (query.eventTypes != null) {
+            dimensions.add(sets(byEventType, query.eventTypes));
+        }
+        if (query.subsystems != null) {
+            dimensions.add(sets(bySubsystem, query.subsystems));
+        }
+
+        for (List<TreeSet<Entry>> dimension : dimensions) {
+            int size = 0;
+            for (TreeSet<Entry> set : dimension) {
+                size += set.size();
+            }
+            if (best == null || size < bestSize) {
+                best = dimension;
+                bestSize = size;
+            }
+        }
+        if (best == null) {
+            best = Collections.singletonList(byTime);
+        }
+
+        final List<Iterator<Entry>> iterators = new ArrayList<Iterator<Entry>>(best.size());
+        for (TreeSet<Entry> set : best) {
+            final NavigableSet<Entry> range = query.range(set);
+            iterators.add(query.oldestFirst ? range.descendingIterator() : range.iterator());
+        }
+
+        return iterators.size() == 1 ? iterators.get(0) : new MergingIterator(iterators, query.oldestFirst ? Collections.reverseOrder(NEWEST_FIRST) : NEWEST_FIRST);
+    }
+
+    private static <K> List<TreeSet<Entry>> sets(Map<K, TreeSet<Entry>> index, Collection<K> keys) {
+        final List<TreeSet<Entry>> sets = new ArrayList<TreeSet<Entry>>(keys.size());
+        for (K key : keys) {
+            final TreeSet<Entry> set = index.get(key);
+            if (set != null) {
+                sets.add(set);
+            }
+        }
+        return sets;
+    }
+
+    /**
+     * Filter, ordering and page for an alarm index query. Unset criteria match everything.
+     */
+    public static class Query {
+        private Set<Events.Alarm.State> states = null;
+        private Set<Integer> severities = null;
+        private Set<String> eventTypes = null;
+        private Set<String> subsystems = null;
+        private long timeFrom = Long.MIN_VALUE;
+        private long timeTo = Long.MAX_VALUE;
+        private boolean oldestFirst = false;
+        private int offset = 0;
+        private int limit = Integer.MAX_VALUE;
+
+        public Query withStates(Events.Alarm.State... states) {
+            this.states = new HashSet<Events.Alarm.State>(Arrays.asList(states));
+            return this;
+        }
+
+        public Query withSeverities(Integer... severities) {
+            this.severities = new HashSet<Integer>(Arrays.asList(severities));
+            return this;
+        }
+
+        public Query withEventTypes(String... eventTypes) {
+            this.eventTypes = new HashSet<String>(Arrays.asList(eventTypes));
+            return this;
+        }
+
+        public Query withSubsystems(String... subsystems) {
+            this.subsystems = new HashSet<String>(Arrays.asList(subsystems));
+            return this;
+        }
+
+        /**
+         * @param timeFrom Earliest event time, inclusive
+         * @param timeTo Latest event time, inclusive
+         */
+        public Query between(long timeFrom, long timeTo) {
+            this.timeFrom = timeFrom;
+            this.timeTo = timeTo;
+            return this;
+        }
+
+        /**
+         * Orders the results oldest first; the default is newest first.
+         */
+        public Query oldestFirst() {
+            this.oldestFirst = true;
+            return this;
+        }
+
+        public Query page(int offset, int limit) {
+            this.offset = offset;
+            this.limit = limit;
+            return this;
+        }
+
+        boolean matches(Entry entry) {
+            return (states == null || states.contains(entry.state)) &&
+                    (severities == null || severities.contains(entry.severity)) &&
+                    (eventTypes == null || eventTypes.contains(entry.eventType)) &&
+                    (subsystems == null || subsystems.contains(entry.subsystem));
+        }
+
+        NavigableSet<Entry> range(TreeSet<Entry> set) {
+            if (timeFrom == Long.MIN_VALUE && timeTo == Long.MAX_VALUE) {
+                return set;
+            }
+            // Sets are ordered newest first, so the range runs from timeTo down to timeFrom
+            return set.subSet(Entry.bound(timeTo, ""), true, Entry.bound(timeFrom, "\uffff"), true);
+        }
+    }
+
+    private static class Entry {
+        private final String id;
+        private final long time;
+        private final Events.Alarm alarm;
+        private final Events.Alarm.State state;
+        private final Integer severity;
+        private final String eventType;
+        private final String subsystem;
+
+        Entry(Events.Alarm alarm) {
+            this.id = alarm.getId().getValue();
+            this.time = alarm.getEvent().getTime();
+            this.alarm = alarm;
+            this.state = alarm.getState();
+            this.severity = alarm.getEvent().getSeverity();
+            this.eventType = alarm.getEvent().getEventType();
+            this.subsystem = alarm.getEvent().getSubsystem();
+        }
+
+        private Entry(long time, String id) {
+            this.id = id;
+            this.time = time;
+            this.alarm = null;
+            this.state = null;
+            this.severity = null;
+            this.eventType = null;
+            this.subsystem = null;
+        }
+
+        static Entry bound(long time, String id) {
+            return new Entry(time, id);
+        }
+    }
+
+    private static class MergingIterator implements Iterator<Entry> {
+        private final PriorityQueue<Head> heads;
+
+        MergingIterator(List<Iterator<Entry>> iterators, final Comparator<Entry> order) {
+            this.heads = new PriorityQueue<Head>(Math.max(1, iterators.size()), new Comparator<Head>() {
+                @Override
+                public int compare(Head a, Head b) {
+                    return order.compare(a.entry, b.entry);
+                }
+            });
+            for (Iterator<Entry> iterator : iterators) {
+                if (iterator.hasNext()) {
+                    heads.add(new Head(iterator.next(), iterator));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Entry next() {
+            final Head head = heads.poll();
+            final Entry entry = head.entry;
+            if (head.iterator.hasNext()) {
+                heads.add(new Head(head.iterator.next(), head.iterator));
+            }
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class Head {
+        private final Entry entry;
+        private final Iterator<Entry> iterator;
+
+        Head(Entry entry, Iterator<Entry> iterator) {
+            this.entry = entry;
+            this.iterator = iterator;
+        }
+    }
+}
@@ -22,8 +22,10 @@ import io.greenbus.msg.japi.Session;
 import io.greenbus.client.service.proto.EventRequests;
 import io.greenbus.client.service.proto.Events;
 import io.greenbus.client.service.proto.Events.Event;
+import io.greenbus.client.service.proto.Model;
 import io.greenbus.japi.client.service.EventService;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
@@ -148,4 +150,106 @@ public class AlarmsExample {
         System.out.println("Alarm: " + removed.getState() + ", " + removed.getEvent().getRendered() + ", " + new Date(removed.getEvent().getTime()).toString() + "\n");
     }
 
+    /**
+     * Bulk Acknowledge
+     *
+     * Acknowledges up to 1000 active alarms at once. The state updates are sent in chunks of 100,
+     * with up to four requests in flight; a failed chunk is split to isolate the alarms that fail, and
+     * each of those is retried up to three times.
+     *
+     * Not run by Examples.runAllExamples, since it acknowledges every unacknowledged alarm in the system.
+     *
+     * @param session Logged-in Session object
+     * @throws Exception
+     */
+    public static void bulkAcknowledge(Session session) throws Exception {
+
+        System.out.print("\n=== Bulk Acknowledge ===\n\n");
+
+        // Get service interface for alarms
+        final EventService.Client client = EventService.client(session);
+
+        // Get the unacknowledged alarms
+        final EventRequests.AlarmQuery query = EventRequests.AlarmQuery.newBuilder()
+                .addAlarmStates(Events.Alarm.State.UNACK_AUDIBLE)
+                .addAlarmStates(Events.Alarm.State.UNACK_SILENT)
+                .setPageSize(1000)
+                .build();
+
+        final List<Events.Alarm> alarmList = client.alarmQuery(query).get(5000, TimeUnit.MILLISECONDS);
+
+        final List<Model.ModelID> alarmIds = new ArrayList<Model.ModelID>();
+        for (Events.Alarm alarm : alarmList) {
+            alarmIds.add(alarm.getId());
+        }
+
+        // Acknowledge all of them, changing their states from UNACK_* to ACKNOWLEDGED
+        final BulkAlarmUpdater updater = new BulkAlarmUpdater(client, 100, 4, 3);
+
+        final BulkAlarmUpdater.Result result = updater.acknowledge(alarmIds, 30000, TimeUnit.MILLISECONDS);
+
+        System.out.println("Acknowledged: " + result.getSuccessCount() + " of " + alarmIds.size() +
+                " in " + result.getElapsedMillis() + " ms, requests: " + result.getRequestCount());
+
+        // Display the alarms that could not be acknowledged
+        for (BulkAlarmUpdater.Outcome failure : result.getFailures()) {
+            System.out.println("Failed: " + failure.getAlarmId().getValue() + ", attempts: " + failure.getAttempts() + ", error: " + failure.getError());
+        }
+
+        // Display the alarms whose acknowledgement was still unconfirmed at the deadline
+        for (BulkAlarmUpdater.Outcome unknown : result.getUnknown()) {
+            System.out.println("Unknown: " + unknown.getAlarmId().getValue() + ", attempts: " + unknown.getAttempts());
+        }
+    }
+
+    /**
+     * Active Alarm Index
+     *
+     * Seeds a client-side index of the active alarms with a paged query, keeps it current with an alarm
+     * subscription, and answers filtered, sorted alarm pages from memory.
+     *
+     * @param session Logged-in Session object
+     * @throws Exception
+     */
+    public static void activeAlarmIndex(Session session) throws Exception {
+
+        System.out.print("\n=== Active Alarm Index ===\n\n");
+
+        // Get service interface for alarms
+        final EventService.Client client = EventService.client(session);
+
+        // Subscribe to alarm changes and load the active alarms, 500 per page
+        final ActiveAlarmIndex index = new ActiveAlarmIndex();
+        index.start(client, 500, 5000, TimeUnit.MILLISECONDS);
+
+        System.out.println("Active alarms: " + index.size());
+
+        try {
+            // First page of unacknowledged alarms, newest first
+            final ActiveAlarmIndex.Query unacked = new ActiveAlarmIndex.Query()
+                    .withStates(Events.Alarm.State.UNACK_AUDIBLE, Events.Alarm.State.UNACK_SILENT)
+                    .page(0, 5);
+
+            final long start = System.nanoTime();
+            final List<Events.Alarm> page = index.query(unacked);
+            final long elapsed = System.nanoTime() - start;
+
+            System.out.println("Unacknowledged: " + index.count(unacked) + ", first page in " + (elapsed / 1000) + " us");
+            for (Events.Alarm alarm : page) {
+                System.out.println("Alarm: " + alarm.getState() + ", " + alarm.getEvent().getRendered() + ", " + new Date(alarm.getEvent().getTime()).toString());
+            }
+
+            // Alarms raised in the last hour, oldest first
+            final long now = System.currentTimeMillis();
+            final ActiveAlarmIndex.Query lastHour = new ActiveAlarmIndex.Query()
+                    .between(now - 3600000, now)
+                    .oldestFirst();
+
+            System.out.println("Raised in the last hour: " + index.count(lastHour));
+
+        } finally {
+            index.stop();
+        }
+    }
+
 }
@@ -0,0 +1,132 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.alarms;
+
+import io.greenbus.client.service.proto.EventRequests;
+import io.greenbus.client.service.proto.Events;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.examples.reactive.ReactiveClient;
+import io.greenbus.examples.standin.StandInServices;
+import io.greenbus.examples.standin.StandInSettings;
+import io.greenbus.japi.client.service.EventService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares acknowledging alarms one request at a time, as in AlarmsExample.alarmLifecycle, with
+ * BulkAlarmUpdater at several chunk sizes and concurrency limits.
+ *
+ * Runs against StandInServices, with a fixed round-trip latency plus a per-alarm processing cost, and
+ * a small fraction of failed requests so that retries are exercised. Every run acknowledges a batch of
+ * newly raised alarms, so none of them finds its alarms already acknowledged by an earlier run. No
+ * broker is required.
+ */
+public class BulkAlarmBenchmark {
+
+    private static final long ROUND_TRIP_MICROS = 2000;
+    private static final long PER_ALARM_MICROS = 20;
+    private static final double FAILURE_RATE = 0.02;
+    private static final int PAGE_SIZE = 1000;
+
+    public static void main(String[] args) throws Exception {
+
+        final int alarmCount = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+
+        System.out.print("\n=== Bulk Alarm Acknowledgement Benchmark (" + alarmCount + " alarms) ===\n\n");
+
+        final StandInServices services = new StandInServices(new StandInSettings()
+                .setLatencyMicros(ROUND_TRIP_MICROS)
+                .setItemMicros(PER_ALARM_MICROS)
+                .setTransportThreads(4)
+                .setSeed(1234));
+        final EventService.Client client = services.getEventClient();
+        final Set<Model.ModelID> used = new HashSet<Model.ModelID>();
+
+        try {
+            List<Model.ModelID> alarmIds = raiseAlarms(services, alarmCount, used);
+
+            // One request per alarm, waiting for each, retrying failures
+            final long start = System.nanoTime();
+            for (Model.ModelID alarmId : alarmIds) {
+                final EventRequests.AlarmStateUpdate update = EventRequests.AlarmStateUpdate.newBuilder()
+                        .setAlarmId(alarmId)
+                        .setAlarmState(Events.Alarm.State.ACKNOWLEDGED)
+                        .build();
+                for (int attempt = 0; attempt < 3; attempt++) {
+                    try {
+                        client.putAlarmState(Arrays.asList(update)).get(5000, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (Exception ex) {
+                        // Retry
+                    }
+                }
+            }
+            report("Sequential", alarmIds.size(), System.nanoTime() - start);
+
+            final int[][] configurations = { {100, 1}, {100, 4}, {500, 4}, {500, 16}, {1000, 8} };
+            for (int[] configuration : configurations) {
+                alarmIds = raiseAlarms(services, alarmCount, used);
+                final BulkAlarmUpdater updater = new BulkAlarmUpdater(client, configuration[0], configuration[1], 3);
+                final BulkAlarmUpdater.Result result = updater.acknowledge(alarmIds, 60000, TimeUnit.MILLISECONDS);
+
+                report("Chunk " + configuration[0] + ", in flight " + configuration[1], alarmIds.size(), (long) (result.getElapsedMillis() * 1000000));
+                System.out.println("    Requests: " + result.getRequestCount() + ", Succeeded: " + result.getSuccessCount() + ", Failed: " + result.getFailures().size() +
+                        ", Unknown: " + result.getUnknown().size());
+            }
+        } finally {
+            services.shutdown();
+        }
+    }
+
+    /**
+     * Raises a batch of alarms and reads their ids, with requests failing only once they have been read.
+     *
+     * @param used Ids of the alarms raised for earlier runs, which may still be unacknowledged; the new ids are added
+     * @return Ids of the newly raised alarms
+     */
+    private static List<Model.ModelID> raiseAlarms(StandInServices services, int alarmCount, Set<Model.ModelID> used) throws Exception {
+        services.setFailureRate(0);
+        services.raiseAlarms(alarmCount);
+
+        final ReactiveClient reactiveClient = new ReactiveClient(null, null, services.getEventClient(), null, null, 1);
+        final List<Events.Alarm> alarms = ReactiveClient.collect(reactiveClient.alarms(EventRequests.AlarmQuery.newBuilder()
+                .addAlarmStates(Events.Alarm.State.UNACK_AUDIBLE)
+                .build(), PAGE_SIZE), PAGE_SIZE).get(60000, TimeUnit.MILLISECONDS);
+
+        final List<Model.ModelID> alarmIds = new ArrayList<Model.ModelID>(alarmCount);
+        for (Events.Alarm alarm : alarms) {
+            if (used.add(alarm.getId())) {
+                alarmIds.add(alarm.getId());
+            }
+        }
+
+        services.setFailureRate(FAILURE_RATE);
+        return alarmIds;
+    }
+
+    private static void report(String name, int alarmCount, long elapsedNanos) {
+        final double millis = elapsedNanos / 1000000.0;
+        System.out.println(name + ": " + millis + " ms, " + (long) (alarmCount / (millis / 1000.0)) + " alarms/s");
+    }
+}
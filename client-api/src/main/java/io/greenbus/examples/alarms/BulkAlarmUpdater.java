@@ -0,0 +1,469 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.alarms;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.greenbus.client.service.proto.EventRequests;
+import io.greenbus.client.service.proto.Events;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.japi.client.service.EventService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Acknowledges or removes large numbers of alarms at once.
+ *
+ * The alarm state updates are split into chunks, and the chunks are sent as putAlarmState requests
+ * with a bounded number in flight at a time. A chunk whose request fails is split in half and the halves
+ * are sent on their own, without holding up the other chunks, so an alarm the service rejects only fails
+ * itself rather than every alarm sent with it. The update of a single alarm is retried up to a maximum
+ * number of attempts. Halves and retries are sent after a backoff, doubling with every retry of the
+ * same alarm up to a maximum, so a service that is failing every request is not flooded with them
+ * while it recovers. The result reports the outcome of every alarm individually; an alarm whose request
+ * was still outstanding when the time allowed ran out is reported as unknown, since the service may
+ * have applied it.
+ */
+public class BulkAlarmUpdater {
+
+    private static final Chunk DONE = new Chunk(Collections.<EventRequests.AlarmStateUpdate>emptyList());
+
+    private static final long DEFAULT_BACKOFF_MILLIS = 50;
+    private static final long DEFAULT_MAX_BACKOFF_MILLIS = 2000;
+
+    private final EventService.Client client;
+    private final int chunkSize;
+    private final int maxInFlight;
+    private final int maxAttempts;
+    private final long backoffNanos;
+    private final long maxBackoffNanos;
+
+    /**
+     * Uses a backoff of 50 milliseconds, up to 2 seconds.
+     *
+     * @param client Event service interface
+     * @param chunkSize Maximum number of alarm state updates per request
+     * @param maxInFlight Maximum number of requests outstanding at once
+     * @param maxAttempts Maximum number of times the update of an alarm is sent on its own before it is reported as failed
+     */
+    public BulkAlarmUpdater(EventService.Client client, int chunkSize, int maxInFlight, int maxAttempts) {
+        this(client, chunkSize, maxInFlight, maxAttempts, DEFAULT_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param client Event service interface
+     * @param chunkSize Maximum number of alarm state updates per request
+     * @param maxInFlight Maximum number of requests outstanding at once
+     * @param maxAttempts Maximum number of times the update of an alarm is sent on its own before it is reported as failed
+     * @param backoff Delay before the halves of a failed chunk, or the first retry of a single alarm, are sent
+     * @param maxBackoff Maximum delay before a retry
+     * @param unit Unit of the backoff delays
+     */
+    public BulkAlarmUpdater(EventService.Client client, int chunkSize, int maxInFlight, int maxAttempts,
+                            long backoff, long maxBackoff, TimeUnit unit) {
+        if (chunkSize < 1 || maxInFlight < 1 || maxAttempts < 1) {
+            throw new IllegalArgumentException("Chunk size, requests in flight and attempts must be positive");
+        }
+        if (backoff < 0 || maxBackoff < backoff) {
+            throw new IllegalArgumentException("Backoff must not be negative or exceed the maximum backoff");
+        }
+        this.client = client;
+        this.chunkSize = chunkSize;
+        this.maxInFlight = maxInFlight;
+        this.maxAttempts = maxAttempts;
+        this.backoffNanos = unit.toNanos(backoff);
+        this.maxBackoffNanos = unit.toNanos(maxBackoff);
+    }
+
+    /**
+     * Acknowledges alarms, changing their state from UNACK_* to ACKNOWLEDGED.
+     *
+     * @param alarmIds Alarms to acknowledge
+     * @param timeout Time allowed for the whole operation
+     * @param unit Unit of the timeout
+     * @return Outcome of every alarm
+     * @throws InterruptedException
+     */
+    public Result acknowledge(List<Model.ModelID> alarmIds, long timeout, TimeUnit unit) throws InterruptedException {
+        return update(stateUpdates(alarmIds, Events.Alarm.State.ACKNOWLEDGED), timeout, unit);
+    }
+
+    /**
+     * Removes alarms, changing their state to REMOVED.
+     *
+     * @param alarmIds Alarms to remove
+     * @param timeout Time allowed for the whole operation
+     * @param unit Unit of the timeout
+     * @return Outcome of every alarm
+     * @throws InterruptedException
+     */
+    public Result remove(List<Model.ModelID> alarmIds, long timeout, TimeUnit unit) throws InterruptedException {
+        return update(stateUpdates(alarmIds, Events.Alarm.State.REMOVED), timeout, unit);
+    }
+
+    /**
+     * Applies arbitrary alarm state updates in chunks.
+     *
+     * @param updates Alarm state updates
+     * @param timeout Time allowed for the whole operation; alarms not sent by then are reported as failed, and alarms
+     *                still in flight as unknown
+     * @param unit Unit of the timeout
+     * @return Outcome of every alarm, in the order of the updates
+     * @throws InterruptedException
+     */
+    public Result update(List<EventRequests.AlarmStateUpdate> updates, long timeout, TimeUnit unit) throws InterruptedException {
+
+        final long start = System.nanoTime();
+        final long deadline = start + unit.toNanos(timeout);
+
+        final Map<Model.ModelID, Outcome> outcomes = new LinkedHashMap<Model.ModelID, Outcome>();
+        for (EventRequests.AlarmStateUpdate update : updates) {
+            outcomes.put(update.getAlarmId(), new Outcome(update.getAlarmId()));
+        }
+
+        final DelayQueue<Chunk> queue = new DelayQueue<Chunk>();
+        for (int i = 0; i < updates.size(); i += chunkSize) {
+            queue.add(new Chunk(new ArrayList<EventRequests.AlarmStateUpdate>(updates.subList(i, Math.min(i + chunkSize, updates.size())))));
+        }
+
+        final AtomicInteger remaining = new AtomicInteger(queue.size());
+        final Semaphore inFlight = new Semaphore(maxInFlight);
+        int requests = 0;
+
+        if (remaining.get() > 0) {
+            while (true) {
+                final long wait = deadline - System.nanoTime();
+                final Chunk chunk = queue.poll(Math.max(0, wait), TimeUnit.NANOSECONDS);
+                if (chunk == DONE || (chunk == null && wait <= 0)) {
+                    break;
+                }
+                if (chunk == null) {
+                    continue;
+                }
+
+                if (!inFlight.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    break;
+                }
+                requests++;
+                send(chunk, outcomes, queue, remaining, inFlight);
+            }
+        }
+
+        synchronized (outcomes) {
+            final List<Outcome> results = new ArrayList<Outcome>(outcomes.size());
+            for (Outcome outcome : outcomes.values()) {
+                final Outcome result = outcome.copy();
+                if (outcome.inFlight) {
+                    result.alarm = null;
+                    result.unknown = true;
+                    result.error = new TimeoutException("Alarm state update sent but not confirmed in time");
+                } else if (!outcome.isComplete()) {
+                    result.error = new TimeoutException("Alarm state update not sent in time");
+                }
+                results.add(result);
+            }
+            return new Result(results, requests, System.nanoTime() - start);
+        }
+    }
+
+    private void send(final Chunk chunk, final Map<Model.ModelID, Outcome> outcomes, final DelayQueue<Chunk> queue,
+                      final AtomicInteger remaining, final Semaphore inFlight) {
+
+        chunk.attempts++;
+        synchronized (outcomes) {
+            for (EventRequests.AlarmStateUpdate update : chunk.updates) {
+                final Outcome outcome = outcomes.get(update.getAlarmId());
+                outcome.attempts++;
+                outcome.inFlight = true;
+            }
+        }
+
+        ListenableFuture<List<Events.Alarm>> future;
+        try {
+            future = client.putAlarmState(chunk.updates);
+        } catch (RuntimeException ex) {
+            inFlight.release();
+            failed(chunk, ex, outcomes, queue, remaining);
+            return;
+        }
+
+        final ListenableFuture<List<Events.Alarm>> result = future;
+        result.addListener(new Runnable() {
+            @Override
+            public void run() {
+                inFlight.release();
+                try {
+                    succeeded(chunk, result.get(), outcomes, queue, remaining);
+                } catch (ExecutionException ex) {
+                    failed(chunk, ex.getCause(), outcomes, queue, remaining);
+                } catch (Exception ex) {
+                    failed(chunk, ex, outcomes, queue, remaining);
+                }
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    private void succeeded(Chunk chunk, List<Events.Alarm> alarms, Map<Model.ModelID, Outcome> outcomes,
+                           DelayQueue<Chunk> queue, AtomicInteger remaining) {
+
+        final Map<Model.ModelID, Events.Alarm> byId = new HashMap<Model.ModelID, Events.Alarm>();
+        for (Events.Alarm alarm : alarms) {
+            byId.put(alarm.getId(), alarm);
+        }
+
+        synchronized (outcomes) {
+            for (EventRequests.AlarmStateUpdate update : chunk.updates) {
+                final Outcome outcome = outcomes.get(update.getAlarmId());
+                outcome.inFlight = false;
+                outcome.alarm = byId.get(update.getAlarmId());
+                outcome.error = outcome.alarm == null ? new IllegalStateException("Alarm not returned by service") : null;
+            }
+        }
+
+        chunkDone(queue, remaining);
+    }
+
+    private void failed(Chunk chunk, Throwable cause, Map<Model.ModelID, Outcome> outcomes,
+                        DelayQueue<Chunk> queue, AtomicInteger remaining) {
+
+        synchronized (outcomes) {
+            for (EventRequests.AlarmStateUpdate update : chunk.updates) {
+                final Outcome outcome = outcomes.get(update.getAlarmId());
+                outcome.inFlight = false;
+                outcome.error = cause;
+            }
+        }
+
+        if (chunk.updates.size() > 1) {
+            // Isolate the alarms the service rejects; the halves replace this chunk
+            final int half = chunk.updates.size() / 2;
+            final long readyNanos = System.nanoTime() + backoffNanos;
+            remaining.incrementAndGet();
+            queue.add(new Chunk(new ArrayList<EventRequests.AlarmStateUpdate>(chunk.updates.subList(0, half)), readyNanos));
+            queue.add(new Chunk(new ArrayList<EventRequests.AlarmStateUpdate>(chunk.updates.subList(half, chunk.updates.size())), readyNanos));
+        } else if (chunk.attempts < maxAttempts) {
+            chunk.readyNanos = System.nanoTime() + retryBackoff(chunk.attempts);
+            queue.add(chunk);
+        } else {
+            chunkDone(queue, remaining);
+        }
+    }
+
+    /**
+     * @param attempts Number of times the single alarm has been sent
+     * @return Delay before the next attempt, doubling with every attempt up to the maximum
+     */
+    private long retryBackoff(int attempts) {
+        long delay = backoffNanos;
+        for (int i = 1; i < attempts && delay < maxBackoffNanos; i++) {
+            delay *= 2;
+        }
+        return Math.min(delay, maxBackoffNanos);
+    }
+
+    private static void chunkDone(DelayQueue<Chunk> queue, AtomicInteger remaining) {
+        if (remaining.decrementAndGet() == 0) {
+            queue.add(DONE);
+        }
+    }
+
+    private static List<EventRequests.AlarmStateUpdate> stateUpdates(List<Model.ModelID> alarmIds, Events.Alarm.State state) {
+        final List<EventRequests.AlarmStateUpdate> updates = new ArrayList<EventRequests.AlarmStateUpdate>(alarmIds.size());
+        for (Model.ModelID alarmId : alarmIds) {
+            updates.add(EventRequests.AlarmStateUpdate.newBuilder()
+                    .setAlarmId(alarmId)
+                    .setAlarmState(state)
+                    .build());
+        }
+        return updates;
+    }
+
+    private static class Chunk implements Delayed {
+        private final List<EventRequests.AlarmStateUpdate> updates;
+        private int attempts = 0;
+        private long readyNanos;
+
+        Chunk(List<EventRequests.AlarmStateUpdate> updates) {
+            this(updates, System.nanoTime());
+        }
+
+        Chunk(List<EventRequests.AlarmStateUpdate> updates, long readyNanos) {
+            this.updates = updates;
+            this.readyNanos = readyNanos;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(readyNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            final long diff = getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+            return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+        }
+    }
+
+    /**
+     * Outcome of the state update of a single alarm.
+     */
+    public static class Outcome {
+        private final Model.ModelID alarmId;
+        private Events.Alarm alarm = null;
+        private Throwable error = null;
+        private int attempts = 0;
+        private boolean inFlight = false;
+        private boolean unknown = false;
+
+        Outcome(Model.ModelID alarmId) {
+            this.alarmId = alarmId;
+        }
+
+        public Model.ModelID getAlarmId() {
+            return alarmId;
+        }
+
+        /**
+         * @return The updated alarm, or null if the update failed
+         */
+        public Events.Alarm getAlarm() {
+            return alarm;
+        }
+
+        /**
+         * @return Cause of the failure, or of the outcome being unknown; null if the update succeeded
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        /**
+         * @return Number of requests the update was sent in
+         */
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public boolean isSuccess() {
+            return alarm != null;
+        }
+
+        /**
+         * @return True if the update was still in flight when the time allowed ran out, so the service may or
+         * may not have applied it
+         */
+        public boolean isUnknown() {
+            return unknown;
+        }
+
+        boolean isComplete() {
+            return alarm != null || error != null;
+        }
+
+        Outcome copy() {
+            final Outcome copy = new Outcome(alarmId);
+            copy.alarm = alarm;
+            copy.error = error;
+            copy.attempts = attempts;
+            copy.unknown = unknown;
+            return copy;
+        }
+    }
+
+    /**
+     * Outcomes of a bulk update.
+     */
+    public static class Result {
+        private final List<Outcome> outcomes;
+        private final int requestCount;
+        private final long elapsedNanos;
+
+        Result(List<Outcome> outcomes, int requestCount, long elapsedNanos) {
+            this.outcomes = Collections.unmodifiableList(outcomes);
+            this.requestCount = requestCount;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return Outcome of every alarm, in the order of the updates
+         */
+        public List<Outcome> getOutcomes() {
+            return outcomes;
+        }
+
+        /**
+         * @return Outcomes of the alarms that were not updated
+         */
+        public List<Outcome> getFailures() {
+            final List<Outcome> failures = new ArrayList<Outcome>();
+            for (Outcome outcome : outcomes) {
+                if (!outcome.isSuccess() && !outcome.isUnknown()) {
+                    failures.add(outcome);
+                }
+            }
+            return failures;
+        }
+
+        /**
+         * @return Outcomes of the alarms whose update was unconfirmed when the time allowed ran out
+         */
+        public List<Outcome> getUnknown() {
+            final List<Outcome> unknown = new ArrayList<Outcome>();
+            for (Outcome outcome : outcomes) {
+                if (outcome.isUnknown()) {
+                    unknown.add(outcome);
+                }
+            }
+            return unknown;
+        }
+
+        public int getSuccessCount() {
+            int count = 0;
+            for (Outcome outcome : outcomes) {
+                if (outcome.isSuccess()) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * @return Number of putAlarmState requests sent, including retries
+         */
+        public int getRequestCount() {
+            return requestCount;
+        }
+
+        public double getElapsedMillis() {
+            return elapsedNanos / 1000000.0;
+        }
+    }
+}
@@ -0,0 +1,387 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.commands;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import io.greenbus.client.service.proto.CommandRequests;
+import io.greenbus.client.service.proto.Commands;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.japi.client.service.CommandService;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Holds an execution lock on a set of commands for many executions.
+ *
+ * The lock is selected once when the session is opened, and every command request afterwards costs a
+ * single issueCommandRequest round trip instead of select, issue and delete. Before the lock expires
+ * it is renewed in the background. The command service has no call to extend a lock, so renewal
+ * deletes the lock and selects the commands again; new requests wait and in-flight requests are
+ * allowed to finish while that happens. Closing the session deletes the lock.
+ *
+ * Renewal is timed from the local clock and the requested lock duration, not from the expire time
+ * set by the service, so clock skew between client and server cannot make it run early or late. No
+ * service call is made while holding the session's internal lock.
+ *
+ * If a renewal fails (for example because another agent selected one of the commands in between), the
+ * session is lost: requests fail until the session is opened again.
+ */
+public class CommandSession {
+
+    private final CommandService.Client client;
+    private final List<Model.ModelUUID> commandUuids;
+    private final Set<Model.ModelUUID> commandSet;
+    private final long lockDurationMillis;
+    private final ScheduledExecutorService scheduler;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    private Commands.CommandLock commandLock = null;
+    private long selectSentNanos = 0;
+    private ScheduledFuture<?> renewal = null;
+    private boolean renewing = false;
+    private int inFlight = 0;
+    private Throwable lostCause = null;
+    private long timeoutMillis = 5000;
+
+    private long requestCount = 0;
+    private long renewalCount = 0;
+    private long totalLatencyNanos = 0;
+
+    /**
+     * @param client Command service interface
+     * @param commandUuids Commands to lock
+     * @param lockDuration Duration each lock is selected for; renewal happens before it runs out
+     * @param unit Unit of the lock duration
+     * @param scheduler Executor to run renewals on
+     */
+    public CommandSession(CommandService.Client client, List<Model.ModelUUID> commandUuids, long lockDuration, TimeUnit unit, ScheduledExecutorService scheduler) {
+        if (commandUuids.isEmpty()) {
+            throw new IllegalArgumentException("At least one command is required");
+        }
+        this.client = client;
+        this.commandUuids = commandUuids;
+        this.commandSet = new HashSet<Model.ModelUUID>(commandUuids);
+        this.lockDurationMillis = unit.toMillis(lockDuration);
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Selects the commands and schedules renewal of the lock.
+     *
+     * @param timeout Time allowed for each lock request, also used for renewals
+     * @param unit Unit of the timeout
+     * @throws Exception If the commands could not be selected
+     */
+    public void open(long timeout, TimeUnit unit) throws Exception {
+        lock.lock();
+        try {
+            if (commandLock != null || renewing) {
+                throw new IllegalStateException("Command session is already open");
+            }
+            timeoutMillis = unit.toMillis(timeout);
+            // Requests and close() wait while the lock is being selected, as during a renewal
+            renewing = true;
+        } finally {
+            lock.unlock();
+        }
+
+        final long sent = System.nanoTime();
+        Commands.CommandLock selected = null;
+        try {
+            selected = select();
+        } finally {
+            lock.lock();
+            try {
+                if (selected != null) {
+                    commandLock = selected;
+                    selectSentNanos = sent;
+                    lostCause = null;
+                    scheduleRenewal();
+                }
+                renewing = false;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Issues a command request under the session's lock, in a single round trip. Waits while the lock
+     * is being renewed.
+     *
+     * @param request Command request for one of the session's commands
+     * @return Future completed with the command result
+     * @throws InterruptedException If interrupted while waiting for a renewal
+     */
+    public ListenableFuture<Commands.CommandResult> issue(Commands.CommandRequest request) throws InterruptedException {
+        final SettableFuture<Commands.CommandResult> future = SettableFuture.create();
+
+        if (!commandSet.contains(request.getCommandUuid())) {
+            future.setException(new IllegalArgumentException("Command is not part of this session: " + request.getCommandUuid().getValue()));
+            return future;
+        }
+
+        lock.lock();
+        try {
+            while (renewing) {
+                changed.await();
+            }
+            if (commandLock == null) {
+                future.setException(new IllegalStateException("Command session is not open", lostCause));
+                return future;
+            }
+            inFlight++;
+            requestCount++;
+        } finally {
+            lock.unlock();
+        }
+
+        final long start = System.nanoTime();
+        final ListenableFuture<Commands.CommandResult> result;
+        try {
+            result = client.issueCommandRequest(request);
+        } catch (RuntimeException ex) {
+            completed(start);
+            future.setException(ex);
+            return future;
+        }
+
+        result.addListener(new Runnable() {
+            @Override
+            public void run() {
+                completed(start);
+                try {
+                    future.set(result.get());
+                } catch (ExecutionException ex) {
+                    future.setException(ex.getCause());
+                } catch (Exception ex) {
+                    future.setException(ex);
+                }
+            }
+        }, MoreExecutors.sameThreadExecutor());
+
+        return future;
+    }
+
+    /**
+     * Stops renewal and deletes the lock, after waiting for in-flight requests to finish.
+     *
+     * @throws Exception If the lock could not be deleted
+     */
+    public void close() throws Exception {
+        final Commands.CommandLock held;
+        lock.lock();
+        try {
+            while (renewing) {
+                changed.await();
+            }
+            // After any renewal in progress, which schedules the next one
+            if (renewal != null) {
+                renewal.cancel(false);
+                renewal = null;
+            }
+            awaitIdle();
+            held = commandLock;
+            commandLock = null;
+        } finally {
+            lock.unlock();
+        }
+
+        if (held != null) {
+            client.deleteCommandLocks(Arrays.asList(held.getId())).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return True if the session holds a lock
+     */
+    public boolean isOpen() {
+        lock.lock();
+        try {
+            return commandLock != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The lock currently held, or null
+     */
+    public Commands.CommandLock getCommandLock() {
+        lock.lock();
+        try {
+            return commandLock;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Cause of losing the lock during renewal, or null
+     */
+    public Throwable getLostCause() {
+        lock.lock();
+        try {
+            return lostCause;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of command requests issued
+     */
+    public long getRequestCount() {
+        lock.lock();
+        try {
+            return requestCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of times the lock was renewed
+     */
+    public long getRenewalCount() {
+        lock.lock();
+        try {
+            return renewalCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Mean time from issuing a command request to its result, in milliseconds
+     */
+    public double getAverageLatencyMillis() {
+        lock.lock();
+        try {
+            final long completed = requestCount - inFlight;
+            return completed == 0 ? 0.0 : totalLatencyNanos / (completed * 1000000.0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void completed(long start) {
+        final long elapsed = System.nanoTime() - start;
+        lock.lock();
+        try {
+            inFlight--;
+            totalLatencyNanos += elapsed;
+            if (inFlight == 0) {
+                changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Commands.CommandLock select() throws Exception {
+        final CommandRequests.CommandSelect commandSelect = CommandRequests.CommandSelect.newBuilder()
+                .addAllCommandUuids(commandUuids)
+                .setExpireDuration(lockDurationMillis)
+                .build();
+
+        return client.selectCommands(commandSelect).get(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void scheduleRenewal() {
+        // Renew once two thirds of the duration has passed since the select was sent, leaving the last third
+        // for the round trips; the lock can't have started before the request was sent
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - selectSentNanos);
+        final long delay = Math.max(0, lockDurationMillis * 2 / 3 - elapsed);
+
+        renewal = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                renew();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void renew() {
+        final Commands.CommandLock held;
+        lock.lock();
+        try {
+            if (commandLock == null || renewing) {
+                return;
+            }
+            renewing = true;
+            awaitIdle();
+            held = commandLock;
+        } catch (InterruptedException ex) {
+            renewing = false;
+            changed.signalAll();
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            lock.unlock();
+        }
+
+        // Requests wait on the renewing flag, so the lock isn't needed across the round trips
+        Commands.CommandLock selected = null;
+        Throwable cause = null;
+        final long sent = System.nanoTime();
+        try {
+            client.deleteCommandLocks(Arrays.asList(held.getId())).get(timeoutMillis, TimeUnit.MILLISECONDS);
+            selected = select();
+        } catch (Exception ex) {
+            cause = ex;
+        }
+
+        lock.lock();
+        try {
+            commandLock = selected;
+            if (selected != null) {
+                selectSentNanos = sent;
+                renewalCount++;
+                scheduleRenewal();
+            } else {
+                lostCause = cause;
+            }
+            renewing = false;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        while (inFlight > 0) {
+            changed.await();
+        }
+    }
+}
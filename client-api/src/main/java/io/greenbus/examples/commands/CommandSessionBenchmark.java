@@ -0,0 +1,112 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.commands;
+
+import io.greenbus.client.service.proto.CommandRequests;
+import io.greenbus.client.service.proto.Commands;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.examples.standin.StandInServices;
+import io.greenbus.examples.standin.StandInSettings;
+import io.greenbus.japi.client.service.CommandService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares executing setpoints with a select, issue and delete per command, as in
+ * CommandsExample.executeSetpoint, with issuing them through a CommandSession that holds one lock.
+ *
+ * Runs against StandInServices, which answers every request after a fixed round-trip latency. The
+ * session's lock is selected with a short duration so that renewals happen during the run. No broker
+ * is required.
+ */
+public class CommandSessionBenchmark {
+
+    private static final long ROUND_TRIP_MICROS = 1000;
+
+    public static void main(String[] args) throws Exception {
+
+        final int executions = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+        System.out.print("\n=== Command Session Benchmark (" + executions + " executions) ===\n\n");
+
+        final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+        final StandInServices services = new StandInServices(new StandInSettings()
+                .setEquipmentCount(5)
+                .setLatencyMicros(ROUND_TRIP_MICROS)
+                .setTransportThreads(4));
+        final CommandService.Client client = services.getCommandClient();
+
+        final List<Model.ModelUUID> commandUuids = new ArrayList<Model.ModelUUID>();
+        for (Model.Command command : services.getModel().getCommands()) {
+            commandUuids.add(command.getUuid());
+        }
+
+        try {
+            // Select, issue and delete for every execution
+            long requests = services.getRequestCount();
+            long start = System.nanoTime();
+            for (int i = 0; i < executions; i++) {
+                final Model.ModelUUID commandUuid = commandUuids.get(i % commandUuids.size());
+
+                final Commands.CommandLock commandLock = client.selectCommands(CommandRequests.CommandSelect.newBuilder()
+                        .addCommandUuids(commandUuid)
+                        .build()).get(5000, TimeUnit.MILLISECONDS);
+
+                client.issueCommandRequest(setpoint(commandUuid, i)).get(5000, TimeUnit.MILLISECONDS);
+
+                client.deleteCommandLocks(Arrays.asList(commandLock.getId())).get(5000, TimeUnit.MILLISECONDS);
+            }
+            report("Select/issue/delete", executions, System.nanoTime() - start, services.getRequestCount() - requests);
+
+            // One lock for all executions, renewed every 300 ms or so
+            final CommandSession session = new CommandSession(client, commandUuids, 500, TimeUnit.MILLISECONDS, scheduler);
+            requests = services.getRequestCount();
+            start = System.nanoTime();
+            session.open(5000, TimeUnit.MILLISECONDS);
+            for (int i = 0; i < executions; i++) {
+                session.issue(setpoint(commandUuids.get(i % commandUuids.size()), i)).get(5000, TimeUnit.MILLISECONDS);
+            }
+            session.close();
+            report("Command session", executions, System.nanoTime() - start, services.getRequestCount() - requests);
+            System.out.println("    Renewals: " + session.getRenewalCount() + ", Average issue latency: " + session.getAverageLatencyMillis() + " ms");
+        } finally {
+            scheduler.shutdown();
+            services.shutdown();
+        }
+    }
+
+    private static Commands.CommandRequest setpoint(Model.ModelUUID commandUuid, int i) {
+        return Commands.CommandRequest.newBuilder()
+                .setCommandUuid(commandUuid)
+                .setType(Commands.CommandRequest.ValType.DOUBLE)
+                .setDoubleVal(i * 0.5)
+                .build();
+    }
+
+    private static void report(String name, int executions, long elapsedNanos, long roundTrips) {
+        final double millis = elapsedNanos / 1000000.0;
+        System.out.println(name + ": " + millis + " ms, " + (millis / executions) + " ms per command, " +
+                ((double) roundTrips / executions) + " round trips per command");
+    }
+}
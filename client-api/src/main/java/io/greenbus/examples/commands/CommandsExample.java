@@ -18,11 +18,13 @@
  */
 package io.greenbus.examples.commands;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import io.greenbus.msg.japi.Session;
 import io.greenbus.client.service.proto.CommandRequests;
 import io.greenbus.client.service.proto.Commands;
 import io.greenbus.client.service.proto.Model;
 import io.greenbus.client.service.proto.ModelRequests;
+import io.greenbus.examples.util.LatencyHistogram;
 import io.greenbus.japi.client.service.CommandService;
 import io.greenbus.japi.client.service.ModelService;
 
@@ -30,6 +32,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -391,4 +397,167 @@ public class CommandsExample {
         commandClient.deleteCommandLocks(Arrays.asList(commandLock.getId())).get(5000, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * Command Session
+     *
+     * Holds one execution lock for several setpoints and executes them repeatedly. Each execution
+     * is a single request; the lock is renewed in the background and deleted when the session is
+     * closed.
+     *
+     * @param session Logged-in Session object
+     * @throws Exception
+     */
+    public static void commandSession(Session session) throws Exception {
+
+        System.out.print("\n=== Command Session ===\n\n");
+
+        // Get service interface for commands
+        final ModelService.Client modelClient = ModelService.client(session);
+        final CommandService.Client commandClient = CommandService.client(session);
+
+        // Get three setpoints
+        final ModelRequests.CommandQuery commandQuery = ModelRequests.CommandQuery.newBuilder()
+                .addCommandCategories(Model.CommandCategory.SETPOINT_DOUBLE)
+                .setPagingParams(
+                        ModelRequests.EntityPagingParams.newBuilder()
+                                .setPageSize(3)
+                                .build())
+                .build();
+
+        final List<Model.Command> commandList = modelClient.commandQuery(commandQuery)
+                .get(5000, TimeUnit.MILLISECONDS);
+
+        if (commandList.size() == 0) {
+            System.out.println("No setpoints configured.");
+            return;
+        }
+
+        final List<Model.ModelUUID> commandUuids = new ArrayList<Model.ModelUUID>();
+        for (Model.Command command : commandList) {
+            commandUuids.add(command.getUuid());
+        }
+
+        // Lock the setpoints once, for 30 seconds at a time
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        final CommandSession commandSession = new CommandSession(commandClient, commandUuids, 30000, TimeUnit.MILLISECONDS, scheduler);
+
+        commandSession.open(5000, TimeUnit.MILLISECONDS);
+
+        System.out.println("Command access: " + commandSession.getCommandLock().getAccess());
+
+        try {
+            // Execute each setpoint several times, one round trip per execution
+            for (int i = 0; i < 5; i++) {
+                for (Model.Command command : commandList) {
+                    final Commands.CommandRequest commandRequest = Commands.CommandRequest.newBuilder()
+                            .setCommandUuid(command.getUuid())
+                            .setType(Commands.CommandRequest.ValType.DOUBLE)
+                            .setDoubleVal(35.323 + i)
+                            .build();
+
+                    final Commands.CommandResult commandResult = commandSession.issue(commandRequest).get(5000, TimeUnit.MILLISECONDS);
+
+                    System.out.println("Command: " + command.getName() + ", result: " + commandResult.getStatus());
+                }
+            }
+        } catch (TimeoutException ex) {
+
+            System.out.println("Command timed out. Front-end may not be connected.");
+
+        } finally {
+            // Remove the command lock from the system, cleaning up
+            commandSession.close();
+            scheduler.shutdown();
+        }
+
+        System.out.println("\nExecutions: " + commandSession.getRequestCount() + ", average latency: " + commandSession.getAverageLatencyMillis() + " ms");
+    }
+
+    /**
+     * Pipelined Setpoints
+     *
+     * Pushes a series of setpoints to several commands without waiting for each result. Requests for
+     * different commands are in flight at the same time, while the setpoints of each command are
+     * executed in order. Only the latest queued setpoint of each command is sent.
+     *
+     * @param session Logged-in Session object
+     * @throws Exception
+     */
+    public static void pipelinedSetpoints(Session session) throws Exception {
+
+        System.out.print("\n=== Pipelined Setpoints ===\n\n");
+
+        // Get service interface for commands
+        final ModelService.Client modelClient = ModelService.client(session);
+        final CommandService.Client commandClient = CommandService.client(session);
+
+        // Get up to ten setpoints
+        final ModelRequests.CommandQuery commandQuery = ModelRequests.CommandQuery.newBuilder()
+                .addCommandCategories(Model.CommandCategory.SETPOINT_DOUBLE)
+                .setPagingParams(
+                        ModelRequests.EntityPagingParams.newBuilder()
+                                .setPageSize(10)
+                                .build())
+                .build();
+
+        final List<Model.Command> commandList = modelClient.commandQuery(commandQuery)
+                .get(5000, TimeUnit.MILLISECONDS);
+
+        if (commandList.size() == 0) {
+            System.out.println("No setpoints configured.");
+            return;
+        }
+
+        final List<Model.ModelUUID> commandUuids = new ArrayList<Model.ModelUUID>();
+        for (Model.Command command : commandList) {
+            commandUuids.add(command.getUuid());
+        }
+
+        // Create a command execution lock for the Command objects
+        final CommandRequests.CommandSelect commandSelect = CommandRequests.CommandSelect.newBuilder()
+                .addAllCommandUuids(commandUuids)
+                .build();
+
+        final Commands.CommandLock commandLock = commandClient.selectCommands(commandSelect)
+                .get(5000, TimeUnit.MILLISECONDS);
+
+        // Up to 32 requests in flight, newer setpoints replacing queued ones
+        final PipelinedCommandIssuer issuer = new PipelinedCommandIssuer(commandClient, 32, true);
+
+        final List<ListenableFuture<Commands.CommandResult>> futures = new ArrayList<ListenableFuture<Commands.CommandResult>>();
+        for (int i = 0; i < 20; i++) {
+            for (Model.ModelUUID commandUuid : commandUuids) {
+                futures.add(issuer.submit(Commands.CommandRequest.newBuilder()
+                        .setCommandUuid(commandUuid)
+                        .setType(Commands.CommandRequest.ValType.DOUBLE)
+                        .setDoubleVal(30.0 + i)
+                        .build()));
+            }
+        }
+
+        // Wait for the setpoints that were sent
+        for (ListenableFuture<Commands.CommandResult> future : futures) {
+            try {
+                future.get(5000, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException ex) {
+                // Superseded by a later setpoint, or failed
+            } catch (TimeoutException ex) {
+                System.out.println("Command timed out. Front-end may not be connected.");
+                break;
+            }
+        }
+
+        System.out.println("Submitted: " + issuer.getSubmittedCount() + ", Sent: " + issuer.getSentCount() + ", Superseded: " + issuer.getSupersededCount());
+
+        // Display the latency of the results by status
+        for (Map.Entry<Commands.CommandStatus, LatencyHistogram> entry : issuer.getHistograms().entrySet()) {
+            final LatencyHistogram histogram = entry.getValue();
+            System.out.println(entry.getKey() + ": " + histogram.getCount() + ", p50: " + histogram.getPercentileMillis(50) +
+                    " ms, p99: " + histogram.getPercentileMillis(99) + " ms, max: " + histogram.getMaxMillis() + " ms");
+        }
+
+        // Remove the command lock from the system, cleaning up
+        commandClient.deleteCommandLocks(Arrays.asList(commandLock.getId())).get(5000, TimeUnit.MILLISECONDS);
+    }
+
 }
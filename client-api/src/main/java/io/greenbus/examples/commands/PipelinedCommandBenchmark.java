@@ -0,0 +1,176 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.commands;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.greenbus.client.service.proto.CommandRequests;
+import io.greenbus.client.service.proto.Commands;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.examples.standin.StandInServices;
+import io.greenbus.examples.standin.StandInSettings;
+import io.greenbus.examples.util.LatencyHistogram;
+import io.greenbus.japi.client.service.CommandService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares issuing setpoints one at a time, waiting for each result as in
+ * CommandsExample.executeSetpoint, with PipelinedCommandIssuer at several in-flight limits, with and
+ * without latest-wins.
+ *
+ * Runs against StandInServices with a randomized round-trip latency. The front end of every endpoint
+ * is a command executor that returns a small fraction of TIMEOUT results and checks that the setpoints
+ * of each command arrive in the order they were submitted. No broker is required.
+ */
+public class PipelinedCommandBenchmark {
+
+    private static final int COMMANDS = 200;
+    private static final long MIN_ROUND_TRIP_MICROS = 1000;
+    private static final long MAX_ROUND_TRIP_MICROS = 4000;
+    private static final double TIMEOUT_RATE = 0.01;
+
+    public static void main(String[] args) throws Exception {
+
+        final int setpoints = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+
+        System.out.print("\n=== Pipelined Command Benchmark (" + setpoints + " setpoints, " + COMMANDS + " commands) ===\n\n");
+
+        final StandInServices services = new StandInServices(new StandInSettings()
+                .setEquipmentCount(COMMANDS)
+                .setCommandsPerEquipment(1)
+                .setLatencyMicros(MIN_ROUND_TRIP_MICROS)
+                .setJitterMicros(MAX_ROUND_TRIP_MICROS - MIN_ROUND_TRIP_MICROS)
+                .setTransportThreads(4)
+                .setSeed(1234));
+        final CommandService.Client client = services.getCommandClient();
+
+        final Map<Model.ModelUUID, Double> lastValues = new HashMap<Model.ModelUUID, Double>();
+        final int[] outOfOrder = new int[1];
+        final StandInServices.CommandExecutor frontEnd = frontEnd(new Random(1234), lastValues, outOfOrder);
+        for (Model.Endpoint endpoint : services.getModel().getEndpoints()) {
+            services.setCommandExecutor(endpoint, frontEnd);
+        }
+
+        final List<Model.ModelUUID> commandUuids = new ArrayList<Model.ModelUUID>();
+        for (Model.Command command : services.getModel().getCommands()) {
+            commandUuids.add(command.getUuid());
+        }
+
+        // Hold a select lock on every command for the whole run
+        final Commands.CommandLock lock = client.selectCommands(CommandRequests.CommandSelect.newBuilder()
+                .addAllCommandUuids(commandUuids)
+                .setExpireDuration(TimeUnit.HOURS.toMillis(1))
+                .build()).get(5000, TimeUnit.MILLISECONDS);
+
+        try {
+            // One setpoint at a time, waiting for each result
+            final int sequentialCount = Math.min(setpoints, 1000);
+            final long start = System.nanoTime();
+            for (int i = 0; i < sequentialCount; i++) {
+                client.issueCommandRequest(setpoint(commandUuids.get(i % COMMANDS), i)).get(5000, TimeUnit.MILLISECONDS);
+            }
+            final double sequentialMillis = (System.nanoTime() - start) / 1000000.0;
+            System.out.println("Sequential: " + sequentialCount + " in " + sequentialMillis + " ms, " +
+                    (long) (sequentialCount / (sequentialMillis / 1000.0)) + " setpoints/s\n");
+
+            final Object[][] configurations = { {16, false}, {64, false}, {256, false}, {64, true} };
+            for (Object[] configuration : configurations) {
+                synchronized (lastValues) {
+                    lastValues.clear();
+                    outOfOrder[0] = 0;
+                }
+                final int maxInFlight = (Integer) configuration[0];
+                final boolean latestWins = (Boolean) configuration[1];
+                final PipelinedCommandIssuer issuer = new PipelinedCommandIssuer(client, maxInFlight, latestWins);
+
+                final List<ListenableFuture<Commands.CommandResult>> futures = new ArrayList<ListenableFuture<Commands.CommandResult>>(setpoints);
+                final long pipelinedStart = System.nanoTime();
+                for (int i = 0; i < setpoints; i++) {
+                    futures.add(issuer.submit(setpoint(commandUuids.get(i % COMMANDS), i)));
+                }
+                for (ListenableFuture<Commands.CommandResult> future : futures) {
+                    try {
+                        future.get(60000, TimeUnit.MILLISECONDS);
+                    } catch (ExecutionException ex) {
+                        // Superseded in latest-wins mode
+                    }
+                }
+                final double millis = (System.nanoTime() - pipelinedStart) / 1000000.0;
+
+                System.out.println("In flight " + maxInFlight + (latestWins ? ", latest wins" : "") + ": " + millis + " ms, " +
+                        (long) (setpoints / (millis / 1000.0)) + " setpoints/s, sent: " + issuer.getSentCount() +
+                        ", superseded: " + issuer.getSupersededCount() + ", out of order: " + outOfOrder[0]);
+
+                for (Map.Entry<Commands.CommandStatus, LatencyHistogram> entry : issuer.getHistograms().entrySet()) {
+                    final LatencyHistogram histogram = entry.getValue();
+                    System.out.println("    " + entry.getKey() + ": " + histogram.getCount() + ", mean: " + histogram.getMeanMillis() +
+                            " ms, p50: " + histogram.getPercentileMillis(50) + " ms, p99: " + histogram.getPercentileMillis(99) +
+                            " ms, max: " + histogram.getMaxMillis() + " ms");
+                }
+            }
+        } finally {
+            client.deleteCommandLocks(Collections.singletonList(lock.getId())).get(5000, TimeUnit.MILLISECONDS);
+            services.shutdown();
+        }
+    }
+
+    private static Commands.CommandRequest setpoint(Model.ModelUUID commandUuid, int i) {
+        return Commands.CommandRequest.newBuilder()
+                .setCommandUuid(commandUuid)
+                .setType(Commands.CommandRequest.ValType.DOUBLE)
+                .setDoubleVal(i)
+                .build();
+    }
+
+    /**
+     * A front end that answers every setpoint at once, with a small fraction of TIMEOUT results, recording
+     * setpoints that arrive for a command after a later one.
+     */
+    private static StandInServices.CommandExecutor frontEnd(final Random random, final Map<Model.ModelUUID, Double> lastValues,
+                                                            final int[] outOfOrder) {
+        return new StandInServices.CommandExecutor() {
+            @Override
+            public ListenableFuture<Commands.CommandResult> issue(String commandName, Commands.CommandRequest request) {
+                synchronized (lastValues) {
+                    final Double last = lastValues.get(request.getCommandUuid());
+                    if (last != null && last > request.getDoubleVal()) {
+                        outOfOrder[0]++;
+                    }
+                    lastValues.put(request.getCommandUuid(), request.getDoubleVal());
+                }
+
+                final boolean timeout;
+                synchronized (random) {
+                    timeout = random.nextDouble() < TIMEOUT_RATE;
+                }
+                return Futures.immediateFuture(Commands.CommandResult.newBuilder()
+                        .setStatus(timeout ? Commands.CommandStatus.TIMEOUT : Commands.CommandStatus.SUCCESS)
+                        .build());
+            }
+        };
+    }
+}
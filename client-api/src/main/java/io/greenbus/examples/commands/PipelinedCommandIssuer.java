@@ -0,0 +1,291 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.commands;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import io.greenbus.client.service.proto.Commands;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.examples.util.LatencyHistogram;
+import io.greenbus.japi.client.service.CommandService;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issues command requests with many in flight at once, while keeping them in order per command.
+ *
+ * Every command has its own queue and at most one request in flight, so a command never receives its
+ * requests out of order. Across commands, requests are sent as soon as they are queued, up to a
+ * global limit of requests in flight; commands waiting for a free slot are served in turn.
+ *
+ * In latest-wins mode, a new request for a command replaces any of its requests that are still
+ * queued and not yet sent. The futures of replaced requests fail with a CancellationException. This
+ * suits control loops where only the most recent setpoint matters.
+ *
+ * The time from submit to result is recorded in a latency histogram per CommandStatus, with requests
+ * that failed outright recorded separately.
+ */
+public class PipelinedCommandIssuer {
+
+    private final CommandService.Client client;
+    private final int maxInFlight;
+    private final boolean latestWins;
+
+    private final Map<Model.ModelUUID, Lane> lanes = new HashMap<Model.ModelUUID, Lane>();
+    private final ArrayDeque<Lane> ready = new ArrayDeque<Lane>();
+    private int inFlight = 0;
+    private boolean dispatching = false;
+
+    private final EnumMap<Commands.CommandStatus, LatencyHistogram> histograms = new EnumMap<Commands.CommandStatus, LatencyHistogram>(Commands.CommandStatus.class);
+    private final LatencyHistogram failures = new LatencyHistogram();
+    private long submittedCount = 0;
+    private long sentCount = 0;
+    private long supersededCount = 0;
+
+    /**
+     * @param client Command service interface
+     * @param maxInFlight Maximum number of requests in flight across all commands
+     * @param latestWins True to replace queued requests of a command with newer ones
+     */
+    public PipelinedCommandIssuer(CommandService.Client client, int maxInFlight, boolean latestWins) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Maximum requests in flight must be positive: " + maxInFlight);
+        }
+        this.client = client;
+        this.maxInFlight = maxInFlight;
+        this.latestWins = latestWins;
+    }
+
+    /**
+     * Queues a command request. It is sent once the previous request for the same command has
+     * completed and a slot is free. The caller must hold a lock on the command.
+     *
+     * @param request Command request
+     * @return Future completed with the command result
+     */
+    public ListenableFuture<Commands.CommandResult> submit(Commands.CommandRequest request) {
+        final Pending pending = new Pending(request);
+        List<Pending> superseded = null;
+
+        synchronized (this) {
+            submittedCount++;
+
+            Lane lane = lanes.get(request.getCommandUuid());
+            if (lane == null) {
+                lane = new Lane();
+                lanes.put(request.getCommandUuid(), lane);
+            }
+
+            if (latestWins && !lane.queue.isEmpty()) {
+                superseded = new ArrayList<Pending>(lane.queue);
+                lane.queue.clear();
+                supersededCount += superseded.size();
+            }
+
+            lane.queue.addLast(pending);
+            if (!lane.busy && !lane.ready) {
+                lane.ready = true;
+                ready.addLast(lane);
+            }
+        }
+
+        if (superseded != null) {
+            for (Pending old : superseded) {
+                old.future.setException(new CancellationException("Superseded by a later request for the same command"));
+            }
+        }
+
+        dispatch();
+        return pending.future;
+    }
+
+    /**
+     * @return Number of requests waiting to be sent
+     */
+    public synchronized int getQueuedCount() {
+        int queued = 0;
+        for (Lane lane : lanes.values()) {
+            queued += lane.queue.size();
+        }
+        return queued;
+    }
+
+    /**
+     * @return Number of requests in flight
+     */
+    public synchronized int getInFlightCount() {
+        return inFlight;
+    }
+
+    public synchronized long getSubmittedCount() {
+        return submittedCount;
+    }
+
+    public synchronized long getSentCount() {
+        return sentCount;
+    }
+
+    /**
+     * @return Number of requests replaced by later ones in latest-wins mode
+     */
+    public synchronized long getSupersededCount() {
+        return supersededCount;
+    }
+
+    /**
+     * @return Copies of the latency histograms of completed requests, by result status
+     */
+    public synchronized Map<Commands.CommandStatus, LatencyHistogram> getHistograms() {
+        final Map<Commands.CommandStatus, LatencyHistogram> copy = new EnumMap<Commands.CommandStatus, LatencyHistogram>(Commands.CommandStatus.class);
+        for (Map.Entry<Commands.CommandStatus, LatencyHistogram> entry : histograms.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().copy());
+        }
+        return copy;
+    }
+
+    /**
+     * @return Copy of the latency histogram of requests that failed without a result
+     */
+    public synchronized LatencyHistogram getFailureHistogram() {
+        return failures.copy();
+    }
+
+    /**
+     * Sends requests while slots are free. Only one thread dispatches at a time; a call made while another
+     * is dispatching, including one from a request that completed within send(), returns at once and leaves
+     * the work to the running loop. This keeps requests that complete immediately from recursing through
+     * send() and completed() once per request.
+     */
+    private void dispatch() {
+        synchronized (this) {
+            if (dispatching) {
+                return;
+            }
+            dispatching = true;
+        }
+
+        boolean finished = false;
+        try {
+            while (true) {
+                final Lane lane;
+                final Pending pending;
+                synchronized (this) {
+                    if (inFlight >= maxInFlight || ready.isEmpty()) {
+                        dispatching = false;
+                        finished = true;
+                        return;
+                    }
+                    lane = ready.pollFirst();
+                    lane.ready = false;
+                    pending = lane.queue.pollFirst();
+                    lane.busy = true;
+                    inFlight++;
+                    sentCount++;
+                }
+                send(lane, pending);
+            }
+        } finally {
+            if (!finished) {
+                synchronized (this) {
+                    dispatching = false;
+                }
+            }
+        }
+    }
+
+    private void send(final Lane lane, final Pending pending) {
+        final ListenableFuture<Commands.CommandResult> result;
+        try {
+            result = client.issueCommandRequest(pending.request);
+        } catch (RuntimeException ex) {
+            completed(lane, pending, null, ex);
+            return;
+        }
+
+        result.addListener(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    completed(lane, pending, result.get(), null);
+                } catch (ExecutionException ex) {
+                    completed(lane, pending, null, ex.getCause());
+                } catch (Exception ex) {
+                    completed(lane, pending, null, ex);
+                }
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    private void completed(Lane lane, Pending pending, Commands.CommandResult commandResult, Throwable error) {
+        final long elapsed = System.nanoTime() - pending.submittedNanos;
+
+        synchronized (this) {
+            if (commandResult != null) {
+                LatencyHistogram histogram = histograms.get(commandResult.getStatus());
+                if (histogram == null) {
+                    histogram = new LatencyHistogram();
+                    histograms.put(commandResult.getStatus(), histogram);
+                }
+                histogram.record(elapsed);
+            } else {
+                failures.record(elapsed);
+            }
+
+            inFlight--;
+            lane.busy = false;
+            if (!lane.queue.isEmpty()) {
+                lane.ready = true;
+                ready.addLast(lane);
+            }
+        }
+
+        if (commandResult != null) {
+            pending.future.set(commandResult);
+        } else {
+            pending.future.setException(error);
+        }
+
+        dispatch();
+    }
+
+    private static class Lane {
+        private final ArrayDeque<Pending> queue = new ArrayDeque<Pending>();
+        private boolean busy = false;
+        private boolean ready = false;
+    }
+
+    private static class Pending {
+        private final Commands.CommandRequest request;
+        private final long submittedNanos = System.nanoTime();
+        private final SettableFuture<Commands.CommandResult> future = SettableFuture.create();
+
+        Pending(Commands.CommandRequest request) {
+            this.request = request;
+        }
+    }
+}
@@ -0,0 +1,395 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.endpoints;
+
+import io.greenbus.client.service.proto.Envelope;
+import io.greenbus.client.service.proto.FrontEnd;
+import io.greenbus.client.service.proto.FrontEndRequests;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.client.service.proto.ModelRequests;
+import io.greenbus.japi.client.service.FrontEndService;
+import io.greenbus.japi.client.service.ModelService;
+import io.greenbus.msg.japi.Subscription;
+import io.greenbus.msg.japi.SubscriptionHandler;
+import io.greenbus.msg.japi.SubscriptionResult;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A live board of the front end connection status of every endpoint, with a count per status.
+ *
+ * The board subscribes to connection status changes, then loads the current statuses of all
+ * endpoints with getFrontEndConnectionStatuses requests of a bounded number of endpoints each. From
+ * then on it is maintained from notifications alone. A status is only replaced by one with the same
+ * or a later update time, so the load and the subscription can overlap without either undoing the
+ * other. A removal leaves a tombstone until every page requested before it has been applied, so a
+ * status loaded before the removal can't bring the endpoint back. If the load fails, the
+ * subscription is cancelled.
+ *
+ * Listeners receive the current statuses once when added, and afterwards a Change only when an
+ * endpoint's state actually changes, instead of polling for the full list.
+ */
+public class ConnectionStatusBoard implements SubscriptionHandler<FrontEnd.FrontEndConnectionStatusNotification> {
+
+    /**
+     * Receives the board's contents and changes to them. Called while the board is locked, in the
+     * order changes are applied, so implementations should return quickly.
+     */
+    public interface Listener {
+
+        /**
+         * Called once when the listener is added.
+         *
+         * @param statuses Current status of every endpoint
+         * @param counts Number of endpoints in each state
+         */
+        void onSnapshot(List<FrontEnd.FrontEndConnectionStatus> statuses, Map<FrontEnd.FrontEndConnectionStatus.Status, Integer> counts);
+
+        /**
+         * Called when an endpoint's state changes, appears or is removed.
+         *
+         * @param change The change
+         */
+        void onChange(Change change);
+    }
+
+    private final Map<Model.ModelUUID, FrontEnd.FrontEndConnectionStatus> statuses = new HashMap<Model.ModelUUID, FrontEnd.FrontEndConnectionStatus>();
+    private final EnumMap<FrontEnd.FrontEndConnectionStatus.Status, Integer> counts =
+            new EnumMap<FrontEnd.FrontEndConnectionStatus.Status, Integer>(FrontEnd.FrontEndConnectionStatus.Status.class);
+    private final List<Listener> listeners = new ArrayList<Listener>();
+
+    private Subscription<FrontEnd.FrontEndConnectionStatusNotification> subscription = null;
+
+    // Sequence of the notification that removed each endpoint, kept while pages requested before it are loading
+    private final Map<Model.ModelUUID, Long> tombstones = new HashMap<Model.ModelUUID, Long>();
+    private final List<Long> pageStarts = new ArrayList<Long>();
+    private long sequence = 0;
+
+    private long notificationCount = 0;
+    private long changeCount = 0;
+    private long totalDelayMillis = 0;
+    private long maxDelayMillis = 0;
+
+    public ConnectionStatusBoard() {
+        for (FrontEnd.FrontEndConnectionStatus.Status status : FrontEnd.FrontEndConnectionStatus.Status.values()) {
+            counts.put(status, 0);
+        }
+    }
+
+    /**
+     * Subscribes to connection status changes, then loads the current status of every endpoint.
+     *
+     * @param modelClient Model service interface, used to list the endpoints
+     * @param frontEndClient Front end service interface
+     * @param chunkSize Maximum number of endpoints per request
+     * @param timeout Time allowed for each request
+     * @param unit Unit of the timeout
+     * @throws Exception If the subscription or a request fails; the subscription is cancelled
+     */
+    public void start(ModelService.Client modelClient, FrontEndService.Client frontEndClient, int chunkSize, long timeout, TimeUnit unit) throws Exception {
+
+        final SubscriptionResult<List<FrontEnd.FrontEndConnectionStatus>, FrontEnd.FrontEndConnectionStatusNotification> result =
+                frontEndClient.subscribeToFrontEndConnectionStatuses(FrontEndRequests.FrontEndStatusSubscriptionQuery.newBuilder().build()).get(timeout, unit);
+
+        synchronized (this) {
+            subscription = result.getSubscription();
+        }
+        result.getSubscription().start(this);
+
+        try {
+            load(modelClient, frontEndClient, chunkSize, timeout, unit);
+        } catch (Exception ex) {
+            // A board that never finished loading would be missing endpoints with no sign of it
+            stop();
+            throw ex;
+        }
+    }
+
+    private void load(ModelService.Client modelClient, FrontEndService.Client frontEndClient, int chunkSize, long timeout, TimeUnit unit) throws Exception {
+        Model.ModelUUID lastUuid = null;
+        while (true) {
+            final ModelRequests.EntityPagingParams.Builder paging = ModelRequests.EntityPagingParams.newBuilder()
+                    .setPageByName(false)
+                    .setPageSize(chunkSize);
+            if (lastUuid != null) {
+                paging.setLastUuid(lastUuid);
+            }
+
+            final List<Model.Endpoint> endpoints = modelClient.endpointQuery(ModelRequests.EndpointQuery.newBuilder()
+                    .setPagingParams(paging)
+                    .build()).get(timeout, unit);
+
+            if (!endpoints.isEmpty()) {
+                final ModelRequests.EntityKeySet.Builder keySet = ModelRequests.EntityKeySet.newBuilder();
+                for (Model.Endpoint endpoint : endpoints) {
+                    keySet.addUuids(endpoint.getUuid());
+                }
+
+                final Long pageStart;
+                synchronized (this) {
+                    pageStart = sequence;
+                    pageStarts.add(pageStart);
+                }
+                try {
+                    final List<FrontEnd.FrontEndConnectionStatus> page = frontEndClient.getFrontEndConnectionStatuses(keySet.build()).get(timeout, unit);
+                    synchronized (this) {
+                        for (FrontEnd.FrontEndConnectionStatus status : page) {
+                            // Removed since the page was requested
+                            final Long removed = tombstones.get(status.getEndpointUuid());
+                            if (removed == null || removed <= pageStart) {
+                                update(status);
+                            }
+                        }
+                    }
+                } finally {
+                    synchronized (this) {
+                        pageStarts.remove(pageStart);
+                        purgeTombstones();
+                    }
+                }
+            }
+
+            if (endpoints.size() < chunkSize) {
+                break;
+            }
+            lastUuid = endpoints.get(endpoints.size() - 1).getUuid();
+        }
+    }
+
+    /**
+     * Cancels the status subscription. The board stops being updated.
+     */
+    public void stop() {
+        final Subscription<FrontEnd.FrontEndConnectionStatusNotification> current;
+        synchronized (this) {
+            current = subscription;
+            subscription = null;
+        }
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    /**
+     * Applies a connection status notification to the board.
+     *
+     * @param notification Connection status notification
+     */
+    @Override
+    public synchronized void handle(FrontEnd.FrontEndConnectionStatusNotification notification) {
+        final FrontEnd.FrontEndConnectionStatus status = notification.getValue();
+
+        notificationCount++;
+        sequence++;
+        final long delay = Math.max(0, System.currentTimeMillis() - status.getUpdateTime());
+        totalDelayMillis += delay;
+        maxDelayMillis = Math.max(maxDelayMillis, delay);
+
+        if (notification.getEventType() == Envelope.SubscriptionEventType.REMOVED) {
+            final FrontEnd.FrontEndConnectionStatus previous = statuses.remove(status.getEndpointUuid());
+            if (previous != null) {
+                decrement(previous.getState());
+                publish(new Change(previous, null));
+            }
+            if (!pageStarts.isEmpty()) {
+                // A page being loaded may still hold the endpoint's status
+                tombstones.put(status.getEndpointUuid(), sequence);
+            }
+        } else {
+            tombstones.remove(status.getEndpointUuid());
+            update(status);
+        }
+    }
+
+    /**
+     * Adds a listener, which first receives the current statuses.
+     *
+     * @param listener Listener
+     */
+    public synchronized void addListener(Listener listener) {
+        listener.onSnapshot(new ArrayList<FrontEnd.FrontEndConnectionStatus>(statuses.values()), getCounts());
+        listeners.add(listener);
+    }
+
+    public synchronized void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @param endpointUuid Endpoint UUID
+     * @return Current connection status of the endpoint, or null if it has none
+     */
+    public synchronized FrontEnd.FrontEndConnectionStatus getStatus(Model.ModelUUID endpointUuid) {
+        return statuses.get(endpointUuid);
+    }
+
+    /**
+     * @return Current connection status of every endpoint
+     */
+    public synchronized List<FrontEnd.FrontEndConnectionStatus> getStatuses() {
+        return new ArrayList<FrontEnd.FrontEndConnectionStatus>(statuses.values());
+    }
+
+    /**
+     * @param state Connection state
+     * @return Number of endpoints in the state
+     */
+    public synchronized int getCount(FrontEnd.FrontEndConnectionStatus.Status state) {
+        return counts.get(state);
+    }
+
+    /**
+     * @return Number of endpoints in each state
+     */
+    public synchronized Map<FrontEnd.FrontEndConnectionStatus.Status, Integer> getCounts() {
+        return new EnumMap<FrontEnd.FrontEndConnectionStatus.Status, Integer>(counts);
+    }
+
+    public synchronized int size() {
+        return statuses.size();
+    }
+
+    /**
+     * @return Number of notifications received
+     */
+    public synchronized long getNotificationCount() {
+        return notificationCount;
+    }
+
+    /**
+     * @return Number of changes sent to listeners
+     */
+    public synchronized long getChangeCount() {
+        return changeCount;
+    }
+
+    /**
+     * @return Average time from a status update to its notification being applied, in milliseconds
+     */
+    public synchronized double getAverageDelayMillis() {
+        return notificationCount == 0 ? 0.0 : (double) totalDelayMillis / notificationCount;
+    }
+
+    /**
+     * @return Longest time from a status update to its notification being applied, in milliseconds
+     */
+    public synchronized long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    private void update(FrontEnd.FrontEndConnectionStatus status) {
+        final FrontEnd.FrontEndConnectionStatus previous = statuses.get(status.getEndpointUuid());
+        if (previous != null && previous.getUpdateTime() > status.getUpdateTime()) {
+            return;
+        }
+
+        statuses.put(status.getEndpointUuid(), status);
+
+        if (previous == null) {
+            increment(status.getState());
+            publish(new Change(null, status));
+        } else if (previous.getState() != status.getState()) {
+            decrement(previous.getState());
+            increment(status.getState());
+            publish(new Change(previous, status));
+        }
+    }
+
+    /**
+     * Drops the tombstones that no page still loading was requested before.
+     */
+    private void purgeTombstones() {
+        if (tombstones.isEmpty()) {
+            return;
+        }
+        long oldestStart = Long.MAX_VALUE;
+        for (Long start : pageStarts) {
+            oldestStart = Math.min(oldestStart, start);
+        }
+        final Iterator<Long> iterator = tombstones.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() <= oldestStart) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void increment(FrontEnd.FrontEndConnectionStatus.Status state) {
+        counts.put(state, counts.get(state) + 1);
+    }
+
+    private void decrement(FrontEnd.FrontEndConnectionStatus.Status state) {
+        counts.put(state, counts.get(state) - 1);
+    }
+
+    private void publish(Change change) {
+        changeCount++;
+        for (Listener listener : listeners) {
+            listener.onChange(change);
+        }
+    }
+
+    /**
+     * A change of an endpoint's connection state.
+     */
+    public static class Change {
+        private final FrontEnd.FrontEndConnectionStatus previous;
+        private final FrontEnd.FrontEndConnectionStatus current;
+
+        Change(FrontEnd.FrontEndConnectionStatus previous, FrontEnd.FrontEndConnectionStatus current) {
+            this.previous = previous;
+            this.current = current;
+        }
+
+        public Model.ModelUUID getEndpointUuid() {
+            return current != null ? current.getEndpointUuid() : previous.getEndpointUuid();
+        }
+
+        public String getEndpointName() {
+            return current != null ? current.getEndpointName() : previous.getEndpointName();
+        }
+
+        /**
+         * @return Previous state, or null if the endpoint had no status
+         */
+        public FrontEnd.FrontEndConnectionStatus.Status getPreviousState() {
+            return previous == null ? null : previous.getState();
+        }
+
+        /**
+         * @return New state, or null if the endpoint's status was removed
+         */
+        public FrontEnd.FrontEndConnectionStatus.Status getState() {
+            return current == null ? null : current.getState();
+        }
+
+        /**
+         * @return Update time of the new status, or of the removed status
+         */
+        public long getUpdateTime() {
+            return current != null ? current.getUpdateTime() : previous.getUpdateTime();
+        }
+    }
+}
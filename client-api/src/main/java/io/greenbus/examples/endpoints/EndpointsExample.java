@@ -27,6 +27,7 @@ import io.greenbus.japi.client.service.ModelService;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -166,4 +167,68 @@ public class EndpointsExample {
 
     }
 
+    /**
+     * Connection Status Board
+     *
+     * Loads the connection status of every endpoint in chunks of 100 and keeps the status counts
+     * current from a subscription. Disabling and re-enabling an endpoint produces change events
+     * rather than a new list to poll.
+     *
+     * @param session Logged-in Session object
+     * @throws Exception
+     */
+    public static void connectionStatusBoard(Session session) throws Exception {
+
+        System.out.print("\n=== Connection Status Board ===\n\n");
+
+        // Get service interface for endpoints
+        final ModelService.Client client = ModelService.client(session);
+
+        // Get service interface for frontends
+        final FrontEndService.Client frontEndClient = FrontEndService.client(session);
+
+        final ConnectionStatusBoard board = new ConnectionStatusBoard();
+
+        try {
+            board.start(client, frontEndClient, 100, 5000, TimeUnit.MILLISECONDS);
+
+            board.addListener(new ConnectionStatusBoard.Listener() {
+                @Override
+                public void onSnapshot(List<FrontEnd.FrontEndConnectionStatus> statuses, Map<FrontEnd.FrontEndConnectionStatus.Status, Integer> counts) {
+                    System.out.println("Endpoints: " + statuses.size() + ", Counts: " + counts);
+                }
+
+                @Override
+                public void onChange(ConnectionStatusBoard.Change change) {
+                    System.out.println("Changed: " + change.getEndpointName() + ", " + change.getPreviousState() + " -> " + change.getState());
+                }
+            });
+
+            // Disable and re-enable an endpoint to cause status changes
+            final Model.Endpoint endpoint = client.endpointQuery(ModelRequests.EndpointQuery.newBuilder().build())
+                    .get(5000, TimeUnit.MILLISECONDS)
+                    .get(0);
+
+            client.putEndpointDisabled(Arrays.asList(ModelRequests.EndpointDisabledUpdate.newBuilder()
+                    .setEndpointUuid(endpoint.getUuid())
+                    .setDisabled(true)
+                    .build())).get(5000, TimeUnit.MILLISECONDS);
+
+            Thread.sleep(5000);
+
+            client.putEndpointDisabled(Arrays.asList(ModelRequests.EndpointDisabledUpdate.newBuilder()
+                    .setEndpointUuid(endpoint.getUuid())
+                    .setDisabled(false)
+                    .build())).get(5000, TimeUnit.MILLISECONDS);
+
+            Thread.sleep(5000);
+
+            System.out.println("Counts: " + board.getCounts() + ", Changes: " + board.getChangeCount() +
+                    ", Average delay: " + board.getAverageDelayMillis() + " ms");
+
+        } finally {
+            board.stop();
+        }
+    }
+
 }
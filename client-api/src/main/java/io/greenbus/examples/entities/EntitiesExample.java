@@ -169,4 +169,101 @@ public class EntitiesExample {
 
     }
 
+    /**
+     * Relationship Graph
+     *
+     * Loads every "owns" edge into a RelationshipGraph in one paged pass, then finds the whole
+     * hierarchy below each root and the ancestors of an Entity without further requests.
+     *
+     * @param session Logged-in Session object
+     * @throws Exception
+     */
+    public static void relationshipGraph(Session session) throws Exception {
+
+        System.out.print("\n=== Relationship Graph ===\n\n");
+
+        // Get service interface for entities
+        final ModelService.Client client = ModelService.client(session);
+
+        final RelationshipGraph graph = new RelationshipGraph("owns", new EntityIdMap());
+
+        try {
+            // Subscribe to edge changes and load all "owns" edges
+            graph.start(client, 1000, 5000, TimeUnit.MILLISECONDS);
+
+            System.out.println("Edges: " + graph.getEdgeCount());
+
+            final List<ModelUUID> roots = graph.getRoots();
+            System.out.println("Roots: " + roots.size());
+
+            final ModelRequests.EntityKeySet rootKeys = ModelRequests.EntityKeySet.newBuilder()
+                    .addAllUuids(roots)
+                    .build();
+
+            // Display the size of the hierarchy below each root
+            for (Entity root : client.get(rootKeys).get(5000, TimeUnit.MILLISECONDS)) {
+                System.out.println("Root: " + root.getName() + ", Children: " + graph.getChildren(root.getUuid()).size() +
+                        ", Descendants: " + graph.getDescendants(root.getUuid()).size());
+            }
+
+            // Walk up from the deepest descendant of the first root
+            if (!roots.isEmpty()) {
+                final List<ModelUUID> descendants = graph.getDescendants(roots.get(0));
+                if (!descendants.isEmpty()) {
+                    final ModelUUID deepest = descendants.get(descendants.size() - 1);
+                    System.out.println("Ancestors of deepest descendant: " + graph.getAncestors(deepest).size());
+                }
+            }
+
+        } finally {
+            graph.stop();
+        }
+    }
+
+    /**
+     * Query By Type Index
+     *
+     * Loads every Entity into an EntityTypeIndex and the "owns" hierarchy into a RelationshipGraph
+     * sharing the same ids, then answers type queries and combines them with the hierarchy in
+     * memory.
+     *
+     * @param session Logged-in Session object
+     * @throws Exception
+     */
+    public static void queryByTypeIndex(Session session) throws Exception {
+
+        System.out.print("\n=== Query By Type Index ===\n\n");
+
+        // Get service interface for entities
+        final ModelService.Client client = ModelService.client(session);
+
+        // Share entity ids so that type selections and hierarchy selections can be combined
+        final EntityIdMap ids = new EntityIdMap();
+        final EntityTypeIndex index = new EntityTypeIndex(ids);
+        final RelationshipGraph graph = new RelationshipGraph("owns", ids);
+
+        try {
+            index.start(client, 1000, 5000, TimeUnit.MILLISECONDS);
+            graph.start(client, 1000, 5000, TimeUnit.MILLISECONDS);
+
+            System.out.println("Entities: " + index.size() + ", Types: " + index.getTypes());
+
+            System.out.println("CapBank or Breaker: " + index.withAnyType("CapBank", "Breaker").count());
+            System.out.println("Equipment that is not a Breaker: " + index.withType("Equipment").andNot(index.withType("Breaker")).count());
+
+            // Points anywhere below each root that are not analogs
+            for (ModelUUID root : graph.getRoots()) {
+                final EntityTypeIndex.Selection points = index.descendantsOf(graph, root, 0)
+                        .and(index.withType("Point"))
+                        .andNot(index.withType("Analog"));
+
+                System.out.println("Root: " + root.getValue() + ", Non-analog points below: " + points.count());
+            }
+
+        } finally {
+            graph.stop();
+            index.stop();
+        }
+    }
+
 }
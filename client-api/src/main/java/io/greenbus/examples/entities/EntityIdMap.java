@@ -0,0 +1,83 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.entities;
+
+import io.greenbus.client.service.proto.Model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Assigns dense int ids, starting at zero, to entity UUIDs.
+ *
+ * Client-side indexes store entities as ints in arrays and bitmaps rather than as UUIDs, and use
+ * this map to translate at their edges. Ids are never reused, so one map can be shared by several
+ * indexes and their results combined.
+ */
+public class EntityIdMap {
+
+    private final Map<Model.ModelUUID, Integer> ids = new HashMap<Model.ModelUUID, Integer>();
+    private Model.ModelUUID[] uuids = new Model.ModelUUID[1024];
+    private int size = 0;
+
+    /**
+     * @param uuid Entity UUID
+     * @return Id of the entity, assigning the next id if it has none
+     */
+    public synchronized int getOrAssign(Model.ModelUUID uuid) {
+        final Integer existing = ids.get(uuid);
+        if (existing != null) {
+            return existing;
+        }
+        if (size == uuids.length) {
+            uuids = Arrays.copyOf(uuids, size * 2);
+        }
+        uuids[size] = uuid;
+        ids.put(uuid, size);
+        return size++;
+    }
+
+    /**
+     * @param uuid Entity UUID
+     * @return Id of the entity, or -1 if it has none
+     */
+    public synchronized int find(Model.ModelUUID uuid) {
+        final Integer existing = ids.get(uuid);
+        return existing == null ? -1 : existing;
+    }
+
+    /**
+     * @param id Entity id
+     * @return UUID of the entity
+     */
+    public synchronized Model.ModelUUID getUuid(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("No entity with id " + id);
+        }
+        return uuids[id];
+    }
+
+    /**
+     * @return Number of ids assigned; every id is less than this
+     */
+    public synchronized int size() {
+        return size;
+    }
+}
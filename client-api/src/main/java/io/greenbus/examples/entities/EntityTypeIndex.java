@@ -0,0 +1,444 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.entities;
+
+import io.greenbus.client.service.proto.Envelope;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.client.service.proto.ModelRequests;
+import io.greenbus.japi.client.service.ModelService;
+import io.greenbus.msg.japi.Subscription;
+import io.greenbus.msg.japi.SubscriptionHandler;
+import io.greenbus.msg.japi.SubscriptionResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A client-side inverted index from entity type to the entities of that type, for answering
+ * questions such as "every CapBank under this substation that is not a Breaker" without a query per
+ * type.
+ *
+ * Entities are identified by the dense ids of an EntityIdMap, and each type maps to a bitmap of those
+ * ids. Selections are combined with and, or and not as word-at-a-time bitmap operations. When the
+ * id map is shared with a RelationshipGraph, the descendants of an entity can be selected and
+ * combined in the same way.
+ *
+ * The index is loaded with a paged entityQuery and kept current by an entity subscription.
+ */
+public class EntityTypeIndex implements SubscriptionHandler<Model.EntityNotification> {
+
+    private final EntityIdMap ids;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, BitSet> byType = new HashMap<String, BitSet>();
+    private final BitSet present = new BitSet();
+    private String[][] typesById = new String[1024][];
+
+    private boolean loading = false;
+    private List<Model.EntityNotification> buffered = new ArrayList<Model.EntityNotification>();
+    private Subscription<Model.EntityNotification> subscription = null;
+
+    /**
+     * @param ids Map of entity UUIDs to dense ids, which may be shared with a RelationshipGraph
+     */
+    public EntityTypeIndex(EntityIdMap ids) {
+        this.ids = ids;
+    }
+
+    /**
+     * Subscribes to entity changes and loads every entity with a paged query. Notifications that
+     * arrive while loading are applied once the load is complete.
+     *
+     * @param client Model service interface
+     * @param pageSize Number of entities per page of the query
+     * @param timeout Time allowed for each request
+     * @param unit Unit of the timeout
+     * @throws Exception If the subscription or the query fails; the subscription is cancelled and the index left empty
+     */
+    public void start(ModelService.Client client, int pageSize, long timeout, TimeUnit unit) throws Exception {
+
+        lock.writeLock().lock();
+        try {
+            loading = true;
+            buffered = new ArrayList<Model.EntityNotification>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        try {
+            load(client, pageSize, timeout, unit);
+        } catch (Exception ex) {
+            // Don't leave an open subscription buffering notifications that will never be applied
+            stop();
+            lock.writeLock().lock();
+            try {
+                byType.clear();
+                present.clear();
+                Arrays.fill(typesById, null);
+                buffered = new ArrayList<Model.EntityNotification>();
+                loading = false;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw ex;
+        }
+    }
+
+    private void load(ModelService.Client client, int pageSize, long timeout, TimeUnit unit) throws Exception {
+
+        final SubscriptionResult<List<Model.Entity>, Model.EntityNotification> result =
+                client.subscribeToEntities(ModelRequests.EntitySubscriptionQuery.newBuilder().build()).get(timeout, unit);
+
+        subscription = result.getSubscription();
+        subscription.start(this);
+
+        Model.ModelUUID lastUuid = null;
+        while (true) {
+            final ModelRequests.EntityPagingParams.Builder paging = ModelRequests.EntityPagingParams.newBuilder()
+                    .setPageByName(false)
+                    .setPageSize(pageSize);
+            if (lastUuid != null) {
+                paging.setLastUuid(lastUuid);
+            }
+
+            final List<Model.Entity> page = client.entityQuery(ModelRequests.EntityQuery.newBuilder()
+                    .setPagingParams(paging)
+                    .build()).get(timeout, unit);
+
+            lock.writeLock().lock();
+            try {
+                for (Model.Entity entity : page) {
+                    upsert(entity);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            if (page.size() < pageSize) {
+                break;
+            }
+            lastUuid = page.get(page.size() - 1).getUuid();
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (Model.EntityNotification notification : buffered) {
+                apply(notification);
+            }
+            buffered = new ArrayList<Model.EntityNotification>();
+            loading = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Cancels the entity subscription. The index stops being updated.
+     */
+    public void stop() {
+        if (subscription != null) {
+            subscription.cancel();
+            subscription = null;
+        }
+    }
+
+    /**
+     * Applies an entity notification to the index.
+     *
+     * @param notification Entity notification
+     */
+    @Override
+    public void handle(Model.EntityNotification notification) {
+        lock.writeLock().lock();
+        try {
+            if (loading) {
+                buffered.add(notification);
+            } else {
+                apply(notification);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return Map of entity UUIDs to the ids used by the index
+     */
+    public EntityIdMap getIdMap() {
+        return ids;
+    }
+
+    /**
+     * @return Number of entities in the index
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return present.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Every type held by at least one entity
+     */
+    public List<String> getTypes() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<String>(byType.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Selection of every entity in the index
+     */
+    public Selection all() {
+        lock.readLock().lock();
+        try {
+            return new Selection((BitSet) present.clone());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param type Entity type
+     * @return Selection of the entities with the type
+     */
+    public Selection withType(String type) {
+        lock.readLock().lock();
+        try {
+            final BitSet bits = byType.get(type);
+            return new Selection(bits == null ? new BitSet() : (BitSet) bits.clone());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param types Entity types
+     * @return Selection of the entities with at least one of the types
+     */
+    public Selection withAnyType(String... types) {
+        final BitSet bits = new BitSet();
+        lock.readLock().lock();
+        try {
+            for (String type : types) {
+                final BitSet typeBits = byType.get(type);
+                if (typeBits != null) {
+                    bits.or(typeBits);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new Selection(bits);
+    }
+
+    /**
+     * @param types Entity types
+     * @return Selection of the entities with every one of the types
+     */
+    public Selection withAllTypes(String... types) {
+        lock.readLock().lock();
+        try {
+            final BitSet bits = (BitSet) present.clone();
+            for (String type : types) {
+                final BitSet typeBits = byType.get(type);
+                if (typeBits == null) {
+                    return new Selection(new BitSet());
+                }
+                bits.and(typeBits);
+            }
+            return new Selection(bits);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param graph Relationship graph sharing this index's id map
+     * @param uuid Entity UUID
+     * @param depthLimit Maximum number of edges from the entity, or 0 for no limit
+     * @return Selection of the descendants of the entity in the graph
+     */
+    public Selection descendantsOf(RelationshipGraph graph, Model.ModelUUID uuid, int depthLimit) {
+        if (graph.getIdMap() != ids) {
+            throw new IllegalArgumentException("Relationship graph must share the index's id map");
+        }
+        final int id = ids.find(uuid);
+        return new Selection(id < 0 ? new BitSet() : graph.getDescendantIds(id, depthLimit));
+    }
+
+    /**
+     * @param graph Relationship graph sharing this index's id map
+     * @param uuid Entity UUID
+     * @param depthLimit Maximum number of edges from the entity, or 0 for no limit
+     * @return Selection of the ancestors of the entity in the graph
+     */
+    public Selection ancestorsOf(RelationshipGraph graph, Model.ModelUUID uuid, int depthLimit) {
+        if (graph.getIdMap() != ids) {
+            throw new IllegalArgumentException("Relationship graph must share the index's id map");
+        }
+        final int id = ids.find(uuid);
+        return new Selection(id < 0 ? new BitSet() : graph.getAncestorIds(id, depthLimit));
+    }
+
+    private void apply(Model.EntityNotification notification) {
+        if (notification.getEventType() == Envelope.SubscriptionEventType.REMOVED) {
+            remove(notification.getValue().getUuid());
+        } else {
+            upsert(notification.getValue());
+        }
+    }
+
+    private void upsert(Model.Entity entity) {
+        final int id = ids.getOrAssign(entity.getUuid());
+        clearTypes(id);
+
+        final String[] types = entity.getTypesList().toArray(new String[entity.getTypesCount()]);
+        for (String type : types) {
+            BitSet bits = byType.get(type);
+            if (bits == null) {
+                bits = new BitSet();
+                byType.put(type, bits);
+            }
+            bits.set(id);
+        }
+
+        if (id >= typesById.length) {
+            typesById = Arrays.copyOf(typesById, Math.max(typesById.length * 2, id + 1));
+        }
+        typesById[id] = types;
+        present.set(id);
+    }
+
+    private void remove(Model.ModelUUID uuid) {
+        final int id = ids.find(uuid);
+        if (id >= 0) {
+            clearTypes(id);
+            present.clear(id);
+        }
+    }
+
+    private void clearTypes(int id) {
+        if (id >= typesById.length || typesById[id] == null) {
+            return;
+        }
+        for (String type : typesById[id]) {
+            final BitSet bits = byType.get(type);
+            bits.clear(id);
+            if (bits.isEmpty()) {
+                byType.remove(type);
+            }
+        }
+        typesById[id] = null;
+    }
+
+    /**
+     * A set of entities, combined with other selections to form queries. Selections are snapshots:
+     * they do not change when the index is updated, and every operation returns a new selection.
+     */
+    public class Selection {
+        private final BitSet bits;
+
+        private Selection(BitSet bits) {
+            this.bits = bits;
+        }
+
+        /**
+         * @return Entities in both this selection and the other
+         */
+        public Selection and(Selection other) {
+            final BitSet result = (BitSet) bits.clone();
+            result.and(other.bits);
+            return new Selection(result);
+        }
+
+        /**
+         * @return Entities in either this selection or the other
+         */
+        public Selection or(Selection other) {
+            final BitSet result = (BitSet) bits.clone();
+            result.or(other.bits);
+            return new Selection(result);
+        }
+
+        /**
+         * @return Entities in this selection and not in the other
+         */
+        public Selection andNot(Selection other) {
+            final BitSet result = (BitSet) bits.clone();
+            result.andNot(other.bits);
+            return new Selection(result);
+        }
+
+        /**
+         * @return Entities in the index that are not in this selection
+         */
+        public Selection not() {
+            return all().andNot(this);
+        }
+
+        public int count() {
+            return bits.cardinality();
+        }
+
+        public boolean isEmpty() {
+            return bits.isEmpty();
+        }
+
+        /**
+         * @param uuid Entity UUID
+         * @return True if the entity is in the selection
+         */
+        public boolean contains(Model.ModelUUID uuid) {
+            final int id = ids.find(uuid);
+            return id >= 0 && bits.get(id);
+        }
+
+        /**
+         * @return Copy of the ids of the selected entities
+         */
+        public BitSet getIds() {
+            return (BitSet) bits.clone();
+        }
+
+        /**
+         * @return UUIDs of the selected entities, in id order
+         */
+        public List<Model.ModelUUID> getUuids() {
+            final List<Model.ModelUUID> uuids = new ArrayList<Model.ModelUUID>(bits.cardinality());
+            for (int id = bits.nextSetBit(0); id >= 0; id = bits.nextSetBit(id + 1)) {
+                uuids.add(ids.getUuid(id));
+            }
+            return uuids;
+        }
+    }
+}
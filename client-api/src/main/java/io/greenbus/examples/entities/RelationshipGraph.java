@@ -0,0 +1,627 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.entities;
+
+import io.greenbus.client.service.proto.Envelope;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.client.service.proto.ModelRequests;
+import io.greenbus.japi.client.service.ModelService;
+import io.greenbus.msg.japi.Subscription;
+import io.greenbus.msg.japi.SubscriptionHandler;
+import io.greenbus.msg.japi.SubscriptionResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A client-side copy of the edges of one relationship type (such as "owns"), for traversing the
+ * hierarchy in memory.
+ *
+ * The direct edges are loaded in one paged edgeQuery and stored as compressed adjacency arrays over
+ * the dense ids of an EntityIdMap: for each entity, the range of an int array holding its children,
+ * and likewise its parents. Descendant and ancestor queries at any depth are breadth-first
+ * traversals of these arrays and need no requests.
+ *
+ * The graph is kept current by an edge subscription. Added and removed edges go to a small overlay
+ * on top of the arrays, which are rebuilt once the overlay grows past an eighth of the edge count.
+ */
+public class RelationshipGraph implements SubscriptionHandler<Model.EntityEdgeNotification> {
+
+    private static final int MIN_OVERLAY_LIMIT = 1024;
+
+    private final String relationship;
+    private final EntityIdMap ids;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Adjacency arrays; entity ids at or above baseNodes have no entries
+    private int baseNodes = 0;
+    private int baseEdges = 0;
+    private int[] childOffsets = new int[1];
+    private int[] childTargets = new int[0];
+    private int[] parentOffsets = new int[1];
+    private int[] parentTargets = new int[0];
+
+    // Changes since the arrays were built
+    private final Map<Integer, IntList> addedChildren = new HashMap<Integer, IntList>();
+    private final Map<Integer, IntList> addedParents = new HashMap<Integer, IntList>();
+    private final Set<Long> removed = new HashSet<Long>();
+    private int addedCount = 0;
+    private int edgeCount = 0;
+
+    private boolean loading = false;
+    private List<Model.EntityEdgeNotification> buffered = new ArrayList<Model.EntityEdgeNotification>();
+    private Subscription<Model.EntityEdgeNotification> subscription = null;
+
+    /**
+     * @param relationship Relationship type of the edges, such as "owns"
+     * @param ids Map of entity UUIDs to dense ids, which may be shared with other indexes
+     */
+    public RelationshipGraph(String relationship, EntityIdMap ids) {
+        this.relationship = relationship;
+        this.ids = ids;
+    }
+
+    /**
+     * Subscribes to changes of the relationship's edges and loads the current edges with a paged
+     * query. Notifications that arrive while loading are applied once the load is complete.
+     *
+     * @param client Model service interface
+     * @param pageSize Number of edges per page of the query
+     * @param timeout Time allowed for each request
+     * @param unit Unit of the timeout
+     * @throws Exception If the subscription or the query fails; the subscription is cancelled and the graph left unchanged
+     */
+    public void start(ModelService.Client client, int pageSize, long timeout, TimeUnit unit) throws Exception {
+
+        lock.writeLock().lock();
+        try {
+            loading = true;
+            buffered = new ArrayList<Model.EntityEdgeNotification>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        try {
+            load(client, pageSize, timeout, unit);
+        } catch (Exception ex) {
+            // Don't leave an open subscription buffering notifications that will never be applied
+            stop();
+            lock.writeLock().lock();
+            try {
+                buffered = new ArrayList<Model.EntityEdgeNotification>();
+                loading = false;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw ex;
+        }
+    }
+
+    private void load(ModelService.Client client, int pageSize, long timeout, TimeUnit unit) throws Exception {
+
+        final ModelRequests.EntityEdgeSubscriptionQuery subscriptionQuery = ModelRequests.EntityEdgeSubscriptionQuery.newBuilder()
+                .addFilters(ModelRequests.EntityEdgeFilter.newBuilder()
+                        .setRelationship(relationship)
+                        .setDistance(1))
+                .build();
+
+        final SubscriptionResult<List<Model.EntityEdge>, Model.EntityEdgeNotification> result =
+                client.subscribeToEdges(subscriptionQuery).get(timeout, unit);
+
+        subscription = result.getSubscription();
+        subscription.start(this);
+
+        int[] parents = new int[Math.max(16, pageSize)];
+        int[] children = new int[parents.length];
+        int count = 0;
+
+        Model.ModelID lastId = null;
+        while (true) {
+            final ModelRequests.EntityEdgeQuery.Builder query = ModelRequests.EntityEdgeQuery.newBuilder()
+                    .addRelationships(relationship)
+                    .setDepthLimit(1)
+                    .setPageSize(pageSize);
+            if (lastId != null) {
+                query.setLastId(lastId);
+            }
+
+            final List<Model.EntityEdge> page = client.edgeQuery(query.build()).get(timeout, unit);
+
+            if (count + page.size() > parents.length) {
+                parents = Arrays.copyOf(parents, Math.max(parents.length * 2, count + page.size()));
+                children = Arrays.copyOf(children, parents.length);
+            }
+            for (Model.EntityEdge edge : page) {
+                parents[count] = ids.getOrAssign(edge.getParent());
+                children[count] = ids.getOrAssign(edge.getChild());
+                count++;
+            }
+
+            if (page.size() < pageSize) {
+                break;
+            }
+            lastId = page.get(page.size() - 1).getId();
+        }
+
+        lock.writeLock().lock();
+        try {
+            build(parents, children, count);
+            for (Model.EntityEdgeNotification notification : buffered) {
+                apply(notification);
+            }
+            buffered = new ArrayList<Model.EntityEdgeNotification>();
+            loading = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Cancels the edge subscription. The graph stops being updated.
+     */
+    public void stop() {
+        if (subscription != null) {
+            subscription.cancel();
+            subscription = null;
+        }
+    }
+
+    /**
+     * Applies an edge notification to the graph.
+     *
+     * @param notification Edge notification
+     */
+    @Override
+    public void handle(Model.EntityEdgeNotification notification) {
+        lock.writeLock().lock();
+        try {
+            if (loading) {
+                buffered.add(notification);
+            } else {
+                apply(notification);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return Relationship type of the edges
+     */
+    public String getRelationship() {
+        return relationship;
+    }
+
+    /**
+     * @return Map of entity UUIDs to the ids used by the graph
+     */
+    public EntityIdMap getIdMap() {
+        return ids;
+    }
+
+    /**
+     * @return Number of direct edges
+     */
+    public int getEdgeCount() {
+        lock.readLock().lock();
+        try {
+            return edgeCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of changes held in the overlay rather than in the adjacency arrays
+     */
+    public int getOverlaySize() {
+        lock.readLock().lock();
+        try {
+            return addedCount + removed.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param uuid Entity UUID
+     * @return Direct children of the entity
+     */
+    public List<Model.ModelUUID> getChildren(Model.ModelUUID uuid) {
+        return getDescendants(uuid, 1);
+    }
+
+    /**
+     * @param uuid Entity UUID
+     * @return Direct parents of the entity
+     */
+    public List<Model.ModelUUID> getParents(Model.ModelUUID uuid) {
+        return getAncestors(uuid, 1);
+    }
+
+    /**
+     * @param uuid Entity UUID
+     * @return All descendants of the entity, nearest first
+     */
+    public List<Model.ModelUUID> getDescendants(Model.ModelUUID uuid) {
+        return getDescendants(uuid, 0);
+    }
+
+    /**
+     * @param uuid Entity UUID
+     * @param depthLimit Maximum number of edges from the entity, or 0 for no limit
+     * @return Descendants of the entity within the depth limit, nearest first
+     */
+    public List<Model.ModelUUID> getDescendants(Model.ModelUUID uuid, int depthLimit) {
+        return toUuids(traverse(ids.find(uuid), depthLimit, true));
+    }
+
+    /**
+     * @param uuid Entity UUID
+     * @return All ancestors of the entity, nearest first
+     */
+    public List<Model.ModelUUID> getAncestors(Model.ModelUUID uuid) {
+        return getAncestors(uuid, 0);
+    }
+
+    /**
+     * @param uuid Entity UUID
+     * @param depthLimit Maximum number of edges from the entity, or 0 for no limit
+     * @return Ancestors of the entity within the depth limit, nearest first
+     */
+    public List<Model.ModelUUID> getAncestors(Model.ModelUUID uuid, int depthLimit) {
+        return toUuids(traverse(ids.find(uuid), depthLimit, false));
+    }
+
+    /**
+     * @param id Entity id in the graph's id map
+     * @param depthLimit Maximum number of edges from the entity, or 0 for no limit
+     * @return Ids of the descendants of the entity within the depth limit
+     */
+    public BitSet getDescendantIds(int id, int depthLimit) {
+        return toBitSet(traverse(id, depthLimit, true));
+    }
+
+    /**
+     * @param id Entity id in the graph's id map
+     * @param depthLimit Maximum number of edges from the entity, or 0 for no limit
+     * @return Ids of the ancestors of the entity within the depth limit
+     */
+    public BitSet getAncestorIds(int id, int depthLimit) {
+        return toBitSet(traverse(id, depthLimit, false));
+    }
+
+    /**
+     * @return Entities that have children but no parents, the tops of the hierarchy
+     */
+    public List<Model.ModelUUID> getRoots() {
+        final List<Model.ModelUUID> roots = new ArrayList<Model.ModelUUID>();
+        final IntList scratch = new IntList();
+
+        lock.readLock().lock();
+        try {
+            final int size = ids.size();
+            for (int id = 0; id < size; id++) {
+                scratch.clear();
+                neighbors(id, true, scratch);
+                if (scratch.size == 0) {
+                    continue;
+                }
+                scratch.clear();
+                neighbors(id, false, scratch);
+                if (scratch.size == 0) {
+                    roots.add(ids.getUuid(id));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return roots;
+    }
+
+    /**
+     * Rebuilds the adjacency arrays to include the changes in the overlay.
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            final int size = ids.size();
+            final int[] parents = new int[edgeCount];
+            final int[] children = new int[edgeCount];
+            final IntList scratch = new IntList();
+            int count = 0;
+
+            for (int id = 0; id < size; id++) {
+                scratch.clear();
+                neighbors(id, true, scratch);
+                for (int i = 0; i < scratch.size; i++) {
+                    parents[count] = id;
+                    children[count] = scratch.values[i];
+                    count++;
+                }
+            }
+            build(parents, children, count);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(Model.EntityEdgeNotification notification) {
+        final Model.EntityEdge edge = notification.getValue();
+        if (!edge.getRelationship().equals(relationship) || (edge.hasDistance() && edge.getDistance() != 1)) {
+            return;
+        }
+
+        final int parent = ids.getOrAssign(edge.getParent());
+        final int child = ids.getOrAssign(edge.getChild());
+
+        if (notification.getEventType() == Envelope.SubscriptionEventType.REMOVED) {
+            removeEdge(parent, child);
+        } else {
+            addEdge(parent, child);
+        }
+
+        if (addedCount + removed.size() > Math.max(MIN_OVERLAY_LIMIT, baseEdges / 8)) {
+            compact();
+        }
+    }
+
+    private void addEdge(int parent, int child) {
+        if (inBase(parent, child)) {
+            if (removed.remove(key(parent, child))) {
+                edgeCount++;
+            }
+            return;
+        }
+        final IntList existing = addedChildren.get(parent);
+        if (existing != null && existing.indexOf(child) >= 0) {
+            return;
+        }
+        list(addedChildren, parent).add(child);
+        list(addedParents, child).add(parent);
+        addedCount++;
+        edgeCount++;
+    }
+
+    private void removeEdge(int parent, int child) {
+        if (inBase(parent, child)) {
+            if (removed.add(key(parent, child))) {
+                edgeCount--;
+            }
+            return;
+        }
+        final IntList children = addedChildren.get(parent);
+        if (children != null && children.remove(child)) {
+            addedParents.get(child).remove(parent);
+            addedCount--;
+            edgeCount--;
+        }
+    }
+
+    private boolean inBase(int parent, int child) {
+        return parent < baseNodes && Arrays.binarySearch(childTargets, childOffsets[parent], childOffsets[parent + 1], child) >= 0;
+    }
+
+    /**
+     * Appends the current children (down) or parents (up) of an entity, merging the adjacency arrays
+     * with the overlay. Must be called holding the lock.
+     */
+    private void neighbors(int id, boolean down, IntList out) {
+        if (id < baseNodes) {
+            final int[] offsets = down ? childOffsets : parentOffsets;
+            final int[] targets = down ? childTargets : parentTargets;
+            for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+                final int target = targets[i];
+                if (removed.isEmpty() || !removed.contains(down ? key(id, target) : key(target, id))) {
+                    out.add(target);
+                }
+            }
+        }
+        final IntList added = (down ? addedChildren : addedParents).get(id);
+        if (added != null) {
+            for (int i = 0; i < added.size; i++) {
+                out.add(added.values[i]);
+            }
+        }
+    }
+
+    /**
+     * Breadth-first traversal from an entity, returning the ids reached in order of distance. The
+     * starting entity is not included, even if a cycle leads back to it.
+     */
+    private IntList traverse(int start, int depthLimit, boolean down) {
+        final IntList queue = new IntList();
+        if (start < 0) {
+            return queue;
+        }
+
+        lock.readLock().lock();
+        try {
+            final BitSet visited = new BitSet(ids.size());
+            final IntList scratch = new IntList();
+            visited.set(start);
+            queue.add(start);
+
+            int head = 0;
+            int depth = 0;
+            while (head < queue.size && (depthLimit <= 0 || depth < depthLimit)) {
+                final int levelEnd = queue.size;
+                depth++;
+                while (head < levelEnd) {
+                    scratch.clear();
+                    neighbors(queue.values[head++], down, scratch);
+                    for (int i = 0; i < scratch.size; i++) {
+                        final int next = scratch.values[i];
+                        if (!visited.get(next)) {
+                            visited.set(next);
+                            queue.add(next);
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        queue.removeFirst();
+        return queue;
+    }
+
+    /**
+     * Builds the adjacency arrays from a list of edges and clears the overlay. Must be called
+     * holding the write lock.
+     */
+    private void build(int[] edgeParents, int[] edgeChildren, int count) {
+        final int nodes = ids.size();
+
+        childOffsets = new int[nodes + 1];
+        parentOffsets = new int[nodes + 1];
+        for (int i = 0; i < count; i++) {
+            childOffsets[edgeParents[i] + 1]++;
+            parentOffsets[edgeChildren[i] + 1]++;
+        }
+        for (int i = 0; i < nodes; i++) {
+            childOffsets[i + 1] += childOffsets[i];
+            parentOffsets[i + 1] += parentOffsets[i];
+        }
+
+        childTargets = new int[count];
+        parentTargets = new int[count];
+        final int[] childFill = Arrays.copyOf(childOffsets, nodes);
+        final int[] parentFill = Arrays.copyOf(parentOffsets, nodes);
+        for (int i = 0; i < count; i++) {
+            childTargets[childFill[edgeParents[i]]++] = edgeChildren[i];
+            parentTargets[parentFill[edgeChildren[i]]++] = edgeParents[i];
+        }
+
+        // Sorted ranges allow binary search for an edge; duplicates are dropped
+        for (int id = 0; id < nodes; id++) {
+            Arrays.sort(childTargets, childOffsets[id], childOffsets[id + 1]);
+            Arrays.sort(parentTargets, parentOffsets[id], parentOffsets[id + 1]);
+        }
+        final int[][] children = deduplicate(childOffsets, childTargets, nodes);
+        childOffsets = children[0];
+        childTargets = children[1];
+        final int[][] parents = deduplicate(parentOffsets, parentTargets, nodes);
+        parentOffsets = parents[0];
+        parentTargets = parents[1];
+
+        baseNodes = nodes;
+        baseEdges = childTargets.length;
+        edgeCount = baseEdges;
+        addedChildren.clear();
+        addedParents.clear();
+        removed.clear();
+        addedCount = 0;
+    }
+
+    private static int[][] deduplicate(int[] offsets, int[] targets, int nodes) {
+        final int[] newOffsets = new int[nodes + 1];
+        int count = 0;
+        for (int id = 0; id < nodes; id++) {
+            for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+                if (i == offsets[id] || targets[i] != targets[i - 1]) {
+                    targets[count++] = targets[i];
+                }
+            }
+            newOffsets[id + 1] = count;
+        }
+        return new int[][] { newOffsets, count == targets.length ? targets : Arrays.copyOf(targets, count) };
+    }
+
+    private List<Model.ModelUUID> toUuids(IntList list) {
+        final List<Model.ModelUUID> uuids = new ArrayList<Model.ModelUUID>(list.size);
+        for (int i = 0; i < list.size; i++) {
+            uuids.add(ids.getUuid(list.values[i]));
+        }
+        return uuids;
+    }
+
+    private static BitSet toBitSet(IntList list) {
+        final BitSet set = new BitSet();
+        for (int i = 0; i < list.size; i++) {
+            set.set(list.values[i]);
+        }
+        return set;
+    }
+
+    private static IntList list(Map<Integer, IntList> map, int id) {
+        IntList list = map.get(id);
+        if (list == null) {
+            list = new IntList();
+            map.put(id, list);
+        }
+        return list;
+    }
+
+    private static long key(int parent, int child) {
+        return ((long) parent << 32) | (child & 0xffffffffL);
+    }
+
+    private static class IntList {
+        private int[] values = new int[8];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int indexOf(int value) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        boolean remove(int value) {
+            final int index = indexOf(value);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(values, index + 1, values, index, size - index - 1);
+            size--;
+            return true;
+        }
+
+        void removeFirst() {
+            if (size > 0) {
+                System.arraycopy(values, 1, values, 0, size - 1);
+                size--;
+            }
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+}
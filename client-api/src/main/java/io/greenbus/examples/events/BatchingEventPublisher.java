@@ -0,0 +1,413 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.events;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import io.greenbus.client.service.proto.EventRequests;
+import io.greenbus.client.service.proto.Events;
+import io.greenbus.japi.client.service.EventService;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Publishes events without blocking the caller.
+ *
+ * Event templates are placed on a bounded queue and a background thread sends them to the event
+ * service as lists in postEvents requests. A batch is sent as soon as it reaches the maximum batch
+ * size, or when the oldest queued template has waited for the linger time. Each template gets a
+ * future that completes with its published event, or with the failure of its batch.
+ *
+ * At most maxInFlight batches are outstanding at once, and the capacity bounds the events that are
+ * queued or in flight, so space is only freed when a batch completes. When the event service slows
+ * down, the queue therefore fills and the overflow policy applies: the caller waits for space, the new
+ * template is rejected, or the oldest queued template is dropped to make room.
+ */
+public class BatchingEventPublisher {
+
+    /**
+     * Behavior of publish() when the queue is full.
+     */
+    public enum OverflowPolicy {
+        /** Wait for space in the queue */
+        BLOCK,
+        /** Fail the new event's future immediately */
+        REJECT,
+        /** Fail the future of the oldest queued event and queue the new one */
+        DROP_OLDEST
+    }
+
+    private final EventService.Client client;
+    private final int capacity;
+    private final int maxBatchSize;
+    private final int maxInFlight;
+    private final long lingerNanos;
+    private final OverflowPolicy overflowPolicy;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition batchReady = lock.newCondition();
+    private final Condition batchDone = lock.newCondition();
+    private final Condition idle = lock.newCondition();
+    private final ArrayDeque<Pending> queue = new ArrayDeque<Pending>();
+    private final Thread flusher;
+
+    private boolean running = true;
+    private boolean flushRequested = false;
+    private int inFlight = 0;
+    private int inFlightEvents = 0;
+
+    private long publishedCount = 0;
+    private long failedCount = 0;
+    private long droppedCount = 0;
+    private long batchCount = 0;
+    private long batchedEvents = 0;
+
+    /**
+     * @param client Event service interface
+     * @param capacity Maximum number of events queued or in flight
+     * @param maxBatchSize Maximum number of events per postEvents request
+     * @param maxInFlight Maximum number of postEvents requests outstanding at once
+     * @param linger Longest time an event waits for its batch to fill before being sent
+     * @param unit Unit of the linger time
+     * @param overflowPolicy Behavior when the queue is full
+     */
+    public BatchingEventPublisher(EventService.Client client, int capacity, int maxBatchSize, int maxInFlight,
+                                  long linger, TimeUnit unit, OverflowPolicy overflowPolicy) {
+        if (capacity < 1 || maxBatchSize < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("Capacity, maximum batch size and requests in flight must be positive");
+        }
+        if (linger < 0) {
+            throw new IllegalArgumentException("Linger time must not be negative: " + linger);
+        }
+        this.client = client;
+        this.capacity = capacity;
+        this.maxBatchSize = maxBatchSize;
+        this.maxInFlight = maxInFlight;
+        this.lingerNanos = unit.toNanos(linger);
+        this.overflowPolicy = overflowPolicy;
+
+        this.flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        }, "batching-event-publisher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Queues an event to be published in the next batch.
+     *
+     * @param template Event to publish
+     * @return Future completed with the published event
+     * @throws InterruptedException If interrupted while waiting for space with the BLOCK policy
+     */
+    public ListenableFuture<Events.Event> publish(EventRequests.EventTemplate template) throws InterruptedException {
+        final Pending pending = new Pending(template);
+        Pending dropped = null;
+
+        lock.lock();
+        try {
+            while (running && queue.size() + inFlightEvents >= capacity && overflowPolicy == OverflowPolicy.BLOCK) {
+                notFull.await();
+            }
+            if (!running) {
+                pending.future.setException(new IllegalStateException("Publisher has been closed"));
+                return pending.future;
+            }
+            if (queue.size() + inFlightEvents >= capacity) {
+                droppedCount++;
+                // Events already sent can't be dropped, so with nothing queued the new event is rejected
+                if (overflowPolicy == OverflowPolicy.REJECT || queue.isEmpty()) {
+                    pending.future.setException(new RejectedExecutionException("Event queue is full"));
+                    return pending.future;
+                }
+                dropped = queue.pollFirst();
+            }
+
+            queue.addLast(pending);
+            if (queue.size() == 1) {
+                notEmpty.signal();
+            }
+            if (queue.size() >= maxBatchSize) {
+                batchReady.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // Complete futures outside the lock, their listeners may publish again
+        if (dropped != null) {
+            dropped.future.setException(new RejectedExecutionException("Event dropped from full queue"));
+        }
+        return pending.future;
+    }
+
+    /**
+     * Sends everything queued without waiting for the linger time, and waits until all sent batches
+     * have completed.
+     *
+     * @param timeout Time to wait
+     * @param unit Unit of the timeout
+     * @return True if all queued events were sent and completed in time
+     * @throws InterruptedException
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            flushRequested = true;
+            batchReady.signal();
+            notEmpty.signal();
+            while (!queue.isEmpty() || inFlight > 0) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = idle.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting events, sends the ones still queued, and waits for their batches to complete.
+     *
+     * @param timeout Time to wait
+     * @param unit Unit of the timeout
+     * @return True if all queued events were sent and completed in time
+     * @throws InterruptedException
+     */
+    public boolean close(long timeout, TimeUnit unit) throws InterruptedException {
+        lock.lock();
+        try {
+            running = false;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        return flush(timeout, unit);
+    }
+
+    /**
+     * @return Number of events waiting to be sent
+     */
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of events published successfully
+     */
+    public long getPublishedCount() {
+        lock.lock();
+        try {
+            return publishedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of events sent in batches that failed
+     */
+    public long getFailedCount() {
+        lock.lock();
+        try {
+            return failedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of events rejected or dropped because the queue was full
+     */
+    public long getDroppedCount() {
+        lock.lock();
+        try {
+            return droppedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of postEvents requests sent
+     */
+    public long getBatchCount() {
+        lock.lock();
+        try {
+            return batchCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Mean number of events per postEvents request
+     */
+    public double getAverageBatchSize() {
+        lock.lock();
+        try {
+            return batchCount == 0 ? 0.0 : (double) batchedEvents / batchCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            final List<Pending> batch = new ArrayList<Pending>();
+
+            lock.lock();
+            try {
+                while (queue.isEmpty()) {
+                    if (!running) {
+                        return;
+                    }
+                    flushRequested = false;
+                    notEmpty.await();
+                }
+
+                // Wait for the batch to fill until the oldest event has lingered long enough
+                long remaining = lingerNanos - (System.nanoTime() - queue.peekFirst().queuedNanos);
+                while (running && !flushRequested && queue.size() < maxBatchSize && remaining > 0) {
+                    remaining = batchReady.awaitNanos(remaining);
+                }
+
+                // Hold the batch back while the event service is working through as many as it may have
+                while (inFlight >= maxInFlight) {
+                    batchDone.await();
+                }
+
+                while (!queue.isEmpty() && batch.size() < maxBatchSize) {
+                    batch.add(queue.pollFirst());
+                }
+                if (queue.isEmpty()) {
+                    flushRequested = false;
+                }
+
+                inFlight++;
+                inFlightEvents += batch.size();
+                batchCount++;
+                batchedEvents += batch.size();
+
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            send(batch);
+        }
+    }
+
+    private void send(final List<Pending> batch) {
+
+        final List<EventRequests.EventTemplate> templates = new ArrayList<EventRequests.EventTemplate>(batch.size());
+        for (Pending pending : batch) {
+            templates.add(pending.template);
+        }
+
+        final ListenableFuture<List<Events.Event>> future;
+        try {
+            future = client.postEvents(templates);
+        } catch (RuntimeException ex) {
+            complete(batch, null, ex);
+            return;
+        }
+
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    complete(batch, future.get(), null);
+                } catch (ExecutionException ex) {
+                    complete(batch, null, ex.getCause());
+                } catch (Exception ex) {
+                    complete(batch, null, ex);
+                }
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    private void complete(List<Pending> batch, List<Events.Event> events, Throwable error) {
+
+        // The service returns the published events in the order of the templates
+        if (error == null && events.size() != batch.size()) {
+            error = new IllegalStateException("Expected " + batch.size() + " published events, received " + events.size());
+        }
+
+        // Complete the futures before the batch counts as done, so flush() implies completion
+        for (int i = 0; i < batch.size(); i++) {
+            if (error == null) {
+                batch.get(i).future.set(events.get(i));
+            } else {
+                batch.get(i).future.setException(error);
+            }
+        }
+
+        lock.lock();
+        try {
+            inFlight--;
+            inFlightEvents -= batch.size();
+            batchDone.signal();
+            notFull.signalAll();
+            if (error == null) {
+                publishedCount += batch.size();
+            } else {
+                failedCount += batch.size();
+            }
+            if (inFlight == 0 && queue.isEmpty()) {
+                idle.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class Pending {
+        private final EventRequests.EventTemplate template;
+        private final long queuedNanos = System.nanoTime();
+        private final SettableFuture<Events.Event> future = SettableFuture.create();
+
+        Pending(EventRequests.EventTemplate template) {
+            this.template = template;
+        }
+    }
+}
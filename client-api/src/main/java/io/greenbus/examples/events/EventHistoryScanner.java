@@ -0,0 +1,344 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.events;
+
+import io.greenbus.client.service.proto.EventRequests;
+import io.greenbus.client.service.proto.Events;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.japi.client.service.EventService;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scans all events in a time range, however many there are.
+ *
+ * The range is split into equal time slices. Each slice is read by its own task, oldest first, one
+ * page at a time, with the id of the last event of a page as the cursor for the next. Slices are read
+ * in parallel, and each stops once it has read a few pages ahead of the consumer. A slice that has
+ * been read to the end keeps its prefetched pages until the consumer reaches it, so the events held
+ * at once are bounded by (slices x prefetched pages + parallelism + 1) x page size: the prefetched
+ * pages, one page per running task waiting for space, and the page being consumed. That depends on the
+ * number of slices, not the size of the range. The consumer receives the events of one slice after
+ * another, so the scan as a whole is in time order.
+ *
+ * The tasks run on daemon threads, and a task waiting for space gives up once the scan is closed.
+ * A scan that is not read to the end must be closed, or its tasks stay blocked until the JVM exits.
+ */
+public class EventHistoryScanner {
+
+    // Marks the end of a slice in its page queue
+    private static final List<Events.Event> END = Collections.emptyList();
+
+    private final EventService.Client client;
+    private final int parallelism;
+    private final int pageSize;
+    private final int prefetchPages;
+    private final long timeoutMillis;
+
+    /**
+     * @param client Event service interface
+     * @param parallelism Number of slices read at once
+     * @param pageSize Number of events per request
+     * @param prefetchPages Number of pages each slice may read ahead of the consumer
+     * @param timeout Time allowed for each request
+     * @param unit Unit of the timeout
+     */
+    public EventHistoryScanner(EventService.Client client, int parallelism, int pageSize, int prefetchPages, long timeout, TimeUnit unit) {
+        if (parallelism < 1 || pageSize < 1 || prefetchPages < 1) {
+            throw new IllegalArgumentException("Parallelism, page size and prefetched pages must be positive");
+        }
+        this.client = client;
+        this.parallelism = parallelism;
+        this.pageSize = pageSize;
+        this.prefetchPages = prefetchPages;
+        this.timeoutMillis = unit.toMillis(timeout);
+    }
+
+    /**
+     * Starts a scan of the events between two times, both inclusive.
+     *
+     * The time range of the query parameters is replaced by that of each slice; any other criteria
+     * (event types, severities, subsystems, agents) apply to the whole scan.
+     *
+     * @param params Query criteria, may be null to scan all events
+     * @param timeFrom Start of the range, in milliseconds since the epoch
+     * @param timeTo End of the range, in milliseconds since the epoch
+     * @param sliceCount Number of time slices to split the range into
+     * @return Events in time order; must be closed if not read to the end
+     */
+    public Scan scan(EventRequests.EventQueryParams params, long timeFrom, long timeTo, int sliceCount) {
+        if (timeTo < timeFrom) {
+            throw new IllegalArgumentException("Time range ends before it starts");
+        }
+        final long span = timeTo - timeFrom + 1;
+        final int slices = (int) Math.max(1, Math.min(sliceCount, span));
+        final EventRequests.EventQueryParams base = params != null ? params : EventRequests.EventQueryParams.getDefaultInstance();
+
+        final List<Slice> sliceList = new ArrayList<Slice>(slices);
+        for (int i = 0; i < slices; i++) {
+            final long from = timeFrom + span * i / slices;
+            final long to = timeFrom + span * (i + 1) / slices - 1;
+            sliceList.add(new Slice(base, from, to, prefetchPages));
+        }
+
+        return new Scan(sliceList);
+    }
+
+    private class Slice implements Runnable {
+        private final EventRequests.EventQueryParams params;
+        private final long timeFrom;
+        private final long timeTo;
+        private final ArrayBlockingQueue<List<Events.Event>> pages;
+        private Scan scan;
+        private volatile Throwable error = null;
+
+        Slice(EventRequests.EventQueryParams base, long timeFrom, long timeTo, int prefetchPages) {
+            this.params = base.toBuilder()
+                    .setTimeFrom(timeFrom)
+                    .setTimeTo(timeTo)
+                    .setLatest(false)
+                    .build();
+            this.timeFrom = timeFrom;
+            this.timeTo = timeTo;
+            this.pages = new ArrayBlockingQueue<List<Events.Event>>(prefetchPages);
+        }
+
+        @Override
+        public void run() {
+            try {
+                Model.ModelID lastId = null;
+                while (!scan.closed) {
+                    final EventRequests.EventQuery.Builder query = EventRequests.EventQuery.newBuilder()
+                            .setQueryParams(params)
+                            .setPageSize(pageSize);
+                    if (lastId != null) {
+                        query.setLastId(lastId);
+                    }
+
+                    final List<Events.Event> page = client.eventQuery(query.build()).get(timeoutMillis, TimeUnit.MILLISECONDS);
+                    scan.pageCount.incrementAndGet();
+
+                    if (!page.isEmpty()) {
+                        scan.buffered(page.size());
+                        put(page);
+                    }
+                    if (page.size() < pageSize) {
+                        break;
+                    }
+                    lastId = page.get(page.size() - 1).getId();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                error = ex;
+            } catch (Throwable ex) {
+                error = ex;
+            }
+            try {
+                put(END);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void put(List<Events.Event> page) throws InterruptedException {
+            while (!scan.closed) {
+                if (pages.offer(page, 100, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A running scan. Iterates the events of the range in time order, blocking while the next page
+     * has not arrived yet.
+     */
+    public class Scan implements Iterator<Events.Event>, Closeable {
+        private final List<Slice> slices;
+        private final ExecutorService executor;
+        private final long start = System.nanoTime();
+
+        private final AtomicInteger pageCount = new AtomicInteger(0);
+        private final AtomicLong bufferedEvents = new AtomicLong(0);
+        private final AtomicLong peakBufferedEvents = new AtomicLong(0);
+
+        private volatile boolean closed = false;
+        private int sliceIndex = 0;
+        private Iterator<Events.Event> current = Collections.<Events.Event>emptyList().iterator();
+        private long eventCount = 0;
+        private long endNanos = 0;
+
+        Scan(List<Slice> slices) {
+            this.slices = slices;
+            this.executor = Executors.newFixedThreadPool(Math.min(parallelism, slices.size()), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger(0);
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "event-history-scan-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+            // The pool runs slices in submission order, so the slice being consumed is always running
+            for (Slice slice : slices) {
+                slice.scan = this;
+                executor.execute(slice);
+            }
+            executor.shutdown();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (closed) {
+                return false;
+            }
+            while (!current.hasNext()) {
+                if (sliceIndex >= slices.size()) {
+                    finish();
+                    return false;
+                }
+
+                final Slice slice = slices.get(sliceIndex);
+                List<Events.Event> page = null;
+                try {
+                    // Poll so that a close() from another thread ends the wait
+                    while (page == null) {
+                        if (closed) {
+                            return false;
+                        }
+                        page = slice.pages.poll(100, TimeUnit.MILLISECONDS);
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    close();
+                    throw new IllegalStateException("Interrupted while waiting for events", ex);
+                }
+
+                if (page == END) {
+                    if (slice.error != null) {
+                        close();
+                        throw new IllegalStateException("Event scan failed for slice " + slice.timeFrom + " to " + slice.timeTo, slice.error);
+                    }
+                    sliceIndex++;
+                } else {
+                    bufferedEvents.addAndGet(-page.size());
+                    current = page.iterator();
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Events.Event next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            eventCount++;
+            return current.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Stops reading slices and releases the tasks waiting for space. Outstanding requests complete in
+         * the background and are discarded.
+         */
+        @Override
+        public void close() {
+            closed = true;
+            executor.shutdownNow();
+            finish();
+        }
+
+        /**
+         * @return Number of events returned so far
+         */
+        public long getEventCount() {
+            return eventCount;
+        }
+
+        /**
+         * @return Number of eventQuery requests completed so far
+         */
+        public int getPageCount() {
+            return pageCount.get();
+        }
+
+        /**
+         * @return Time since the scan started, or its total duration once finished, in milliseconds
+         */
+        public double getElapsedMillis() {
+            return ((endNanos != 0 ? endNanos : System.nanoTime()) - start) / 1000000.0;
+        }
+
+        /**
+         * @return Events returned per second
+         */
+        public double getEventsPerSecond() {
+            final double millis = getElapsedMillis();
+            return millis == 0 ? 0.0 : eventCount / (millis / 1000.0);
+        }
+
+        /**
+         * @return Largest number of events that were read but not yet consumed at one time
+         */
+        public long getPeakBufferedEvents() {
+            return peakBufferedEvents.get();
+        }
+
+        /**
+         * @return Upper bound of events held by the scan at once: the prefetched pages of every slice, one
+         * page waiting for space per running task, and the page being consumed
+         */
+        public long getBufferLimitEvents() {
+            return ((long) slices.size() * prefetchPages + Math.min(parallelism, slices.size()) + 1) * pageSize;
+        }
+
+        private void buffered(int count) {
+            final long now = bufferedEvents.addAndGet(count);
+            long peak = peakBufferedEvents.get();
+            while (now > peak && !peakBufferedEvents.compareAndSet(peak, now)) {
+                peak = peakBufferedEvents.get();
+            }
+        }
+
+        private void finish() {
+            if (endNanos == 0) {
+                endNanos = System.nanoTime();
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.events;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.greenbus.client.service.proto.EventRequests;
+import io.greenbus.client.service.proto.Events;
+import io.greenbus.examples.standin.StandInServices;
+import io.greenbus.examples.standin.StandInSettings;
+import io.greenbus.japi.client.service.EventService;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares publishing events one blocking postEvents request at a time, as in
+ * EventPublishingExample.publishEvent, with BatchingEventPublisher at several batch sizes and linger
+ * times. Reports throughput and the publish-to-completion latency of individual events.
+ *
+ * Runs against StandInServices, which answers after a fixed round-trip latency plus a per-event
+ * processing cost. No broker is required.
+ */
+public class EventPublishingBenchmark {
+
+    private static final long ROUND_TRIP_MICROS = 1000;
+    private static final long PER_EVENT_MICROS = 10;
+
+    public static void main(String[] args) throws Exception {
+
+        final int eventCount = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+
+        System.out.print("\n=== Event Publishing Benchmark (" + eventCount + " events) ===\n\n");
+
+        final StandInServices services = new StandInServices(new StandInSettings()
+                .setLatencyMicros(ROUND_TRIP_MICROS)
+                .setItemMicros(PER_EVENT_MICROS)
+                .setTransportThreads(4));
+        final EventService.Client client = services.getEventClient();
+
+        try {
+            final EventRequests.EventTemplate template = EventRequests.EventTemplate.newBuilder()
+                    .setEventType("System.UserLogin")
+                    .setSubsystem("system")
+                    .build();
+
+            // One blocking request per event
+            final long[] unbatched = new long[eventCount];
+            final long start = System.nanoTime();
+            for (int i = 0; i < eventCount; i++) {
+                final long sent = System.nanoTime();
+                client.postEvents(Arrays.asList(template)).get(5000, TimeUnit.MILLISECONDS);
+                unbatched[i] = System.nanoTime() - sent;
+            }
+            report("Unbatched", eventCount, System.nanoTime() - start, unbatched);
+
+            final long[][] configurations = { {10, 1}, {100, 2}, {500, 5}, {1000, 10} };
+            for (long[] configuration : configurations) {
+                final BatchingEventPublisher publisher = new BatchingEventPublisher(client, 10000, (int) configuration[0], 4,
+                        configuration[1], TimeUnit.MILLISECONDS, BatchingEventPublisher.OverflowPolicy.BLOCK);
+
+                final long[] latencies = new long[eventCount];
+                final long batchedStart = System.nanoTime();
+                for (int i = 0; i < eventCount; i++) {
+                    final int index = i;
+                    final long sent = System.nanoTime();
+                    final ListenableFuture<Events.Event> future = publisher.publish(template);
+                    future.addListener(new Runnable() {
+                        @Override
+                        public void run() {
+                            latencies[index] = System.nanoTime() - sent;
+                        }
+                    }, MoreExecutors.sameThreadExecutor());
+                }
+                publisher.close(60000, TimeUnit.MILLISECONDS);
+
+                report("Batch " + configuration[0] + ", linger " + configuration[1] + " ms", eventCount, System.nanoTime() - batchedStart, latencies);
+                System.out.println("    Requests: " + publisher.getBatchCount() + ", Average batch: " + publisher.getAverageBatchSize() +
+                        ", Published: " + publisher.getPublishedCount() + ", Failed: " + publisher.getFailedCount());
+            }
+        } finally {
+            services.shutdown();
+        }
+    }
+
+    private static void report(String name, int eventCount, long elapsedNanos, long[] latencies) {
+        final long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        final double millis = elapsedNanos / 1000000.0;
+        System.out.println(name + ": " + millis + " ms, " + (long) (eventCount / (millis / 1000.0)) + " events/s, latency p50: " +
+                sorted[sorted.length / 2] / 1000 + " us, p99: " + sorted[(int) (sorted.length * 0.99)] / 1000 + " us, max: " + sorted[sorted.length - 1] / 1000 + " us");
+    }
+}
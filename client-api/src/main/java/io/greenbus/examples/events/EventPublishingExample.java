@@ -18,13 +18,16 @@
  */
 package io.greenbus.examples.events;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import io.greenbus.msg.japi.Session;
 import io.greenbus.client.service.proto.EventRequests;
 import io.greenbus.client.service.proto.Events;
 import io.greenbus.japi.client.service.EventService;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -129,4 +132,46 @@ public class EventPublishingExample {
 
     }
 
+    /**
+     * Publish Events In Batches
+     *
+     * Publish a burst of user login events without blocking on each one. The events are queued and
+     * sent to the event service in batches of up to 100, or after they have waited 10 milliseconds,
+     * with at most four batches outstanding.
+     *
+     * @param session Logged-in Session object
+     * @throws Exception
+     */
+    public static void publishEventsInBatches(Session session) throws Exception {
+
+        System.out.print("\n=== Publish Events In Batches ===\n\n");
+
+        // Get service interface for events
+        final EventService.Client client = EventService.client(session);
+
+        // Hold up to 10000 events queued or in flight, waiting for space if that is full
+        final BatchingEventPublisher publisher = new BatchingEventPublisher(client, 10000, 100, 4, 10, TimeUnit.MILLISECONDS,
+                BatchingEventPublisher.OverflowPolicy.BLOCK);
+
+        final List<ListenableFuture<Events.Event>> futures = new ArrayList<ListenableFuture<Events.Event>>();
+        for (int i = 0; i < 250; i++) {
+            final EventRequests.EventTemplate eventTemplate = EventRequests.EventTemplate.newBuilder()
+                    .setEventType("System.UserLogin")
+                    .setSubsystem("system")
+                    .build();
+
+            futures.add(publisher.publish(eventTemplate));
+        }
+
+        // Send anything still queued and wait for the outstanding batches
+        publisher.close(5000, TimeUnit.MILLISECONDS);
+
+        System.out.println("Published: " + publisher.getPublishedCount() + ", Failed: " + publisher.getFailedCount() +
+                ", Requests: " + publisher.getBatchCount() + ", Average batch: " + publisher.getAverageBatchSize());
+
+        // Display the last published Event
+        final Events.Event published = futures.get(futures.size() - 1).get(5000, TimeUnit.MILLISECONDS);
+        System.out.println("Last: " + published.getId() + ", " + published.getEventType() + ", " + new Date(published.getTime()));
+    }
+
 }
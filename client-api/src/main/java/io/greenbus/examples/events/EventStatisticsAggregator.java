@@ -0,0 +1,373 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.events;
+
+import io.greenbus.client.service.proto.EventRequests;
+import io.greenbus.client.service.proto.Events;
+import io.greenbus.japi.client.service.EventService;
+import io.greenbus.msg.japi.Subscription;
+import io.greenbus.msg.japi.SubscriptionHandler;
+import io.greenbus.msg.japi.SubscriptionResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts events by event type, severity and subsystem over sliding windows, fed by an event
+ * subscription instead of repeated event queries.
+ *
+ * Every key keeps, for every window, a ring of per-bucket counts in a primitive array together with
+ * a running total. Recording an event increments one bucket per window; buckets that slide out of a
+ * window are subtracted from the total as time advances. Count queries therefore take constant time,
+ * and top-N queries take time proportional to the number of keys, not the number of events.
+ *
+ * Memory is bounded by the maximum number of keys per dimension; events with keys beyond the limit
+ * are counted under OTHER_KEY.
+ *
+ * The windows only slide with the local clock. An event timestamped ahead of it, for example by a
+ * publisher whose clock is fast, is counted at the current time rather than moving the windows on.
+ */
+public class EventStatisticsAggregator implements SubscriptionHandler<Events.EventNotification> {
+
+    /**
+     * Key that events are counted under once a dimension has reached its maximum number of keys.
+     */
+    public static final String OTHER_KEY = "(other)";
+
+    /**
+     * Event properties that events are counted by.
+     */
+    public enum Dimension {
+        EVENT_TYPE,
+        SEVERITY,
+        SUBSYSTEM
+    }
+
+    /**
+     * Sliding windows, each made up of a ring of fixed-width buckets.
+     */
+    public enum Window {
+        ONE_MINUTE(60, 1000),
+        FIFTEEN_MINUTES(90, 10000),
+        ONE_HOUR(60, 60000);
+
+        private final int buckets;
+        private final long bucketMillis;
+
+        Window(int buckets, long bucketMillis) {
+            this.buckets = buckets;
+            this.bucketMillis = bucketMillis;
+        }
+
+        public long getMillis() {
+            return buckets * bucketMillis;
+        }
+    }
+
+    private static final Window[] WINDOWS = Window.values();
+
+    private static final Comparator<KeyCount> BY_COUNT = new Comparator<KeyCount>() {
+        @Override
+        public int compare(KeyCount a, KeyCount b) {
+            return a.count < b.count ? -1 : (a.count == b.count ? 0 : 1);
+        }
+    };
+
+    private final int maxKeys;
+    private final EnumMap<Dimension, Map<Object, Counter>> counters = new EnumMap<Dimension, Map<Object, Counter>>(Dimension.class);
+    private final Counter total = new Counter();
+
+    private Subscription<Events.EventNotification> subscription = null;
+    private long recordedCount = 0;
+    private long expiredCount = 0;
+    private long futureCount = 0;
+    private long overflowCount = 0;
+
+    /**
+     * @param maxKeys Maximum number of distinct keys counted per dimension
+     */
+    public EventStatisticsAggregator(int maxKeys) {
+        if (maxKeys < 1) {
+            throw new IllegalArgumentException("Maximum number of keys must be positive: " + maxKeys);
+        }
+        this.maxKeys = maxKeys;
+        for (Dimension dimension : Dimension.values()) {
+            counters.put(dimension, new HashMap<Object, Counter>());
+        }
+    }
+
+    /**
+     * Subscribes to events and starts counting. The recent events returned with the subscription are
+     * counted too, as far as they fall within the windows.
+     *
+     * @param client Event service interface
+     * @param timeout Time allowed for the subscription request
+     * @param unit Unit of the timeout
+     * @throws Exception If the subscription request fails
+     */
+    public void start(EventService.Client client, long timeout, TimeUnit unit) throws Exception {
+        final EventRequests.EventSubscriptionQuery query = EventRequests.EventSubscriptionQuery.newBuilder()
+                .setTimeFrom(System.currentTimeMillis() - Window.ONE_HOUR.getMillis())
+                .build();
+
+        final SubscriptionResult<List<Events.Event>, Events.EventNotification> result = client.subscribeToEvents(query).get(timeout, unit);
+
+        synchronized (this) {
+            for (Events.Event event : result.getResult()) {
+                record(event);
+            }
+            subscription = result.getSubscription();
+        }
+        result.getSubscription().start(this);
+    }
+
+    /**
+     * Cancels the event subscription. Counts decay as time passes.
+     */
+    public synchronized void stop() {
+        if (subscription != null) {
+            subscription.cancel();
+            subscription = null;
+        }
+    }
+
+    @Override
+    public synchronized void handle(Events.EventNotification notification) {
+        record(notification.getValue());
+    }
+
+    /**
+     * Counts an event at its event time.
+     *
+     * @param event Event to count
+     */
+    public synchronized void record(Events.Event event) {
+        record(event.getEventType(), event.getSeverity(), event.getSubsystem(), event.getTime());
+    }
+
+    synchronized void record(String eventType, int severity, String subsystem, long time) {
+        final long now = System.currentTimeMillis();
+        if (time < now - Window.ONE_HOUR.getMillis()) {
+            expiredCount++;
+            return;
+        }
+        if (time > now) {
+            futureCount++;
+            time = now;
+        }
+        recordedCount++;
+        total.add(time, now);
+        counter(Dimension.EVENT_TYPE, eventType).add(time, now);
+        counter(Dimension.SEVERITY, severity).add(time, now);
+        counter(Dimension.SUBSYSTEM, subsystem).add(time, now);
+    }
+
+    /**
+     * @param window Sliding window
+     * @return Number of events within the window
+     */
+    public synchronized long total(Window window) {
+        return total.count(window, System.currentTimeMillis());
+    }
+
+    /**
+     * @param dimension Property the key belongs to
+     * @param key Event type or subsystem as a String, or severity as an Integer
+     * @param window Sliding window
+     * @return Number of events with the key within the window
+     */
+    public synchronized long count(Dimension dimension, Object key, Window window) {
+        final Counter counter = counters.get(dimension).get(key);
+        return counter == null ? 0 : counter.count(window, System.currentTimeMillis());
+    }
+
+    /**
+     * @param dimension Property to rank by
+     * @param window Sliding window
+     * @param n Maximum number of keys returned
+     * @return Keys with the most events within the window, most first; keys without events are left out
+     */
+    public synchronized List<KeyCount> top(Dimension dimension, Window window, int n) {
+        final long now = System.currentTimeMillis();
+        final PriorityQueue<KeyCount> smallest = new PriorityQueue<KeyCount>(Math.max(1, n), BY_COUNT);
+
+        for (Map.Entry<Object, Counter> entry : counters.get(dimension).entrySet()) {
+            final long count = entry.getValue().count(window, now);
+            if (count == 0 || n < 1) {
+                continue;
+            }
+            if (smallest.size() < n) {
+                smallest.add(new KeyCount(entry.getKey(), count));
+            } else if (count > smallest.peek().count) {
+                smallest.poll();
+                smallest.add(new KeyCount(entry.getKey(), count));
+            }
+        }
+
+        final List<KeyCount> result = new ArrayList<KeyCount>(smallest);
+        Collections.sort(result, Collections.reverseOrder(BY_COUNT));
+        return result;
+    }
+
+    /**
+     * @return Number of events counted
+     */
+    public synchronized long getRecordedCount() {
+        return recordedCount;
+    }
+
+    /**
+     * @return Number of events ignored because they were older than the longest window
+     */
+    public synchronized long getExpiredCount() {
+        return expiredCount;
+    }
+
+    /**
+     * @return Number of events timestamped ahead of the local clock, which were counted at the current time
+     */
+    public synchronized long getFutureCount() {
+        return futureCount;
+    }
+
+    /**
+     * @return Number of per-dimension counts made under OTHER_KEY because the key limit was reached
+     */
+    public synchronized long getOverflowCount() {
+        return overflowCount;
+    }
+
+    /**
+     * @return Approximate size of the count arrays at the key limit, in bytes
+     */
+    public long getMaxMemoryBytes() {
+        long slots = 0;
+        for (Window window : WINDOWS) {
+            slots += window.buckets;
+        }
+        return (Dimension.values().length * (long) (maxKeys + 1) + 1) * slots * 8;
+    }
+
+    private Counter counter(Dimension dimension, Object key) {
+        final Map<Object, Counter> map = counters.get(dimension);
+        Counter counter = map.get(key);
+        if (counter == null) {
+            if (map.size() >= maxKeys) {
+                overflowCount++;
+                key = OTHER_KEY;
+                counter = map.get(key);
+            }
+            if (counter == null) {
+                counter = new Counter();
+                map.put(key, counter);
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Counts of one key, for every window.
+     */
+    private static class Counter {
+        private final long[][] rings = new long[WINDOWS.length][];
+        private final long[] totals = new long[WINDOWS.length];
+        private final long[] heads = new long[WINDOWS.length];
+
+        Counter() {
+            for (int i = 0; i < WINDOWS.length; i++) {
+                rings[i] = new long[WINDOWS[i].buckets];
+                heads[i] = Long.MIN_VALUE;
+            }
+        }
+
+        /**
+         * @param time Event time, no later than now
+         * @param now Current time, which the windows are moved on to
+         */
+        void add(long time, long now) {
+            for (int i = 0; i < WINDOWS.length; i++) {
+                final Window window = WINDOWS[i];
+                final long bucket = time / window.bucketMillis;
+                advance(i, now / window.bucketMillis);
+
+                // Late events still count if their bucket is within the window
+                if (bucket <= heads[i] && bucket > heads[i] - window.buckets) {
+                    rings[i][(int) (bucket % window.buckets)]++;
+                    totals[i]++;
+                }
+            }
+        }
+
+        long count(Window window, long now) {
+            final int i = window.ordinal();
+            advance(i, now / window.bucketMillis);
+            return totals[i];
+        }
+
+        /**
+         * Moves the head of a ring forward to a bucket, clearing the buckets that slide out.
+         */
+        private void advance(int i, long bucket) {
+            final long head = heads[i];
+            if (head == Long.MIN_VALUE) {
+                heads[i] = bucket;
+                return;
+            }
+            if (bucket <= head) {
+                return;
+            }
+            final int size = WINDOWS[i].buckets;
+            final long[] ring = rings[i];
+            for (long b = Math.max(head + 1, bucket - size + 1); b <= bucket; b++) {
+                final int index = (int) (b % size);
+                totals[i] -= ring[index];
+                ring[index] = 0;
+            }
+            heads[i] = bucket;
+        }
+    }
+
+    /**
+     * Number of events for one key.
+     */
+    public static class KeyCount {
+        private final Object key;
+        private final long count;
+
+        KeyCount(Object key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        public Object getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+}
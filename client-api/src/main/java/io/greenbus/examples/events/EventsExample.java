@@ -25,6 +25,8 @@ import io.greenbus.japi.client.service.EventService;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -186,4 +188,101 @@ public class EventsExample {
 
     }
 
+    /**
+     * Scan Events by Interval
+     *
+     * Reads every event of the last day, in time order, without a limit on the number of results.
+     * The day is split into 24 slices that are read in parallel, eight at a time, in pages of 1000
+     * events each.
+     *
+     * @param session Logged-in Session object
+     * @throws Exception
+     */
+    public static void scanEventsByInterval(Session session) throws Exception {
+
+        System.out.print("\n=== Scan Events By Interval ===\n\n");
+
+        // Get service interface for events
+        final EventService.Client client = EventService.client(session);
+
+        // Read eight slices at a time, each up to two pages ahead of the consumer
+        final EventHistoryScanner scanner = new EventHistoryScanner(client, 8, 1000, 2, 5000, TimeUnit.MILLISECONDS);
+
+        long now = System.currentTimeMillis();
+        long oneDayAgo = now - (24 * 60 * 60 * 1000);
+
+        final EventHistoryScanner.Scan scan = scanner.scan(null, oneDayAgo, now, 24);
+
+        // Count the events of each type
+        final Map<String, Integer> counts = new TreeMap<String, Integer>();
+        try {
+            while (scan.hasNext()) {
+                final Events.Event event = scan.next();
+                final Integer count = counts.get(event.getEventType());
+                counts.put(event.getEventType(), count == null ? 1 : count + 1);
+            }
+        } finally {
+            // Releases the slice tasks if the scan fails part way
+            scan.close();
+        }
+
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            System.out.println("Type: " + entry.getKey() + ", Count: " + entry.getValue());
+        }
+
+        System.out.println();
+        System.out.println("Events: " + scan.getEventCount() + ", Requests: " + scan.getPageCount() + ", Time: " + scan.getElapsedMillis() + " ms");
+        System.out.println("Rate: " + (long) scan.getEventsPerSecond() + " events/s");
+        System.out.println("Buffered events, peak: " + scan.getPeakBufferedEvents() + ", limit: " + scan.getBufferLimitEvents());
+    }
+
+    /**
+     * Event Statistics
+     *
+     * Counts events by type, severity and subsystem over the last minute, fifteen minutes and hour,
+     * using an event subscription rather than repeated queries.
+     *
+     * @param session Logged-in Session object
+     * @throws Exception
+     */
+    public static void eventStatistics(Session session) throws Exception {
+
+        System.out.print("\n=== Event Statistics ===\n\n");
+
+        // Get service interface for events
+        final EventService.Client client = EventService.client(session);
+
+        // Count up to 1000 distinct keys per dimension
+        final EventStatisticsAggregator aggregator = new EventStatisticsAggregator(1000);
+
+        // Counts start from the recent events returned with the subscription
+        aggregator.start(client, 5000, TimeUnit.MILLISECONDS);
+
+        try {
+            // Let notifications arrive
+            Thread.sleep(5000);
+
+            for (EventStatisticsAggregator.Window window : EventStatisticsAggregator.Window.values()) {
+                System.out.println(window + ": " + aggregator.total(window) + " events");
+            }
+            System.out.println();
+
+            // Display the five most frequent event types and subsystems of the last hour
+            for (EventStatisticsAggregator.KeyCount keyCount : aggregator.top(EventStatisticsAggregator.Dimension.EVENT_TYPE, EventStatisticsAggregator.Window.ONE_HOUR, 5)) {
+                System.out.println("Type: " + keyCount.getKey() + ", Count: " + keyCount.getCount());
+            }
+            for (EventStatisticsAggregator.KeyCount keyCount : aggregator.top(EventStatisticsAggregator.Dimension.SUBSYSTEM, EventStatisticsAggregator.Window.ONE_HOUR, 5)) {
+                System.out.println("Subsystem: " + keyCount.getKey() + ", Count: " + keyCount.getCount());
+            }
+
+            System.out.println();
+            System.out.println("Severity 5 in the last fifteen minutes: " +
+                    aggregator.count(EventStatisticsAggregator.Dimension.SEVERITY, 5, EventStatisticsAggregator.Window.FIFTEEN_MINUTES));
+            System.out.println("Memory limit: " + aggregator.getMaxMemoryBytes() + " bytes");
+
+        } finally {
+            aggregator.stop();
+        }
+    }
+
 }
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.keyvalues;
+
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.examples.standin.StandInServices;
+import io.greenbus.examples.standin.StandInSettings;
+import io.greenbus.japi.client.service.ModelService;
+
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures write and read throughput of ChunkedValueStore for a large value, by default 100 MB, at
+ * several chunk sizes and numbers of requests in flight.
+ *
+ * Runs against StandInServices, which holds key values in memory and answers after a round-trip
+ * latency plus a transfer time proportional to the size of the request and response. The value is
+ * text-like data that deflates to roughly half its size. No broker is required.
+ */
+public class ChunkedValueBenchmark {
+
+    private static final long ROUND_TRIP_MICROS = 1000;
+    private static final long MICROS_PER_MEGABYTE = 10000;
+
+    public static void main(String[] args) throws Exception {
+
+        final int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+
+        System.out.print("\n=== Chunked Value Benchmark (" + megabytes + " MB) ===\n\n");
+
+        final byte[] data = new byte[megabytes * 1024 * 1024];
+        final Random random = new Random(1234);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(16));
+        }
+
+        final StandInServices services = new StandInServices(new StandInSettings()
+                .setLatencyMicros(ROUND_TRIP_MICROS)
+                .setMicrosPerMegabyte(MICROS_PER_MEGABYTE)
+                .setTransportThreads(8));
+        final ModelService.Client client = services.getModelClient();
+        final Model.ModelUUID entityUuid = services.getModel().getRoot().getUuid();
+
+        try {
+            final int[][] configurations = { {256, 1}, {256, 8}, {1024, 1}, {1024, 8} };
+            for (int[] configuration : configurations) {
+                final int chunkKilobytes = configuration[0];
+                final int maxInFlight = configuration[1];
+                final ChunkedValueStore store = new ChunkedValueStore(client, chunkKilobytes * 1024, maxInFlight, 30000, TimeUnit.MILLISECONDS);
+
+                long start = System.nanoTime();
+                final ChunkedValueStore.Manifest manifest = store.write(entityUuid, "blob", data);
+                final double writeMillis = (System.nanoTime() - start) / 1000000.0;
+
+                start = System.nanoTime();
+                final InputStream in = store.read(entityUuid, "blob");
+                final byte[] buffer = new byte[65536];
+                long total = 0;
+                int offset = 0;
+                boolean matches = true;
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    for (int i = 0; i < read && matches; i++) {
+                        matches = buffer[i] == data[offset + i];
+                    }
+                    offset += read;
+                    total += read;
+                }
+                in.close();
+                final double readMillis = (System.nanoTime() - start) / 1000000.0;
+
+                System.out.println("Chunk " + chunkKilobytes + " KB, in flight " + maxInFlight + ": " + manifest.getChunkCount() + " chunks, ratio " +
+                        String.format("%.2f", (double) manifest.getCompressedLength() / manifest.getLength()));
+                System.out.println("    Write: " + (long) writeMillis + " ms, " + String.format("%.1f", megabytes / (writeMillis / 1000.0)) + " MB/s");
+                System.out.println("    Read: " + (long) readMillis + " ms, " + String.format("%.1f", megabytes / (readMillis / 1000.0)) + " MB/s, " +
+                        "bytes: " + total + ", matches: " + (matches && total == data.length));
+
+                store.delete(entityUuid, "blob");
+            }
+        } finally {
+            services.shutdown();
+        }
+    }
+}
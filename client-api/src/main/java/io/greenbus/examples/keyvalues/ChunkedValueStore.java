@@ -0,0 +1,750 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.keyvalues;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.client.service.proto.ModelRequests;
+import io.greenbus.japi.client.service.ModelService;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Stores large binary values as compressed, chunked entity key values.
+ *
+ * A value is deflated as it is written and the compressed stream is split into chunks of a fixed
+ * size, each stored as a byte array under its own key ("key.chunk.generation.writer.index"). The key
+ * itself holds a manifest listing the chunk count, sizes, a CRC-32 of every chunk and a SHA-256 digest
+ * of the uncompressed value. The manifest is written last, so a reader that fetches it sees either the
+ * previous value or the complete new one.
+ *
+ * The chunks of the value a write replaces are kept until the write after it, and only then deleted;
+ * the manifest records them so that write can find them. A reader therefore has until the value has
+ * been replaced twice to fetch its chunks. One that is slower than that fails with an IOException
+ * when it reaches a deleted chunk, and never returns data mixed from two values, since every write
+ * stores its chunks under keys of its own.
+ *
+ * Each write stores its chunks under its own generation and writer id, so concurrent writers never
+ * overwrite each other's chunks. Only one of them publishes its manifest; the others fail with a
+ * ConcurrentModificationException. A write that fails deletes the chunks it stored.
+ *
+ * Reads fetch the manifest, then fetch the chunks with several requests in flight ahead of the
+ * reader, check each chunk's CRC as it arrives and inflate them as a stream. The digest and length
+ * are checked when the stream reaches its end.
+ */
+public class ChunkedValueStore {
+
+    private static final String MANIFEST_HEADER = "chunked-value/1";
+
+    private final ModelService.Client client;
+    private final int chunkBytes;
+    private final int maxInFlight;
+    private final long timeoutMillis;
+
+    // Keyed by entity UUID and key; generations claimed by writes in progress, and the last one each published
+    private final ConcurrentMap<String, Long> claimed = new ConcurrentHashMap<String, Long>();
+    private final ConcurrentMap<String, Long> published = new ConcurrentHashMap<String, Long>();
+
+    /**
+     * @param client Model service interface
+     * @param chunkBytes Size of each stored chunk of compressed data
+     * @param maxInFlight Maximum number of chunk requests outstanding at once
+     * @param timeout Time allowed for each request
+     * @param unit Unit of the timeout
+     */
+    public ChunkedValueStore(ModelService.Client client, int chunkBytes, int maxInFlight, long timeout, TimeUnit unit) {
+        if (chunkBytes < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("Chunk size and requests in flight must be positive");
+        }
+        this.client = client;
+        this.chunkBytes = chunkBytes;
+        this.maxInFlight = maxInFlight;
+        this.timeoutMillis = unit.toMillis(timeout);
+    }
+
+    /**
+     * Stores a value, replacing any previous value under the key.
+     *
+     * @param entityUuid Entity the value belongs to
+     * @param key Key of the value
+     * @param data Value; read to the end but not closed
+     * @return Manifest of the stored value
+     * @throws Exception If reading the data or a request fails
+     */
+    public Manifest write(Model.ModelUUID entityUuid, String key, InputStream data) throws Exception {
+        final String id = entityUuid.getValue() + "/" + key;
+        final Manifest previous = readManifest(entityUuid, key);
+        final long previousGeneration = previous == null ? 0 : previous.generation;
+        final long generation = claimGeneration(id, previousGeneration);
+        final String writer = UUID.randomUUID().toString();
+
+        final MessageDigest digest = sha256();
+        final ChunkWriter chunks = new ChunkWriter(entityUuid, key, generation, writer);
+        final Deflater compressor = new Deflater(Deflater.BEST_SPEED);
+        final Manifest manifest;
+        try {
+            final DeflaterOutputStream deflater = new DeflaterOutputStream(chunks, compressor, 65536);
+            long length = 0;
+            final byte[] buffer = new byte[65536];
+            int read;
+            while ((read = data.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                deflater.write(buffer, 0, read);
+                length += read;
+            }
+            deflater.finish();
+            chunks.finish();
+
+            manifest = new Manifest(generation, writer, length, chunks.compressedLength, chunkBytes, chunks.crcs(), hex(digest.digest()),
+                    previous == null ? null : new Retained(previous.generation, previous.writer, previous.getChunkCount()));
+            publish(entityUuid, key, id, previous, manifest);
+        } catch (Exception ex) {
+            chunks.discard();
+            throw ex;
+        } finally {
+            compressor.end();
+            claimed.remove(id, generation);
+        }
+
+        // The previous value's chunks stay for readers that fetched its manifest; the ones it kept are no longer needed
+        if (previous != null && previous.retained != null) {
+            deleteChunks(entityUuid, key, previous.retained);
+        }
+        return manifest;
+    }
+
+    /**
+     * Stores a value held in memory, replacing any previous value under the key.
+     */
+    public Manifest write(Model.ModelUUID entityUuid, String key, byte[] data) throws Exception {
+        return write(entityUuid, key, new ByteArrayInputStream(data));
+    }
+
+    /**
+     * Opens a stored value for reading. Chunks are fetched in the background ahead of the reader.
+     * Reads fail with an IOException if a chunk, the length or the digest does not match the manifest.
+     * The stream must be closed to release its inflater.
+     *
+     * @param entityUuid Entity the value belongs to
+     * @param key Key of the value
+     * @return Stream of the uncompressed value, or null if there is no chunked value under the key
+     * @throws Exception If the manifest request fails
+     */
+    public InputStream read(Model.ModelUUID entityUuid, String key) throws Exception {
+        final Manifest manifest = readManifest(entityUuid, key);
+        if (manifest == null) {
+            return null;
+        }
+        final Inflater inflater = new Inflater();
+        return new VerifyingInputStream(new InflaterInputStream(new ChunkReader(entityUuid, key, manifest), inflater, 65536) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    // Not released by InflaterInputStream when the Inflater is supplied
+                    inflater.end();
+                }
+            }
+        }, manifest);
+    }
+
+    /**
+     * Deletes a stored value, its chunks and those of the value it replaced.
+     *
+     * @param entityUuid Entity the value belongs to
+     * @param key Key of the value
+     * @return True if there was a value to delete
+     * @throws Exception If a request fails
+     */
+    public boolean delete(Model.ModelUUID entityUuid, String key) throws Exception {
+        final Manifest manifest = readManifest(entityUuid, key);
+        if (manifest == null) {
+            return false;
+        }
+        client.deleteEntityKeyValues(Arrays.asList(pair(entityUuid, key))).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        published.remove(entityUuid.getValue() + "/" + key);
+        deleteChunks(entityUuid, key, new Retained(manifest.generation, manifest.writer, manifest.getChunkCount()));
+        if (manifest.retained != null) {
+            deleteChunks(entityUuid, key, manifest.retained);
+        }
+        return true;
+    }
+
+    /**
+     * @return The manifest of the value under the key, or null if there is none
+     */
+    public Manifest readManifest(Model.ModelUUID entityUuid, String key) throws Exception {
+        final List<Model.EntityKeyValue> values = client.getEntityKeyValues(Arrays.asList(pair(entityUuid, key)))
+                .get(timeoutMillis, TimeUnit.MILLISECONDS);
+
+        if (values.isEmpty() || !values.get(0).getValue().hasStringValue()) {
+            return null;
+        }
+        return Manifest.parse(values.get(0).getValue().getStringValue());
+    }
+
+    /**
+     * Picks a generation above both the stored one and any claimed by another write of the same key in
+     * progress through this store, so concurrent writers never share chunk keys.
+     */
+    private long claimGeneration(String id, long previousGeneration) {
+        while (true) {
+            final Long last = claimed.get(id);
+            final long next = Math.max(previousGeneration, last == null ? 0 : last) + 1;
+            if (last == null ? claimed.putIfAbsent(id, next) == null : claimed.replace(id, last, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Writes the manifest only if no other writer has replaced the value it was based on. Writers
+     * through this store are ordered by a compare-and-set on the last published generation; the
+     * manifest is read again beforehand to catch writers in other processes.
+     */
+    private void publish(Model.ModelUUID entityUuid, String key, String id, Manifest previous, Manifest manifest) throws Exception {
+        final long expected = previous == null ? 0 : previous.generation;
+        final Long replaced;
+        while (true) {
+            final Long current = published.get(id);
+            if (current != null && current > expected) {
+                throw new ConcurrentModificationException("Value " + key + " was replaced by generation " + current + " while writing");
+            }
+            if (current == null ? published.putIfAbsent(id, manifest.generation) == null : published.replace(id, current, manifest.generation)) {
+                replaced = current;
+                break;
+            }
+        }
+
+        boolean stored = false;
+        try {
+            final Manifest latest = readManifest(entityUuid, key);
+            if (!sameVersion(latest, previous)) {
+                throw new ConcurrentModificationException("Value " + key + " was " + (latest == null ? "deleted" : "replaced by generation " + latest.generation) + " while writing");
+            }
+
+            final Model.EntityKeyValue manifestValue = Model.EntityKeyValue.newBuilder()
+                    .setUuid(entityUuid)
+                    .setKey(key)
+                    .setValue(Model.StoredValue.newBuilder().setStringValue(manifest.format()))
+                    .build();
+            client.putEntityKeyValues(Arrays.asList(manifestValue)).get(timeoutMillis, TimeUnit.MILLISECONDS);
+            stored = true;
+        } finally {
+            if (!stored) {
+                if (replaced == null) {
+                    published.remove(id, manifest.generation);
+                } else {
+                    published.replace(id, manifest.generation, replaced);
+                }
+            }
+        }
+    }
+
+    private static boolean sameVersion(Manifest a, Manifest b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.generation == b.generation && a.writer.equals(b.writer);
+    }
+
+    private void deleteChunks(Model.ModelUUID entityUuid, String key, Retained chunks) throws Exception {
+        final List<ModelRequests.EntityKeyPair> pairs = new ArrayList<ModelRequests.EntityKeyPair>(chunks.chunkCount);
+        for (int i = 0; i < chunks.chunkCount; i++) {
+            pairs.add(pair(entityUuid, chunkKey(key, chunks.generation, chunks.writer, i)));
+        }
+        for (int i = 0; i < pairs.size(); i += 1000) {
+            client.deleteEntityKeyValues(pairs.subList(i, Math.min(i + 1000, pairs.size()))).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static String chunkKey(String key, long generation, String writer, int index) {
+        return key + ".chunk." + generation + "." + writer + "." + index;
+    }
+
+    private static ModelRequests.EntityKeyPair pair(Model.ModelUUID uuid, String key) {
+        return ModelRequests.EntityKeyPair.newBuilder()
+                .setUuid(uuid)
+                .setKey(key)
+                .build();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Collects compressed output into chunks and stores each one as it fills, with a bounded number
+     * of puts in flight.
+     */
+    private class ChunkWriter extends OutputStream {
+        private final Model.ModelUUID entityUuid;
+        private final String key;
+        private final long generation;
+        private final String writer;
+        private final Semaphore permits = new Semaphore(maxInFlight);
+        private final List<ListenableFuture<List<Model.EntityKeyValue>>> puts = new ArrayList<ListenableFuture<List<Model.EntityKeyValue>>>();
+        private final List<Long> crcs = new ArrayList<Long>();
+
+        private byte[] buffer = new byte[chunkBytes];
+        private int position = 0;
+        private long compressedLength = 0;
+
+        ChunkWriter(Model.ModelUUID entityUuid, String key, long generation, String writer) {
+            this.entityUuid = entityUuid;
+            this.key = key;
+            this.generation = generation;
+            this.writer = writer;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                final int count = Math.min(length, buffer.length - position);
+                System.arraycopy(bytes, offset, buffer, position, count);
+                position += count;
+                offset += count;
+                length -= count;
+                if (position == buffer.length) {
+                    emit();
+                }
+            }
+        }
+
+        void finish() throws Exception {
+            if (position > 0 || crcs.isEmpty()) {
+                emit();
+            }
+            for (ListenableFuture<List<Model.EntityKeyValue>> put : puts) {
+                put.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * Deletes the chunks of a write that failed, once their puts have settled. Best effort, so the
+         * original failure is the one reported.
+         */
+        void discard() {
+            for (ListenableFuture<List<Model.EntityKeyValue>> put : puts) {
+                try {
+                    put.get(timeoutMillis, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception ex) {
+                    // Failed or still outstanding; deleted below either way
+                }
+            }
+            final List<ModelRequests.EntityKeyPair> pairs = new ArrayList<ModelRequests.EntityKeyPair>(crcs.size());
+            for (int i = 0; i < crcs.size(); i++) {
+                pairs.add(pair(entityUuid, chunkKey(key, generation, writer, i)));
+            }
+            try {
+                for (int i = 0; i < pairs.size(); i += 1000) {
+                    client.deleteEntityKeyValues(pairs.subList(i, Math.min(i + 1000, pairs.size()))).get(timeoutMillis, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (Exception ex) {
+                // Left for a later delete of the value; the manifest never referred to them
+            }
+        }
+
+        long[] crcs() {
+            final long[] result = new long[crcs.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = crcs.get(i);
+            }
+            return result;
+        }
+
+        private void emit() throws IOException {
+            final CRC32 crc = new CRC32();
+            crc.update(buffer, 0, position);
+
+            final Model.EntityKeyValue chunk = Model.EntityKeyValue.newBuilder()
+                    .setUuid(entityUuid)
+                    .setKey(chunkKey(key, generation, writer, crcs.size()))
+                    .setValue(Model.StoredValue.newBuilder().setByteArrayValue(ByteString.copyFrom(buffer, 0, position)))
+                    .build();
+
+            crcs.add(crc.getValue());
+            compressedLength += position;
+            position = 0;
+
+            try {
+                if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                    throw new IOException("Timed out waiting to store chunk");
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while storing chunks", ex);
+            }
+
+            final ListenableFuture<List<Model.EntityKeyValue>> put = client.putEntityKeyValues(Arrays.asList(chunk));
+            put.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    permits.release();
+                }
+            }, MoreExecutors.sameThreadExecutor());
+            puts.add(put);
+
+            // Fail early rather than at finish() if a put has already failed
+            if (put.isDone()) {
+                try {
+                    put.get();
+                } catch (Exception ex) {
+                    throw new IOException("Failed to store chunk", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Presents the stored chunks as one stream of compressed bytes, fetching up to maxInFlight chunks
+     * ahead and checking each chunk's CRC.
+     */
+    private class ChunkReader extends InputStream {
+        private final Model.ModelUUID entityUuid;
+        private final String key;
+        private final Manifest manifest;
+        private final ArrayDeque<ListenableFuture<List<Model.EntityKeyValue>>> ahead = new ArrayDeque<ListenableFuture<List<Model.EntityKeyValue>>>();
+
+        private int nextRequest = 0;
+        private int nextChunk = 0;
+        private byte[] current = new byte[0];
+        private int position = 0;
+
+        ChunkReader(Model.ModelUUID entityUuid, String key, Manifest manifest) {
+            this.entityUuid = entityUuid;
+            this.key = key;
+            this.manifest = manifest;
+            fill();
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (position == current.length && !nextChunk()) {
+                return -1;
+            }
+            final int count = Math.min(length, current.length - position);
+            System.arraycopy(current, position, bytes, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+            for (ListenableFuture<List<Model.EntityKeyValue>> future : ahead) {
+                future.cancel(false);
+            }
+            ahead.clear();
+        }
+
+        private void fill() {
+            while (ahead.size() < maxInFlight && nextRequest < manifest.getChunkCount()) {
+                ahead.addLast(client.getEntityKeyValues(Arrays.asList(pair(entityUuid, chunkKey(key, manifest.generation, manifest.writer, nextRequest)))));
+                nextRequest++;
+            }
+        }
+
+        private boolean nextChunk() throws IOException {
+            if (nextChunk >= manifest.getChunkCount()) {
+                return false;
+            }
+
+            final List<Model.EntityKeyValue> values;
+            try {
+                values = ahead.pollFirst().get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading chunk " + nextChunk, ex);
+            } catch (ExecutionException ex) {
+                throw new IOException("Failed to read chunk " + nextChunk, ex.getCause());
+            } catch (TimeoutException ex) {
+                throw new IOException("Timed out reading chunk " + nextChunk, ex);
+            }
+            fill();
+
+            if (values.isEmpty()) {
+                throw new IOException("Chunk " + nextChunk + " of " + key + " is missing");
+            }
+            final byte[] bytes = values.get(0).getValue().getByteArrayValue().toByteArray();
+
+            final CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length);
+            if (crc.getValue() != manifest.crcs[nextChunk]) {
+                throw new IOException("Chunk " + nextChunk + " of " + key + " failed its CRC check");
+            }
+
+            current = bytes;
+            position = 0;
+            nextChunk++;
+            return true;
+        }
+    }
+
+    /**
+     * Checks the length and digest of the uncompressed stream when it reaches its end.
+     */
+    private static class VerifyingInputStream extends InputStream {
+        private final InputStream in;
+        private final Manifest manifest;
+        private final MessageDigest digest = sha256();
+        private long length = 0;
+        private boolean verified = false;
+
+        VerifyingInputStream(InputStream in, Manifest manifest) {
+            this.in = in;
+            this.manifest = manifest;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int count) throws IOException {
+            final int read = in.read(bytes, offset, count);
+            if (read == -1) {
+                verify();
+                return -1;
+            }
+            digest.update(bytes, offset, read);
+            length += read;
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private void verify() throws IOException {
+            if (verified) {
+                return;
+            }
+            if (length != manifest.length) {
+                throw new IOException("Value length " + length + " does not match manifest length " + manifest.length);
+            }
+            if (!hex(digest.digest()).equals(manifest.sha256)) {
+                throw new IOException("Value digest does not match manifest");
+            }
+            verified = true;
+        }
+    }
+
+    /**
+     * Chunks of a replaced value, kept until the next write.
+     */
+    private static class Retained {
+        private final long generation;
+        private final String writer;
+        private final int chunkCount;
+
+        Retained(long generation, String writer, int chunkCount) {
+            this.generation = generation;
+            this.writer = writer;
+            this.chunkCount = chunkCount;
+        }
+    }
+
+    /**
+     * Description of a stored value: its chunks and integrity checks.
+     */
+    public static class Manifest {
+        private final long generation;
+        private final String writer;
+        private final long length;
+        private final long compressedLength;
+        private final int chunkBytes;
+        private final long[] crcs;
+        private final String sha256;
+        private final Retained retained;
+
+        Manifest(long generation, String writer, long length, long compressedLength, int chunkBytes, long[] crcs, String sha256, Retained retained) {
+            this.generation = generation;
+            this.writer = writer;
+            this.length = length;
+            this.compressedLength = compressedLength;
+            this.chunkBytes = chunkBytes;
+            this.crcs = crcs;
+            this.sha256 = sha256;
+            this.retained = retained;
+        }
+
+        public long getGeneration() {
+            return generation;
+        }
+
+        /**
+         * @return Uncompressed length of the value in bytes
+         */
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * @return Total size of the stored chunks in bytes
+         */
+        public long getCompressedLength() {
+            return compressedLength;
+        }
+
+        public int getChunkCount() {
+            return crcs.length;
+        }
+
+        public int getChunkBytes() {
+            return chunkBytes;
+        }
+
+        /**
+         * @return SHA-256 digest of the uncompressed value, in hex
+         */
+        public String getSha256() {
+            return sha256;
+        }
+
+        String format() {
+            final StringBuilder sb = new StringBuilder();
+            sb.append(MANIFEST_HEADER).append('\n');
+            sb.append("generation=").append(generation).append('\n');
+            sb.append("writer=").append(writer).append('\n');
+            sb.append("length=").append(length).append('\n');
+            sb.append("compressedLength=").append(compressedLength).append('\n');
+            sb.append("chunkBytes=").append(chunkBytes).append('\n');
+            sb.append("sha256=").append(sha256).append('\n');
+            sb.append("crc32=");
+            for (int i = 0; i < crcs.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(Long.toHexString(crcs[i]));
+            }
+            sb.append('\n');
+            if (retained != null) {
+                sb.append("retained=").append(retained.generation).append(',').append(retained.writer).append(',').append(retained.chunkCount).append('\n');
+            }
+            return sb.toString();
+        }
+
+        static Manifest parse(String text) {
+            final String[] lines = text.split("\n");
+            if (lines.length == 0 || !lines[0].equals(MANIFEST_HEADER)) {
+                return null;
+            }
+            long generation = 0;
+            String writer = "";
+            long length = 0;
+            long compressedLength = 0;
+            int chunkBytes = 0;
+            String sha256 = "";
+            long[] crcs = new long[0];
+            Retained retained = null;
+
+            for (int i = 1; i < lines.length; i++) {
+                final int split = lines[i].indexOf('=');
+                if (split < 0) {
+                    continue;
+                }
+                final String name = lines[i].substring(0, split);
+                final String value = lines[i].substring(split + 1);
+                if (name.equals("generation")) {
+                    generation = Long.parseLong(value);
+                } else if (name.equals("writer")) {
+                    writer = value;
+                } else if (name.equals("length")) {
+                    length = Long.parseLong(value);
+                } else if (name.equals("compressedLength")) {
+                    compressedLength = Long.parseLong(value);
+                } else if (name.equals("chunkBytes")) {
+                    chunkBytes = Integer.parseInt(value);
+                } else if (name.equals("sha256")) {
+                    sha256 = value;
+                } else if (name.equals("crc32") && !value.isEmpty()) {
+                    final String[] parts = value.split(",");
+                    crcs = new long[parts.length];
+                    for (int j = 0; j < parts.length; j++) {
+                        crcs[j] = Long.parseLong(parts[j], 16);
+                    }
+                } else if (name.equals("retained")) {
+                    final String[] parts = value.split(",");
+                    retained = new Retained(Long.parseLong(parts[0]), parts[1], Integer.parseInt(parts[2]));
+                }
+            }
+            if (writer.isEmpty()) {
+                // Without a writer id its chunks can't be found
+                return null;
+            }
+            return new Manifest(generation, writer, length, compressedLength, chunkBytes, crcs, sha256, retained);
+        }
+    }
+}
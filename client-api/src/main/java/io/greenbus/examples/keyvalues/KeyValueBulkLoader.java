@@ -0,0 +1,526 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.keyvalues;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.greenbus.client.service.proto.Envelope;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.client.service.proto.ModelRequests;
+import io.greenbus.japi.client.service.ModelService;
+import io.greenbus.msg.japi.Subscription;
+import io.greenbus.msg.japi.SubscriptionHandler;
+import io.greenbus.msg.japi.SubscriptionResult;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Loads the key values of many entities and keeps a local copy of them.
+ *
+ * Keys and values are fetched with getEntityKeys and getEntityKeyValues in chunks, with several
+ * requests in flight at a time, so large models do not run into message size limits. The cache holds
+ * every EntityKeyValue with a hash of its content.
+ *
+ * Subscriptions to key value changes keep cached values current between syncs. The entities are
+ * subscribed to in chunks as well, and the values returned with each subscription are cached, so a
+ * sync after subscribe() only lists the keys, and fetches the values of keys that are new, or that were marked dirty by
+ * invalidate() (for example after the subscription was interrupted). Values that are fetched again
+ * are compared by content hash, so the sync can report which actually changed.
+ *
+ * Notifications applied while a sync is running take precedence over what the sync listed or fetched.
+ * A removal leaves a tombstone in the cache until every sync that started before it has finished, so a
+ * value fetched before the removal can't bring the key back.
+ */
+public class KeyValueBulkLoader implements SubscriptionHandler<Model.EntityKeyValueNotification> {
+
+    private final ModelService.Client client;
+    private final int chunkSize;
+    private final int maxInFlight;
+    private final long timeoutNanos;
+
+    private final Map<ModelRequests.EntityKeyPair, Entry> cache = new HashMap<ModelRequests.EntityKeyPair, Entry>();
+    private final List<Subscription<Model.EntityKeyValueNotification>> subscriptions = new ArrayList<Subscription<Model.EntityKeyValueNotification>>();
+    private final List<Long> syncStarts = new ArrayList<Long>();
+    private long sequence = 0;
+    private long notificationCount = 0;
+    private int tombstoneCount = 0;
+
+    /**
+     * @param client Model service interface
+     * @param chunkSize Maximum number of entities or keys per request
+     * @param maxInFlight Maximum number of requests outstanding at once
+     * @param timeout Time allowed for each phase of a sync
+     * @param unit Unit of the timeout
+     */
+    public KeyValueBulkLoader(ModelService.Client client, int chunkSize, int maxInFlight, long timeout, TimeUnit unit) {
+        if (chunkSize < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("Chunk size and requests in flight must be positive");
+        }
+        this.client = client;
+        this.chunkSize = chunkSize;
+        this.maxInFlight = maxInFlight;
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Subscribes to changes to the key values of a set of entities, one subscription per chunk of
+     * entities, and caches the current values returned with them. Changes are applied to the cache
+     * as they arrive. Replaces any earlier subscriptions.
+     *
+     * @param entityUuids Entities to follow
+     * @throws Exception If a subscription request fails or they time out; none of the subscriptions are kept
+     */
+    public void subscribe(List<Model.ModelUUID> entityUuids) throws Exception {
+        final List<ListenableFuture<SubscriptionResult<List<Model.EntityKeyValue>, Model.EntityKeyValueNotification>>> sent =
+                new ArrayList<ListenableFuture<SubscriptionResult<List<Model.EntityKeyValue>, Model.EntityKeyValueNotification>>>();
+
+        final List<SubscriptionResult<List<Model.EntityKeyValue>, Model.EntityKeyValueNotification>> results;
+        try {
+            results = chunkedResults(entityUuids, new int[1], new ChunkRequest<Model.ModelUUID, SubscriptionResult<List<Model.EntityKeyValue>, Model.EntityKeyValueNotification>>() {
+                @Override
+                public ListenableFuture<SubscriptionResult<List<Model.EntityKeyValue>, Model.EntityKeyValueNotification>> send(List<Model.ModelUUID> chunk) {
+                    final ListenableFuture<SubscriptionResult<List<Model.EntityKeyValue>, Model.EntityKeyValueNotification>> future =
+                            client.subscribeToEntityKeyValues(ModelRequests.EntityKeyValueSubscriptionQuery.newBuilder()
+                                    .addAllUuids(chunk)
+                                    .build());
+                    sent.add(future);
+                    return future;
+                }
+            });
+        } catch (Exception ex) {
+            // Chunks that were or will yet be subscribed would deliver changes for only part of the entities
+            for (ListenableFuture<SubscriptionResult<List<Model.EntityKeyValue>, Model.EntityKeyValueNotification>> future : sent) {
+                release(future);
+            }
+            throw ex;
+        }
+
+        synchronized (this) {
+            cancel();
+            for (SubscriptionResult<List<Model.EntityKeyValue>, Model.EntityKeyValueNotification> result : results) {
+                subscriptions.add(result.getSubscription());
+                for (Model.EntityKeyValue keyValue : result.getResult()) {
+                    put(keyValue, ++sequence);
+                }
+            }
+        }
+        for (SubscriptionResult<List<Model.EntityKeyValue>, Model.EntityKeyValueNotification> result : results) {
+            result.getSubscription().start(this);
+        }
+    }
+
+    /**
+     * Cancels the subscriptions. Cached values are kept but may become stale.
+     */
+    public synchronized void cancel() {
+        for (Subscription<Model.EntityKeyValueNotification> subscription : subscriptions) {
+            subscription.cancel();
+        }
+        subscriptions.clear();
+    }
+
+    @Override
+    public synchronized void handle(Model.EntityKeyValueNotification notification) {
+        notificationCount++;
+        final Model.EntityKeyValue keyValue = notification.getValue();
+        if (notification.getEventType() == Envelope.SubscriptionEventType.REMOVED) {
+            final ModelRequests.EntityKeyPair pair = pair(keyValue.getUuid(), keyValue.getKey());
+            remove(pair);
+            if (!syncStarts.isEmpty()) {
+                // A running sync may already have listed or fetched the key
+                cache.put(pair, new Entry(null, 0, ++sequence));
+                tombstoneCount++;
+            }
+        } else {
+            put(keyValue, ++sequence);
+        }
+    }
+
+    /**
+     * Marks every cached value dirty, so the next sync fetches it again.
+     */
+    public synchronized void invalidate() {
+        for (Entry entry : cache.values()) {
+            entry.dirty = true;
+        }
+    }
+
+    /**
+     * Brings the cache up to date for a set of entities: lists their keys, drops keys that no longer
+     * exist, and fetches the values of new and dirty keys.
+     *
+     * @param entityUuids Entities to sync
+     * @return Counts of what the sync did
+     * @throws Exception If a request fails or a phase times out
+     */
+    public SyncResult sync(List<Model.ModelUUID> entityUuids) throws Exception {
+        final Long startSequence;
+        synchronized (this) {
+            startSequence = sequence;
+            syncStarts.add(startSequence);
+        }
+        try {
+            return sync(entityUuids, startSequence);
+        } finally {
+            synchronized (this) {
+                syncStarts.remove(startSequence);
+                purgeTombstones();
+            }
+        }
+    }
+
+    private SyncResult sync(List<Model.ModelUUID> entityUuids, long startSequence) throws Exception {
+        final long start = System.nanoTime();
+        final int[] requests = new int[1];
+
+        final List<ModelRequests.EntityKeyPair> keys = chunked(entityUuids, requests, new ChunkRequest<Model.ModelUUID, List<ModelRequests.EntityKeyPair>>() {
+            @Override
+            public ListenableFuture<List<ModelRequests.EntityKeyPair>> send(List<Model.ModelUUID> chunk) {
+                return client.getEntityKeys(chunk);
+            }
+        });
+
+        final Set<Model.ModelUUID> entitySet = new HashSet<Model.ModelUUID>(entityUuids);
+        final Set<ModelRequests.EntityKeyPair> keySet = new HashSet<ModelRequests.EntityKeyPair>(keys);
+        final List<ModelRequests.EntityKeyPair> toFetch = new ArrayList<ModelRequests.EntityKeyPair>();
+        int removed = 0;
+
+        synchronized (this) {
+            final List<ModelRequests.EntityKeyPair> gone = new ArrayList<ModelRequests.EntityKeyPair>();
+            for (Map.Entry<ModelRequests.EntityKeyPair, Entry> cached : cache.entrySet()) {
+                // A key added by a notification since the listing was taken is missing from it, not gone
+                if (cached.getValue().sequence > startSequence || cached.getValue().keyValue == null) {
+                    continue;
+                }
+                if (entitySet.contains(cached.getKey().getUuid()) && !keySet.contains(cached.getKey())) {
+                    gone.add(cached.getKey());
+                }
+            }
+            for (ModelRequests.EntityKeyPair pair : gone) {
+                cache.remove(pair);
+                removed++;
+            }
+
+            for (ModelRequests.EntityKeyPair pair : keys) {
+                final Entry entry = cache.get(pair);
+                if (entry == null || entry.dirty || (entry.keyValue == null && entry.sequence <= startSequence)) {
+                    toFetch.add(pair);
+                }
+            }
+        }
+
+        final List<Model.EntityKeyValue> values = chunked(toFetch, requests, new ChunkRequest<ModelRequests.EntityKeyPair, List<Model.EntityKeyValue>>() {
+            @Override
+            public ListenableFuture<List<Model.EntityKeyValue>> send(List<ModelRequests.EntityKeyPair> chunk) {
+                return client.getEntityKeyValues(chunk);
+            }
+        });
+
+        int added = 0;
+        int changed = 0;
+        int unchanged = 0;
+        synchronized (this) {
+            for (Model.EntityKeyValue keyValue : values) {
+                final Entry entry = cache.get(pair(keyValue.getUuid(), keyValue.getKey()));
+
+                // A notification applied since the sync started, including a removal, is newer than the fetched value
+                if (entry != null && entry.sequence > startSequence) {
+                    continue;
+                }
+
+                final long hash = hash(keyValue.getValue());
+                if (entry == null || entry.keyValue == null) {
+                    added++;
+                } else if (entry.hash != hash) {
+                    changed++;
+                } else {
+                    unchanged++;
+                }
+                put(keyValue, entry == null ? 0 : entry.sequence);
+            }
+        }
+
+        return new SyncResult(keys.size(), toFetch.size(), added, changed, unchanged, removed, requests[0], System.nanoTime() - start);
+    }
+
+    /**
+     * @param entityUuid Entity
+     * @param key Key
+     * @return The cached key value, or null
+     */
+    public synchronized Model.EntityKeyValue get(Model.ModelUUID entityUuid, String key) {
+        final Entry entry = cache.get(pair(entityUuid, key));
+        return entry == null ? null : entry.keyValue;
+    }
+
+    /**
+     * @return Copy of every cached key value
+     */
+    public synchronized List<Model.EntityKeyValue> getAll() {
+        final List<Model.EntityKeyValue> all = new ArrayList<Model.EntityKeyValue>(cache.size() - tombstoneCount);
+        for (Entry entry : cache.values()) {
+            if (entry.keyValue != null) {
+                all.add(entry.keyValue);
+            }
+        }
+        return all;
+    }
+
+    /**
+     * @param entityUuid Entity
+     * @param key Key
+     * @return Content hash of the cached value, or 0 if not cached
+     */
+    public synchronized long getHash(Model.ModelUUID entityUuid, String key) {
+        final Entry entry = cache.get(pair(entityUuid, key));
+        return entry == null ? 0 : entry.hash;
+    }
+
+    public synchronized int size() {
+        return cache.size() - tombstoneCount;
+    }
+
+    /**
+     * @return Number of subscription notifications applied to the cache
+     */
+    public synchronized long getNotificationCount() {
+        return notificationCount;
+    }
+
+    private void put(Model.EntityKeyValue keyValue, long seq) {
+        remove(pair(keyValue.getUuid(), keyValue.getKey()));
+        cache.put(pair(keyValue.getUuid(), keyValue.getKey()), new Entry(keyValue, hash(keyValue.getValue()), seq));
+    }
+
+    private void remove(ModelRequests.EntityKeyPair pair) {
+        final Entry entry = cache.remove(pair);
+        if (entry != null && entry.keyValue == null) {
+            tombstoneCount--;
+        }
+    }
+
+    /**
+     * Drops the tombstones that no running sync started before.
+     */
+    private void purgeTombstones() {
+        if (tombstoneCount == 0) {
+            return;
+        }
+        long oldestStart = Long.MAX_VALUE;
+        for (Long start : syncStarts) {
+            oldestStart = Math.min(oldestStart, start);
+        }
+        final Iterator<Entry> iterator = cache.values().iterator();
+        while (iterator.hasNext()) {
+            final Entry entry = iterator.next();
+            if (entry.keyValue == null && entry.sequence <= oldestStart) {
+                iterator.remove();
+                tombstoneCount--;
+            }
+        }
+    }
+
+    private static ModelRequests.EntityKeyPair pair(Model.ModelUUID uuid, String key) {
+        return ModelRequests.EntityKeyPair.newBuilder()
+                .setUuid(uuid)
+                .setKey(key)
+                .build();
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the serialized value.
+     */
+    static long hash(Model.StoredValue value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.toByteArray()) {
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Cancels the subscription once the request completes, if it succeeds.
+     */
+    private static void release(final ListenableFuture<SubscriptionResult<List<Model.EntityKeyValue>, Model.EntityKeyValueNotification>> future) {
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    future.get().getSubscription().cancel();
+                } catch (Exception ignored) {
+                }
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    private interface ChunkRequest<I, R> {
+        ListenableFuture<R> send(List<I> chunk);
+    }
+
+    private <I, O> List<O> chunked(List<I> inputs, int[] requests, ChunkRequest<I, List<O>> request) throws Exception {
+        final List<O> results = new ArrayList<O>();
+        for (List<O> chunk : chunkedResults(inputs, requests, request)) {
+            results.addAll(chunk);
+        }
+        return results;
+    }
+
+    /**
+     * Sends a request per chunk of the inputs, with a bounded number in flight, and waits for all of them.
+     *
+     * @return Result of every chunk, in order
+     */
+    private <I, R> List<R> chunkedResults(List<I> inputs, int[] requests, ChunkRequest<I, R> request) throws Exception {
+        final long deadline = System.nanoTime() + timeoutNanos;
+        final Semaphore permits = new Semaphore(maxInFlight);
+        final Runnable release = new Runnable() {
+            @Override
+            public void run() {
+                permits.release();
+            }
+        };
+
+        final List<ListenableFuture<R>> futures = new ArrayList<ListenableFuture<R>>();
+        try {
+            for (int i = 0; i < inputs.size(); i += chunkSize) {
+                if (!permits.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    throw new TimeoutException("Timed out waiting for chunked requests");
+                }
+                final ListenableFuture<R> future;
+                try {
+                    future = request.send(new ArrayList<I>(inputs.subList(i, Math.min(i + chunkSize, inputs.size()))));
+                } catch (RuntimeException ex) {
+                    permits.release();
+                    throw ex;
+                }
+                future.addListener(release, MoreExecutors.sameThreadExecutor());
+                futures.add(future);
+                requests[0]++;
+            }
+
+            final List<R> results = new ArrayList<R>(futures.size());
+            for (ListenableFuture<R> future : futures) {
+                results.add(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            }
+            return results;
+
+        } catch (Exception ex) {
+            for (ListenableFuture<R> future : futures) {
+                future.cancel(false);
+            }
+            throw ex;
+        }
+    }
+
+    private static class Entry {
+        // Null for a tombstone
+        private final Model.EntityKeyValue keyValue;
+        private final long hash;
+        private final long sequence;
+        private boolean dirty = false;
+
+        Entry(Model.EntityKeyValue keyValue, long hash, long sequence) {
+            this.keyValue = keyValue;
+            this.hash = hash;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Counts of what a sync did.
+     */
+    public static class SyncResult {
+        private final int keyCount;
+        private final int fetchedCount;
+        private final int addedCount;
+        private final int changedCount;
+        private final int unchangedCount;
+        private final int removedCount;
+        private final int requestCount;
+        private final long elapsedNanos;
+
+        SyncResult(int keyCount, int fetchedCount, int addedCount, int changedCount, int unchangedCount, int removedCount, int requestCount, long elapsedNanos) {
+            this.keyCount = keyCount;
+            this.fetchedCount = fetchedCount;
+            this.addedCount = addedCount;
+            this.changedCount = changedCount;
+            this.unchangedCount = unchangedCount;
+            this.removedCount = removedCount;
+            this.requestCount = requestCount;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return Number of keys the entities have
+         */
+        public int getKeyCount() {
+            return keyCount;
+        }
+
+        /**
+         * @return Number of values fetched, because they were new or dirty
+         */
+        public int getFetchedCount() {
+            return fetchedCount;
+        }
+
+        public int getAddedCount() {
+            return addedCount;
+        }
+
+        /**
+         * @return Number of fetched values whose content differed from the cache
+         */
+        public int getChangedCount() {
+            return changedCount;
+        }
+
+        /**
+         * @return Number of fetched values whose content matched the cache
+         */
+        public int getUnchangedCount() {
+            return unchangedCount;
+        }
+
+        public int getRemovedCount() {
+            return removedCount;
+        }
+
+        /**
+         * @return Number of getEntityKeys and getEntityKeyValues requests sent
+         */
+        public int getRequestCount() {
+            return requestCount;
+        }
+
+        public double getElapsedMillis() {
+            return elapsedNanos / 1000000.0;
+        }
+    }
+}
@@ -23,9 +23,12 @@ import io.greenbus.client.service.proto.Model;
 import io.greenbus.client.service.proto.ModelRequests;
 import io.greenbus.japi.client.service.ModelService;
 
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -151,4 +154,116 @@ public class KeyValuesExample {
 
     }
 
+    /**
+     * Bulk Load Key Values
+     *
+     * Subscribes to the key values of every entity in chunks of 500 entities, with up to four
+     * requests in flight, which loads their current values and keeps them current. A sync then only
+     * lists the keys, since no values are new or dirty, until the cache is invalidated and every
+     * value is fetched again in chunks of 500 keys.
+     *
+     * @param session Logged-in Session object
+     * @throws Exception
+     */
+    public static void bulkLoadKeyValues(Session session) throws Exception {
+
+        System.out.print("\n=== Bulk Load Key Values ===\n\n");
+
+        // Get service interface for the model
+        final ModelService.Client client = ModelService.client(session);
+
+        // Get entities in the system
+        List<Model.Entity> entities = client.entityQuery(ModelRequests.EntityQuery.newBuilder().build()).get(5000, TimeUnit.MILLISECONDS);
+
+        List<Model.ModelUUID> entityUuids = new ArrayList<Model.ModelUUID>();
+        for (Model.Entity entity : entities) {
+            entityUuids.add(entity.getUuid());
+        }
+
+        final KeyValueBulkLoader loader = new KeyValueBulkLoader(client, 500, 4, 30000, TimeUnit.MILLISECONDS);
+
+        try {
+            // Follow changes; the subscriptions return the current values
+            loader.subscribe(entityUuids);
+            System.out.println("Subscribed - Cached key values: " + loader.size());
+
+            // Values arrived with the subscriptions and changes arrive through them, so nothing needs fetching
+            final KeyValueBulkLoader.SyncResult first = loader.sync(entityUuids);
+            System.out.println("First sync - Keys: " + first.getKeyCount() + ", Fetched: " + first.getFetchedCount() +
+                    ", Requests: " + first.getRequestCount() + ", Time: " + first.getElapsedMillis() + " ms");
+
+            // Still nothing to fetch while the subscriptions are live
+            final KeyValueBulkLoader.SyncResult second = loader.sync(entityUuids);
+            System.out.println("Second sync - Keys: " + second.getKeyCount() + ", Fetched: " + second.getFetchedCount() +
+                    ", Requests: " + second.getRequestCount() + ", Time: " + second.getElapsedMillis() + " ms");
+
+            // After an interruption, fetch everything again but only report real changes
+            loader.invalidate();
+            final KeyValueBulkLoader.SyncResult third = loader.sync(entityUuids);
+            System.out.println("After invalidate - Fetched: " + third.getFetchedCount() + ", Changed: " + third.getChangedCount() +
+                    ", Unchanged: " + third.getUnchangedCount());
+
+        } finally {
+            loader.cancel();
+        }
+
+        System.out.println("Cached key values: " + loader.size());
+    }
+
+    /**
+     * Store Large Value
+     *
+     * Stores a 4 MB value on an entity as compressed 256 KB chunks with a manifest, reads it back
+     * as a stream with four chunk requests in flight and checks it against the original, then
+     * deletes it.
+     *
+     * @param session Logged-in Session object
+     * @throws Exception
+     */
+    public static void storeLargeValue(Session session) throws Exception {
+
+        System.out.print("\n=== Store Large Value ===\n\n");
+
+        // Get service interface for the model
+        final ModelService.Client client = ModelService.client(session);
+
+        // Get an Entity to attach the value to
+        Model.Entity entity = client.entityQuery(ModelRequests.EntityQuery.newBuilder()
+                .setPagingParams(ModelRequests.EntityPagingParams.newBuilder()
+                        .setPageSize(1))
+                .build())
+                .get(5000, TimeUnit.MILLISECONDS)
+                .get(0);
+
+        // A value that compresses moderately well
+        final byte[] data = new byte[4 * 1024 * 1024];
+        final Random random = new Random(0);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(16));
+        }
+
+        final ChunkedValueStore store = new ChunkedValueStore(client, 256 * 1024, 4, 5000, TimeUnit.MILLISECONDS);
+
+        final ChunkedValueStore.Manifest manifest = store.write(entity.getUuid(), "exampleLargeValue", data);
+        System.out.println("Stored - Length: " + manifest.getLength() + ", Compressed: " + manifest.getCompressedLength() +
+                ", Chunks: " + manifest.getChunkCount() + ", SHA-256: " + manifest.getSha256());
+
+        // Read back as a stream; the digest is checked when the stream ends
+        final InputStream in = store.read(entity.getUuid(), "exampleLargeValue");
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+        try {
+            final byte[] buffer = new byte[65536];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        System.out.println("Read back " + out.size() + " bytes, matches: " + Arrays.equals(data, out.toByteArray()));
+
+        store.delete(entity.getUuid(), "exampleLargeValue");
+        System.out.println("Deleted");
+    }
+
 }
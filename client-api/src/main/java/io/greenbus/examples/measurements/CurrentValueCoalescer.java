@@ -0,0 +1,371 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.measurements;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import io.greenbus.client.service.proto.Measurements;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.japi.client.service.MeasurementService;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coalesces concurrent getCurrentValues calls into batched requests.
+ *
+ * Callers each ask for a few points and receive a future. Requests arriving within a short batch
+ * window, up to a maximum number of points, are merged into a single getCurrentValues request with
+ * duplicate points removed. When the response arrives, each caller's future is completed with just
+ * the values it asked for.
+ *
+ * The batch window adapts to load: it shrinks towards the minimum when requests arrive alone (waiting
+ * buys nothing) or batches fill up before the window closes, and grows towards the maximum while
+ * waiting is still collecting additional requests.
+ */
+public class CurrentValueCoalescer {
+
+    private final MeasurementService.Client client;
+    private final int maxBatchSize;
+    private final long minWindowNanos;
+    private final long maxWindowNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition arrived = lock.newCondition();
+    private final Condition full = lock.newCondition();
+    private final ArrayDeque<Request> pending = new ArrayDeque<Request>();
+    private final Thread flusher;
+
+    private int pendingPoints = 0;
+    private long windowNanos;
+    private boolean running = true;
+
+    private long requestCount = 0;
+    private long requestedPoints = 0;
+    private long batchCount = 0;
+    private long batchedPoints = 0;
+    private long fullBatchCount = 0;
+
+    /**
+     * @param client Measurement service interface
+     * @param maxBatchSize Maximum number of points in a single batched request
+     * @param minWindow Smallest batch window the coalescer adapts down to
+     * @param maxWindow Largest batch window the coalescer adapts up to
+     * @param unit Unit of the batch windows
+     */
+    public CurrentValueCoalescer(MeasurementService.Client client, int maxBatchSize, long minWindow, long maxWindow, TimeUnit unit) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Maximum batch size must be positive: " + maxBatchSize);
+        }
+        if (minWindow < 0 || maxWindow < minWindow) {
+            throw new IllegalArgumentException("Invalid batch window range: " + minWindow + " to " + maxWindow);
+        }
+        this.client = client;
+        this.maxBatchSize = maxBatchSize;
+        this.minWindowNanos = unit.toNanos(minWindow);
+        this.maxWindowNanos = unit.toNanos(maxWindow);
+        this.windowNanos = minWindowNanos;
+
+        this.flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        }, "current-value-coalescer");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Requests the current values of a set of points, to be sent as part of the next batch.
+     *
+     * @param pointUuids Points to get current values for
+     * @return Future completed with the values of the requested points; already complete if there are none
+     */
+    public ListenableFuture<List<Measurements.PointMeasurementValue>> getCurrentValues(List<Model.ModelUUID> pointUuids) {
+        if (pointUuids.isEmpty()) {
+            return Futures.immediateFuture(Collections.<Measurements.PointMeasurementValue>emptyList());
+        }
+
+        final Request request = new Request(new ArrayList<Model.ModelUUID>(pointUuids));
+
+        lock.lock();
+        try {
+            if (!running) {
+                request.future.setException(new IllegalStateException("Coalescer has been shut down"));
+                return request.future;
+            }
+            pending.addLast(request);
+            pendingPoints += request.pointUuids.size();
+            requestCount++;
+            requestedPoints += request.pointUuids.size();
+
+            if (pending.size() == 1) {
+                arrived.signal();
+            }
+            if (pendingPoints >= maxBatchSize) {
+                full.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        return request.future;
+    }
+
+    /**
+     * Stops accepting requests. Requests already queued are still sent.
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            running = false;
+            arrived.signal();
+            full.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of getCurrentValues calls made by callers
+     */
+    public long getRequestCount() {
+        lock.lock();
+        try {
+            return requestCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of batched requests sent to the service
+     */
+    public long getBatchCount() {
+        lock.lock();
+        try {
+            return batchCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Caller requests per request sent to the service
+     */
+    public double getAverageRequestsPerBatch() {
+        lock.lock();
+        try {
+            return batchCount == 0 ? 0.0 : (double) (requestCount - pending.size()) / batchCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Mean number of distinct points per request sent to the service
+     */
+    public double getAverageBatchSize() {
+        lock.lock();
+        try {
+            return batchCount == 0 ? 0.0 : (double) batchedPoints / batchCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Fraction of requested points removed as duplicates of other points in the same batch
+     */
+    public double getDuplicateRatio() {
+        lock.lock();
+        try {
+            final long sent = requestedPoints - pendingPoints;
+            return sent == 0 ? 0.0 : 1.0 - (double) batchedPoints / sent;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of batches sent because they reached the maximum batch size
+     */
+    public long getFullBatchCount() {
+        lock.lock();
+        try {
+            return fullBatchCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Current batch window in microseconds
+     */
+    public long getWindowMicros() {
+        lock.lock();
+        try {
+            return TimeUnit.NANOSECONDS.toMicros(windowNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            final List<Request> batch = new ArrayList<Request>();
+            final boolean wasFull;
+
+            lock.lock();
+            try {
+                while (pending.isEmpty()) {
+                    if (!running) {
+                        return;
+                    }
+                    arrived.await();
+                }
+
+                // Collect further requests until the window closes or the batch is full
+                long remaining = windowNanos;
+                while (running && pendingPoints < maxBatchSize && remaining > 0) {
+                    remaining = full.awaitNanos(remaining);
+                }
+                wasFull = pendingPoints >= maxBatchSize;
+
+                // Always take at least one request, even if it alone is larger than the maximum batch
+                int points = 0;
+                while (!pending.isEmpty() && (batch.isEmpty() || points + pending.peekFirst().pointUuids.size() <= maxBatchSize)) {
+                    final Request request = pending.pollFirst();
+                    points += request.pointUuids.size();
+                    batch.add(request);
+                }
+                pendingPoints -= points;
+
+                adaptWindow(batch.size(), wasFull);
+
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            send(batch);
+        }
+    }
+
+    private void adaptWindow(int requestsInBatch, boolean wasFull) {
+        if (requestsInBatch <= 1 || wasFull) {
+            windowNanos = Math.max(minWindowNanos, windowNanos / 2);
+        } else {
+            windowNanos = Math.min(maxWindowNanos, Math.max(windowNanos + windowNanos / 4, minWindowNanos + 1000));
+        }
+        if (wasFull) {
+            fullBatchCount++;
+        }
+    }
+
+    private void send(final List<Request> batch) {
+
+        final LinkedHashSet<Model.ModelUUID> distinct = new LinkedHashSet<Model.ModelUUID>();
+        for (Request request : batch) {
+            distinct.addAll(request.pointUuids);
+        }
+
+        lock.lock();
+        try {
+            batchCount++;
+            batchedPoints += distinct.size();
+        } finally {
+            lock.unlock();
+        }
+
+        final ListenableFuture<List<Measurements.PointMeasurementValue>> future;
+        try {
+            future = client.getCurrentValues(new ArrayList<Model.ModelUUID>(distinct));
+        } catch (RuntimeException ex) {
+            for (Request request : batch) {
+                request.future.setException(ex);
+            }
+            return;
+        }
+
+        // Complete the callers on the thread that completes the batch, without waiting here
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                complete(batch, future);
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    private static void complete(List<Request> batch, ListenableFuture<List<Measurements.PointMeasurementValue>> future) {
+        final List<Measurements.PointMeasurementValue> values;
+        try {
+            values = future.get();
+        } catch (ExecutionException ex) {
+            for (Request request : batch) {
+                request.future.setException(ex.getCause());
+            }
+            return;
+        } catch (Exception ex) {
+            for (Request request : batch) {
+                request.future.setException(ex);
+            }
+            return;
+        }
+
+        final Map<Model.ModelUUID, Measurements.PointMeasurementValue> byPoint = new HashMap<Model.ModelUUID, Measurements.PointMeasurementValue>();
+        for (Measurements.PointMeasurementValue value : values) {
+            byPoint.put(value.getPointUuid(), value);
+        }
+
+        for (Request request : batch) {
+            final List<Measurements.PointMeasurementValue> result = new ArrayList<Measurements.PointMeasurementValue>(request.pointUuids.size());
+            for (Model.ModelUUID uuid : request.pointUuids) {
+                final Measurements.PointMeasurementValue value = byPoint.get(uuid);
+                if (value != null) {
+                    result.add(value);
+                }
+            }
+            request.future.set(result);
+        }
+    }
+
+    private static class Request {
+        private final List<Model.ModelUUID> pointUuids;
+        private final SettableFuture<List<Measurements.PointMeasurementValue>> future = SettableFuture.create();
+
+        Request(List<Model.ModelUUID> pointUuids) {
+            this.pointUuids = pointUuids;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.measurements;
+
+import io.greenbus.client.service.proto.Measurements;
+
+import java.nio.charset.Charset;
+
+/**
+ * A measurement read by MeasurementDecoder, as primitive fields and the positions of its strings in
+ * the buffer it was decoded from.
+ *
+ * The decoder reuses one instance for every measurement, so it is only valid during the call to the
+ * sink. The String getters decode on each call; getPointUuidOffset and getPointUuidLength, or
+ * pointUuidEquals, compare the point without allocating.
+ */
+public class DecodedMeasurement {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    byte[] buffer;
+    int pointUuidOffset;
+    int pointUuidLength;
+    int pointNameOffset;
+    int pointNameLength;
+
+    Measurements.Measurement.Type type;
+    boolean boolValue;
+    long intValue;
+    double doubleValue;
+    int stringValueOffset;
+    int stringValueLength;
+    int unitOffset;
+    int unitLength;
+    long time;
+    boolean deviceTime;
+    long systemTime;
+
+    void clear(byte[] buffer) {
+        this.buffer = buffer;
+        pointUuidOffset = -1;
+        pointUuidLength = 0;
+        pointNameOffset = -1;
+        pointNameLength = 0;
+        clearValue();
+    }
+
+    void clearValue() {
+        type = Measurements.Measurement.Type.INT;
+        boolValue = false;
+        intValue = 0;
+        doubleValue = 0;
+        stringValueOffset = -1;
+        stringValueLength = 0;
+        unitOffset = -1;
+        unitLength = 0;
+        time = 0;
+        deviceTime = false;
+        systemTime = 0;
+    }
+
+    /**
+     * @return Buffer the string fields refer to
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return Position of the UTF-8 point UUID in the buffer, or -1 if the message had none
+     */
+    public int getPointUuidOffset() {
+        return pointUuidOffset;
+    }
+
+    public int getPointUuidLength() {
+        return pointUuidLength;
+    }
+
+    /**
+     * @param uuid UTF-8 bytes of a point UUID
+     * @return true if the measurement is for that point
+     */
+    public boolean pointUuidEquals(byte[] uuid) {
+        if (pointUuidOffset < 0 || uuid.length != pointUuidLength) {
+            return false;
+        }
+        for (int i = 0; i < pointUuidLength; i++) {
+            if (buffer[pointUuidOffset + i] != uuid[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String getPointUuid() {
+        return string(pointUuidOffset, pointUuidLength);
+    }
+
+    public boolean hasPointName() {
+        return pointNameOffset >= 0;
+    }
+
+    public String getPointName() {
+        return string(pointNameOffset, pointNameLength);
+    }
+
+    public Measurements.Measurement.Type getType() {
+        return type;
+    }
+
+    public boolean getBoolValue() {
+        return boolValue;
+    }
+
+    public long getIntValue() {
+        return intValue;
+    }
+
+    public double getDoubleValue() {
+        return doubleValue;
+    }
+
+    /**
+     * @return Value of an INT, DOUBLE or BOOL measurement as a double, or NaN for other types
+     */
+    public double getNumericValue() {
+        switch (type) {
+            case INT:
+                return intValue;
+            case DOUBLE:
+                return doubleValue;
+            case BOOL:
+                return boolValue ? 1.0 : 0.0;
+            default:
+                return Double.NaN;
+        }
+    }
+
+    public String getStringValue() {
+        return string(stringValueOffset, stringValueLength);
+    }
+
+    public String getUnit() {
+        return string(unitOffset, unitLength);
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public boolean isDeviceTime() {
+        return deviceTime;
+    }
+
+    public long getSystemTime() {
+        return systemTime;
+    }
+
+    private String string(int offset, int length) {
+        return offset < 0 ? "" : new String(buffer, offset, length, UTF_8);
+    }
+}
@@ -0,0 +1,636 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.measurements;
+
+import io.greenbus.client.service.proto.MeasurementRequests;
+import io.greenbus.client.service.proto.Measurements;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.japi.client.service.MeasurementService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregates the measurement history of a point into time buckets, and downsamples it for plotting,
+ * without holding raw samples in memory.
+ *
+ * History is read oldest first, one page at a time, and each sample is added to the count, sum,
+ * minimum, maximum, first and last of its bucket, after which it is discarded. Buckets are aligned to
+ * multiples of their width since the epoch, so the same bucket covers the same time in every query.
+ * Buckets that ended before their history was read are finished and kept in a bounded cache; a later
+ * query reads raw history only for the buckets it cannot find there or merge from finer cached buckets.
+ *
+ * Downsampling uses Largest-Triangle-Three-Buckets over the minimum and maximum samples of about twice
+ * as many buckets as requested points (the MinMaxLTTB preselection), so it works from cached buckets
+ * too: zooming back to a range already seen, or out to a coarser one, reads no raw history. Bucket
+ * widths for downsampling are powers of two milliseconds, which makes every coarser width a whole
+ * multiple of the finer ones.
+ *
+ * INT, DOUBLE and BOOL measurements are aggregated as numbers (BOOL as 0 or 1); others are skipped.
+ * Samples stored after their bucket was cached, such as late device-time measurements, are not seen
+ * until the bucket is evicted or the cache is cleared.
+ */
+public class HistoryAggregator {
+
+    /**
+     * Aggregate of the samples in [start, end) of one point.
+     */
+    public static final class Bucket {
+        private final long start;
+        private final long end;
+        private long count = 0;
+        private double sum = 0;
+        private double min = Double.NaN;
+        private long minTime;
+        private double max = Double.NaN;
+        private long maxTime;
+        private double first = Double.NaN;
+        private long firstTime;
+        private double last = Double.NaN;
+        private long lastTime;
+
+        Bucket(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        void add(long time, double value) {
+            if (count == 0) {
+                first = value;
+                firstTime = time;
+                min = value;
+                minTime = time;
+                max = value;
+                maxTime = time;
+            } else {
+                if (value < min) {
+                    min = value;
+                    minTime = time;
+                }
+                if (value > max) {
+                    max = value;
+                    maxTime = time;
+                }
+            }
+            last = value;
+            lastTime = time;
+            sum += value;
+            count++;
+        }
+
+        /**
+         * Adds a bucket that follows every sample already in this one.
+         */
+        void merge(Bucket next) {
+            if (next.count == 0) {
+                return;
+            }
+            if (count == 0) {
+                first = next.first;
+                firstTime = next.firstTime;
+                min = next.min;
+                minTime = next.minTime;
+                max = next.max;
+                maxTime = next.maxTime;
+            } else {
+                if (next.min < min) {
+                    min = next.min;
+                    minTime = next.minTime;
+                }
+                if (next.max > max) {
+                    max = next.max;
+                    maxTime = next.maxTime;
+                }
+            }
+            last = next.last;
+            lastTime = next.lastTime;
+            sum += next.sum;
+            count += next.count;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public boolean isEmpty() {
+            return count == 0;
+        }
+
+        public double getSum() {
+            return sum;
+        }
+
+        /**
+         * @return Mean of the samples, or NaN if there are none
+         */
+        public double getAverage() {
+            return count == 0 ? Double.NaN : sum / count;
+        }
+
+        public double getMin() {
+            return min;
+        }
+
+        public long getMinTime() {
+            return minTime;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        public long getMaxTime() {
+            return maxTime;
+        }
+
+        public double getFirst() {
+            return first;
+        }
+
+        public long getFirstTime() {
+            return firstTime;
+        }
+
+        public double getLast() {
+            return last;
+        }
+
+        public long getLastTime() {
+            return lastTime;
+        }
+    }
+
+    /**
+     * A point of a downsampled series.
+     */
+    public static final class Sample {
+        private final long time;
+        private final double value;
+
+        Sample(long time, double value) {
+            this.time = time;
+            this.value = value;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public double getValue() {
+            return value;
+        }
+    }
+
+    private static final int MAX_BUCKETS = 1000000;
+
+    private final MeasurementService.Client client;
+    private final int pageSize;
+    private final long timeoutMillis;
+    private final int cacheSize;
+
+    private final LinkedHashMap<BucketKey, Bucket> cache;
+    private final Map<String, TreeSet<Long>> cachedWidths = new HashMap<String, TreeSet<Long>>();
+
+    private final AtomicLong pageCount = new AtomicLong(0);
+    private final AtomicLong sampleCount = new AtomicLong(0);
+    private final AtomicLong cacheHits = new AtomicLong(0);
+    private final AtomicLong mergedHits = new AtomicLong(0);
+    private final AtomicLong cacheMisses = new AtomicLong(0);
+
+    /**
+     * @param client Measurement service interface
+     * @param pageSize Number of samples per history request
+     * @param cacheSize Number of finished buckets kept, across all points and widths
+     * @param timeout Time allowed for each request
+     * @param unit Unit of the timeout
+     */
+    public HistoryAggregator(MeasurementService.Client client, int pageSize, final int cacheSize, long timeout, TimeUnit unit) {
+        if (pageSize < 2 || cacheSize < 0) {
+            throw new IllegalArgumentException("Page size must be at least 2 and cache size must not be negative");
+        }
+        this.client = client;
+        this.pageSize = pageSize;
+        this.cacheSize = cacheSize;
+        this.timeoutMillis = unit.toMillis(timeout);
+        this.cache = new LinkedHashMap<BucketKey, Bucket>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<BucketKey, Bucket> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Aggregates the history of a point between two times, both inclusive, into buckets. The range is
+     * widened to whole buckets.
+     *
+     * @param point Point UUID
+     * @param timeFrom Start of the range, in milliseconds since the epoch
+     * @param timeTo End of the range, in milliseconds since the epoch
+     * @param bucketMillis Width of each bucket
+     * @return Every bucket of the range in time order, including empty ones
+     * @throws Exception If a history request fails or times out
+     */
+    public List<Bucket> aggregate(Model.ModelUUID point, long timeFrom, long timeTo, long bucketMillis) throws Exception {
+        if (timeTo < timeFrom || bucketMillis < 1) {
+            throw new IllegalArgumentException("Time range must not end before it starts and buckets must have a width");
+        }
+        final long alignedFrom = floorDiv(timeFrom, bucketMillis) * bucketMillis;
+        final long bucketTotal = floorDiv(timeTo, bucketMillis) - floorDiv(timeFrom, bucketMillis) + 1;
+        if (bucketTotal > MAX_BUCKETS) {
+            throw new IllegalArgumentException("Too many buckets: " + bucketTotal);
+        }
+        final int n = (int) bucketTotal;
+        final String uuid = point.getValue();
+        final long readTime = System.currentTimeMillis();
+
+        final Bucket[] buckets = new Bucket[n];
+        for (int i = 0; i < n; i++) {
+            buckets[i] = cached(uuid, alignedFrom + i * bucketMillis, bucketMillis);
+        }
+
+        // Read each run of buckets missing from the cache with one pass over its history
+        int i = 0;
+        while (i < n) {
+            if (buckets[i] != null) {
+                i++;
+                continue;
+            }
+            int j = i;
+            while (j < n && buckets[j] == null) {
+                buckets[j] = new Bucket(alignedFrom + j * bucketMillis, alignedFrom + (j + 1) * bucketMillis);
+                j++;
+            }
+            read(point, buckets, i, j, alignedFrom, bucketMillis);
+
+            synchronized (this) {
+                for (int k = i; k < j; k++) {
+                    if (buckets[k].end <= readTime) {
+                        store(uuid, bucketMillis, buckets[k]);
+                    }
+                }
+            }
+            i = j;
+        }
+
+        final List<Bucket> result = new ArrayList<Bucket>(n);
+        for (Bucket bucket : buckets) {
+            result.add(bucket);
+        }
+        return result;
+    }
+
+    /**
+     * Downsamples the history of a point between two times, both inclusive, to at most the given
+     * number of samples, keeping its visual shape. The range is widened to whole buckets.
+     *
+     * @param point Point UUID
+     * @param timeFrom Start of the range, in milliseconds since the epoch
+     * @param timeTo End of the range, in milliseconds since the epoch
+     * @param threshold Most samples returned, at least 3
+     * @return Samples in time order
+     * @throws Exception If a history request fails or times out
+     */
+    public List<Sample> downsample(Model.ModelUUID point, long timeFrom, long timeTo, int threshold) throws Exception {
+        if (threshold < 3) {
+            throw new IllegalArgumentException("Threshold must be at least 3: " + threshold);
+        }
+        if (timeTo < timeFrom) {
+            throw new IllegalArgumentException("Time range ends before it starts");
+        }
+
+        // Two candidates per bucket, about four per requested sample
+        final long span = timeTo - timeFrom + 1;
+        final long target = Math.max(1, span / (2L * threshold));
+        long width = 1;
+        while (width < target) {
+            width <<= 1;
+        }
+
+        final List<Bucket> buckets = aggregate(point, timeFrom, timeTo, width);
+
+        final List<Sample> candidates = new ArrayList<Sample>();
+        for (Bucket bucket : buckets) {
+            if (bucket.count == 0) {
+                continue;
+            }
+            final boolean minFirst = bucket.minTime <= bucket.maxTime;
+            final long earlierTime = minFirst ? bucket.minTime : bucket.maxTime;
+            final double earlier = minFirst ? bucket.min : bucket.max;
+            final long laterTime = minFirst ? bucket.maxTime : bucket.minTime;
+            final double later = minFirst ? bucket.max : bucket.min;
+
+            if (candidates.isEmpty() && bucket.firstTime < earlierTime) {
+                candidates.add(new Sample(bucket.firstTime, bucket.first));
+            }
+            candidates.add(new Sample(earlierTime, earlier));
+            if (laterTime != earlierTime) {
+                candidates.add(new Sample(laterTime, later));
+            }
+        }
+
+        // The last sample anchors the end of the series
+        for (int i = buckets.size() - 1; i >= 0; i--) {
+            final Bucket bucket = buckets.get(i);
+            if (bucket.count > 0) {
+                if (bucket.lastTime > candidates.get(candidates.size() - 1).time) {
+                    candidates.add(new Sample(bucket.lastTime, bucket.last));
+                }
+                break;
+            }
+        }
+
+        return largestTriangleThreeBuckets(candidates, threshold);
+    }
+
+    /**
+     * Largest-Triangle-Three-Buckets (S. Steinarsson, 2013): keeps the first and last samples and, from
+     * each of threshold - 2 equal groups of the rest, the sample forming the largest triangle with the
+     * one kept before it and the mean of the next group.
+     */
+    static List<Sample> largestTriangleThreeBuckets(List<Sample> samples, int threshold) {
+        final int size = samples.size();
+        if (size <= threshold) {
+            return samples;
+        }
+
+        final List<Sample> kept = new ArrayList<Sample>(threshold);
+        kept.add(samples.get(0));
+
+        final double groupSize = (double) (size - 2) / (threshold - 2);
+        int a = 0;
+        for (int group = 0; group < threshold - 2; group++) {
+            final int start = (int) (group * groupSize) + 1;
+            final int end = (int) ((group + 1) * groupSize) + 1;
+
+            // Mean of the next group, or the last sample after the final group
+            final int nextStart = end;
+            final int nextEnd = Math.min((int) ((group + 2) * groupSize) + 1, size);
+            double meanTime = 0;
+            double meanValue = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                meanTime += samples.get(i).time;
+                meanValue += samples.get(i).value;
+            }
+            final int nextCount = nextEnd - nextStart;
+            meanTime /= nextCount;
+            meanValue /= nextCount;
+
+            final Sample anchor = samples.get(a);
+            double largest = -1;
+            int chosen = start;
+            for (int i = start; i < end; i++) {
+                final Sample candidate = samples.get(i);
+                // Times relative to the anchor keep the products well within double precision
+                final double area = Math.abs((anchor.time - meanTime) * (candidate.value - anchor.value) -
+                        (double) (anchor.time - candidate.time) * (meanValue - anchor.value));
+                if (area > largest) {
+                    largest = area;
+                    chosen = i;
+                }
+            }
+            kept.add(samples.get(chosen));
+            a = chosen;
+        }
+
+        kept.add(samples.get(size - 1));
+        return kept;
+    }
+
+    /**
+     * Streams the history of buckets [from, to) into them, a page at a time.
+     */
+    private void read(Model.ModelUUID point, Bucket[] buckets, int from, int to, long alignedFrom, long bucketMillis) throws Exception {
+        final long timeTo = buckets[to - 1].end - 1;
+        long timeFrom = buckets[from].start;
+
+        // Samples at the cursor time already counted, since the next page starts at that time again
+        long cursorTime = Long.MIN_VALUE;
+        int seenAtCursor = 0;
+
+        while (true) {
+            final MeasurementRequests.MeasurementHistoryQuery query = MeasurementRequests.MeasurementHistoryQuery.newBuilder()
+                    .setPointUuid(point)
+                    .setTimeFrom(timeFrom)
+                    .setTimeTo(timeTo)
+                    .setLatest(false)
+                    .setLimit(pageSize)
+                    .build();
+
+            final List<Measurements.Measurement> page = client.getHistory(query).get(timeoutMillis, TimeUnit.MILLISECONDS).getValueList();
+            pageCount.incrementAndGet();
+
+            int skip = page.size() > 0 && page.get(0).getTime() == cursorTime ? seenAtCursor : 0;
+            int added = 0;
+            for (Measurements.Measurement measurement : page) {
+                final long time = measurement.getTime();
+                if (skip > 0 && time == cursorTime) {
+                    skip--;
+                    continue;
+                }
+                if (time == cursorTime) {
+                    seenAtCursor++;
+                } else {
+                    cursorTime = time;
+                    seenAtCursor = 1;
+                }
+                added++;
+
+                final int index = (int) ((time - alignedFrom) / bucketMillis);
+                if (time < buckets[from].start || index >= to) {
+                    continue;
+                }
+                switch (measurement.getType()) {
+                    case INT:
+                        buckets[index].add(time, measurement.getIntVal());
+                        break;
+                    case DOUBLE:
+                        buckets[index].add(time, measurement.getDoubleVal());
+                        break;
+                    case BOOL:
+                        buckets[index].add(time, measurement.getBoolVal() ? 1.0 : 0.0);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            sampleCount.addAndGet(added);
+
+            if (page.size() < pageSize) {
+                return;
+            }
+            if (added == 0) {
+                // A whole page at one time; move past it rather than read it forever
+                cursorTime = Long.MIN_VALUE;
+                timeFrom = page.get(page.size() - 1).getTime() + 1;
+            } else {
+                timeFrom = cursorTime;
+            }
+            if (timeFrom > timeTo) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return A finished bucket from the cache, or merged from finer cached buckets, or null
+     */
+    private synchronized Bucket cached(String uuid, long start, long width) {
+        final Bucket bucket = cache.get(new BucketKey(uuid, width, start));
+        if (bucket != null) {
+            cacheHits.incrementAndGet();
+            return bucket;
+        }
+
+        final TreeSet<Long> widths = cachedWidths.get(uuid);
+        if (widths != null) {
+            for (Long finer : widths.headSet(width, false).descendingSet()) {
+                if (width % finer != 0) {
+                    continue;
+                }
+                final Bucket merged = new Bucket(start, start + width);
+                boolean complete = true;
+                for (long part = start; part < start + width; part += finer) {
+                    final Bucket piece = cache.get(new BucketKey(uuid, finer, part));
+                    if (piece == null) {
+                        complete = false;
+                        break;
+                    }
+                    merged.merge(piece);
+                }
+                if (complete) {
+                    mergedHits.incrementAndGet();
+                    store(uuid, width, merged);
+                    return merged;
+                }
+            }
+        }
+
+        cacheMisses.incrementAndGet();
+        return null;
+    }
+
+    private void store(String uuid, long width, Bucket bucket) {
+        if (cacheSize == 0) {
+            return;
+        }
+        cache.put(new BucketKey(uuid, width, bucket.start), bucket);
+        TreeSet<Long> widths = cachedWidths.get(uuid);
+        if (widths == null) {
+            widths = new TreeSet<Long>();
+            cachedWidths.put(uuid, widths);
+        }
+        widths.add(width);
+    }
+
+    /**
+     * Discards every cached bucket.
+     */
+    public synchronized void clear() {
+        cache.clear();
+        cachedWidths.clear();
+    }
+
+    /**
+     * @return Number of history pages read
+     */
+    public long getPageCount() {
+        return pageCount.get();
+    }
+
+    /**
+     * @return Number of raw samples read
+     */
+    public long getSampleCount() {
+        return sampleCount.get();
+    }
+
+    /**
+     * @return Number of buckets found in the cache
+     */
+    public long getCacheHitCount() {
+        return cacheHits.get();
+    }
+
+    /**
+     * @return Number of buckets merged from finer cached buckets
+     */
+    public long getMergedHitCount() {
+        return mergedHits.get();
+    }
+
+    /**
+     * @return Number of buckets read from history
+     */
+    public long getCacheMissCount() {
+        return cacheMisses.get();
+    }
+
+    public synchronized int getCachedBucketCount() {
+        return cache.size();
+    }
+
+    private static long floorDiv(long x, long y) {
+        final long quotient = x / y;
+        return (x % y != 0 && ((x ^ y) < 0)) ? quotient - 1 : quotient;
+    }
+
+    private static final class BucketKey {
+        private final String uuid;
+        private final long width;
+        private final long start;
+
+        BucketKey(String uuid, long width, long start) {
+            this.uuid = uuid;
+            this.width = width;
+            this.start = start;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof BucketKey)) {
+                return false;
+            }
+            final BucketKey other = (BucketKey) o;
+            return width == other.width && start == other.start && uuid.equals(other.uuid);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = uuid.hashCode();
+            result = 31 * result + (int) (width ^ (width >>> 32));
+            result = 31 * result + (int) (start ^ (start >>> 32));
+            return result;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.measurements;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+import io.greenbus.client.service.proto.Measurements;
+import io.greenbus.client.service.proto.Model;
+
+import java.io.IOException;
+
+/**
+ * Decodes serialized MeasurementNotification, PointMeasurementValue and PointMeasurementValues messages
+ * directly from the buffer they were received in, without building message objects.
+ *
+ * Only the point and the value fields are read: the point UUID and name are left in the buffer and
+ * reported by position, numeric fields are read into primitives, and quality is skipped. Each
+ * measurement is handed to a Sink as a DecodedMeasurement that the decoder reuses, so decoding
+ * allocates nothing per message. This suits code that holds the serialized bytes, such as a bridge
+ * reading the broker queue itself or a replay of recorded notifications; the service clients already
+ * deliver parsed messages.
+ *
+ * A decoder is not thread-safe; use one per thread.
+ */
+public class MeasurementDecoder {
+
+    /**
+     * Receives decoded measurements.
+     */
+    public interface Sink {
+
+        /**
+         * @param measurement Decoded measurement, valid only until this method returns
+         */
+        void measurement(DecodedMeasurement measurement);
+    }
+
+    private final DecodedMeasurement current = new DecodedMeasurement();
+
+    /**
+     * Decodes one MeasurementNotification.
+     */
+    public void decodeNotification(byte[] buffer, int offset, int length, Sink sink) throws IOException {
+        final CodedInputStream input = CodedInputStream.newInstance(buffer, offset, length);
+        notification(input, buffer, offset, sink);
+    }
+
+    /**
+     * Decodes length-delimited MeasurementNotifications, as written by writeDelimitedTo, until the end
+     * of the range.
+     *
+     * @return Number of notifications decoded
+     */
+    public int decodeNotifications(byte[] buffer, int offset, int length, Sink sink) throws IOException {
+        final CodedInputStream input = CodedInputStream.newInstance(buffer, offset, length);
+        int count = 0;
+        while (!input.isAtEnd()) {
+            final int limit = input.pushLimit(input.readRawVarint32());
+            notification(input, buffer, offset, sink);
+            input.popLimit(limit);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Decodes one PointMeasurementValue.
+     */
+    public void decodeValue(byte[] buffer, int offset, int length, Sink sink) throws IOException {
+        final CodedInputStream input = CodedInputStream.newInstance(buffer, offset, length);
+        pointValue(input, buffer, offset, sink);
+    }
+
+    /**
+     * Decodes length-delimited PointMeasurementValues, as written by writeDelimitedTo, until the end of
+     * the range.
+     *
+     * @return Number of values decoded
+     */
+    public int decodeValues(byte[] buffer, int offset, int length, Sink sink) throws IOException {
+        final CodedInputStream input = CodedInputStream.newInstance(buffer, offset, length);
+        int count = 0;
+        while (!input.isAtEnd()) {
+            final int limit = input.pushLimit(input.readRawVarint32());
+            pointValue(input, buffer, offset, sink);
+            input.popLimit(limit);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Decodes one PointMeasurementValues message, the history of a point. Protobuf writes fields in
+     * order, so the point UUID is known before the values; values that precede it are reported
+     * without a point.
+     *
+     * @return Number of values decoded
+     */
+    public int decodeHistory(byte[] buffer, int offset, int length, Sink sink) throws IOException {
+        final CodedInputStream input = CodedInputStream.newInstance(buffer, offset, length);
+        current.clear(buffer);
+        int count = 0;
+        while (true) {
+            final int tag = input.readTag();
+            if (tag == 0) {
+                return count;
+            }
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case Measurements.PointMeasurementValues.POINT_UUID_FIELD_NUMBER:
+                    uuid(input, offset);
+                    break;
+                case Measurements.PointMeasurementValues.VALUE_FIELD_NUMBER:
+                    current.clearValue();
+                    embedded(input, offset);
+                    sink.measurement(current);
+                    count++;
+                    break;
+                default:
+                    input.skipField(tag);
+            }
+        }
+    }
+
+    private void notification(CodedInputStream input, byte[] buffer, int offset, Sink sink) throws IOException {
+        current.clear(buffer);
+        while (true) {
+            final int tag = input.readTag();
+            if (tag == 0) {
+                break;
+            }
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case Measurements.MeasurementNotification.POINT_UUID_FIELD_NUMBER:
+                    uuid(input, offset);
+                    break;
+                case Measurements.MeasurementNotification.POINT_NAME_FIELD_NUMBER:
+                    current.pointNameLength = input.readRawVarint32();
+                    current.pointNameOffset = string(input, offset, current.pointNameLength);
+                    break;
+                case Measurements.MeasurementNotification.VALUE_FIELD_NUMBER:
+                    embedded(input, offset);
+                    break;
+                default:
+                    input.skipField(tag);
+            }
+        }
+        sink.measurement(current);
+    }
+
+    private void pointValue(CodedInputStream input, byte[] buffer, int offset, Sink sink) throws IOException {
+        current.clear(buffer);
+        while (true) {
+            final int tag = input.readTag();
+            if (tag == 0) {
+                break;
+            }
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case Measurements.PointMeasurementValue.POINT_UUID_FIELD_NUMBER:
+                    uuid(input, offset);
+                    break;
+                case Measurements.PointMeasurementValue.VALUE_FIELD_NUMBER:
+                    embedded(input, offset);
+                    break;
+                default:
+                    input.skipField(tag);
+            }
+        }
+        sink.measurement(current);
+    }
+
+    /**
+     * Reads an embedded ModelUUID, keeping the position of its value.
+     */
+    private void uuid(CodedInputStream input, int offset) throws IOException {
+        final int limit = input.pushLimit(input.readRawVarint32());
+        while (true) {
+            final int tag = input.readTag();
+            if (tag == 0) {
+                break;
+            }
+            if (WireFormat.getTagFieldNumber(tag) == Model.ModelUUID.VALUE_FIELD_NUMBER) {
+                current.pointUuidLength = input.readRawVarint32();
+                current.pointUuidOffset = string(input, offset, current.pointUuidLength);
+            } else {
+                input.skipField(tag);
+            }
+        }
+        input.popLimit(limit);
+    }
+
+    /**
+     * Reads an embedded Measurement into the current value fields.
+     */
+    private void embedded(CodedInputStream input, int offset) throws IOException {
+        final int limit = input.pushLimit(input.readRawVarint32());
+        while (true) {
+            final int tag = input.readTag();
+            if (tag == 0) {
+                break;
+            }
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case Measurements.Measurement.TYPE_FIELD_NUMBER:
+                    type(input.readEnum());
+                    break;
+                case Measurements.Measurement.BOOL_VAL_FIELD_NUMBER:
+                    current.boolValue = input.readBool();
+                    break;
+                case Measurements.Measurement.INT_VAL_FIELD_NUMBER:
+                    current.intValue = input.readSInt64();
+                    break;
+                case Measurements.Measurement.DOUBLE_VAL_FIELD_NUMBER:
+                    current.doubleValue = input.readDouble();
+                    break;
+                case Measurements.Measurement.STRING_VAL_FIELD_NUMBER:
+                    current.stringValueLength = input.readRawVarint32();
+                    current.stringValueOffset = string(input, offset, current.stringValueLength);
+                    break;
+                case Measurements.Measurement.UNIT_FIELD_NUMBER:
+                    current.unitLength = input.readRawVarint32();
+                    current.unitOffset = string(input, offset, current.unitLength);
+                    break;
+                case Measurements.Measurement.TIME_FIELD_NUMBER:
+                    current.time = input.readUInt64();
+                    break;
+                case Measurements.Measurement.IS_DEVICE_TIME_FIELD_NUMBER:
+                    current.deviceTime = input.readBool();
+                    break;
+                case Measurements.Measurement.SYSTEM_TIME_FIELD_NUMBER:
+                    current.systemTime = input.readUInt64();
+                    break;
+                default:
+                    input.skipField(tag);
+            }
+        }
+        input.popLimit(limit);
+    }
+
+    /**
+     * Unknown types are ignored, as the generated parser would, leaving the default.
+     */
+    private void type(int number) {
+        final Measurements.Measurement.Type type = Measurements.Measurement.Type.valueOf(number);
+        if (type != null) {
+            current.type = type;
+        }
+    }
+
+    /**
+     * Skips over a string whose length has been read.
+     *
+     * @return Position of the string in the buffer
+     */
+    private static int string(CodedInputStream input, int offset, int length) throws IOException {
+        final int position = offset + input.getTotalBytesRead();
+        input.skipRawBytes(length);
+        return position;
+    }
+}
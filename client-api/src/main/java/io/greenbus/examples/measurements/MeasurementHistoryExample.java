@@ -28,6 +28,7 @@ import io.greenbus.japi.client.service.MeasurementService;
 import io.greenbus.japi.client.service.ModelService;
 
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -77,7 +78,7 @@ public class MeasurementHistoryExample {
         // Display measurement history
         for (Measurement measurement : pointMeasurementValues.getValueList()) {
             System.out.println("Measurement: " + pointMeasurementValues.getPointUuid().getValue() +
-                    ", Value: " + buildValueString(measurement) +
+                    ", Value: " + MeasurementWriter.valueString(measurement) +
                     ", Time: " + new Date(measurement.getTime()));
         }
 
@@ -127,7 +128,7 @@ public class MeasurementHistoryExample {
         // Display measurement history
         for (Measurement measurement : pointMeasurementValues.getValueList()) {
             System.out.println("Measurement: " + pointMeasurementValues.getPointUuid().getValue() +
-                    ", Value: " + buildValueString(measurement) +
+                    ", Value: " + MeasurementWriter.valueString(measurement) +
                     ", Time: " + new Date(measurement.getTime()));
         }
 
@@ -185,24 +186,69 @@ public class MeasurementHistoryExample {
         // Display measurement history
         for (Measurement measurement : pointMeasurementValues.getValueList()) {
             System.out.println("Measurement: " + pointMeasurementValues.getPointUuid().getValue() +
-                    ", Value: " + buildValueString(measurement) +
+                    ", Value: " + MeasurementWriter.valueString(measurement) +
                     ", Time: " + new Date(measurement.getTime()));
         }
 
     }
 
-    private static String buildValueString(Measurement measurement) {
-        if(measurement.getType() == Measurement.Type.BOOL) {
-            return Boolean.toString(measurement.getBoolVal());
-        } else if(measurement.getType() == Measurement.Type.INT) {
-            return Long.toString(measurement.getIntVal());
-        } else if(measurement.getType() == Measurement.Type.DOUBLE) {
-            return Double.toString(measurement.getDoubleVal());
-        } else if(measurement.getType() == Measurement.Type.STRING) {
-            return measurement.getStringVal();
-        } else {
-            return "";
+    /**
+     * Get Measurement History Trend
+     *
+     * Aggregates the last day of measurement history into hourly buckets, and downsamples it to
+     * one hundred points for plotting. The history is read one page at a time and discarded as it is
+     * aggregated; asking again finds the finished buckets in the aggregator's cache.
+     *
+     * @param session Logged-in Session object
+     * @throws Exception
+     */
+    public static void getMeasurementHistoryTrend(Session session) throws Exception {
+
+        System.out.print("\n=== Measurement History Trend (Last 24 Hours) ===\n\n");
+
+        // Get service interface for points
+        final ModelService.Client frontEndClient = ModelService.client(session);
+
+        // Select a specific point
+        final Model.Point point = frontEndClient.pointQuery(ModelRequests.PointQuery.newBuilder()
+                .setPagingParams(
+                        ModelRequests.EntityPagingParams.newBuilder()
+                                .setPageSize(1)).build())
+                .get(5000, TimeUnit.MILLISECONDS)
+                .get(0);
+
+        // Get service interface for measurements
+        final MeasurementService.Client measurementClient = MeasurementService.client(session);
+
+        // Read history in pages of 1000, keeping up to 10000 finished buckets
+        final HistoryAggregator aggregator = new HistoryAggregator(measurementClient, 1000, 10000, 5000, TimeUnit.MILLISECONDS);
+
+        long now = System.currentTimeMillis();
+        long oneDayAgo = now - (24 * 60 * 60 * 1000);
+        long oneHour = 60 * 60 * 1000;
+
+        // Display hourly aggregates
+        for (HistoryAggregator.Bucket bucket : aggregator.aggregate(point.getUuid(), oneDayAgo, now, oneHour)) {
+            if (bucket.isEmpty()) {
+                continue;
+            }
+            System.out.println("Hour: " + new Date(bucket.getStart()) +
+                    ", Count: " + bucket.getCount() +
+                    ", Min: " + bucket.getMin() +
+                    ", Max: " + bucket.getMax() +
+                    ", Average: " + bucket.getAverage() +
+                    ", Last: " + bucket.getLast());
         }
+
+        // Downsample for a plot one hundred points wide
+        final List<HistoryAggregator.Sample> samples = aggregator.downsample(point.getUuid(), oneDayAgo, now, 100);
+        System.out.println("Downsampled to " + samples.size() + " points from " + aggregator.getSampleCount() + " measurements in " + aggregator.getPageCount() + " pages");
+
+        // Asking again reads only the buckets that had not finished
+        long pagesBefore = aggregator.getPageCount();
+        aggregator.downsample(point.getUuid(), oneDayAgo, now, 100);
+        System.out.println("Repeated in " + (aggregator.getPageCount() - pagesBefore) + " pages, " + aggregator.getCacheHitCount() + " cached buckets used");
+
     }
 
 }
@@ -0,0 +1,779 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.measurements;
+
+import io.greenbus.client.service.proto.Measurements;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Writes measurements as CSV rows or JSON lines, formatting values and timestamps directly into a
+ * reusable byte buffer.
+ *
+ * Each measurement is one row: point UUID, point name, type, value, unit and time. CSV rows follow
+ * RFC 4180 and start with the header from writeHeader; JSON lines are objects with those fields, with
+ * the point name left out when unknown. Times are ISO 8601 in UTC with milliseconds.
+ *
+ * Values are written according to their type without creating strings or dates. Doubles are written
+ * in fixed point with up to maxDecimals decimal places and trailing zeros removed, when that reads back
+ * as exactly the same double; other values, such as very small or very large magnitudes or those with
+ * more significant decimals, fall back to Double.toString. Non-finite doubles are written as NaN or Infinity in CSV and
+ * as null in JSON, which has no representation for them.
+ *
+ * The buffer is written to the stream or channel when it fills and on flush. Without either, it grows
+ * to hold everything written until reset, for example to build message bodies.
+ *
+ * A writer is not thread-safe.
+ */
+public class MeasurementWriter implements Flushable, Closeable {
+
+    public enum Format {
+        CSV,
+        JSON
+    }
+
+    private static final byte[] CSV_HEADER = ascii("point_uuid,point_name,type,value,unit,time\n");
+    private static final byte[] JSON_POINT_UUID = ascii("{\"pointUuid\":");
+    private static final byte[] JSON_POINT_NAME = ascii(",\"pointName\":");
+    private static final byte[] JSON_TYPE = ascii(",\"type\":");
+    private static final byte[] JSON_VALUE = ascii(",\"value\":");
+    private static final byte[] JSON_UNIT = ascii(",\"unit\":");
+    private static final byte[] JSON_TIME = ascii(",\"time\":");
+    private static final byte[] JSON_NULL = ascii("null");
+    private static final byte[] TRUE = ascii("true");
+    private static final byte[] FALSE = ascii("false");
+    private static final byte[] NAN = ascii("NaN");
+    private static final byte[] INFINITY = ascii("Infinity");
+    private static final byte[] MIN_LONG = ascii(Long.toString(Long.MIN_VALUE));
+    private static final byte[] HEX = ascii("0123456789abcdef");
+
+    private static final byte[][] TYPE_NAMES;
+    static {
+        final Measurements.Measurement.Type[] types = Measurements.Measurement.Type.values();
+        TYPE_NAMES = new byte[types.length][];
+        for (Measurements.Measurement.Type type : types) {
+            TYPE_NAMES[type.ordinal()] = ascii(type.name());
+        }
+    }
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+    private static final long MAX_EXACT_LONG = 1L << 53;
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private static final long SECONDS_PER_DAY = 86400;
+    private static final int MAX_NUMBER_LENGTH = 32;
+
+    private final Format format;
+    private final OutputStream stream;
+    private final WritableByteChannel channel;
+    private ByteBuffer channelBuffer;
+    private int maxDecimals = 6;
+    private double maxFixed = 9e18 / POWERS_OF_TEN[6];
+
+    private byte[] buffer;
+    private int position = 0;
+    private long written = 0;
+
+    // Timestamp up to the second of the last one written, since consecutive measurements are close
+    private long cachedSecond = Long.MIN_VALUE;
+    private long cachedDay = Long.MIN_VALUE;
+    private final byte[] cachedPrefix = new byte[20];
+
+    /**
+     * Writer that keeps everything written in its buffer until reset.
+     *
+     * @param format Output format
+     * @param capacity Initial buffer size in bytes
+     */
+    public MeasurementWriter(Format format, int capacity) {
+        this(format, null, null, capacity);
+    }
+
+    /**
+     * @param stream Stream the buffer is written to when full and on flush
+     * @param format Output format
+     * @param capacity Buffer size in bytes
+     */
+    public MeasurementWriter(OutputStream stream, Format format, int capacity) {
+        this(format, stream, null, capacity);
+    }
+
+    /**
+     * @param channel Channel the buffer is written to when full and on flush
+     * @param format Output format
+     * @param capacity Buffer size in bytes
+     */
+    public MeasurementWriter(WritableByteChannel channel, Format format, int capacity) {
+        this(format, null, channel, capacity);
+    }
+
+    private MeasurementWriter(Format format, OutputStream stream, WritableByteChannel channel, int capacity) {
+        if (capacity < MAX_NUMBER_LENGTH) {
+            throw new IllegalArgumentException("Capacity must be at least " + MAX_NUMBER_LENGTH + " bytes: " + capacity);
+        }
+        this.format = format;
+        this.stream = stream;
+        this.channel = channel;
+        this.buffer = new byte[capacity];
+        if (channel != null) {
+            this.channelBuffer = ByteBuffer.wrap(buffer);
+        }
+    }
+
+    /**
+     * @param maxDecimals Most decimal places written in fixed point for doubles, from 0 to 9; 6 by default
+     */
+    public void setMaxDecimals(int maxDecimals) {
+        if (maxDecimals < 0 || maxDecimals > 9) {
+            throw new IllegalArgumentException("Decimal places must be from 0 to 9: " + maxDecimals);
+        }
+        this.maxDecimals = maxDecimals;
+        this.maxFixed = 9e18 / POWERS_OF_TEN[maxDecimals];
+    }
+
+    /**
+     * Writes the CSV header row. JSON lines have no header, so nothing is written for them.
+     */
+    public void writeHeader() throws IOException {
+        if (format == Format.CSV) {
+            raw(CSV_HEADER);
+        }
+    }
+
+    public void write(Measurements.PointMeasurementValue value) throws IOException {
+        write(value.getPointUuid().getValue(), null, value.getValue());
+    }
+
+    public void write(Measurements.MeasurementNotification notification) throws IOException {
+        write(notification.getPointUuid().getValue(), notification.hasPointName() ? notification.getPointName() : null, notification.getValue());
+    }
+
+    /**
+     * Writes every value in a point's history.
+     */
+    public void write(Measurements.PointMeasurementValues values) throws IOException {
+        final String pointUuid = values.getPointUuid().getValue();
+        for (Measurements.Measurement measurement : values.getValueList()) {
+            write(pointUuid, null, measurement);
+        }
+    }
+
+    /**
+     * @param pointUuid UUID of the point
+     * @param pointName Name of the point, or null if unknown
+     * @param measurement Measurement of the point
+     */
+    public void write(CharSequence pointUuid, CharSequence pointName, Measurements.Measurement measurement) throws IOException {
+        if (format == Format.CSV) {
+            text(pointUuid);
+            put(',');
+            if (pointName != null) {
+                text(pointName);
+            }
+            put(',');
+            raw(TYPE_NAMES[measurement.getType().ordinal()]);
+            put(',');
+            value(measurement);
+            put(',');
+            text(measurement.getUnit());
+            put(',');
+            time(measurement.getTime());
+            put('\n');
+        } else {
+            raw(JSON_POINT_UUID);
+            text(pointUuid);
+            if (pointName != null) {
+                raw(JSON_POINT_NAME);
+                text(pointName);
+            }
+            raw(JSON_TYPE);
+            put('"');
+            raw(TYPE_NAMES[measurement.getType().ordinal()]);
+            put('"');
+            raw(JSON_VALUE);
+            value(measurement);
+            raw(JSON_UNIT);
+            text(measurement.getUnit());
+            raw(JSON_TIME);
+            put('"');
+            time(measurement.getTime());
+            put('"');
+            put('}');
+            put('\n');
+        }
+    }
+
+    /**
+     * Writes a measurement from MeasurementDecoder, copying its strings from the decoded buffer.
+     */
+    public void write(DecodedMeasurement measurement) throws IOException {
+        final byte[] source = measurement.getBuffer();
+        if (format == Format.CSV) {
+            utf8(source, measurement.pointUuidOffset, measurement.pointUuidLength);
+            put(',');
+            if (measurement.hasPointName()) {
+                utf8(source, measurement.pointNameOffset, measurement.pointNameLength);
+            }
+            put(',');
+            raw(TYPE_NAMES[measurement.type.ordinal()]);
+            put(',');
+            value(measurement);
+            put(',');
+            utf8(source, measurement.unitOffset, measurement.unitLength);
+            put(',');
+            time(measurement.time);
+            put('\n');
+        } else {
+            raw(JSON_POINT_UUID);
+            utf8(source, measurement.pointUuidOffset, measurement.pointUuidLength);
+            if (measurement.hasPointName()) {
+                raw(JSON_POINT_NAME);
+                utf8(source, measurement.pointNameOffset, measurement.pointNameLength);
+            }
+            raw(JSON_TYPE);
+            put('"');
+            raw(TYPE_NAMES[measurement.type.ordinal()]);
+            put('"');
+            raw(JSON_VALUE);
+            value(measurement);
+            raw(JSON_UNIT);
+            utf8(source, measurement.unitOffset, measurement.unitLength);
+            raw(JSON_TIME);
+            put('"');
+            time(measurement.time);
+            put('"');
+            put('}');
+            put('\n');
+        }
+    }
+
+    /**
+     * Formats the value of a measurement for display, as the examples print it.
+     */
+    public static String valueString(Measurements.Measurement measurement) {
+        switch (measurement.getType()) {
+            case BOOL:
+                return Boolean.toString(measurement.getBoolVal());
+            case INT:
+                return Long.toString(measurement.getIntVal());
+            case DOUBLE:
+                return Double.toString(measurement.getDoubleVal());
+            case STRING:
+                return measurement.getStringVal();
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * @return Buffer holding the bytes written since the last flush or reset
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return Number of bytes in the buffer
+     */
+    public int size() {
+        return position;
+    }
+
+    /**
+     * @return Total number of bytes written, including those already flushed
+     */
+    public long getBytesWritten() {
+        return written + position;
+    }
+
+    /**
+     * Discards the contents of the buffer.
+     */
+    public void reset() {
+        written += position;
+        position = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        if (stream != null) {
+            stream.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        if (stream != null) {
+            stream.close();
+        } else if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void value(Measurements.Measurement measurement) throws IOException {
+        switch (measurement.getType()) {
+            case BOOL:
+                raw(measurement.getBoolVal() ? TRUE : FALSE);
+                break;
+            case INT:
+                number(measurement.getIntVal());
+                break;
+            case DOUBLE:
+                number(measurement.getDoubleVal());
+                break;
+            case STRING:
+                text(measurement.getStringVal());
+                break;
+            default:
+                if (format == Format.JSON) {
+                    raw(JSON_NULL);
+                }
+        }
+    }
+
+    private void value(DecodedMeasurement measurement) throws IOException {
+        switch (measurement.type) {
+            case BOOL:
+                raw(measurement.boolValue ? TRUE : FALSE);
+                break;
+            case INT:
+                number(measurement.intValue);
+                break;
+            case DOUBLE:
+                number(measurement.doubleValue);
+                break;
+            case STRING:
+                utf8(measurement.buffer, measurement.stringValueOffset, measurement.stringValueLength);
+                break;
+            default:
+                if (format == Format.JSON) {
+                    raw(JSON_NULL);
+                }
+        }
+    }
+
+    private void number(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            raw(MIN_LONG);
+            return;
+        }
+        reserve(MAX_NUMBER_LENGTH);
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        digits(value, 1);
+    }
+
+    private void number(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            if (format == Format.JSON) {
+                raw(JSON_NULL);
+            } else if (Double.isNaN(value)) {
+                raw(NAN);
+            } else {
+                if (value < 0) {
+                    put('-');
+                }
+                raw(INFINITY);
+            }
+            return;
+        }
+
+        final double magnitude = Math.abs(value);
+        if (magnitude >= maxFixed) {
+            raw(ascii(Double.toString(value)));
+            return;
+        }
+
+        final long scale = POWERS_OF_TEN[maxDecimals];
+        final long scaled = Math.round(magnitude * scale);
+
+        // Both are exact doubles, so the division is rounded the same way as parsing the fixed-point text
+        if (scaled > MAX_EXACT_LONG || scaled / (double) scale != magnitude) {
+            raw(ascii(Double.toString(value)));
+            return;
+        }
+
+        reserve(MAX_NUMBER_LENGTH);
+        if (value < 0 && scaled != 0) {
+            buffer[position++] = '-';
+        }
+        digits(scaled / scale, 1);
+        buffer[position++] = '.';
+
+        // Fraction without trailing zeros, but at least one digit
+        long fraction = scaled % scale;
+        int places = maxDecimals;
+        while (places > 1 && fraction % 10 == 0) {
+            fraction /= 10;
+            places--;
+        }
+        digits(fraction, places);
+    }
+
+    /**
+     * Writes a non-negative number, padded with leading zeros to at least the given width. Room must
+     * already be reserved.
+     */
+    private void digits(long value, int width) {
+        int length = 1;
+        while (length < 19 && value >= POWERS_OF_TEN[length]) {
+            length++;
+        }
+        length = Math.max(length, width);
+        for (int i = position + length - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position += length;
+    }
+
+    /**
+     * Writes epoch milliseconds as yyyy-MM-ddTHH:mm:ss.SSSZ.
+     */
+    private void time(long millis) throws IOException {
+        final long second = floorDiv(millis, 1000);
+        if (second != cachedSecond) {
+            prefix(second);
+        }
+        final int fraction = (int) (millis - second * 1000);
+
+        reserve(cachedPrefix.length + 4);
+        System.arraycopy(cachedPrefix, 0, buffer, position, cachedPrefix.length);
+        position += cachedPrefix.length;
+        buffer[position++] = (byte) ('0' + fraction / 100);
+        buffer[position++] = (byte) ('0' + fraction / 10 % 10);
+        buffer[position++] = (byte) ('0' + fraction % 10);
+        buffer[position++] = 'Z';
+    }
+
+    /**
+     * Fills the cached prefix with the date and time of a second since the epoch.
+     */
+    private void prefix(long second) {
+        final long day = floorDiv(second, SECONDS_PER_DAY);
+        if (day != cachedDay) {
+            date(day);
+        }
+        final long secondOfDay = second - day * SECONDS_PER_DAY;
+        fixed(cachedPrefix, 11, secondOfDay / 3600, 2);
+        cachedPrefix[13] = ':';
+        fixed(cachedPrefix, 14, secondOfDay / 60 % 60, 2);
+        cachedPrefix[16] = ':';
+        fixed(cachedPrefix, 17, secondOfDay % 60, 2);
+        cachedPrefix[19] = '.';
+        cachedSecond = second;
+    }
+
+    /**
+     * Fills the date of the cached prefix with the civil date of a day since the epoch (proleptic
+     * Gregorian, by the inverse of H. Hinnant's days_from_civil).
+     */
+    private void date(long day) {
+        final long shifted = day + 719468;
+        final long era = floorDiv(shifted, 146097);
+        final long dayOfEra = shifted - era * 146097;
+        final long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        final long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final long monthIndex = (5 * dayOfYear + 2) / 153;
+        final long dayOfMonth = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+        final long month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9;
+        final long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        // Years outside 0000-9999 do not fit in four digits; clamp rather than misalign the row
+        final long clamped = Math.max(0, Math.min(9999, year));
+        fixed(cachedPrefix, 0, clamped, 4);
+        cachedPrefix[4] = '-';
+        fixed(cachedPrefix, 5, month, 2);
+        cachedPrefix[7] = '-';
+        fixed(cachedPrefix, 8, dayOfMonth, 2);
+        cachedPrefix[10] = 'T';
+        cachedDay = day;
+    }
+
+    private static void fixed(byte[] target, int offset, long value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            target[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static long floorDiv(long x, long y) {
+        final long quotient = x / y;
+        return (x % y != 0 && ((x ^ y) < 0)) ? quotient - 1 : quotient;
+    }
+
+    /**
+     * Writes a string field, quoted and escaped as the format requires, encoding it as UTF-8.
+     */
+    private void text(CharSequence text) throws IOException {
+        if (!plainText(text)) {
+            escapedText(text);
+        }
+    }
+
+    /**
+     * Writes a string of ASCII characters that need no quoting or escaping, which most point names,
+     * UUIDs and units are.
+     *
+     * @return false, having written nothing, if the string is not plain or does not fit the buffer
+     */
+    private boolean plainText(CharSequence text) throws IOException {
+        final int length = text.length();
+        if (length + 2 > buffer.length) {
+            return false;
+        }
+        reserve(length + 2);
+
+        final byte[] target = buffer;
+        int end = position;
+        if (format == Format.JSON) {
+            target[end++] = '"';
+        }
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if (c >= 0x80 || c < 0x20 || c == '"' || c == ',' || c == '\\') {
+                return false;
+            }
+            target[end++] = (byte) c;
+        }
+        if (format == Format.JSON) {
+            target[end++] = '"';
+        }
+        position = end;
+        return true;
+    }
+
+    private void escapedText(CharSequence text) throws IOException {
+        final int length = text.length();
+        if (format == Format.CSV) {
+            final boolean quoted = needsQuotes(text);
+            if (quoted) {
+                put('"');
+            }
+            for (int i = 0; i < length; i++) {
+                final char c = text.charAt(i);
+                if (c == '"') {
+                    put('"');
+                }
+                i = character(text, i, c);
+            }
+            if (quoted) {
+                put('"');
+            }
+        } else {
+            put('"');
+            for (int i = 0; i < length; i++) {
+                final char c = text.charAt(i);
+                if (c < 0x80 && jsonEscape(c)) {
+                    continue;
+                }
+                i = character(text, i, c);
+            }
+            put('"');
+        }
+    }
+
+    /**
+     * Writes a UTF-8 string field from another buffer, quoted and escaped as the format requires.
+     * Multi-byte sequences never contain ASCII bytes, so they are copied as they are.
+     */
+    private void utf8(byte[] source, int offset, int length) throws IOException {
+        if (offset < 0) {
+            if (format == Format.JSON) {
+                put('"');
+                put('"');
+            }
+            return;
+        }
+        if (format == Format.CSV) {
+            boolean quoted = false;
+            for (int i = offset; i < offset + length && !quoted; i++) {
+                quoted = source[i] == ',' || source[i] == '"' || source[i] == '\n' || source[i] == '\r';
+            }
+            if (!quoted) {
+                raw(source, offset, length);
+                return;
+            }
+            put('"');
+            for (int i = offset; i < offset + length; i++) {
+                if (source[i] == '"') {
+                    put('"');
+                }
+                put(source[i]);
+            }
+            put('"');
+        } else {
+            put('"');
+            for (int i = offset; i < offset + length; i++) {
+                final byte b = source[i];
+                if (b < 0 || !jsonEscape((char) b)) {
+                    put(b);
+                }
+            }
+            put('"');
+        }
+    }
+
+    /**
+     * Writes the JSON escape for a character if it needs one.
+     *
+     * @return true if the character was escaped
+     */
+    private boolean jsonEscape(char c) throws IOException {
+        if (c == '"' || c == '\\') {
+            put('\\');
+            put(c);
+            return true;
+        }
+        if (c < 0x20) {
+            put('\\');
+            put('u');
+            put('0');
+            put('0');
+            put(HEX[c >> 4]);
+            put(HEX[c & 0xf]);
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean needsQuotes(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Encodes one character as UTF-8, with the low surrogate that follows a high one.
+     *
+     * @return Index of the last character consumed
+     */
+    private int character(CharSequence text, int index, char c) throws IOException {
+        reserve(4);
+        if (c < 0x80) {
+            buffer[position++] = (byte) c;
+        } else if (c < 0x800) {
+            buffer[position++] = (byte) (0xc0 | (c >> 6));
+            buffer[position++] = (byte) (0x80 | (c & 0x3f));
+        } else if (Character.isHighSurrogate(c) && index + 1 < text.length() && Character.isLowSurrogate(text.charAt(index + 1))) {
+            final int codePoint = Character.toCodePoint(c, text.charAt(index + 1));
+            buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+            buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+            buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+            buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+            return index + 1;
+        } else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+            buffer[position++] = '?';
+        } else {
+            buffer[position++] = (byte) (0xe0 | (c >> 12));
+            buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            buffer[position++] = (byte) (0x80 | (c & 0x3f));
+        }
+        return index;
+    }
+
+    private void put(char c) throws IOException {
+        put((byte) c);
+    }
+
+    private void put(byte b) throws IOException {
+        if (position == buffer.length) {
+            reserve(1);
+        }
+        buffer[position++] = b;
+    }
+
+    private void raw(byte[] bytes) throws IOException {
+        raw(bytes, 0, bytes.length);
+    }
+
+    private void raw(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (position == buffer.length) {
+                reserve(1);
+            }
+            final int chunk = Math.min(length, buffer.length - position);
+            System.arraycopy(bytes, offset, buffer, position, chunk);
+            position += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Makes room for the given number of bytes, which is never more than the initial capacity, by
+     * draining the buffer to the target or growing it.
+     */
+    private void reserve(int length) throws IOException {
+        if (buffer.length - position >= length) {
+            return;
+        }
+        if (stream != null || channel != null) {
+            drain();
+        } else {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+        }
+    }
+
+    private void drain() throws IOException {
+        if (position == 0) {
+            return;
+        }
+        if (stream != null) {
+            stream.write(buffer, 0, position);
+        } else if (channel != null) {
+            channelBuffer.clear();
+            channelBuffer.limit(position);
+            while (channelBuffer.hasRemaining()) {
+                channel.write(channelBuffer);
+            }
+        } else {
+            return;
+        }
+        written += position;
+        position = 0;
+    }
+
+    private static byte[] ascii(String text) {
+        final byte[] bytes = new byte[text.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) text.charAt(i);
+        }
+        return bytes;
+    }
+}
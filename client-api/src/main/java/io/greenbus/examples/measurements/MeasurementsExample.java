@@ -20,7 +20,6 @@ package io.greenbus.examples.measurements;
 
 import io.greenbus.msg.japi.Session;
 import io.greenbus.client.service.proto.Measurements;
-import io.greenbus.client.service.proto.Measurements.Measurement;
 import io.greenbus.client.service.proto.Model;
 import io.greenbus.client.service.proto.ModelRequests;
 import io.greenbus.japi.client.service.MeasurementService;
@@ -30,6 +29,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -111,23 +114,67 @@ public class MeasurementsExample {
         // Display latest measurements for the points
         for (Measurements.PointMeasurementValue pointMeasurementValue : pointMeasurementValues) {
             System.out.println("Measurement: " + pointMeasurementValue.getPointUuid().getValue() +
-                    ", Value: " + buildValueString(pointMeasurementValue.getValue()) +
+                    ", Value: " + MeasurementWriter.valueString(pointMeasurementValue.getValue()) +
                     ", Time: " + new Date(pointMeasurementValue.getValue().getTime()));
         }
     }
 
-    private static String buildValueString(Measurement measurement) {
-        if(measurement.getType() == Measurement.Type.BOOL) {
-            return Boolean.toString(measurement.getBoolVal());
-        } else if(measurement.getType() == Measurement.Type.INT) {
-            return Long.toString(measurement.getIntVal());
-        } else if(measurement.getType() == Measurement.Type.DOUBLE) {
-            return Double.toString(measurement.getDoubleVal());
-        } else if(measurement.getType() == Measurement.Type.STRING) {
-            return measurement.getStringVal();
-        } else {
-            return "";
+    /**
+     * Get Coalesced Measurements
+     *
+     * Many threads each request the latest measurement of a single point. A coalescer merges the
+     * requests that arrive close together into batched requests to the measurement service.
+     *
+     * @param session Logged-in Session object
+     * @throws Exception
+     */
+    public static void getCoalescedMeasurements(Session session) throws Exception {
+
+        System.out.print("\n=== Coalesced Measurements ===\n\n");
+
+        // Get service interface for points
+        final ModelService.Client modelClient = ModelService.client(session);
+
+        final ModelRequests.PointQuery query = ModelRequests.PointQuery.newBuilder()
+                .setPagingParams(ModelRequests.EntityPagingParams.newBuilder()
+                        .setPageSize(100))
+                .build();
+
+        final List<Model.Point> points = modelClient.pointQuery(query).get(5000, TimeUnit.MILLISECONDS);
+
+        // Get service interface for measurements
+        final MeasurementService.Client measurementClient = MeasurementService.client(session);
+
+        // Batches of up to 500 points, waiting between 0.1 and 5 milliseconds for requests to accumulate
+        final CurrentValueCoalescer coalescer = new CurrentValueCoalescer(measurementClient, 500, 100, 5000, TimeUnit.MICROSECONDS);
+
+        // Eight threads each request points one at a time
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final List<Future<?>> workers = new ArrayList<Future<?>>();
+        for (int worker = 0; worker < 8; worker++) {
+            workers.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (Model.Point point : points) {
+                        coalescer.getCurrentValues(Arrays.asList(point.getUuid())).get(5000, TimeUnit.MILLISECONDS);
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
         }
+        executor.shutdown();
+        coalescer.shutdown();
+
+        // Display how many round trips were saved
+        System.out.println("Requests: " + coalescer.getRequestCount() +
+                ", Batches: " + coalescer.getBatchCount() +
+                ", Requests per batch: " + coalescer.getAverageRequestsPerBatch());
+        System.out.println("Points per batch: " + coalescer.getAverageBatchSize() +
+                ", Duplicate ratio: " + coalescer.getDuplicateRatio() +
+                ", Window (us): " + coalescer.getWindowMicros());
     }
 
 }
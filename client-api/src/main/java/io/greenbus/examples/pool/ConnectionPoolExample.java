@@ -0,0 +1,114 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.pool;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.client.service.proto.ModelRequests;
+import io.greenbus.japi.client.ServiceConnection;
+import io.greenbus.japi.client.ServiceConnectionFactory;
+import io.greenbus.japi.client.service.ModelService;
+import io.greenbus.msg.amqp.japi.AmqpSettings;
+import io.greenbus.msg.japi.Session;
+import io.greenbus.msg.qpid.QpidBroker;
+import io.greenbus.util.UserSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Example: Connection Pool
+ *
+ * Opens four connections to GreenBus as a ServiceConnectionPool and spreads a burst of entity
+ * queries across them. Configuration is loaded in the same way as Examples.main.
+ */
+public class ConnectionPoolExample {
+
+    /**
+     * Java entry-point for the connection pool example.
+     *
+     * @param args Command line arguments
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+
+        System.out.print("\n=== Connection Pool ===\n\n");
+
+        // Load configuration files from paths provided in environment variables or in default locations
+        final String configBaseDir = System.getProperty("io.greenbus.config.base", "");
+        final String amqpConfigPath = System.getProperty("io.greenbus.config.amqp", configBaseDir + "io.greenbus.msg.amqp.cfg");
+        final String userConfigPath = System.getProperty("io.greenbus.config.user", configBaseDir + "io.greenbus.user.cfg");
+
+        final AmqpSettings amqpSettings = new AmqpSettings(amqpConfigPath);
+        final UserSettings userSettings = UserSettings.load(userConfigPath);
+
+        // Every member of the pool gets its own ServiceConnection to the Qpid broker
+        final ServiceConnectionPool.Connector connector = new ServiceConnectionPool.Connector() {
+            @Override
+            public ServiceConnection connect() {
+                return ServiceConnectionFactory.create(amqpSettings, QpidBroker.instance(), 10000);
+            }
+        };
+
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        final ServiceConnectionPool pool = new ServiceConnectionPool(connector, userSettings.user(), userSettings.password(),
+                4, 3, 1000, TimeUnit.MILLISECONDS, scheduler);
+
+        try {
+            // Connect and log in each member
+            pool.open(5000, TimeUnit.MILLISECONDS);
+
+            System.out.println("Connected: " + pool.getConnectedCount());
+
+            // Issue a burst of queries; each goes to the member with the fewest outstanding
+            final long start = System.currentTimeMillis();
+            final List<ListenableFuture<List<Model.Entity>>> results = new ArrayList<ListenableFuture<List<Model.Entity>>>();
+            for (int i = 0; i < 1000; i++) {
+                results.add(pool.submit(new ServiceConnectionPool.Call<List<Model.Entity>>() {
+                    @Override
+                    public ListenableFuture<List<Model.Entity>> call(Session session) {
+                        return ModelService.client(session).entityQuery(ModelRequests.EntityQuery.newBuilder()
+                                .setPagingParams(ModelRequests.EntityPagingParams.newBuilder()
+                                        .setPageSize(10))
+                                .build());
+                    }
+                }));
+            }
+
+            for (ListenableFuture<List<Model.Entity>> result : results) {
+                result.get(30000, TimeUnit.MILLISECONDS);
+            }
+            System.out.println("Completed " + results.size() + " queries in " + (System.currentTimeMillis() - start) + " ms");
+
+            // Display how the requests were spread
+            for (ServiceConnectionPool.MemberStatus status : pool.getStatus()) {
+                System.out.println(status);
+            }
+
+        } finally {
+            pool.close();
+            scheduler.shutdown();
+        }
+
+        System.exit(0);
+    }
+}
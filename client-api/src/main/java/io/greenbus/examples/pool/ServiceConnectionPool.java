@@ -0,0 +1,543 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.pool;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.greenbus.japi.client.ServiceConnection;
+import io.greenbus.msg.japi.Session;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A pool of logged-in connections to the broker, spreading requests across them.
+ *
+ * Each member of the pool is its own ServiceConnection with its own Session. A request goes to the
+ * member with the fewest requests outstanding, so a member slowed down by large responses receives
+ * less work. Requests are given as a Call that builds its request from the chosen Session, for
+ * example by creating a service client with ModelService.client(session).
+ *
+ * A FailureClassifier decides which failed requests point to the connection, by default timeouts
+ * and I/O errors. Error responses such as a bad request or a denied permission show the connection
+ * is working and do not count. A member whose requests fail because of the connection several times
+ * in a row is taken out of rotation and disconnected. It is then reconnected and logged in again in
+ * the background, retrying with a growing delay until it succeeds.
+ *
+ * Utilization of each member, including the fraction of time it had requests outstanding, is
+ * available with getStatus().
+ */
+public class ServiceConnectionPool {
+
+    private static final int MAX_RETRY_MULTIPLE = 32;
+
+    /**
+     * Creates a new connection for a member of the pool.
+     */
+    public interface Connector {
+        ServiceConnection connect() throws Exception;
+    }
+
+    /**
+     * A request made with the Session of a pool member.
+     */
+    public interface Call<T> {
+        ListenableFuture<T> call(Session session);
+    }
+
+    /**
+     * Decides whether a failed request points to a problem with the connection it was made on.
+     */
+    public interface FailureClassifier {
+        boolean isConnectionFailure(Throwable error);
+    }
+
+    /**
+     * Counts a TimeoutException or IOException anywhere in the cause chain. Applications whose
+     * messaging implementation reports connection loss with exception types of its own add them
+     * with causedBy().
+     */
+    public static final FailureClassifier CONNECTION_FAILURES = causedBy(TimeoutException.class, IOException.class);
+
+    /**
+     * @param types Exception types that point to a problem with the connection
+     * @return Classifier that counts a failure if an instance of one of the types is anywhere in its cause chain
+     */
+    public static FailureClassifier causedBy(final Class<?>... types) {
+        return new FailureClassifier() {
+            @Override
+            public boolean isConnectionFailure(Throwable error) {
+                for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+                    for (Class<?> type : types) {
+                        if (type.isInstance(cause)) {
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    private final Connector connector;
+    private final String user;
+    private final String password;
+    private final int failureThreshold;
+    private final FailureClassifier classifier;
+    private final long retryDelayMillis;
+    private final ScheduledExecutorService scheduler;
+
+    private final List<Member> members = new ArrayList<Member>();
+    private long loginTimeoutMillis = 5000;
+    private int nextStart = 0;
+    private boolean closed = false;
+    private final long createdNanos = System.nanoTime();
+
+    /**
+     * @param connector Creates the connection of each member
+     * @param user User to log in as
+     * @param password Password of the user
+     * @param size Number of connections in the pool
+     * @param failureThreshold Number of consecutive connection failures after which a member is reconnected
+     * @param retryDelay Initial delay between attempts to reconnect a member
+     * @param unit Unit of the retry delay
+     * @param scheduler Executor used to reconnect members
+     */
+    public ServiceConnectionPool(Connector connector, String user, String password, int size, int failureThreshold,
+                                 long retryDelay, TimeUnit unit, ScheduledExecutorService scheduler) {
+        this(connector, user, password, size, failureThreshold, CONNECTION_FAILURES, retryDelay, unit, scheduler);
+    }
+
+    /**
+     * @param connector Creates the connection of each member
+     * @param user User to log in as
+     * @param password Password of the user
+     * @param size Number of connections in the pool
+     * @param failureThreshold Number of consecutive connection failures after which a member is reconnected
+     * @param classifier Decides which failed requests count as connection failures
+     * @param retryDelay Initial delay between attempts to reconnect a member
+     * @param unit Unit of the retry delay
+     * @param scheduler Executor used to reconnect members
+     */
+    public ServiceConnectionPool(Connector connector, String user, String password, int size, int failureThreshold,
+                                 FailureClassifier classifier, long retryDelay, TimeUnit unit, ScheduledExecutorService scheduler) {
+        if (size < 1 || failureThreshold < 1) {
+            throw new IllegalArgumentException("Pool size and failure threshold must be positive");
+        }
+        this.connector = connector;
+        this.user = user;
+        this.password = password;
+        this.failureThreshold = failureThreshold;
+        this.classifier = classifier;
+        this.retryDelayMillis = unit.toMillis(retryDelay);
+        this.scheduler = scheduler;
+
+        for (int i = 0; i < size; i++) {
+            members.add(new Member(i));
+        }
+    }
+
+    /**
+     * Connects and logs in every member. Members that fail are retried in the background.
+     *
+     * @param timeout Time allowed for each login
+     * @param unit Unit of the timeout
+     * @throws Exception If no member could be connected
+     */
+    public void open(long timeout, TimeUnit unit) throws Exception {
+        synchronized (this) {
+            loginTimeoutMillis = unit.toMillis(timeout);
+        }
+
+        Exception lastError = null;
+        int connected = 0;
+        for (Member member : members) {
+            try {
+                connect(member);
+                connected++;
+            } catch (Exception ex) {
+                lastError = ex;
+                scheduleReconnect(member, retryDelayMillis);
+            }
+        }
+
+        if (connected == 0) {
+            throw new Exception("No connections in the pool could be opened", lastError);
+        }
+    }
+
+    /**
+     * Makes a request on the member with the fewest requests outstanding.
+     *
+     * @param call Request to make
+     * @return Result of the request, or a failed future if no member is connected
+     */
+    public <T> ListenableFuture<T> submit(Call<T> call) {
+        final Member member;
+        final Session session;
+        synchronized (this) {
+            member = select();
+            if (member == null) {
+                return Futures.immediateFailedFuture(new IllegalStateException(closed ? "Pool is closed" : "No connections available"));
+            }
+            session = member.session;
+            member.started();
+        }
+
+        final ListenableFuture<T> result;
+        try {
+            result = call.call(session);
+        } catch (RuntimeException ex) {
+            finished(member, session, false, classifier.isConnectionFailure(ex));
+            return Futures.immediateFailedFuture(ex);
+        } catch (Error err) {
+            // Still release the member's slot; an Error says nothing about the connection
+            finished(member, session, false, false);
+            throw err;
+        }
+
+        result.addListener(new Runnable() {
+            @Override
+            public void run() {
+                boolean success = true;
+                boolean connectionFailure = false;
+                try {
+                    result.get();
+                } catch (ExecutionException ex) {
+                    success = false;
+                    connectionFailure = classifier.isConnectionFailure(ex.getCause());
+                } catch (CancellationException ex) {
+                    // Cancelled by the caller, not a failure of the connection
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                finished(member, session, success, connectionFailure);
+            }
+        }, MoreExecutors.sameThreadExecutor());
+
+        return result;
+    }
+
+    /**
+     * Returns the Session of the least loaded member without tracking its use, for requests such
+     * as subscriptions that are not completed by a single response.
+     *
+     * @return Session, or null if no member is connected
+     */
+    public synchronized Session leastLoadedSession() {
+        final Member member = select();
+        return member == null ? null : member.session;
+    }
+
+    /**
+     * @return Number of members currently connected
+     */
+    public synchronized int getConnectedCount() {
+        int connected = 0;
+        for (Member member : members) {
+            if (member.up) {
+                connected++;
+            }
+        }
+        return connected;
+    }
+
+    /**
+     * @return Number of requests outstanding across the pool
+     */
+    public synchronized int getOutstandingCount() {
+        int outstanding = 0;
+        for (Member member : members) {
+            outstanding += member.outstanding;
+        }
+        return outstanding;
+    }
+
+    /**
+     * @return Utilization of each member of the pool
+     */
+    public synchronized List<MemberStatus> getStatus() {
+        final long now = System.nanoTime();
+        final List<MemberStatus> status = new ArrayList<MemberStatus>(members.size());
+        for (Member member : members) {
+            status.add(new MemberStatus(member, now, now - createdNanos));
+        }
+        return status;
+    }
+
+    /**
+     * Disconnects every member. Requests submitted afterwards fail.
+     */
+    public void close() {
+        final List<ServiceConnection> connections = new ArrayList<ServiceConnection>();
+        synchronized (this) {
+            closed = true;
+            for (Member member : members) {
+                if (member.connection != null) {
+                    connections.add(member.connection);
+                }
+                member.connection = null;
+                member.session = null;
+                member.up = false;
+            }
+        }
+        for (ServiceConnection connection : connections) {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Chooses the connected member with the fewest requests outstanding. Ties are broken by
+     * rotating the starting point, so an idle pool still spreads requests evenly.
+     */
+    private Member select() {
+        if (closed) {
+            return null;
+        }
+        final int size = members.size();
+        final int start = nextStart;
+        nextStart = (nextStart + 1) % size;
+
+        Member best = null;
+        for (int i = 0; i < size; i++) {
+            final Member member = members.get((start + i) % size);
+            if (member.up && (best == null || member.outstanding < best.outstanding)) {
+                best = member;
+            }
+        }
+        return best;
+    }
+
+    private void finished(Member member, Session session, boolean success, boolean connectionFailure) {
+        boolean reconnect = false;
+        synchronized (this) {
+            member.finished();
+
+            // Results from a connection that has since been replaced say nothing about the new one
+            if (member.session != session) {
+                return;
+            }
+
+            if (success) {
+                member.completed++;
+                member.consecutiveFailures = 0;
+            } else if (!connectionFailure) {
+                // The service answered, so the connection is working
+                member.failed++;
+                member.consecutiveFailures = 0;
+            } else {
+                member.failed++;
+                member.consecutiveFailures++;
+                if (member.up && member.consecutiveFailures >= failureThreshold) {
+                    member.up = false;
+                    reconnect = true;
+                }
+            }
+        }
+        if (reconnect) {
+            scheduleReconnect(member, 0);
+        }
+    }
+
+    private void connect(Member member) throws Exception {
+        final long timeout;
+        synchronized (this) {
+            timeout = loginTimeoutMillis;
+        }
+
+        final ServiceConnection connection = connector.connect();
+        final Session session;
+        try {
+            session = connection.login(user, password).get(timeout, TimeUnit.MILLISECONDS);
+        } catch (Exception ex) {
+            connection.disconnect();
+            throw ex;
+        }
+
+        boolean discard = false;
+        synchronized (this) {
+            if (closed) {
+                discard = true;
+            } else {
+                member.connection = connection;
+                member.session = session;
+                member.up = true;
+                member.consecutiveFailures = 0;
+            }
+        }
+        if (discard) {
+            connection.disconnect();
+        }
+    }
+
+    private void scheduleReconnect(final Member member, final long delayMillis) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+        }
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                reconnect(member, delayMillis);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void reconnect(Member member, long lastDelayMillis) {
+        final ServiceConnection old;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            old = member.connection;
+            member.connection = null;
+            member.session = null;
+        }
+        if (old != null) {
+            try {
+                old.disconnect();
+            } catch (RuntimeException ex) {
+                // Already broken; a new connection replaces it regardless
+            }
+        }
+
+        try {
+            connect(member);
+            synchronized (this) {
+                member.reconnects++;
+            }
+        } catch (Exception ex) {
+            final long delay = Math.min(Math.max(retryDelayMillis, lastDelayMillis * 2), retryDelayMillis * MAX_RETRY_MULTIPLE);
+            scheduleReconnect(member, delay);
+        }
+    }
+
+    private static class Member {
+        private final int index;
+        private ServiceConnection connection = null;
+        private Session session = null;
+        private boolean up = false;
+
+        private int outstanding = 0;
+        private int peakOutstanding = 0;
+        private long completed = 0;
+        private long failed = 0;
+        private int consecutiveFailures = 0;
+        private int reconnects = 0;
+
+        private long busySinceNanos = 0;
+        private long busyNanos = 0;
+
+        Member(int index) {
+            this.index = index;
+        }
+
+        void started() {
+            if (outstanding == 0) {
+                busySinceNanos = System.nanoTime();
+            }
+            outstanding++;
+            peakOutstanding = Math.max(peakOutstanding, outstanding);
+        }
+
+        void finished() {
+            outstanding--;
+            if (outstanding == 0) {
+                busyNanos += System.nanoTime() - busySinceNanos;
+            }
+        }
+    }
+
+    /**
+     * Utilization of one member of the pool.
+     */
+    public static class MemberStatus {
+        private final int index;
+        private final boolean connected;
+        private final int outstanding;
+        private final int peakOutstanding;
+        private final long completed;
+        private final long failed;
+        private final int reconnects;
+        private final double busyFraction;
+
+        MemberStatus(Member member, long now, long lifetimeNanos) {
+            this.index = member.index;
+            this.connected = member.up;
+            this.outstanding = member.outstanding;
+            this.peakOutstanding = member.peakOutstanding;
+            this.completed = member.completed;
+            this.failed = member.failed;
+            this.reconnects = member.reconnects;
+
+            final long busy = member.busyNanos + (member.outstanding > 0 ? now - member.busySinceNanos : 0);
+            this.busyFraction = lifetimeNanos == 0 ? 0.0 : (double) busy / lifetimeNanos;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public boolean isConnected() {
+            return connected;
+        }
+
+        public int getOutstanding() {
+            return outstanding;
+        }
+
+        public int getPeakOutstanding() {
+            return peakOutstanding;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public int getReconnects() {
+            return reconnects;
+        }
+
+        /**
+         * @return Fraction of the pool's lifetime during which the member had requests outstanding
+         */
+        public double getBusyFraction() {
+            return busyFraction;
+        }
+
+        @Override
+        public String toString() {
+            return "Connection " + index + (connected ? "" : " (down)") + " - Outstanding: " + outstanding +
+                    ", Peak: " + peakOutstanding + ", Completed: " + completed + ", Failed: " + failed +
+                    ", Reconnects: " + reconnects + ", Busy: " + String.format("%.1f%%", busyFraction * 100);
+        }
+    }
+}
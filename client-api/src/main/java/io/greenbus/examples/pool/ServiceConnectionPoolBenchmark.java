@@ -0,0 +1,157 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.pool;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.client.service.proto.ModelRequests;
+import io.greenbus.examples.standin.StandInServices;
+import io.greenbus.examples.standin.StandInSettings;
+import io.greenbus.japi.client.ServiceConnection;
+import io.greenbus.japi.client.service.ModelService;
+import io.greenbus.msg.japi.Session;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures request throughput through a ServiceConnectionPool of 1, 2, 4 and 8 connections, then
+ * breaks one connection of a pool of 4 part way through a run to show it being taken out of
+ * rotation and reconnected.
+ *
+ * Runs against StandInServices connections. Every request is an entity lookup made through the model
+ * service client of a pool member's Session. Each stand-in connection decodes, handles and encodes
+ * its requests on a thread of its own, as an AMQP connection serializes its traffic, so how far one
+ * connection gets and how throughput scales with more of them is measured rather than assumed. A fixed
+ * network latency is added and a fixed number of requests is kept in flight. No broker is required.
+ */
+public class ServiceConnectionPoolBenchmark {
+
+    private static final long LATENCY_MICROS = 1000;
+    private static final int IN_FLIGHT = 256;
+
+    public static void main(String[] args) throws Exception {
+
+        final int requests = args.length > 0 ? Integer.parseInt(args[0]) : 40000;
+
+        System.out.print("\n=== Service Connection Pool Benchmark (" + requests + " requests, " + IN_FLIGHT + " in flight) ===\n\n");
+
+        final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4);
+        final StandInServices services = new StandInServices(new StandInSettings()
+                .setLatencyMicros(LATENCY_MICROS)
+                .setTransportThreads(8));
+        final ModelRequests.EntityKeySet keys = ModelRequests.EntityKeySet.newBuilder()
+                .addUuids(services.getModel().getRoot().getUuid())
+                .build();
+
+        try {
+            for (int size : new int[] { 1, 2, 4, 8 }) {
+                final List<ServiceConnection> connections = new CopyOnWriteArrayList<ServiceConnection>();
+                final ServiceConnectionPool pool = new ServiceConnectionPool(connector(services, connections), "user", "password", size, 3, 100, TimeUnit.MILLISECONDS, scheduler);
+                pool.open(5000, TimeUnit.MILLISECONDS);
+
+                final long start = System.nanoTime();
+                final int failed = run(pool, keys, requests, -1, connections);
+                final double millis = (System.nanoTime() - start) / 1000000.0;
+
+                System.out.println("Pool of " + size + ": " + (long) millis + " ms, " + (long) (requests / (millis / 1000.0)) + " requests/s, failed: " + failed);
+                pool.close();
+            }
+
+            // Break one connection halfway through
+            final List<ServiceConnection> connections = new CopyOnWriteArrayList<ServiceConnection>();
+            final ServiceConnectionPool pool = new ServiceConnectionPool(connector(services, connections), "user", "password", 4, 3, 100, TimeUnit.MILLISECONDS, scheduler);
+            pool.open(5000, TimeUnit.MILLISECONDS);
+            final long start = System.nanoTime();
+            final int failed = run(pool, keys, requests, requests / 2, connections);
+            final double millis = (System.nanoTime() - start) / 1000000.0;
+            Thread.sleep(200);
+
+            System.out.println("\nPool of 4, one connection broken: " + (long) millis + " ms, " +
+                    (long) (requests / (millis / 1000.0)) + " requests/s, failed: " + failed);
+            for (ServiceConnectionPool.MemberStatus status : pool.getStatus()) {
+                System.out.println("    " + status);
+            }
+            pool.close();
+        } finally {
+            scheduler.shutdown();
+            services.shutdown();
+        }
+    }
+
+    /**
+     * Makes the requests with a fixed number in flight, optionally closing the first connection of the
+     * pool after a number of requests.
+     */
+    private static int run(ServiceConnectionPool pool, final ModelRequests.EntityKeySet keys, int requests, int breakAfter,
+                           List<ServiceConnection> connections) throws InterruptedException {
+        final Semaphore inFlight = new Semaphore(IN_FLIGHT);
+        final AtomicInteger failed = new AtomicInteger(0);
+
+        for (int i = 0; i < requests; i++) {
+            inFlight.acquire();
+
+            if (i == breakAfter) {
+                connections.get(0).disconnect();
+            }
+
+            final ListenableFuture<List<Model.Entity>> result = pool.submit(new ServiceConnectionPool.Call<List<Model.Entity>>() {
+                @Override
+                public ListenableFuture<List<Model.Entity>> call(Session session) {
+                    return ModelService.client(session).get(keys);
+                }
+            });
+
+            result.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        result.get();
+                    } catch (Exception ex) {
+                        failed.incrementAndGet();
+                    }
+                    inFlight.release();
+                }
+            }, MoreExecutors.sameThreadExecutor());
+        }
+
+        inFlight.acquire(IN_FLIGHT);
+        return failed.get();
+    }
+
+    /**
+     * Connects to the stand-in, keeping the connections made so one can be broken.
+     */
+    private static ServiceConnectionPool.Connector connector(final StandInServices services, final List<ServiceConnection> connections) {
+        return new ServiceConnectionPool.Connector() {
+            @Override
+            public ServiceConnection connect() {
+                final ServiceConnection connection = services.connection();
+                connections.add(connection);
+                return connection;
+            }
+        };
+    }
+}
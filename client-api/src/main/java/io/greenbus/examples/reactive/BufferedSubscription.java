@@ -0,0 +1,215 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.reactive;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+
+/**
+ * A Flow.Subscription that buffers items from a source and delivers them as the subscriber's demand
+ * allows.
+ *
+ * Signals to the subscriber are made by whichever thread is draining the buffer, one at a time and
+ * never while holding the lock, so a subscriber may call request() or cancel() from onNext. When the
+ * subscriber has demand and the buffer is empty, wanted() is called so that the source can fetch
+ * more.
+ */
+abstract class BufferedSubscription<T> implements Flow.Subscription {
+
+    private static final int NONE = 0;
+    private static final int NEXT = 1;
+    private static final int COMPLETE = 2;
+    private static final int ERROR = 3;
+
+    private final Flow.Subscriber<? super T> subscriber;
+
+    private final ArrayDeque<T> buffer = new ArrayDeque<T>();
+    private long demand = 0;
+    private boolean completed = false;
+    private Throwable error = null;
+    private boolean terminated = false;
+
+    private boolean draining = false;
+    private boolean missed = false;
+
+    BufferedSubscription(Flow.Subscriber<? super T> subscriber) {
+        this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+        if (n <= 0) {
+            fail(new IllegalArgumentException("Requested number of items must be positive: " + n));
+            return;
+        }
+        synchronized (this) {
+            demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+        }
+        drain();
+    }
+
+    @Override
+    public void cancel() {
+        synchronized (this) {
+            if (terminated) {
+                return;
+            }
+            terminated = true;
+            buffer.clear();
+        }
+        cancelled();
+    }
+
+    /**
+     * Called without the lock when the subscriber has demand and nothing is buffered. Sources that
+     * fetch on demand start a fetch here, unless one is already running.
+     */
+    protected abstract void wanted();
+
+    /**
+     * Called once when the subscriber cancels.
+     */
+    protected void cancelled() {
+    }
+
+    protected synchronized boolean isTerminated() {
+        return terminated;
+    }
+
+    /**
+     * Adds items to the buffer, optionally marking the source as finished.
+     */
+    protected void push(Collection<? extends T> items, boolean last) {
+        synchronized (this) {
+            if (terminated) {
+                return;
+            }
+            buffer.addAll(items);
+            completed = completed || last;
+        }
+        drain();
+    }
+
+    /**
+     * Adds an item to the buffer unless it already holds the limit.
+     *
+     * @return False if the buffer was full
+     */
+    protected boolean offer(T item, int limit) {
+        synchronized (this) {
+            if (terminated) {
+                return true;
+            }
+            if (buffer.size() >= limit) {
+                return false;
+            }
+            buffer.addLast(item);
+        }
+        drain();
+        return true;
+    }
+
+    /**
+     * Ends the stream with an error, discarding anything buffered.
+     */
+    protected void fail(Throwable cause) {
+        synchronized (this) {
+            if (terminated || error != null) {
+                return;
+            }
+            error = cause;
+        }
+        drain();
+    }
+
+    private void drain() {
+        synchronized (this) {
+            if (draining) {
+                missed = true;
+                return;
+            }
+            draining = true;
+        }
+
+        boolean wantedCalled = false;
+        while (true) {
+            int signal = NONE;
+            T item = null;
+            Throwable failure = null;
+            boolean callWanted = false;
+
+            synchronized (this) {
+                if (terminated) {
+                    draining = false;
+                    return;
+                }
+                if (error != null) {
+                    terminated = true;
+                    buffer.clear();
+                    failure = error;
+                    signal = ERROR;
+                } else if (demand > 0 && !buffer.isEmpty()) {
+                    item = buffer.pollFirst();
+                    demand--;
+                    signal = NEXT;
+                } else if (buffer.isEmpty() && completed) {
+                    terminated = true;
+                    signal = COMPLETE;
+                } else if (demand > 0 && !wantedCalled) {
+                    callWanted = true;
+                } else if (missed) {
+                    missed = false;
+                    wantedCalled = false;
+                    continue;
+                } else {
+                    draining = false;
+                    return;
+                }
+            }
+
+            if (callWanted) {
+                wantedCalled = true;
+                wanted();
+                continue;
+            }
+
+            try {
+                if (signal == NEXT) {
+                    subscriber.onNext(item);
+                    continue;
+                } else if (signal == ERROR) {
+                    subscriber.onError(failure);
+                } else {
+                    subscriber.onComplete();
+                }
+            } catch (RuntimeException ex) {
+                synchronized (this) {
+                    draining = false;
+                }
+                cancel();
+                throw ex;
+            }
+
+            synchronized (this) {
+                draining = false;
+            }
+            return;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.reactive;
+
+/**
+ * Interfaces for demand-driven streams of results, with the same methods and rules as the Reactive
+ * Streams specification (and java.util.concurrent.Flow in later Java versions).
+ *
+ * A Subscriber receives nothing until it requests items through its Subscription, and never more
+ * than it has requested. Signals to a Subscriber are never concurrent.
+ */
+public final class Flow {
+
+    private Flow() {
+    }
+
+    /**
+     * A source of items for any number of Subscribers.
+     */
+    public interface Publisher<T> {
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * A receiver of items, which controls the rate at which they arrive.
+     */
+    public interface Subscriber<T> {
+        void onSubscribe(Subscription subscription);
+
+        void onNext(T item);
+
+        void onError(Throwable error);
+
+        void onComplete();
+    }
+
+    /**
+     * The link between one Publisher and one Subscriber.
+     */
+    public interface Subscription {
+
+        /**
+         * Allows n more items to be delivered.
+         *
+         * @param n Number of items, which must be positive
+         */
+        void request(long n);
+
+        /**
+         * Stops delivery. Items already in transit may still arrive.
+         */
+        void cancel();
+    }
+}
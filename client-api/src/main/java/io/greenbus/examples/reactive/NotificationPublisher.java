@@ -0,0 +1,170 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.reactive;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import io.greenbus.msg.japi.Subscription;
+import io.greenbus.msg.japi.SubscriptionHandler;
+import io.greenbus.msg.japi.SubscriptionResult;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Publishes the notifications of a service subscription to a single subscriber.
+ *
+ * The service subscription is made when the subscriber subscribes, and its initial result is
+ * available from getResult(). Notifications cannot be slowed at the source, so they are held in a
+ * bounded buffer until the subscriber requests them. A subscriber that falls so far behind that the
+ * buffer overflows receives an error and the service subscription is cancelled, rather than memory
+ * growing without limit. Cancelling the Flow.Subscription cancels the service subscription.
+ */
+public class NotificationPublisher<R, A> implements Flow.Publisher<A> {
+
+    /**
+     * Makes the service subscription.
+     */
+    public interface Source<R, A> {
+        ListenableFuture<SubscriptionResult<R, A>> subscribe();
+    }
+
+    private final Source<R, A> source;
+    private final int bufferSize;
+    private final SettableFuture<R> result = SettableFuture.create();
+    private boolean subscribed = false;
+
+    /**
+     * @param source Makes the service subscription
+     * @param bufferSize Maximum number of notifications held for the subscriber
+     */
+    public NotificationPublisher(Source<R, A> source, int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        }
+        this.source = source;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * @return Initial result of the service subscription, completed once it is made
+     */
+    public ListenableFuture<R> getResult() {
+        return result;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super A> subscriber) {
+        synchronized (this) {
+            if (subscribed) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(new IllegalStateException("Notification publisher allows a single subscriber"));
+                return;
+            }
+            subscribed = true;
+        }
+
+        final NotificationSubscription subscription = new NotificationSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.connect();
+    }
+
+    private class NotificationSubscription extends BufferedSubscription<A> implements SubscriptionHandler<A> {
+        private Subscription<A> serviceSubscription = null;
+
+        NotificationSubscription(Flow.Subscriber<? super A> subscriber) {
+            super(subscriber);
+        }
+
+        void connect() {
+            final ListenableFuture<SubscriptionResult<R, A>> future;
+            try {
+                future = source.subscribe();
+            } catch (RuntimeException ex) {
+                result.setException(ex);
+                fail(ex);
+                return;
+            }
+
+            future.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    final SubscriptionResult<R, A> subscriptionResult;
+                    try {
+                        subscriptionResult = future.get();
+                    } catch (ExecutionException ex) {
+                        result.setException(ex.getCause());
+                        fail(ex.getCause());
+                        return;
+                    } catch (Exception ex) {
+                        result.setException(ex);
+                        fail(ex);
+                        return;
+                    }
+
+                    result.set(subscriptionResult.getResult());
+                    synchronized (NotificationSubscription.this) {
+                        serviceSubscription = subscriptionResult.getSubscription();
+                    }
+                    if (isTerminated()) {
+                        subscriptionResult.getSubscription().cancel();
+                    } else {
+                        subscriptionResult.getSubscription().start(NotificationSubscription.this);
+                    }
+                }
+            }, MoreExecutors.sameThreadExecutor());
+        }
+
+        @Override
+        public void handle(A notification) {
+            if (!offer(notification, bufferSize)) {
+                cancelService();
+                fail(new IllegalStateException("Subscriber fell behind; more than " + bufferSize + " notifications were buffered"));
+            }
+        }
+
+        @Override
+        protected void wanted() {
+        }
+
+        @Override
+        protected void cancelled() {
+            cancelService();
+        }
+
+        private void cancelService() {
+            final Subscription<A> subscription;
+            synchronized (this) {
+                subscription = serviceSubscription;
+                serviceSubscription = null;
+            }
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+    }
+}
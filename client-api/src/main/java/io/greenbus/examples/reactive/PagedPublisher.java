@@ -0,0 +1,137 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.reactive;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Publishes the results of a paged query, fetching each page only when the subscriber has demand
+ * and the previous page has been delivered.
+ *
+ * Every subscriber runs the query from the start. A page shorter than the page size ends the
+ * stream. No thread waits for a page; delivery continues on the thread that completes the request.
+ */
+public class PagedPublisher<T> implements Flow.Publisher<T> {
+
+    /**
+     * Requests one page of a query.
+     */
+    public interface Pager<T> {
+
+        /**
+         * @param last Last item of the previous page, or null for the first page
+         * @param pageSize Maximum number of items in the page
+         * @return The page
+         */
+        ListenableFuture<List<T>> page(T last, int pageSize);
+    }
+
+    private final Pager<T> pager;
+    private final int pageSize;
+
+    /**
+     * @param pager Requests pages of the query
+     * @param pageSize Number of items per page
+     */
+    public PagedPublisher(Pager<T> pager, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        this.pager = pager;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        subscriber.onSubscribe(new PageSubscription(subscriber));
+    }
+
+    private class PageSubscription extends BufferedSubscription<T> {
+        private boolean fetching = false;
+        private T last = null;
+        private ListenableFuture<List<T>> current = null;
+
+        PageSubscription(Flow.Subscriber<? super T> subscriber) {
+            super(subscriber);
+        }
+
+        @Override
+        protected void wanted() {
+            final T after;
+            synchronized (this) {
+                if (fetching) {
+                    return;
+                }
+                fetching = true;
+                after = last;
+            }
+
+            final ListenableFuture<List<T>> future;
+            try {
+                future = pager.page(after, pageSize);
+            } catch (RuntimeException ex) {
+                fail(ex);
+                return;
+            }
+            synchronized (this) {
+                current = future;
+            }
+
+            future.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    final List<T> page;
+                    try {
+                        page = future.get();
+                    } catch (ExecutionException ex) {
+                        fail(ex.getCause());
+                        return;
+                    } catch (Exception ex) {
+                        fail(ex);
+                        return;
+                    }
+
+                    synchronized (PageSubscription.this) {
+                        fetching = false;
+                        current = null;
+                        if (!page.isEmpty()) {
+                            last = page.get(page.size() - 1);
+                        }
+                    }
+                    push(page, page.size() < pageSize);
+                }
+            }, MoreExecutors.sameThreadExecutor());
+        }
+
+        @Override
+        protected void cancelled() {
+            final ListenableFuture<List<T>> future;
+            synchronized (this) {
+                future = current;
+            }
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
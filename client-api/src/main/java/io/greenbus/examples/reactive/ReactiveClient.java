@@ -0,0 +1,407 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.reactive;
+
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import io.greenbus.client.service.proto.CommandRequests;
+import io.greenbus.client.service.proto.Commands;
+import io.greenbus.client.service.proto.EventRequests;
+import io.greenbus.client.service.proto.Events;
+import io.greenbus.client.service.proto.FrontEnd;
+import io.greenbus.client.service.proto.FrontEndRequests;
+import io.greenbus.client.service.proto.Measurements;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.client.service.proto.ModelRequests;
+import io.greenbus.japi.client.service.CommandService;
+import io.greenbus.japi.client.service.EventService;
+import io.greenbus.japi.client.service.FrontEndService;
+import io.greenbus.japi.client.service.MeasurementService;
+import io.greenbus.japi.client.service.ModelService;
+import io.greenbus.msg.japi.Session;
+import io.greenbus.msg.japi.SubscriptionResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A non-blocking facade over the model, measurement, event, command and front end services.
+ *
+ * Nothing here waits on a future. Single requests and multi-step workflows return ListenableFutures
+ * that complete on the thread that receives the last response, and can be chained with Futures.transform.
+ * Paged queries and subscriptions return Flow.Publishers: a paged query fetches the next page only
+ * when the subscriber has asked for more items, and a subscription holds at most a bounded number of
+ * notifications for a slow subscriber. A few threads can therefore drive thousands of concurrent
+ * workflows, instead of one blocked thread per outstanding request.
+ */
+public class ReactiveClient {
+
+    private final ModelService.Client modelClient;
+    private final MeasurementService.Client measurementClient;
+    private final EventService.Client eventClient;
+    private final CommandService.Client commandClient;
+    private final FrontEndService.Client frontEndClient;
+    private final int notificationBufferSize;
+
+    /**
+     * @param session Logged-in Session object
+     * @param notificationBufferSize Maximum number of notifications held for each subscription publisher
+     */
+    public ReactiveClient(Session session, int notificationBufferSize) {
+        this(ModelService.client(session), MeasurementService.client(session), EventService.client(session),
+                CommandService.client(session), FrontEndService.client(session), notificationBufferSize);
+    }
+
+    public ReactiveClient(ModelService.Client modelClient, MeasurementService.Client measurementClient, EventService.Client eventClient,
+                          CommandService.Client commandClient, FrontEndService.Client frontEndClient, int notificationBufferSize) {
+        this.modelClient = modelClient;
+        this.measurementClient = measurementClient;
+        this.eventClient = eventClient;
+        this.commandClient = commandClient;
+        this.frontEndClient = frontEndClient;
+        this.notificationBufferSize = notificationBufferSize;
+    }
+
+    /**
+     * @param query Entity query; its paging parameters are replaced
+     * @param pageSize Number of entities per request
+     * @return Publisher of every entity matching the query, paged by UUID
+     */
+    public Flow.Publisher<Model.Entity> entities(final ModelRequests.EntityQuery query, int pageSize) {
+        return new PagedPublisher<Model.Entity>(new PagedPublisher.Pager<Model.Entity>() {
+            @Override
+            public ListenableFuture<List<Model.Entity>> page(Model.Entity last, int pageSize) {
+                return modelClient.entityQuery(query.toBuilder()
+                        .setPagingParams(paging(last == null ? null : last.getUuid(), pageSize))
+                        .build());
+            }
+        }, pageSize);
+    }
+
+    /**
+     * @param query Point query; its paging parameters are replaced
+     * @param pageSize Number of points per request
+     * @return Publisher of every point matching the query, paged by UUID
+     */
+    public Flow.Publisher<Model.Point> points(final ModelRequests.PointQuery query, int pageSize) {
+        return new PagedPublisher<Model.Point>(new PagedPublisher.Pager<Model.Point>() {
+            @Override
+            public ListenableFuture<List<Model.Point>> page(Model.Point last, int pageSize) {
+                return modelClient.pointQuery(query.toBuilder()
+                        .setPagingParams(paging(last == null ? null : last.getUuid(), pageSize))
+                        .build());
+            }
+        }, pageSize);
+    }
+
+    /**
+     * @param query Edge query; its paging parameters are replaced
+     * @param pageSize Number of edges per request
+     * @return Publisher of every edge matching the query, paged by id
+     */
+    public Flow.Publisher<Model.EntityEdge> edges(final ModelRequests.EntityEdgeQuery query, int pageSize) {
+        return new PagedPublisher<Model.EntityEdge>(new PagedPublisher.Pager<Model.EntityEdge>() {
+            @Override
+            public ListenableFuture<List<Model.EntityEdge>> page(Model.EntityEdge last, int pageSize) {
+                final ModelRequests.EntityEdgeQuery.Builder builder = query.toBuilder().setPageSize(pageSize);
+                if (last != null) {
+                    builder.setLastId(last.getId());
+                }
+                return modelClient.edgeQuery(builder.build());
+            }
+        }, pageSize);
+    }
+
+    /**
+     * @param params Event query parameters; for paging by id they should not ask for the latest events
+     * @param pageSize Number of events per request
+     * @return Publisher of every event matching the parameters, paged by id
+     */
+    public Flow.Publisher<Events.Event> events(final EventRequests.EventQueryParams params, int pageSize) {
+        return new PagedPublisher<Events.Event>(new PagedPublisher.Pager<Events.Event>() {
+            @Override
+            public ListenableFuture<List<Events.Event>> page(Events.Event last, int pageSize) {
+                final EventRequests.EventQuery.Builder builder = EventRequests.EventQuery.newBuilder()
+                        .setQueryParams(params)
+                        .setPageSize(pageSize);
+                if (last != null) {
+                    builder.setLastId(last.getId());
+                }
+                return eventClient.eventQuery(builder.build());
+            }
+        }, pageSize);
+    }
+
+    /**
+     * @param query Alarm query; its paging parameters are replaced
+     * @param pageSize Number of alarms per request
+     * @return Publisher of every alarm matching the query, paged by id
+     */
+    public Flow.Publisher<Events.Alarm> alarms(final EventRequests.AlarmQuery query, int pageSize) {
+        return new PagedPublisher<Events.Alarm>(new PagedPublisher.Pager<Events.Alarm>() {
+            @Override
+            public ListenableFuture<List<Events.Alarm>> page(Events.Alarm last, int pageSize) {
+                final EventRequests.AlarmQuery.Builder builder = query.toBuilder().setPageSize(pageSize);
+                if (last != null) {
+                    builder.setLastId(last.getId());
+                }
+                return eventClient.alarmQuery(builder.build());
+            }
+        }, pageSize);
+    }
+
+    /**
+     * @param pointUuids Points to subscribe to
+     * @return Publisher of measurement notifications; its result is the current values
+     */
+    public NotificationPublisher<List<Measurements.PointMeasurementValue>, Measurements.MeasurementNotification> measurements(final List<Model.ModelUUID> pointUuids) {
+        return new NotificationPublisher<List<Measurements.PointMeasurementValue>, Measurements.MeasurementNotification>(
+                new NotificationPublisher.Source<List<Measurements.PointMeasurementValue>, Measurements.MeasurementNotification>() {
+                    @Override
+                    public ListenableFuture<SubscriptionResult<List<Measurements.PointMeasurementValue>, Measurements.MeasurementNotification>> subscribe() {
+                        return measurementClient.getCurrentValuesAndSubscribe(pointUuids);
+                    }
+                }, notificationBufferSize);
+    }
+
+    /**
+     * @param query Event subscription query
+     * @return Publisher of event notifications; its result is the recent events matching the query
+     */
+    public NotificationPublisher<List<Events.Event>, Events.EventNotification> eventNotifications(final EventRequests.EventSubscriptionQuery query) {
+        return new NotificationPublisher<List<Events.Event>, Events.EventNotification>(
+                new NotificationPublisher.Source<List<Events.Event>, Events.EventNotification>() {
+                    @Override
+                    public ListenableFuture<SubscriptionResult<List<Events.Event>, Events.EventNotification>> subscribe() {
+                        return eventClient.subscribeToEvents(query);
+                    }
+                }, notificationBufferSize);
+    }
+
+    /**
+     * @param query Alarm subscription query
+     * @return Publisher of alarm notifications; its result is the alarms matching the query
+     */
+    public NotificationPublisher<List<Events.Alarm>, Events.AlarmNotification> alarmNotifications(final EventRequests.AlarmSubscriptionQuery query) {
+        return new NotificationPublisher<List<Events.Alarm>, Events.AlarmNotification>(
+                new NotificationPublisher.Source<List<Events.Alarm>, Events.AlarmNotification>() {
+                    @Override
+                    public ListenableFuture<SubscriptionResult<List<Events.Alarm>, Events.AlarmNotification>> subscribe() {
+                        return eventClient.subscribeToAlarms(query);
+                    }
+                }, notificationBufferSize);
+    }
+
+    /**
+     * @param query Entity subscription query
+     * @return Publisher of entity notifications; its result is the entities matching the query
+     */
+    public NotificationPublisher<List<Model.Entity>, Model.EntityNotification> entityNotifications(final ModelRequests.EntitySubscriptionQuery query) {
+        return new NotificationPublisher<List<Model.Entity>, Model.EntityNotification>(
+                new NotificationPublisher.Source<List<Model.Entity>, Model.EntityNotification>() {
+                    @Override
+                    public ListenableFuture<SubscriptionResult<List<Model.Entity>, Model.EntityNotification>> subscribe() {
+                        return modelClient.subscribeToEntities(query);
+                    }
+                }, notificationBufferSize);
+    }
+
+    /**
+     * @param query Connection status subscription query
+     * @return Publisher of connection status notifications; its result is the current statuses
+     */
+    public NotificationPublisher<List<FrontEnd.FrontEndConnectionStatus>, FrontEnd.FrontEndConnectionStatusNotification> connectionStatusNotifications(
+            final FrontEndRequests.FrontEndStatusSubscriptionQuery query) {
+        return new NotificationPublisher<List<FrontEnd.FrontEndConnectionStatus>, FrontEnd.FrontEndConnectionStatusNotification>(
+                new NotificationPublisher.Source<List<FrontEnd.FrontEndConnectionStatus>, FrontEnd.FrontEndConnectionStatusNotification>() {
+                    @Override
+                    public ListenableFuture<SubscriptionResult<List<FrontEnd.FrontEndConnectionStatus>, FrontEnd.FrontEndConnectionStatusNotification>> subscribe() {
+                        return frontEndClient.subscribeToFrontEndConnectionStatuses(query);
+                    }
+                }, notificationBufferSize);
+    }
+
+    /**
+     * Looks up points by name or UUID and then gets their current values, as one future.
+     *
+     * @param points Names or UUIDs of the points
+     * @return Current values of the points
+     */
+    public ListenableFuture<List<Measurements.PointMeasurementValue>> currentValues(ModelRequests.EntityKeySet points) {
+        return Futures.transform(modelClient.getPoints(points), new AsyncFunction<List<Model.Point>, List<Measurements.PointMeasurementValue>>() {
+            @Override
+            public ListenableFuture<List<Measurements.PointMeasurementValue>> apply(List<Model.Point> found) {
+                final List<Model.ModelUUID> uuids = new ArrayList<Model.ModelUUID>(found.size());
+                for (Model.Point point : found) {
+                    uuids.add(point.getUuid());
+                }
+                return measurementClient.getCurrentValues(uuids);
+            }
+        });
+    }
+
+    /**
+     * Selects the command, issues the request and deletes the lock, as one future. The lock is
+     * deleted whether or not the request succeeds.
+     *
+     * @param request Command request
+     * @return Result of the command, completed once the lock is deleted; fails if any of the three
+     * steps fails, including the delete of the lock
+     */
+    public ListenableFuture<Commands.CommandResult> execute(final Commands.CommandRequest request) {
+        final SettableFuture<Commands.CommandResult> outcome = SettableFuture.create();
+
+        final ListenableFuture<Commands.CommandLock> select;
+        try {
+            select = commandClient.selectCommands(CommandRequests.CommandSelect.newBuilder()
+                    .addCommandUuids(request.getCommandUuid())
+                    .build());
+        } catch (RuntimeException ex) {
+            return Futures.immediateFailedFuture(ex);
+        }
+
+        select.addListener(new Runnable() {
+            @Override
+            public void run() {
+                final Commands.CommandLock lock;
+                try {
+                    lock = select.get();
+                } catch (Exception ex) {
+                    outcome.setException(cause(ex));
+                    return;
+                }
+
+                final ListenableFuture<Commands.CommandResult> issue;
+                try {
+                    issue = commandClient.issueCommandRequest(request);
+                } catch (RuntimeException ex) {
+                    release(lock, outcome, Futures.<Commands.CommandResult>immediateFailedFuture(ex));
+                    return;
+                }
+                issue.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        release(lock, outcome, issue);
+                    }
+                }, MoreExecutors.sameThreadExecutor());
+            }
+        }, MoreExecutors.sameThreadExecutor());
+
+        return outcome;
+    }
+
+    /**
+     * Deletes the lock, then completes the outcome with the result of the request. If the request
+     * succeeded but the delete fails, the outcome fails with an IllegalStateException caused by the
+     * delete failure, since the lock is then left in place. A failure of the request itself takes
+     * precedence.
+     */
+    private void release(Commands.CommandLock lock, final SettableFuture<Commands.CommandResult> outcome, final ListenableFuture<Commands.CommandResult> issue) {
+        final ListenableFuture<List<Commands.CommandLock>> delete;
+        try {
+            delete = commandClient.deleteCommandLocks(Arrays.asList(lock.getId()));
+        } catch (RuntimeException ex) {
+            outcome.setException(ex);
+            return;
+        }
+        delete.addListener(new Runnable() {
+            @Override
+            public void run() {
+                final Commands.CommandResult result;
+                try {
+                    result = issue.get();
+                } catch (Exception ex) {
+                    outcome.setException(cause(ex));
+                    return;
+                }
+                try {
+                    delete.get();
+                } catch (Exception ex) {
+                    outcome.setException(new IllegalStateException("Command request completed but its lock could not be deleted", cause(ex)));
+                    return;
+                }
+                outcome.set(result);
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    /**
+     * Subscribes to a publisher and collects every item, requesting them in batches.
+     *
+     * @param publisher Publisher
+     * @param batchSize Number of items requested at a time
+     * @return Every item, completed when the publisher completes
+     */
+    public static <T> ListenableFuture<List<T>> collect(Flow.Publisher<T> publisher, final long batchSize) {
+        final SettableFuture<List<T>> result = SettableFuture.create();
+
+        publisher.subscribe(new Flow.Subscriber<T>() {
+            private final List<T> items = new ArrayList<T>();
+            private Flow.Subscription subscription;
+            private long remaining = 0;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                remaining = batchSize;
+                subscription.request(batchSize);
+            }
+
+            @Override
+            public void onNext(T item) {
+                items.add(item);
+                if (--remaining == 0) {
+                    remaining = batchSize;
+                    subscription.request(batchSize);
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                result.setException(error);
+            }
+
+            @Override
+            public void onComplete() {
+                result.set(items);
+            }
+        });
+
+        return result;
+    }
+
+    private static ModelRequests.EntityPagingParams paging(Model.ModelUUID lastUuid, int pageSize) {
+        final ModelRequests.EntityPagingParams.Builder paging = ModelRequests.EntityPagingParams.newBuilder()
+                .setPageByName(false)
+                .setPageSize(pageSize);
+        if (lastUuid != null) {
+            paging.setLastUuid(lastUuid);
+        }
+        return paging.build();
+    }
+
+    private static Throwable cause(Exception ex) {
+        return ex instanceof ExecutionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+}
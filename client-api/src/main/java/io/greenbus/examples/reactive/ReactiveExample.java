@@ -0,0 +1,158 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.reactive;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.greenbus.client.service.proto.Measurements;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.client.service.proto.ModelRequests;
+import io.greenbus.msg.japi.Session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Example: Reactive Client
+ *
+ */
+public class ReactiveExample {
+
+    /**
+     * Non-Blocking Queries
+     *
+     * Streams every point page by page as the subscriber asks for them, gets the current values of the
+     * first few with one composed future, then subscribes to their measurements with a subscriber that
+     * takes one notification at a time.
+     *
+     * @param session Logged-in Session object
+     * @throws Exception
+     */
+    public static void nonBlockingQueries(Session session) throws Exception {
+
+        System.out.print("\n=== Non-Blocking Queries ===\n\n");
+
+        final ReactiveClient client = new ReactiveClient(session, 1000);
+
+        // Pages of 20 are requested only as the subscriber consumes them
+        final List<Model.Point> streamed = Collections.synchronizedList(new ArrayList<Model.Point>());
+        final CountDownLatch pointsDone = new CountDownLatch(1);
+        final Flow.Subscription[] pointStream = new Flow.Subscription[1];
+        client.points(ModelRequests.PointQuery.newBuilder().build(), 20).subscribe(new Flow.Subscriber<Model.Point>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                synchronized (pointStream) {
+                    pointStream[0] = subscription;
+                }
+                subscription.request(5);
+            }
+
+            @Override
+            public void onNext(Model.Point point) {
+                streamed.add(point);
+                System.out.println("Point: " + point.getName());
+                if (streamed.size() % 5 == 0) {
+                    subscription.request(5);
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                System.out.println("Point query failed: " + error);
+                pointsDone.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                pointsDone.countDown();
+            }
+        });
+
+        // Waiting here only keeps the example in order; the query itself holds no thread
+        if (!pointsDone.await(10000, TimeUnit.MILLISECONDS)) {
+            // Stop the query rather than leave it paging in the background
+            synchronized (pointStream) {
+                if (pointStream[0] != null) {
+                    pointStream[0].cancel();
+                }
+            }
+            System.out.println("Point query timed out");
+        }
+        final List<Model.Point> points;
+        synchronized (streamed) {
+            points = new ArrayList<Model.Point>(streamed);
+        }
+        System.out.println("Streamed " + points.size() + " points");
+
+        if (points.isEmpty()) {
+            return;
+        }
+
+        // Look up the points by name and get their values, as a single future
+        final ModelRequests.EntityKeySet.Builder keys = ModelRequests.EntityKeySet.newBuilder();
+        final List<Model.ModelUUID> pointUuids = new ArrayList<Model.ModelUUID>();
+        for (Model.Point point : points.subList(0, Math.min(4, points.size()))) {
+            keys.addNames(point.getName());
+            pointUuids.add(point.getUuid());
+        }
+
+        final ListenableFuture<List<Measurements.PointMeasurementValue>> values = client.currentValues(keys.build());
+        for (Measurements.PointMeasurementValue value : values.get(5000, TimeUnit.MILLISECONDS)) {
+            System.out.println("Current value: " + value.getPointUuid().getValue() + ", " + value.getValue().getType());
+        }
+
+        // A subscriber that takes one notification at a time; up to 1000 wait in the publisher's buffer
+        final NotificationPublisher<List<Measurements.PointMeasurementValue>, Measurements.MeasurementNotification> measurements = client.measurements(pointUuids);
+        final Flow.Subscription[] subscription = new Flow.Subscription[1];
+        measurements.subscribe(new Flow.Subscriber<Measurements.MeasurementNotification>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription[0] = s;
+                s.request(1);
+            }
+
+            @Override
+            public void onNext(Measurements.MeasurementNotification notification) {
+                System.out.println("Measurement: " + notification.getPointName() + ", " + notification.getValue().getType());
+                subscription[0].request(1);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                System.out.println("Measurement subscription failed: " + error);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        System.out.println("Subscribed to " + measurements.getResult().get(5000, TimeUnit.MILLISECONDS).size() + " points");
+
+        Thread.sleep(5000);
+
+        // Cancelling the stream cancels the service subscription
+        subscription[0].cancel();
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.reactive;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.greenbus.client.service.proto.CommandRequests;
+import io.greenbus.client.service.proto.Commands;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.examples.standin.StandInServices;
+import io.greenbus.examples.standin.StandInSettings;
+import io.greenbus.japi.client.service.CommandService;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs many select, issue and delete lock workflows at once, composed with ReactiveClient.execute on
+ * the two threads that complete the requests, and then the same workflows on a pool of threads that
+ * each wait for every step.
+ *
+ * Runs against StandInServices, with a command for every workflow, in which every request takes a
+ * fixed round-trip time. Reports the locks that are still held at the end. No broker is required.
+ */
+public class ReactiveWorkflowBenchmark {
+
+    private static final long ROUND_TRIP_MICROS = 2000;
+    private static final int BLOCKING_THREADS = 64;
+
+    public static void main(String[] args) throws Exception {
+
+        final int workflows = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+
+        System.out.print("\n=== Reactive Workflow Benchmark (" + workflows + " workflows) ===\n\n");
+
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final StandInServices services = new StandInServices(new StandInSettings()
+                .setEquipmentCount(workflows)
+                .setPointsPerEquipment(1)
+                .setCommandsPerEquipment(1)
+                .setLatencyMicros(ROUND_TRIP_MICROS)
+                .setTransportThreads(2));
+        final CommandService.Client commandClient = services.getCommandClient();
+        final ReactiveClient client = new ReactiveClient(null, null, null, commandClient, null, 1);
+
+        final List<Commands.CommandRequest> requests = new ArrayList<Commands.CommandRequest>(workflows);
+        for (Model.Command command : services.getModel().getCommands()) {
+            requests.add(Commands.CommandRequest.newBuilder()
+                    .setCommandUuid(command.getUuid())
+                    .build());
+        }
+
+        final ExecutorService pool = Executors.newFixedThreadPool(BLOCKING_THREADS);
+        try {
+            // Every workflow in flight at once; no thread waits on a step
+            threads.resetPeakThreadCount();
+            final long composedStart = System.nanoTime();
+            final List<ListenableFuture<Commands.CommandResult>> futures = new ArrayList<ListenableFuture<Commands.CommandResult>>(workflows);
+            for (Commands.CommandRequest request : requests) {
+                futures.add(client.execute(request));
+            }
+            for (ListenableFuture<Commands.CommandResult> future : futures) {
+                future.get(60000, TimeUnit.MILLISECONDS);
+            }
+            report("Composed", workflows, composedStart, threads.getPeakThreadCount(), services.getCommandLockCount());
+
+            // One thread per workflow in flight, waiting for each step
+            threads.resetPeakThreadCount();
+            final long blockingStart = System.nanoTime();
+            final List<Future<Commands.CommandResult>> blockingFutures = new ArrayList<Future<Commands.CommandResult>>(workflows);
+            for (final Commands.CommandRequest request : requests) {
+                blockingFutures.add(pool.submit(new Callable<Commands.CommandResult>() {
+                    @Override
+                    public Commands.CommandResult call() throws Exception {
+                        final Commands.CommandLock lock = commandClient.selectCommands(CommandRequests.CommandSelect.newBuilder()
+                                .addCommandUuids(request.getCommandUuid())
+                                .build()).get(5000, TimeUnit.MILLISECONDS);
+                        try {
+                            return commandClient.issueCommandRequest(request).get(5000, TimeUnit.MILLISECONDS);
+                        } finally {
+                            commandClient.deleteCommandLocks(Arrays.asList(lock.getId())).get(5000, TimeUnit.MILLISECONDS);
+                        }
+                    }
+                }));
+            }
+            for (Future<Commands.CommandResult> future : blockingFutures) {
+                future.get(600000, TimeUnit.MILLISECONDS);
+            }
+            report("Blocking, " + BLOCKING_THREADS + " threads", workflows, blockingStart, threads.getPeakThreadCount(), services.getCommandLockCount());
+        } finally {
+            pool.shutdown();
+            services.shutdown();
+        }
+    }
+
+    private static void report(String name, int workflows, long start, int peakThreads, long heldLocks) {
+        final double millis = (System.nanoTime() - start) / 1000000.0;
+        System.out.println(name + ": " + millis + " ms, " + (long) (workflows / (millis / 1000.0)) + " workflows/s, " +
+                "peak threads: " + peakThreads + ", locks still held: " + heldLocks);
+    }
+}
@@ -0,0 +1,846 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.snapshot;
+
+import io.greenbus.client.service.proto.Model;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A read-only copy of the points, commands, endpoints and other entities of the model, kept in a
+ * local file so a client can start without downloading them.
+ *
+ * The file is memory-mapped rather than read: opening a snapshot checks its header and checksum,
+ * and records are decoded only when asked for. Records are fixed-size and refer to a table of
+ * distinct strings, so repeated types, units and endpoint UUIDs are stored once. Each kind of
+ * record is sorted by name and a separate index is sorted by UUID, so lookups are binary searches
+ * of the mapped file.
+ *
+ * Entities are stored once, as the most specific kind they appear as; getEntity finds points,
+ * commands and endpoints too. A snapshot never changes once written; ModelSnapshotRefresher brings
+ * the model up to date by writing a new one.
+ *
+ * Each snapshot written is a new generation, named after the snapshot file with a number appended
+ * ("model.snapshot.12"). A generation is written to a temporary file and renamed into place under a
+ * name that does not exist yet, so no file a reader might open is ever replaced or partly written.
+ * Older generations are deleted once a newer one is in place.
+ */
+public class ModelSnapshot {
+
+    static final int POINT = 0;
+    static final int COMMAND = 1;
+    static final int ENDPOINT = 2;
+    static final int ENTITY = 3;
+    private static final int KINDS = 4;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MAGIC = 0x47424d53;
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 24;
+
+    private static final int CREATED_OFFSET = 8;
+    private static final int CRC_OFFSET = 16;
+    private static final int COUNTS_OFFSET = 20;
+    private static final int STRINGS_OFFSET = 36;
+
+    private static final int DISABLED = 1;
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final long createdTime;
+    private final int[] kindStart = new int[KINDS + 1];
+    private final int recordCount;
+    private final int uuidIndex;
+    private final int strings;
+
+    private ModelSnapshot(File file, MappedByteBuffer buffer) {
+        this.file = file;
+        this.buffer = buffer;
+        this.createdTime = buffer.getLong(CREATED_OFFSET);
+        for (int kind = 0; kind < KINDS; kind++) {
+            kindStart[kind + 1] = kindStart[kind] + buffer.getInt(COUNTS_OFFSET + kind * 4);
+        }
+        this.recordCount = kindStart[KINDS];
+        this.uuidIndex = HEADER_SIZE + recordCount * RECORD_SIZE;
+        this.strings = buffer.getInt(STRINGS_OFFSET);
+    }
+
+    /**
+     * Maps a snapshot file and checks that it is complete.
+     *
+     * @param file Snapshot file
+     * @return The snapshot
+     * @throws IOException If the file cannot be read or is not a valid snapshot
+     */
+    public static ModelSnapshot open(File file) throws IOException {
+        final RandomAccessFile access = new RandomAccessFile(file, "r");
+        final MappedByteBuffer buffer;
+        try {
+            if (access.length() < HEADER_SIZE || access.length() > Integer.MAX_VALUE) {
+                throw new IOException("Not a model snapshot: " + file);
+            }
+            buffer = access.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, access.length());
+        } finally {
+            // The mapping stays valid after the file is closed
+            access.close();
+        }
+
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a model snapshot: " + file);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported model snapshot version " + buffer.getInt(4) + ": " + file);
+        }
+
+        long records = 0;
+        for (int kind = 0; kind < KINDS; kind++) {
+            final int count = buffer.getInt(COUNTS_OFFSET + kind * 4);
+            if (count < 0) {
+                throw new IOException("Corrupt model snapshot: " + file);
+            }
+            records += count;
+        }
+        final int strings = buffer.getInt(STRINGS_OFFSET);
+        if (strings != HEADER_SIZE + records * (RECORD_SIZE + 4) || strings > buffer.capacity()) {
+            throw new IOException("Corrupt model snapshot: " + file);
+        }
+
+        final CRC32 crc = new CRC32();
+        final ByteBuffer body = buffer.duplicate();
+        body.position(HEADER_SIZE);
+        final byte[] chunk = new byte[64 * 1024];
+        while (body.hasRemaining()) {
+            final int length = Math.min(chunk.length, body.remaining());
+            body.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+        if ((int) crc.getValue() != buffer.getInt(CRC_OFFSET)) {
+            throw new IOException("Model snapshot checksum does not match: " + file);
+        }
+
+        return new ModelSnapshot(file, buffer);
+    }
+
+    /**
+     * Maps the newest complete generation of a snapshot. Generations that cannot be read or are not
+     * valid snapshots are passed over for older ones.
+     *
+     * @param file Snapshot file, without the generation number
+     * @return The snapshot, or null if there is no valid generation
+     */
+    public static ModelSnapshot openLatest(File file) {
+        for (File generation : generations(file)) {
+            try {
+                return open(generation);
+            } catch (IOException ex) {
+                // Try the one before
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param file Snapshot file, without the generation number
+     * @return Existing generations of the snapshot, newest first
+     */
+    static List<File> generations(File file) {
+        final File directory = file.getAbsoluteFile().getParentFile();
+        final String prefix = file.getName() + ".";
+        final String[] names = directory.list();
+
+        final List<File> found = new ArrayList<File>();
+        final List<Long> numbers = new ArrayList<Long>();
+        if (names != null) {
+            for (String name : names) {
+                final long number = generationNumber(prefix, name);
+                if (number > 0) {
+                    int at = 0;
+                    while (at < numbers.size() && numbers.get(at) > number) {
+                        at++;
+                    }
+                    numbers.add(at, number);
+                    found.add(at, new File(directory, name));
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return Generation number of a file name, or -1 if the name is not a generation of the prefix
+     */
+    private static long generationNumber(String prefix, String name) {
+        if (!name.startsWith(prefix) || name.length() == prefix.length() || name.length() > prefix.length() + 18) {
+            return -1;
+        }
+        long number = 0;
+        for (int i = prefix.length(); i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
+    /**
+     * Writes a snapshot as a new generation, leaving earlier generations in place until it is complete.
+     *
+     * @param file Snapshot file, without the generation number
+     * @param createdTime Time the model was read, in milliseconds since the epoch
+     * @param entities Entities; those that are also points, commands or endpoints are stored as those
+     * @param points Points
+     * @param commands Commands
+     * @param endpoints Endpoints
+     * @return File of the new generation
+     * @throws IOException If the file cannot be written
+     */
+    public static File write(File file, long createdTime, Collection<Model.Entity> entities, Collection<Model.Point> points,
+                             Collection<Model.Command> commands, Collection<Model.Endpoint> endpoints) throws IOException {
+
+        final Map<String, Record> records = new HashMap<String, Record>();
+        for (Model.Entity entity : entities) {
+            records.put(entity.getUuid().getValue(), Record.of(entity));
+        }
+        for (Model.Endpoint endpoint : endpoints) {
+            records.put(endpoint.getUuid().getValue(), Record.of(endpoint));
+        }
+        for (Model.Command command : commands) {
+            records.put(command.getUuid().getValue(), Record.of(command));
+        }
+        for (Model.Point point : points) {
+            records.put(point.getUuid().getValue(), Record.of(point));
+        }
+        return write(file, createdTime, records.values());
+    }
+
+    static File write(File file, long createdTime, Collection<Record> records) throws IOException {
+
+        // Distinct strings, and distinct type lists, each stored once
+        final StringTable table = new StringTable();
+
+        final List<List<Record>> byKind = new ArrayList<List<Record>>(KINDS);
+        for (int kind = 0; kind < KINDS; kind++) {
+            byKind.add(new ArrayList<Record>());
+        }
+        for (Record record : records) {
+            byKind.get(record.kind).add(record);
+        }
+
+        final int count = records.size();
+        final byte[][] names = new byte[count][];
+        final byte[][] uuids = new byte[count][];
+        final Record[] ordered = new Record[count];
+        int index = 0;
+        for (int kind = 0; kind < KINDS; kind++) {
+            final List<Record> kindRecords = byKind.get(kind);
+            final byte[][] kindNames = new byte[kindRecords.size()][];
+            final Integer[] order = new Integer[kindRecords.size()];
+            for (int i = 0; i < order.length; i++) {
+                kindNames[i] = kindRecords.get(i).name.getBytes(UTF_8);
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return compareBytes(kindNames[a], kindNames[b]);
+                }
+            });
+            for (Integer i : order) {
+                ordered[index] = kindRecords.get(i);
+                names[index] = kindNames[i];
+                uuids[index] = ordered[index].uuid.getBytes(UTF_8);
+                index++;
+            }
+        }
+
+        final ByteBuffer fixed = ByteBuffer.allocate(HEADER_SIZE + count * (RECORD_SIZE + 4));
+        fixed.position(HEADER_SIZE);
+        for (int i = 0; i < count; i++) {
+            final Record record = ordered[i];
+            fixed.put((byte) record.kind);
+            fixed.put((byte) record.category);
+            fixed.put((byte) (record.disabled ? DISABLED : 0));
+            fixed.put((byte) 0);
+            fixed.putInt(table.string(uuids[i]));
+            fixed.putInt(table.string(names[i]));
+            fixed.putInt(table.types(record.types));
+            fixed.putInt(record.text == null ? -1 : table.string(record.text.getBytes(UTF_8)));
+            fixed.putInt(record.endpoint == null ? -1 : table.string(record.endpoint.getBytes(UTF_8)));
+        }
+
+        final Integer[] byUuid = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            byUuid[i] = i;
+        }
+        Arrays.sort(byUuid, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return compareBytes(uuids[a], uuids[b]);
+            }
+        });
+        for (Integer i : byUuid) {
+            fixed.putInt(i);
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(fixed.array(), HEADER_SIZE, fixed.capacity() - HEADER_SIZE);
+        crc.update(table.bytes(), 0, table.size());
+
+        fixed.putInt(0, MAGIC);
+        fixed.putInt(4, VERSION);
+        fixed.putLong(CREATED_OFFSET, createdTime);
+        fixed.putInt(CRC_OFFSET, (int) crc.getValue());
+        for (int kind = 0; kind < KINDS; kind++) {
+            fixed.putInt(COUNTS_OFFSET + kind * 4, byKind.get(kind).size());
+        }
+        fixed.putInt(STRINGS_OFFSET, fixed.capacity());
+
+        final List<File> existing = generations(file);
+        final long generation = existing.isEmpty() ? 1 : generationNumber(file.getName() + ".", existing.get(0).getName()) + 1;
+        final File target = new File(file.getAbsoluteFile().getParentFile(), file.getName() + "." + generation);
+        final File temporary = new File(target.getPath() + ".tmp");
+
+        boolean written = false;
+        try {
+            final FileOutputStream output = new FileOutputStream(temporary);
+            try {
+                output.write(fixed.array());
+                output.write(table.bytes(), 0, table.size());
+                output.getFD().sync();
+            } finally {
+                output.close();
+            }
+
+            // The target name is new, so readers see either no file or the complete one
+            if (target.exists() || !temporary.renameTo(target)) {
+                throw new IOException("Could not write model snapshot: " + target);
+            }
+            written = true;
+        } finally {
+            if (!written) {
+                temporary.delete();
+            }
+        }
+
+        // Superseded generations; any still mapped elsewhere, or that cannot be deleted yet, go next time
+        for (File old : existing) {
+            old.delete();
+        }
+        return target;
+    }
+
+    /**
+     * @return File the snapshot was mapped from
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return Time the model was read, in milliseconds since the epoch
+     */
+    public long getCreatedTime() {
+        return createdTime;
+    }
+
+    public int getPointCount() {
+        return kindStart[POINT + 1] - kindStart[POINT];
+    }
+
+    public int getCommandCount() {
+        return kindStart[COMMAND + 1] - kindStart[COMMAND];
+    }
+
+    public int getEndpointCount() {
+        return kindStart[ENDPOINT + 1] - kindStart[ENDPOINT];
+    }
+
+    /**
+     * @return Number of entities that are not points, commands or endpoints
+     */
+    public int getEntityCount() {
+        return kindStart[ENTITY + 1] - kindStart[ENTITY];
+    }
+
+    /**
+     * @return UUIDs of every point, in name order, without decoding the rest of the points
+     */
+    public List<Model.ModelUUID> getPointUuids() {
+        final List<Model.ModelUUID> uuids = new ArrayList<Model.ModelUUID>(getPointCount());
+        for (int i = kindStart[POINT]; i < kindStart[POINT + 1]; i++) {
+            uuids.add(Model.ModelUUID.newBuilder().setValue(string(buffer.getInt(recordOffset(i) + 4))).build());
+        }
+        return uuids;
+    }
+
+    /**
+     * @return Every point, in name order
+     */
+    public List<Model.Point> getPoints() {
+        final List<Model.Point> points = new ArrayList<Model.Point>(getPointCount());
+        for (int i = kindStart[POINT]; i < kindStart[POINT + 1]; i++) {
+            points.add(record(i).toPoint());
+        }
+        return points;
+    }
+
+    /**
+     * @return Every command, in name order
+     */
+    public List<Model.Command> getCommands() {
+        final List<Model.Command> commands = new ArrayList<Model.Command>(getCommandCount());
+        for (int i = kindStart[COMMAND]; i < kindStart[COMMAND + 1]; i++) {
+            commands.add(record(i).toCommand());
+        }
+        return commands;
+    }
+
+    /**
+     * @return Every endpoint, in name order
+     */
+    public List<Model.Endpoint> getEndpoints() {
+        final List<Model.Endpoint> endpoints = new ArrayList<Model.Endpoint>(getEndpointCount());
+        for (int i = kindStart[ENDPOINT]; i < kindStart[ENDPOINT + 1]; i++) {
+            endpoints.add(record(i).toEndpoint());
+        }
+        return endpoints;
+    }
+
+    /**
+     * @return Every entity that is not a point, command or endpoint, in name order
+     */
+    public List<Model.Entity> getEntities() {
+        final List<Model.Entity> entities = new ArrayList<Model.Entity>(getEntityCount());
+        for (int i = kindStart[ENTITY]; i < kindStart[ENTITY + 1]; i++) {
+            entities.add(record(i).toEntity());
+        }
+        return entities;
+    }
+
+    /**
+     * @return The point, or null if there is none with the name
+     */
+    public Model.Point getPoint(String name) {
+        final int index = findName(POINT, name.getBytes(UTF_8));
+        return index < 0 ? null : record(index).toPoint();
+    }
+
+    /**
+     * @return The point, or null if there is none with the UUID
+     */
+    public Model.Point getPoint(Model.ModelUUID uuid) {
+        final int index = find(uuid.getValue());
+        return index < 0 || kind(index) != POINT ? null : record(index).toPoint();
+    }
+
+    /**
+     * @return The command, or null if there is none with the name
+     */
+    public Model.Command getCommand(String name) {
+        final int index = findName(COMMAND, name.getBytes(UTF_8));
+        return index < 0 ? null : record(index).toCommand();
+    }
+
+    /**
+     * @return The command, or null if there is none with the UUID
+     */
+    public Model.Command getCommand(Model.ModelUUID uuid) {
+        final int index = find(uuid.getValue());
+        return index < 0 || kind(index) != COMMAND ? null : record(index).toCommand();
+    }
+
+    /**
+     * @return The endpoint, or null if there is none with the name
+     */
+    public Model.Endpoint getEndpoint(String name) {
+        final int index = findName(ENDPOINT, name.getBytes(UTF_8));
+        return index < 0 ? null : record(index).toEndpoint();
+    }
+
+    /**
+     * @return The endpoint, or null if there is none with the UUID
+     */
+    public Model.Endpoint getEndpoint(Model.ModelUUID uuid) {
+        final int index = find(uuid.getValue());
+        return index < 0 || kind(index) != ENDPOINT ? null : record(index).toEndpoint();
+    }
+
+    /**
+     * @return The entity of any kind, or null if there is none with the name
+     */
+    public Model.Entity getEntity(String name) {
+        final byte[] key = name.getBytes(UTF_8);
+        for (int kind = 0; kind < KINDS; kind++) {
+            final int index = findName(kind, key);
+            if (index >= 0) {
+                return record(index).toEntity();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The entity of any kind, or null if there is none with the UUID
+     */
+    public Model.Entity getEntity(Model.ModelUUID uuid) {
+        final int index = find(uuid.getValue());
+        return index < 0 ? null : record(index).toEntity();
+    }
+
+    int size() {
+        return recordCount;
+    }
+
+    int kind(int index) {
+        return buffer.get(recordOffset(index));
+    }
+
+    /**
+     * @return Index of the record with the UUID, or -1
+     */
+    int find(String uuid) {
+        final byte[] key = uuid.getBytes(UTF_8);
+        int low = 0;
+        int high = recordCount - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int index = buffer.getInt(uuidIndex + middle * 4);
+            final int compared = compareString(buffer.getInt(recordOffset(index) + 4), key);
+            if (compared < 0) {
+                low = middle + 1;
+            } else if (compared > 0) {
+                high = middle - 1;
+            } else {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private int findName(int kind, byte[] key) {
+        int low = kindStart[kind];
+        int high = kindStart[kind + 1] - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int compared = compareString(buffer.getInt(recordOffset(middle) + 8), key);
+            if (compared < 0) {
+                low = middle + 1;
+            } else if (compared > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    Record record(int index) {
+        final int offset = recordOffset(index);
+        final int typesRef = buffer.getInt(offset + 12);
+        final int typeCount = buffer.getInt(strings + typesRef);
+        final List<String> types = new ArrayList<String>(typeCount);
+        for (int i = 0; i < typeCount; i++) {
+            types.add(string(buffer.getInt(strings + typesRef + 4 + i * 4)));
+        }
+        final int textRef = buffer.getInt(offset + 16);
+        final int endpointRef = buffer.getInt(offset + 20);
+        return new Record(buffer.get(offset),
+                string(buffer.getInt(offset + 4)),
+                string(buffer.getInt(offset + 8)),
+                types,
+                textRef < 0 ? null : string(textRef),
+                buffer.get(offset + 1),
+                (buffer.get(offset + 2) & DISABLED) != 0,
+                endpointRef < 0 ? null : string(endpointRef));
+    }
+
+    private static int recordOffset(int index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    private String string(int ref) {
+        final ByteBuffer view = buffer.duplicate();
+        view.position(strings + ref);
+        final byte[] bytes = new byte[view.getInt()];
+        view.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Compares a stored string with a key as unsigned bytes, the order the records were sorted in.
+     */
+    private int compareString(int ref, byte[] key) {
+        final int position = strings + ref;
+        final int length = buffer.getInt(position);
+        final int shorter = Math.min(length, key.length);
+        for (int i = 0; i < shorter; i++) {
+            final int compared = (buffer.get(position + 4 + i) & 0xff) - (key[i] & 0xff);
+            if (compared != 0) {
+                return compared;
+            }
+        }
+        return length - key.length;
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        final int shorter = Math.min(a.length, b.length);
+        for (int i = 0; i < shorter; i++) {
+            final int compared = (a[i] & 0xff) - (b[i] & 0xff);
+            if (compared != 0) {
+                return compared;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * The string area being written: length-prefixed UTF-8 strings and type lists, each stored once.
+     */
+    private static class StringTable {
+        private final Map<ByteKey, Integer> strings = new HashMap<ByteKey, Integer>();
+        private final Map<List<String>, Integer> typeLists = new HashMap<List<String>, Integer>();
+        private ByteBuffer area = ByteBuffer.allocate(64 * 1024);
+
+        int string(byte[] bytes) {
+            final ByteKey key = new ByteKey(bytes);
+            final Integer existing = strings.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            final int ref = area.position();
+            ensure(4 + bytes.length);
+            area.putInt(bytes.length);
+            area.put(bytes);
+            strings.put(key, ref);
+            return ref;
+        }
+
+        int types(List<String> types) {
+            final Integer existing = typeLists.get(types);
+            if (existing != null) {
+                return existing;
+            }
+            final int[] refs = new int[types.size()];
+            for (int i = 0; i < refs.length; i++) {
+                refs[i] = string(types.get(i).getBytes(UTF_8));
+            }
+            final int ref = area.position();
+            ensure(4 + refs.length * 4);
+            area.putInt(refs.length);
+            for (int typeRef : refs) {
+                area.putInt(typeRef);
+            }
+            typeLists.put(new ArrayList<String>(types), ref);
+            return ref;
+        }
+
+        byte[] bytes() {
+            return area.array();
+        }
+
+        int size() {
+            return area.position();
+        }
+
+        private void ensure(int length) {
+            if (area.remaining() < length) {
+                final ByteBuffer larger = ByteBuffer.allocate(Math.max(area.capacity() * 2, area.position() + length));
+                area.flip();
+                larger.put(area);
+                area = larger;
+            }
+        }
+    }
+
+    private static final class ByteKey {
+        private final byte[] bytes;
+        private final int hash;
+
+        ByteKey(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ByteKey && Arrays.equals(bytes, ((ByteKey) o).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The fields of one stored entity, whatever its kind. Text is the unit of a point, the display
+     * name of a command or the protocol of an endpoint.
+     */
+    static final class Record {
+        final int kind;
+        final String uuid;
+        final String name;
+        final List<String> types;
+        final String text;
+        final int category;
+        final boolean disabled;
+        final String endpoint;
+
+        Record(int kind, String uuid, String name, List<String> types, String text, int category, boolean disabled, String endpoint) {
+            this.kind = kind;
+            this.uuid = uuid;
+            this.name = name;
+            this.types = types;
+            this.text = text;
+            this.category = category;
+            this.disabled = disabled;
+            this.endpoint = endpoint;
+        }
+
+        static Record of(Model.Entity entity) {
+            return new Record(ENTITY, entity.getUuid().getValue(), entity.getName(), entity.getTypesList(), null, -1, false, null);
+        }
+
+        static Record of(Model.Point point) {
+            return new Record(POINT, point.getUuid().getValue(), point.getName(), point.getTypesList(),
+                    point.hasUnit() ? point.getUnit() : null,
+                    point.hasPointCategory() ? point.getPointCategory().getNumber() : -1,
+                    false,
+                    point.hasEndpointUuid() ? point.getEndpointUuid().getValue() : null);
+        }
+
+        static Record of(Model.Command command) {
+            return new Record(COMMAND, command.getUuid().getValue(), command.getName(), command.getTypesList(),
+                    command.hasDisplayName() ? command.getDisplayName() : null,
+                    command.hasCommandCategory() ? command.getCommandCategory().getNumber() : -1,
+                    false,
+                    command.hasEndpointUuid() ? command.getEndpointUuid().getValue() : null);
+        }
+
+        static Record of(Model.Endpoint endpoint) {
+            return new Record(ENDPOINT, endpoint.getUuid().getValue(), endpoint.getName(), endpoint.getTypesList(),
+                    endpoint.hasProtocol() ? endpoint.getProtocol() : null,
+                    -1,
+                    endpoint.getDisabled(),
+                    null);
+        }
+
+        /**
+         * @return True if the entity has the name and types of this record
+         */
+        boolean sameEntity(Model.Entity entity) {
+            return name.equals(entity.getName()) && types.equals(entity.getTypesList());
+        }
+
+        Model.ModelUUID toUuid() {
+            return Model.ModelUUID.newBuilder().setValue(uuid).build();
+        }
+
+        Model.Entity toEntity() {
+            return Model.Entity.newBuilder()
+                    .setUuid(toUuid())
+                    .setName(name)
+                    .addAllTypes(types)
+                    .build();
+        }
+
+        Model.Point toPoint() {
+            final Model.Point.Builder builder = Model.Point.newBuilder()
+                    .setUuid(toUuid())
+                    .setName(name)
+                    .addAllTypes(types);
+            if (text != null) {
+                builder.setUnit(text);
+            }
+            if (category >= 0) {
+                builder.setPointCategory(Model.PointCategory.valueOf(category));
+            }
+            if (endpoint != null) {
+                builder.setEndpointUuid(Model.ModelUUID.newBuilder().setValue(endpoint));
+            }
+            return builder.build();
+        }
+
+        Model.Command toCommand() {
+            final Model.Command.Builder builder = Model.Command.newBuilder()
+                    .setUuid(toUuid())
+                    .setName(name)
+                    .addAllTypes(types);
+            if (text != null) {
+                builder.setDisplayName(text);
+            }
+            if (category >= 0) {
+                builder.setCommandCategory(Model.CommandCategory.valueOf(category));
+            }
+            if (endpoint != null) {
+                builder.setEndpointUuid(Model.ModelUUID.newBuilder().setValue(endpoint));
+            }
+            return builder.build();
+        }
+
+        Model.Endpoint toEndpoint() {
+            final Model.Endpoint.Builder builder = Model.Endpoint.newBuilder()
+                    .setUuid(toUuid())
+                    .setName(name)
+                    .addAllTypes(types)
+                    .setDisabled(disabled);
+            if (text != null) {
+                builder.setProtocol(text);
+            }
+            return builder.build();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Record)) {
+                return false;
+            }
+            final Record other = (Record) o;
+            return kind == other.kind && category == other.category && disabled == other.disabled &&
+                    uuid.equals(other.uuid) && name.equals(other.name) && types.equals(other.types) &&
+                    (text == null ? other.text == null : text.equals(other.text)) &&
+                    (endpoint == null ? other.endpoint == null : endpoint.equals(other.endpoint));
+        }
+
+        @Override
+        public int hashCode() {
+            return uuid.hashCode();
+        }
+    }
+}
@@ -0,0 +1,521 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.snapshot;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import io.greenbus.client.service.proto.Envelope;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.client.service.proto.ModelRequests;
+import io.greenbus.japi.client.service.ModelService;
+import io.greenbus.msg.japi.Subscription;
+import io.greenbus.msg.japi.SubscriptionHandler;
+import io.greenbus.msg.japi.SubscriptionResult;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a ModelSnapshot file in step with the model service.
+ *
+ * A client opens the snapshot left by its last run and uses it at once, then refreshes it in the
+ * background. Without a snapshot, refreshing reads every entity, point, command and endpoint. With
+ * one, it reads only the entity list, whose records are small, and compares each entity's name and
+ * types with the snapshot to find what was added, changed or removed. Details are then read only for
+ * those: changed points by key, and changed commands or endpoints by paging their queries, which
+ * cannot select by key. New entities are classified by the Point, Command and Endpoint types the
+ * model gives them. An entity subscription held while the list is read catches changes made during
+ * the refresh.
+ *
+ * A change that leaves an entity's name and types alone, such as a new unit for a point, is not seen
+ * by the delta; refreshAll reads everything and replaces any such records.
+ *
+ * When anything changed, a new snapshot is written and mapped in place of the old one.
+ */
+public class ModelSnapshotRefresher {
+
+    /**
+     * Outcome of a refresh.
+     */
+    public static class Result {
+        private final ModelSnapshot snapshot;
+        private final boolean full;
+        private final List<Model.ModelUUID> added;
+        private final List<Model.ModelUUID> modified;
+        private final List<Model.ModelUUID> removed;
+        private final int requestCount;
+
+        Result(ModelSnapshot snapshot, boolean full, List<Model.ModelUUID> added, List<Model.ModelUUID> modified,
+               List<Model.ModelUUID> removed, int requestCount) {
+            this.snapshot = snapshot;
+            this.full = full;
+            this.added = added;
+            this.modified = modified;
+            this.removed = removed;
+            this.requestCount = requestCount;
+        }
+
+        /**
+         * @return Snapshot after the refresh
+         */
+        public ModelSnapshot getSnapshot() {
+            return snapshot;
+        }
+
+        /**
+         * @return True if every record was read, rather than only the entity list and the changes
+         */
+        public boolean isFull() {
+            return full;
+        }
+
+        public List<Model.ModelUUID> getAdded() {
+            return added;
+        }
+
+        public List<Model.ModelUUID> getModified() {
+            return modified;
+        }
+
+        public List<Model.ModelUUID> getRemoved() {
+            return removed;
+        }
+
+        /**
+         * @return True if the snapshot was already up to date
+         */
+        public boolean isUnchanged() {
+            return added.isEmpty() && modified.isEmpty() && removed.isEmpty();
+        }
+
+        /**
+         * @return Number of requests made to the model service
+         */
+        public int getRequestCount() {
+            return requestCount;
+        }
+    }
+
+    private static final String POINT_TYPE = "Point";
+    private static final String COMMAND_TYPE = "Command";
+    private static final String ENDPOINT_TYPE = "Endpoint";
+
+    private final ModelService.Client client;
+    private final File file;
+    private final int pageSize;
+    private final long timeout;
+    private final TimeUnit unit;
+
+    private final Object refreshLock = new Object();
+    private volatile ModelSnapshot snapshot = null;
+    private int requestCount = 0;
+
+    /**
+     * @param client Model service interface
+     * @param file Snapshot file, without the generation number, which need not exist yet
+     * @param pageSize Number of records per page of each query, and of points per request by key
+     * @param timeout Time allowed for each request
+     * @param unit Unit of the timeout
+     */
+    public ModelSnapshotRefresher(ModelService.Client client, File file, int pageSize, long timeout, TimeUnit unit) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        this.client = client;
+        this.file = file;
+        this.pageSize = pageSize;
+        this.timeout = timeout;
+        this.unit = unit;
+    }
+
+    /**
+     * Maps the snapshot file left by an earlier run.
+     *
+     * @return The snapshot, or null if there is none or it is not a valid snapshot
+     */
+    public ModelSnapshot open() {
+        synchronized (refreshLock) {
+            if (snapshot == null) {
+                // Invalid or outdated generations are passed over and replaced by the next refresh
+                snapshot = ModelSnapshot.openLatest(file);
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * @return Current snapshot, or null if none has been opened or written. Never waits for a refresh.
+     */
+    public ModelSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Brings the snapshot up to date, reading only what changed if there is one to start from.
+     *
+     * @return What changed
+     * @throws Exception If a request fails or the snapshot cannot be written
+     */
+    public Result refresh() throws Exception {
+        synchronized (refreshLock) {
+            final ModelSnapshot current = open();
+            return current == null ? readAll() : readChanges(current);
+        }
+    }
+
+    /**
+     * Reads the whole model and replaces the snapshot.
+     *
+     * @return What changed since the previous snapshot, if there was one
+     * @throws Exception If a request fails or the snapshot cannot be written
+     */
+    public Result refreshAll() throws Exception {
+        synchronized (refreshLock) {
+            return readAll();
+        }
+    }
+
+    private Result readAll() throws Exception {
+        requestCount = 0;
+        final ModelSnapshot previous = snapshot;
+        final long readTime = System.currentTimeMillis();
+
+        final Map<String, ModelSnapshot.Record> records = new HashMap<String, ModelSnapshot.Record>();
+        for (Model.Entity entity : readEntities()) {
+            records.put(entity.getUuid().getValue(), ModelSnapshot.Record.of(entity));
+        }
+        for (Model.Endpoint endpoint : readEndpoints()) {
+            records.put(endpoint.getUuid().getValue(), ModelSnapshot.Record.of(endpoint));
+        }
+        for (Model.Command command : readCommands()) {
+            records.put(command.getUuid().getValue(), ModelSnapshot.Record.of(command));
+        }
+        for (Model.Point point : readPoints()) {
+            records.put(point.getUuid().getValue(), ModelSnapshot.Record.of(point));
+        }
+
+        final List<Model.ModelUUID> added = new ArrayList<Model.ModelUUID>();
+        final List<Model.ModelUUID> modified = new ArrayList<Model.ModelUUID>();
+        final List<Model.ModelUUID> removed = new ArrayList<Model.ModelUUID>();
+        if (previous != null) {
+            for (int i = 0; i < previous.size(); i++) {
+                final ModelSnapshot.Record old = previous.record(i);
+                if (!records.containsKey(old.uuid)) {
+                    removed.add(old.toUuid());
+                }
+            }
+        }
+        for (ModelSnapshot.Record record : records.values()) {
+            final int index = previous == null ? -1 : previous.find(record.uuid);
+            if (index < 0) {
+                added.add(record.toUuid());
+            } else if (!previous.record(index).equals(record)) {
+                modified.add(record.toUuid());
+            }
+        }
+
+        snapshot = ModelSnapshot.open(ModelSnapshot.write(file, readTime, records.values()));
+        return new Result(snapshot, true, added, modified, removed, requestCount);
+    }
+
+    /**
+     * Refreshes on a new daemon thread.
+     *
+     * @return Future of what changed
+     */
+    public ListenableFuture<Result> refreshInBackground() {
+        final SettableFuture<Result> future = SettableFuture.create();
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    future.set(refresh());
+                } catch (Throwable ex) {
+                    future.setException(ex);
+                }
+            }
+        }, "model-snapshot-refresh");
+        thread.setDaemon(true);
+        thread.start();
+        return future;
+    }
+
+    private Result readChanges(ModelSnapshot previous) throws Exception {
+        requestCount = 0;
+        final long readTime = System.currentTimeMillis();
+
+        // Entities that are new or whose name or types changed, by UUID
+        final Map<String, Model.Entity> changed = new LinkedHashMap<String, Model.Entity>();
+        final Set<String> seen = new HashSet<String>();
+
+        final List<Model.EntityNotification> notifications = Collections.synchronizedList(new ArrayList<Model.EntityNotification>());
+        final SubscriptionResult<List<Model.Entity>, Model.EntityNotification> subscriptionResult =
+                client.subscribeToEntities(ModelRequests.EntitySubscriptionQuery.newBuilder().build()).get(timeout, unit);
+        requestCount++;
+
+        final Subscription<Model.EntityNotification> subscription = subscriptionResult.getSubscription();
+        subscription.start(new SubscriptionHandler<Model.EntityNotification>() {
+            @Override
+            public void handle(Model.EntityNotification notification) {
+                notifications.add(notification);
+            }
+        });
+
+        try {
+            for (Model.Entity entity : readEntities()) {
+                final String uuid = entity.getUuid().getValue();
+                seen.add(uuid);
+                final int index = previous.find(entity.getUuid().getValue());
+                if (index < 0 || !previous.record(index).sameEntity(entity)) {
+                    changed.put(uuid, entity);
+                }
+            }
+        } finally {
+            subscription.cancel();
+        }
+
+        final Set<String> removed = new HashSet<String>();
+        for (int i = 0; i < previous.size(); i++) {
+            final String uuid = previous.record(i).uuid;
+            if (!seen.contains(uuid)) {
+                removed.add(uuid);
+            }
+        }
+
+        synchronized (notifications) {
+            for (Model.EntityNotification notification : notifications) {
+                final String uuid = notification.getValue().getUuid().getValue();
+                if (notification.getEventType() == Envelope.SubscriptionEventType.REMOVED) {
+                    changed.remove(uuid);
+                    if (previous.find(uuid) >= 0) {
+                        removed.add(uuid);
+                    }
+                } else {
+                    changed.put(uuid, notification.getValue());
+                    removed.remove(uuid);
+                }
+            }
+        }
+
+        if (changed.isEmpty() && removed.isEmpty()) {
+            return new Result(previous, false, Collections.<Model.ModelUUID>emptyList(),
+                    Collections.<Model.ModelUUID>emptyList(), Collections.<Model.ModelUUID>emptyList(), requestCount);
+        }
+
+        final Map<String, ModelSnapshot.Record> updated = readDetails(previous, changed, removed);
+
+        final List<Model.ModelUUID> added = new ArrayList<Model.ModelUUID>();
+        final List<Model.ModelUUID> modified = new ArrayList<Model.ModelUUID>();
+        for (ModelSnapshot.Record record : updated.values()) {
+            if (previous.find(record.uuid) < 0) {
+                added.add(record.toUuid());
+            } else {
+                modified.add(record.toUuid());
+            }
+        }
+
+        final List<ModelSnapshot.Record> records = new ArrayList<ModelSnapshot.Record>(previous.size() + added.size());
+        for (int i = 0; i < previous.size(); i++) {
+            final ModelSnapshot.Record record = previous.record(i);
+            if (!removed.contains(record.uuid) && !updated.containsKey(record.uuid)) {
+                records.add(record);
+            }
+        }
+        records.addAll(updated.values());
+
+        final List<Model.ModelUUID> removedUuids = new ArrayList<Model.ModelUUID>(removed.size());
+        for (String uuid : removed) {
+            removedUuids.add(Model.ModelUUID.newBuilder().setValue(uuid).build());
+        }
+
+        snapshot = ModelSnapshot.open(ModelSnapshot.write(file, readTime, records));
+        return new Result(snapshot, false, added, modified, removedUuids, requestCount);
+    }
+
+    /**
+     * Reads the records of changed entities. Entities found to be gone are added to the removed set.
+     */
+    private Map<String, ModelSnapshot.Record> readDetails(ModelSnapshot previous, Map<String, Model.Entity> changed, Set<String> removed) throws Exception {
+        final Map<String, ModelSnapshot.Record> updated = new LinkedHashMap<String, ModelSnapshot.Record>();
+
+        final List<Model.ModelUUID> points = new ArrayList<Model.ModelUUID>();
+        final Set<String> commands = new HashSet<String>();
+        final Set<String> endpoints = new HashSet<String>();
+        for (Model.Entity entity : changed.values()) {
+            final int index = previous.find(entity.getUuid().getValue());
+            final int kind = index >= 0 ? previous.kind(index) : kindOf(entity);
+            switch (kind) {
+                case ModelSnapshot.POINT:
+                    points.add(entity.getUuid());
+                    break;
+                case ModelSnapshot.COMMAND:
+                    commands.add(entity.getUuid().getValue());
+                    break;
+                case ModelSnapshot.ENDPOINT:
+                    endpoints.add(entity.getUuid().getValue());
+                    break;
+                default:
+                    updated.put(entity.getUuid().getValue(), ModelSnapshot.Record.of(entity));
+            }
+        }
+
+        for (int start = 0; start < points.size(); start += pageSize) {
+            final List<Model.Point> found = client.getPoints(ModelRequests.EntityKeySet.newBuilder()
+                    .addAllUuids(points.subList(start, Math.min(start + pageSize, points.size())))
+                    .build()).get(timeout, unit);
+            requestCount++;
+            for (Model.Point point : found) {
+                updated.put(point.getUuid().getValue(), ModelSnapshot.Record.of(point));
+            }
+        }
+        for (Model.ModelUUID uuid : points) {
+            if (!updated.containsKey(uuid.getValue())) {
+                gone(previous, uuid.getValue(), removed);
+            }
+        }
+
+        if (!commands.isEmpty()) {
+            for (Model.Command command : readCommands()) {
+                if (commands.remove(command.getUuid().getValue())) {
+                    updated.put(command.getUuid().getValue(), ModelSnapshot.Record.of(command));
+                }
+            }
+            for (String uuid : commands) {
+                gone(previous, uuid, removed);
+            }
+        }
+
+        if (!endpoints.isEmpty()) {
+            for (Model.Endpoint endpoint : readEndpoints()) {
+                if (endpoints.remove(endpoint.getUuid().getValue())) {
+                    updated.put(endpoint.getUuid().getValue(), ModelSnapshot.Record.of(endpoint));
+                }
+            }
+            for (String uuid : endpoints) {
+                gone(previous, uuid, removed);
+            }
+        }
+
+        return updated;
+    }
+
+    /**
+     * An entity whose details could not be read was removed during the refresh.
+     */
+    private static void gone(ModelSnapshot previous, String uuid, Set<String> removed) {
+        if (previous.find(uuid) >= 0) {
+            removed.add(uuid);
+        }
+    }
+
+    private static int kindOf(Model.Entity entity) {
+        final List<String> types = entity.getTypesList();
+        if (types.contains(POINT_TYPE)) {
+            return ModelSnapshot.POINT;
+        } else if (types.contains(COMMAND_TYPE)) {
+            return ModelSnapshot.COMMAND;
+        } else if (types.contains(ENDPOINT_TYPE)) {
+            return ModelSnapshot.ENDPOINT;
+        } else {
+            return ModelSnapshot.ENTITY;
+        }
+    }
+
+    private List<Model.Entity> readEntities() throws Exception {
+        final List<Model.Entity> entities = new ArrayList<Model.Entity>();
+        Model.ModelUUID lastUuid = null;
+        while (true) {
+            final List<Model.Entity> page = client.entityQuery(ModelRequests.EntityQuery.newBuilder()
+                    .setPagingParams(paging(lastUuid))
+                    .build()).get(timeout, unit);
+            requestCount++;
+            entities.addAll(page);
+            if (page.size() < pageSize) {
+                return entities;
+            }
+            lastUuid = page.get(page.size() - 1).getUuid();
+        }
+    }
+
+    private List<Model.Point> readPoints() throws Exception {
+        final List<Model.Point> points = new ArrayList<Model.Point>();
+        Model.ModelUUID lastUuid = null;
+        while (true) {
+            final List<Model.Point> page = client.pointQuery(ModelRequests.PointQuery.newBuilder()
+                    .setPagingParams(paging(lastUuid))
+                    .build()).get(timeout, unit);
+            requestCount++;
+            points.addAll(page);
+            if (page.size() < pageSize) {
+                return points;
+            }
+            lastUuid = page.get(page.size() - 1).getUuid();
+        }
+    }
+
+    private List<Model.Command> readCommands() throws Exception {
+        final List<Model.Command> commands = new ArrayList<Model.Command>();
+        Model.ModelUUID lastUuid = null;
+        while (true) {
+            final List<Model.Command> page = client.commandQuery(ModelRequests.CommandQuery.newBuilder()
+                    .setPagingParams(paging(lastUuid))
+                    .build()).get(timeout, unit);
+            requestCount++;
+            commands.addAll(page);
+            if (page.size() < pageSize) {
+                return commands;
+            }
+            lastUuid = page.get(page.size() - 1).getUuid();
+        }
+    }
+
+    private List<Model.Endpoint> readEndpoints() throws Exception {
+        final List<Model.Endpoint> endpoints = new ArrayList<Model.Endpoint>();
+        Model.ModelUUID lastUuid = null;
+        while (true) {
+            final List<Model.Endpoint> page = client.endpointQuery(ModelRequests.EndpointQuery.newBuilder()
+                    .setPagingParams(paging(lastUuid))
+                    .build()).get(timeout, unit);
+            requestCount++;
+            endpoints.addAll(page);
+            if (page.size() < pageSize) {
+                return endpoints;
+            }
+            lastUuid = page.get(page.size() - 1).getUuid();
+        }
+    }
+
+    private ModelRequests.EntityPagingParams paging(Model.ModelUUID lastUuid) {
+        final ModelRequests.EntityPagingParams.Builder paging = ModelRequests.EntityPagingParams.newBuilder()
+                .setPageByName(false)
+                .setPageSize(pageSize);
+        if (lastUuid != null) {
+            paging.setLastUuid(lastUuid);
+        }
+        return paging.build();
+    }
+}
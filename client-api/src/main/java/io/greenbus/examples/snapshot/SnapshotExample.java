@@ -0,0 +1,151 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.snapshot;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.greenbus.client.service.proto.Measurements;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.japi.client.service.MeasurementService;
+import io.greenbus.japi.client.service.ModelService;
+import io.greenbus.msg.japi.Session;
+import io.greenbus.msg.japi.Subscription;
+import io.greenbus.msg.japi.SubscriptionHandler;
+import io.greenbus.msg.japi.SubscriptionResult;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Example: Model Snapshot
+ *
+ */
+public class SnapshotExample {
+
+    /**
+     * Subscribe from a Snapshot
+     *
+     * Subscribes to measurements for every point using the points saved by an earlier run, rather than
+     * querying for them first, and brings the saved points up to date in the background. Once the
+     * refresh is done, points added since the snapshot are subscribed to as well and removed points are
+     * no longer counted. The first run has no snapshot, so it waits for the model to be read.
+     *
+     * @param session Logged-in Session object
+     * @throws Exception
+     */
+    public static void subscribeFromSnapshot(Session session) throws Exception {
+
+        System.out.print("\n=== Measurement Subscription From Model Snapshot ===\n\n");
+
+        // Get service interfaces for the model and for measurements
+        final ModelService.Client modelClient = ModelService.client(session);
+        final MeasurementService.Client measurementClient = MeasurementService.client(session);
+
+        final File file = new File(System.getProperty("java.io.tmpdir"), "greenbus-model.snapshot");
+        final ModelSnapshotRefresher refresher = new ModelSnapshotRefresher(modelClient, file, 1000, 5000, TimeUnit.MILLISECONDS);
+
+        // Map the snapshot left by the last run, if there is one
+        final long start = System.nanoTime();
+        ModelSnapshot snapshot = refresher.open();
+
+        // Check the snapshot against the model service while the client gets on with its work
+        final ListenableFuture<ModelSnapshotRefresher.Result> refresh = refresher.refreshInBackground();
+
+        if (snapshot == null) {
+            System.out.println("No snapshot at " + file + ", reading the model");
+            snapshot = refresh.get(60000, TimeUnit.MILLISECONDS).getSnapshot();
+        }
+        System.out.println("Model ready in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms: " +
+                snapshot.getPointCount() + " points, " +
+                snapshot.getCommandCount() + " commands, " +
+                snapshot.getEndpointCount() + " endpoints, " +
+                snapshot.getEntityCount() + " other entities");
+
+        final List<Model.ModelUUID> pointUuids = snapshot.getPointUuids();
+
+        // Points currently subscribed to; notifications for points since removed are ignored
+        final Set<String> subscribed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        for (Model.ModelUUID uuid : pointUuids) {
+            subscribed.add(uuid.getValue());
+        }
+
+        final AtomicLong received = new AtomicLong(0);
+        final SubscriptionHandler<Measurements.MeasurementNotification> handler = new SubscriptionHandler<Measurements.MeasurementNotification>() {
+            @Override
+            public void handle(Measurements.MeasurementNotification event) {
+                if (subscribed.contains(event.getPointUuid().getValue())) {
+                    received.incrementAndGet();
+                }
+            }
+        };
+
+        final List<Subscription<Measurements.MeasurementNotification>> subscriptions = new ArrayList<Subscription<Measurements.MeasurementNotification>>();
+
+        final SubscriptionResult<List<Measurements.PointMeasurementValue>, Measurements.MeasurementNotification> subscriptionResult =
+                measurementClient.getCurrentValuesAndSubscribe(pointUuids).get(5000, TimeUnit.MILLISECONDS);
+
+        System.out.println("Current values: " + subscriptionResult.getResult().size());
+        subscriptions.add(subscriptionResult.getSubscription());
+        subscriptionResult.getSubscription().start(handler);
+
+        // Report what changed since the snapshot was written
+        final ModelSnapshotRefresher.Result result = refresh.get(60000, TimeUnit.MILLISECONDS);
+        System.out.println("Snapshot refreshed with " + result.getRequestCount() + " requests" + (result.isFull() ? " (full read)" : "") +
+                ": " + result.getAdded().size() + " added, " +
+                result.getModified().size() + " modified, " +
+                result.getRemoved().size() + " removed");
+
+        // Bring the subscription in line with the refreshed model: stop counting removed points and
+        // subscribe to points added since the snapshot was written
+        for (Model.ModelUUID uuid : result.getRemoved()) {
+            subscribed.remove(uuid.getValue());
+        }
+        final List<Model.ModelUUID> addedPoints = new ArrayList<Model.ModelUUID>();
+        for (Model.ModelUUID uuid : result.getAdded()) {
+            if (result.getSnapshot().getPoint(uuid) != null && !subscribed.contains(uuid.getValue())) {
+                addedPoints.add(uuid);
+            }
+        }
+        if (!addedPoints.isEmpty()) {
+            final SubscriptionResult<List<Measurements.PointMeasurementValue>, Measurements.MeasurementNotification> addedResult =
+                    measurementClient.getCurrentValuesAndSubscribe(addedPoints).get(5000, TimeUnit.MILLISECONDS);
+            for (Model.ModelUUID uuid : addedPoints) {
+                subscribed.add(uuid.getValue());
+            }
+            subscriptions.add(addedResult.getSubscription());
+            addedResult.getSubscription().start(handler);
+            System.out.println("Subscribed to " + addedPoints.size() + " added points, current values: " + addedResult.getResult().size());
+        }
+
+        // Receive new measurements for five seconds
+        Thread.sleep(5 * 1000);
+
+        // Cancel subscriptions to clean up resources in broker
+        for (Subscription<Measurements.MeasurementNotification> subscription : subscriptions) {
+            subscription.cancel();
+        }
+
+        System.out.println("Measurements received: " + received.get());
+    }
+}
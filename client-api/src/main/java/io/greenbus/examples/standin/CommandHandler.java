@@ -0,0 +1,194 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.standin;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.greenbus.client.service.proto.CommandRequests;
+import io.greenbus.client.service.proto.Commands;
+import io.greenbus.client.service.proto.FrontEnd;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.japi.client.service.CommandService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory command service: select and block locks, and command requests that the endpoint's front
+ * end executes if it is connected.
+ *
+ * A command may be held by one lock at a time. A request succeeds only for a command with an unexpired
+ * select lock, and times out if the command's endpoint is not COMMS_UP. Requests for an endpoint with a
+ * CommandExecutor, such as a front-end protocol, are passed to it instead of succeeding immediately.
+ */
+class CommandHandler implements CommandService.Client {
+
+    private static final long DEFAULT_EXPIRE_MILLIS = 30000;
+
+    private final Map<Model.ModelUUID, Model.Command> commands = new HashMap<Model.ModelUUID, Model.Command>();
+    private final Map<Long, Commands.CommandLock> locks = new LinkedHashMap<Long, Commands.CommandLock>();
+    private final Map<Model.ModelUUID, Long> lockedBy = new HashMap<Model.ModelUUID, Long>();
+    private final Map<Model.ModelUUID, StandInServices.CommandExecutor> executors = new HashMap<Model.ModelUUID, StandInServices.CommandExecutor>();
+    private final FrontEndHandler frontEnd;
+    private final StandInTransport transport;
+    private final long executionMicros;
+    private final StandInSettings.Clock clock;
+    private long nextLockId = 1;
+
+    CommandHandler(StandInModel model, FrontEndHandler frontEnd, StandInTransport transport, StandInSettings settings) {
+        this.frontEnd = frontEnd;
+        this.transport = transport;
+        this.executionMicros = settings.getCommandExecutionMicros();
+        this.clock = settings.getClock();
+        for (Model.Command command : model.getCommands()) {
+            commands.put(command.getUuid(), command);
+        }
+    }
+
+    @Override
+    public synchronized ListenableFuture<Commands.CommandLock> selectCommands(final CommandRequests.CommandSelect select) {
+        return transport.request(select, new StandInTransport.Answer<Commands.CommandLock>() {
+            @Override
+            public Commands.CommandLock answer() {
+                return lock(select.getCommandUuidsList(), Commands.CommandLock.AccessMode.ALLOWED,
+                        select.hasExpireDuration() ? select.getExpireDuration() : DEFAULT_EXPIRE_MILLIS);
+            }
+        });
+    }
+
+    @Override
+    public synchronized ListenableFuture<Commands.CommandLock> blockCommands(final CommandRequests.CommandBlock block) {
+        return transport.request(block, new StandInTransport.Answer<Commands.CommandLock>() {
+            @Override
+            public Commands.CommandLock answer() {
+                return lock(block.getCommandUuidsList(), Commands.CommandLock.AccessMode.BLOCKED, 0);
+            }
+        });
+    }
+
+    @Override
+    public synchronized ListenableFuture<List<Commands.CommandLock>> deleteCommandLocks(final List<Model.ModelID> ids) {
+        return transport.request(ids, new StandInTransport.Answer<List<Commands.CommandLock>>() {
+            @Override
+            public List<Commands.CommandLock> answer() {
+                final List<Commands.CommandLock> removed = new ArrayList<Commands.CommandLock>();
+                for (Model.ModelID id : ids) {
+                    final Commands.CommandLock lock = locks.remove(Long.parseLong(id.getValue()));
+                    if (lock != null) {
+                        for (Model.ModelUUID uuid : lock.getCommandUuidsList()) {
+                            lockedBy.remove(uuid);
+                        }
+                        removed.add(lock);
+                    }
+                }
+                return removed;
+            }
+        });
+    }
+
+    @Override
+    public synchronized ListenableFuture<Commands.CommandResult> issueCommandRequest(final Commands.CommandRequest request) {
+        return transport.requestLater(request, new StandInTransport.Answer<ListenableFuture<Commands.CommandResult>>() {
+            @Override
+            public ListenableFuture<Commands.CommandResult> answer() {
+                expire();
+
+                final Model.Command command = commands.get(request.getCommandUuid());
+                if (command == null) {
+                    throw new IllegalArgumentException("Command not found: " + request.getCommandUuid().getValue());
+                }
+                final Long lockId = lockedBy.get(command.getUuid());
+                if (lockId == null || locks.get(lockId).getAccess() != Commands.CommandLock.AccessMode.ALLOWED) {
+                    throw new IllegalStateException("Command not selected: " + command.getName());
+                }
+
+                final FrontEnd.FrontEndConnectionStatus.Status status = command.hasEndpointUuid() ? frontEnd.getStatus(command.getEndpointUuid()) : null;
+                final StandInServices.CommandExecutor executor = command.hasEndpointUuid() ? executors.get(command.getEndpointUuid()) : null;
+                if (executor != null && status == FrontEnd.FrontEndConnectionStatus.Status.COMMS_UP) {
+                    return executor.issue(command.getName(), request);
+                }
+
+                final Commands.CommandResult result = Commands.CommandResult.newBuilder()
+                        .setStatus(status == FrontEnd.FrontEndConnectionStatus.Status.COMMS_UP ? Commands.CommandStatus.SUCCESS : Commands.CommandStatus.TIMEOUT)
+                        .build();
+
+                return transport.later(result, executionMicros);
+            }
+        });
+    }
+
+    synchronized int getLockCount() {
+        return locks.size();
+    }
+
+    synchronized void setExecutor(Model.ModelUUID endpointUuid, StandInServices.CommandExecutor executor) {
+        if (executor == null) {
+            executors.remove(endpointUuid);
+        } else {
+            executors.put(endpointUuid, executor);
+        }
+    }
+
+    private Commands.CommandLock lock(List<Model.ModelUUID> uuids, Commands.CommandLock.AccessMode access, long expireMillis) {
+        expire();
+
+        for (Model.ModelUUID uuid : uuids) {
+            final Model.Command command = commands.get(uuid);
+            if (command == null) {
+                throw new IllegalArgumentException("Command not found: " + uuid.getValue());
+            }
+            if (lockedBy.containsKey(uuid)) {
+                throw new IllegalStateException("Command already locked: " + command.getName());
+            }
+        }
+
+        final Commands.CommandLock.Builder builder = Commands.CommandLock.newBuilder()
+                .setId(Model.ModelID.newBuilder().setValue(Long.toString(nextLockId)))
+                .setAccess(access)
+                .addAllCommandUuids(uuids);
+        if (expireMillis > 0) {
+            builder.setExpireTime(clock.currentTimeMillis() + expireMillis);
+        }
+        final Commands.CommandLock lock = builder.build();
+
+        locks.put(nextLockId, lock);
+        for (Model.ModelUUID uuid : uuids) {
+            lockedBy.put(uuid, nextLockId);
+        }
+        nextLockId++;
+        return lock;
+    }
+
+    private void expire() {
+        final long now = clock.currentTimeMillis();
+        final Iterator<Commands.CommandLock> iterator = locks.values().iterator();
+        while (iterator.hasNext()) {
+            final Commands.CommandLock lock = iterator.next();
+            if (lock.hasExpireTime() && lock.getExpireTime() <= now) {
+                iterator.remove();
+                for (Model.ModelUUID uuid : lock.getCommandUuidsList()) {
+                    lockedBy.remove(uuid);
+                }
+            }
+        }
+    }
+}
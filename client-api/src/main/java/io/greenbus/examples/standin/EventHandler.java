@@ -0,0 +1,322 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.standin;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.greenbus.client.service.proto.Envelope;
+import io.greenbus.client.service.proto.EventRequests;
+import io.greenbus.client.service.proto.Events;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.japi.client.service.EventService;
+import io.greenbus.msg.japi.SubscriptionResult;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory event service: posted events, and alarms for the event types configured to raise them.
+ */
+class EventHandler implements EventService.Client {
+
+    private static final int ALARM_SEVERITY = 2;
+    private static final int EVENT_SEVERITY = 5;
+
+    private final String agentName;
+    private final StandInSettings.Clock clock;
+    private final Set<String> alarmEventTypes;
+    private final List<Events.Event> events = new ArrayList<Events.Event>();
+    private final Map<Long, Events.Alarm> alarms = new LinkedHashMap<Long, Events.Alarm>();
+    private long nextAlarmId = 1;
+
+    private final StandInTransport.Topic<Events.EventNotification> eventTopic;
+    private final StandInTransport.Topic<Events.AlarmNotification> alarmTopic;
+    private final StandInTransport transport;
+
+    EventHandler(StandInSettings settings, StandInTransport transport) {
+        this.transport = transport;
+        this.agentName = settings.getAgentName();
+        this.clock = settings.getClock();
+        this.alarmEventTypes = settings.getAlarmEventTypes();
+        this.eventTopic = transport.topic();
+        this.alarmTopic = transport.topic();
+    }
+
+    @Override
+    public synchronized ListenableFuture<List<Events.Event>> postEvents(final List<EventRequests.EventTemplate> templates) {
+        return transport.request(templates, new StandInTransport.Answer<List<Events.Event>>() {
+            @Override
+            public List<Events.Event> answer() {
+                return post(templates);
+            }
+        });
+    }
+
+    /**
+     * Posts events, raising an alarm for each event of an alarm event type.
+     */
+    synchronized List<Events.Event> post(List<EventRequests.EventTemplate> templates) {
+        final long now = clock.currentTimeMillis();
+        final List<Events.Event> posted = new ArrayList<Events.Event>(templates.size());
+
+        for (EventRequests.EventTemplate template : templates) {
+            final boolean alarm = alarmEventTypes.contains(template.getEventType());
+
+            final StringBuilder rendered = new StringBuilder(template.getEventType());
+            for (Events.Attribute arg : template.getArgsList()) {
+                rendered.append(' ').append(arg.getName()).append('=').append(value(arg));
+            }
+
+            final Events.Event.Builder builder = Events.Event.newBuilder()
+                    .setId(id(events.size() + 1))
+                    .setEventType(template.getEventType())
+                    .setAlarm(alarm)
+                    .setTime(now)
+                    .setSeverity(alarm ? ALARM_SEVERITY : EVENT_SEVERITY)
+                    .setSubsystem(template.getSubsystem())
+                    .setAgentName(agentName)
+                    .setRendered(rendered.toString());
+            if (template.hasDeviceTime()) {
+                builder.setDeviceTime(template.getDeviceTime());
+            }
+            if (template.hasEntityUuid()) {
+                builder.setEntityUuid(template.getEntityUuid());
+            }
+            final Events.Event event = builder.build();
+
+            events.add(event);
+            posted.add(event);
+            eventTopic.publish(Events.EventNotification.newBuilder()
+                    .setValue(event)
+                    .build());
+
+            if (alarm) {
+                final Events.Alarm raised = Events.Alarm.newBuilder()
+                        .setId(id(nextAlarmId++))
+                        .setState(Events.Alarm.State.UNACK_AUDIBLE)
+                        .setEvent(event)
+                        .build();
+                alarms.put(Long.parseLong(raised.getId().getValue()), raised);
+                alarmTopic.publish(Events.AlarmNotification.newBuilder()
+                        .setEventType(Envelope.SubscriptionEventType.ADDED)
+                        .setValue(raised)
+                        .build());
+            }
+        }
+        return posted;
+    }
+
+    @Override
+    public synchronized ListenableFuture<List<Events.Event>> eventQuery(final EventRequests.EventQuery query) {
+        return transport.request(query, new StandInTransport.Answer<List<Events.Event>>() {
+            @Override
+            public List<Events.Event> answer() {
+                final EventRequests.EventQueryParams params = query.hasQueryParams() ? query.getQueryParams() : null;
+                final int pageSize = query.hasPageSize() ? query.getPageSize() : ModelHandler.DEFAULT_PAGE_SIZE;
+
+                final List<Events.Event> matched = new ArrayList<Events.Event>();
+                for (Events.Event event : events) {
+                    if (query.hasLastId() && Long.parseLong(event.getId().getValue()) <= Long.parseLong(query.getLastId().getValue())) {
+                        continue;
+                    }
+                    if (matches(event, params)) {
+                        matched.add(event);
+                    }
+                }
+                return window(matched, pageSize, !query.hasLastId() && latest(params, true));
+            }
+        });
+    }
+
+    @Override
+    public synchronized ListenableFuture<List<Events.Alarm>> alarmQuery(final EventRequests.AlarmQuery query) {
+        return transport.request(query, new StandInTransport.Answer<List<Events.Alarm>>() {
+            @Override
+            public List<Events.Alarm> answer() {
+                final EventRequests.EventQueryParams params = query.hasEventQueryParams() ? query.getEventQueryParams() : null;
+                final int pageSize = query.hasPageSize() ? query.getPageSize() : ModelHandler.DEFAULT_PAGE_SIZE;
+
+                final List<Events.Alarm> matched = new ArrayList<Events.Alarm>();
+                for (Map.Entry<Long, Events.Alarm> entry : alarms.entrySet()) {
+                    if (query.hasLastId() && entry.getKey() <= Long.parseLong(query.getLastId().getValue())) {
+                        continue;
+                    }
+                    final Events.Alarm alarm = entry.getValue();
+                    if (query.getAlarmStatesCount() > 0 && !query.getAlarmStatesList().contains(alarm.getState())) {
+                        continue;
+                    }
+                    if (matches(alarm.getEvent(), params)) {
+                        matched.add(alarm);
+                    }
+                }
+                return window(matched, pageSize, !query.hasLastId() && latest(params, false));
+            }
+        });
+    }
+
+    @Override
+    public synchronized ListenableFuture<List<Events.Alarm>> putAlarmState(final List<EventRequests.AlarmStateUpdate> updates) {
+        return transport.request(updates, new StandInTransport.Answer<List<Events.Alarm>>() {
+            @Override
+            public List<Events.Alarm> answer() {
+                for (EventRequests.AlarmStateUpdate update : updates) {
+                    if (!alarms.containsKey(Long.parseLong(update.getAlarmId().getValue()))) {
+                        throw new IllegalArgumentException("Alarm not found: " + update.getAlarmId().getValue());
+                    }
+                }
+
+                final List<Events.Alarm> updated = new ArrayList<Events.Alarm>(updates.size());
+                for (EventRequests.AlarmStateUpdate update : updates) {
+                    final long id = Long.parseLong(update.getAlarmId().getValue());
+                    final Events.Alarm alarm = alarms.get(id).toBuilder()
+                            .setState(update.getAlarmState())
+                            .build();
+                    alarms.put(id, alarm);
+                    updated.add(alarm);
+                    alarmTopic.publish(Events.AlarmNotification.newBuilder()
+                            .setEventType(Envelope.SubscriptionEventType.MODIFIED)
+                            .setValue(alarm)
+                            .build());
+                }
+                return updated;
+            }
+        });
+    }
+
+    @Override
+    public synchronized ListenableFuture<SubscriptionResult<List<Events.Event>, Events.EventNotification>> subscribeToEvents(final EventRequests.EventSubscriptionQuery query) {
+        return transport.request(query, new StandInTransport.Answer<SubscriptionResult<List<Events.Event>, Events.EventNotification>>() {
+            @Override
+            public SubscriptionResult<List<Events.Event>, Events.EventNotification> answer() {
+                final List<Events.Event> matched = new ArrayList<Events.Event>();
+                for (Events.Event event : events) {
+                    if ((!query.hasTimeFrom() || event.getTime() >= query.getTimeFrom()) && matches(event, query)) {
+                        matched.add(event);
+                    }
+                }
+                final List<Events.Event> current = window(matched, query.hasLimit() ? query.getLimit() : ModelHandler.DEFAULT_PAGE_SIZE, true);
+
+                return eventTopic.subscribe(current, new StandInTransport.Filter<Events.EventNotification>() {
+                    @Override
+                    public boolean accept(Events.EventNotification notification) {
+                        return matches(notification.getValue(), query);
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public synchronized ListenableFuture<SubscriptionResult<List<Events.Alarm>, Events.AlarmNotification>> subscribeToAlarms(final EventRequests.AlarmSubscriptionQuery query) {
+        return transport.request(query, new StandInTransport.Answer<SubscriptionResult<List<Events.Alarm>, Events.AlarmNotification>>() {
+            @Override
+            public SubscriptionResult<List<Events.Alarm>, Events.AlarmNotification> answer() {
+                final EventRequests.EventQueryParams params = query.hasEventQueryParams() ? query.getEventQueryParams() : null;
+
+                final List<Events.Alarm> matched = new ArrayList<Events.Alarm>();
+                for (Events.Alarm alarm : alarms.values()) {
+                    if ((query.getAlarmStatesCount() == 0 || query.getAlarmStatesList().contains(alarm.getState())) && matches(alarm.getEvent(), params)) {
+                        matched.add(alarm);
+                    }
+                }
+                final List<Events.Alarm> current = window(matched, query.hasLimit() ? query.getLimit() : ModelHandler.DEFAULT_PAGE_SIZE, true);
+
+                return alarmTopic.subscribe(current, new StandInTransport.Filter<Events.AlarmNotification>() {
+                    @Override
+                    public boolean accept(Events.AlarmNotification notification) {
+                        final Events.Alarm alarm = notification.getValue();
+                        return (query.getAlarmStatesCount() == 0 || query.getAlarmStatesList().contains(alarm.getState())) && matches(alarm.getEvent(), params);
+                    }
+                });
+            }
+        });
+    }
+
+    private static boolean matches(Events.Event event, EventRequests.EventQueryParams params) {
+        if (params == null) {
+            return true;
+        }
+        if (params.getEventTypeCount() > 0 && !params.getEventTypeList().contains(event.getEventType())) {
+            return false;
+        }
+        if (params.hasTimeFrom() && event.getTime() < params.getTimeFrom()) {
+            return false;
+        }
+        if (params.hasTimeTo() && event.getTime() > params.getTimeTo()) {
+            return false;
+        }
+        if (params.getSeverityCount() > 0 && !params.getSeverityList().contains(event.getSeverity())) {
+            return false;
+        }
+        if (params.hasSeverityOrHigher() && event.getSeverity() > params.getSeverityOrHigher()) {
+            return false;
+        }
+        if (params.getSubsystemCount() > 0 && !params.getSubsystemList().contains(event.getSubsystem())) {
+            return false;
+        }
+        if (params.getAgentCount() > 0 && !params.getAgentList().contains(event.getAgentName())) {
+            return false;
+        }
+        return !params.hasIsAlarm() || params.getIsAlarm() == event.getAlarm();
+    }
+
+    private static boolean matches(Events.Event event, EventRequests.EventSubscriptionQuery query) {
+        if (query.getEventTypeCount() > 0 && !query.getEventTypeList().contains(event.getEventType())) {
+            return false;
+        }
+        if (query.getSeverityCount() > 0 && !query.getSeverityList().contains(event.getSeverity())) {
+            return false;
+        }
+        return query.getSubsystemCount() == 0 || query.getSubsystemList().contains(event.getSubsystem());
+    }
+
+    /**
+     * Event queries return the latest events unless asked not to; alarm queries are paged from the
+     * oldest active alarm unless asked for the latest.
+     */
+    private static boolean latest(EventRequests.EventQueryParams params, boolean byDefault) {
+        return params == null || !params.hasLatest() ? byDefault : params.getLatest();
+    }
+
+    /**
+     * @return The first or last items, in their original order
+     */
+    private static <T> List<T> window(List<T> items, int size, boolean last) {
+        if (items.size() <= size) {
+            return items;
+        }
+        return new ArrayList<T>(last ? items.subList(items.size() - size, items.size()) : items.subList(0, size));
+    }
+
+    private static Model.ModelID id(long id) {
+        return Model.ModelID.newBuilder().setValue(Long.toString(id)).build();
+    }
+
+    private static String value(Events.Attribute arg) {
+        if (arg.hasValueString()) {
+            return arg.getValueString();
+        } else if (arg.hasValueDouble()) {
+            return Double.toString(arg.getValueDouble());
+        } else {
+            return Boolean.toString(arg.getValueBool());
+        }
+    }
+}
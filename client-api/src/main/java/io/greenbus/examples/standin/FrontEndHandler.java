@@ -0,0 +1,132 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.standin;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.greenbus.client.service.proto.Envelope;
+import io.greenbus.client.service.proto.FrontEnd;
+import io.greenbus.client.service.proto.FrontEndRequests;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.client.service.proto.ModelRequests;
+import io.greenbus.japi.client.service.FrontEndService;
+import io.greenbus.msg.japi.SubscriptionResult;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory front end service: the connection status of each endpoint, all COMMS_UP to begin with.
+ */
+class FrontEndHandler implements FrontEndService.Client {
+
+    private final Map<Model.ModelUUID, FrontEnd.FrontEndConnectionStatus> statuses = new LinkedHashMap<Model.ModelUUID, FrontEnd.FrontEndConnectionStatus>();
+    private final StandInTransport.Topic<FrontEnd.FrontEndConnectionStatusNotification> topic;
+    private final StandInSettings.Clock clock;
+    private final StandInTransport transport;
+
+    FrontEndHandler(StandInModel model, StandInSettings.Clock clock, StandInTransport transport) {
+        this.transport = transport;
+        this.topic = transport.topic();
+        this.clock = clock;
+
+        final long now = clock.currentTimeMillis();
+        for (Model.Endpoint endpoint : model.getEndpoints()) {
+            statuses.put(endpoint.getUuid(), FrontEnd.FrontEndConnectionStatus.newBuilder()
+                    .setEndpointUuid(endpoint.getUuid())
+                    .setEndpointName(endpoint.getName())
+                    .setState(FrontEnd.FrontEndConnectionStatus.Status.COMMS_UP)
+                    .setUpdateTime(now)
+                    .build());
+        }
+    }
+
+    @Override
+    public synchronized ListenableFuture<List<FrontEnd.FrontEndConnectionStatus>> getFrontEndConnectionStatuses(final ModelRequests.EntityKeySet keys) {
+        return transport.request(keys, new StandInTransport.Answer<List<FrontEnd.FrontEndConnectionStatus>>() {
+            @Override
+            public List<FrontEnd.FrontEndConnectionStatus> answer() {
+                final List<FrontEnd.FrontEndConnectionStatus> found = new ArrayList<FrontEnd.FrontEndConnectionStatus>();
+                for (FrontEnd.FrontEndConnectionStatus status : statuses.values()) {
+                    if (keys.getUuidsList().contains(status.getEndpointUuid()) || keys.getNamesList().contains(status.getEndpointName())) {
+                        found.add(status);
+                    }
+                }
+                return found;
+            }
+        });
+    }
+
+    @Override
+    public synchronized ListenableFuture<SubscriptionResult<List<FrontEnd.FrontEndConnectionStatus>, FrontEnd.FrontEndConnectionStatusNotification>> subscribeToFrontEndConnectionStatuses(
+            final FrontEndRequests.FrontEndStatusSubscriptionQuery query) {
+
+        return transport.request(query, new StandInTransport.Answer<SubscriptionResult<List<FrontEnd.FrontEndConnectionStatus>, FrontEnd.FrontEndConnectionStatusNotification>>() {
+            @Override
+            public SubscriptionResult<List<FrontEnd.FrontEndConnectionStatus>, FrontEnd.FrontEndConnectionStatusNotification> answer() {
+                final List<FrontEnd.FrontEndConnectionStatus> current = new ArrayList<FrontEnd.FrontEndConnectionStatus>();
+                for (FrontEnd.FrontEndConnectionStatus status : statuses.values()) {
+                    if (matches(status, query)) {
+                        current.add(status);
+                    }
+                }
+                return topic.subscribe(current, new StandInTransport.Filter<FrontEnd.FrontEndConnectionStatusNotification>() {
+                    @Override
+                    public boolean accept(FrontEnd.FrontEndConnectionStatusNotification notification) {
+                        return matches(notification.getValue(), query);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return Current status of the endpoint, or null if it has none
+     */
+    synchronized FrontEnd.FrontEndConnectionStatus.Status getStatus(Model.ModelUUID endpointUuid) {
+        final FrontEnd.FrontEndConnectionStatus status = statuses.get(endpointUuid);
+        return status == null ? null : status.getState();
+    }
+
+    /**
+     * Changes the status of an endpoint, as its front end would.
+     */
+    synchronized void setStatus(Model.ModelUUID endpointUuid, String endpointName, FrontEnd.FrontEndConnectionStatus.Status state) {
+        final FrontEnd.FrontEndConnectionStatus status = FrontEnd.FrontEndConnectionStatus.newBuilder()
+                .setEndpointUuid(endpointUuid)
+                .setEndpointName(endpointName)
+                .setState(state)
+                .setUpdateTime(clock.currentTimeMillis())
+                .build();
+        statuses.put(endpointUuid, status);
+
+        topic.publish(FrontEnd.FrontEndConnectionStatusNotification.newBuilder()
+                .setEventType(Envelope.SubscriptionEventType.MODIFIED)
+                .setValue(status)
+                .build());
+    }
+
+    private static boolean matches(FrontEnd.FrontEndConnectionStatus status, FrontEndRequests.FrontEndStatusSubscriptionQuery query) {
+        if (query.getEndpointUuidsCount() == 0 && query.getEndpointNamesCount() == 0) {
+            return true;
+        }
+        return query.getEndpointUuidsList().contains(status.getEndpointUuid()) || query.getEndpointNamesList().contains(status.getEndpointName());
+    }
+}
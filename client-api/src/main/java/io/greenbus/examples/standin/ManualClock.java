@@ -0,0 +1,59 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.standin;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A clock for StandInServices that only moves when told to, so time-dependent behavior such as lock
+ * expiry and event times can be repeated exactly.
+ */
+public class ManualClock implements StandInSettings.Clock {
+
+    private final AtomicLong millis;
+
+    /**
+     * @param startMillis Initial time, in milliseconds since the epoch
+     */
+    public ManualClock(long startMillis) {
+        this.millis = new AtomicLong(startMillis);
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return millis.get();
+    }
+
+    /**
+     * @param millis New time, in milliseconds since the epoch
+     */
+    public void set(long millis) {
+        this.millis.set(millis);
+    }
+
+    /**
+     * Moves the clock forward.
+     *
+     * @return The new time
+     */
+    public long advance(long duration, TimeUnit unit) {
+        return millis.addAndGet(unit.toMillis(duration));
+    }
+}
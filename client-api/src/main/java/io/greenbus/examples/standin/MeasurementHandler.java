@@ -0,0 +1,165 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.standin;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.greenbus.client.service.proto.MeasurementRequests;
+import io.greenbus.client.service.proto.Measurements;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.japi.client.service.MeasurementService;
+import io.greenbus.msg.japi.SubscriptionResult;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory measurement service: the current value and a bounded history for each point, updated by
+ * StandInServices.publishMeasurements.
+ */
+class MeasurementHandler implements MeasurementService.Client {
+
+    private final int historyDepth;
+    private final Map<Model.ModelUUID, String> pointNames = new HashMap<Model.ModelUUID, String>();
+    private final Map<Model.ModelUUID, Measurements.Measurement> current = new HashMap<Model.ModelUUID, Measurements.Measurement>();
+    private final Map<Model.ModelUUID, ArrayDeque<Measurements.Measurement>> history = new HashMap<Model.ModelUUID, ArrayDeque<Measurements.Measurement>>();
+    private final StandInTransport.Topic<Measurements.MeasurementNotification> topic;
+    private final StandInTransport transport;
+
+    MeasurementHandler(StandInModel model, int historyDepth, StandInTransport transport) {
+        this.historyDepth = historyDepth;
+        this.transport = transport;
+        this.topic = transport.topic();
+        for (Model.Point point : model.getPoints()) {
+            pointNames.put(point.getUuid(), point.getName());
+        }
+    }
+
+    @Override
+    public synchronized ListenableFuture<List<Measurements.PointMeasurementValue>> getCurrentValues(final List<Model.ModelUUID> pointUuids) {
+        return transport.request(pointUuids, new StandInTransport.Answer<List<Measurements.PointMeasurementValue>>() {
+            @Override
+            public List<Measurements.PointMeasurementValue> answer() {
+                return currentValues(pointUuids);
+            }
+        });
+    }
+
+    @Override
+    public synchronized ListenableFuture<SubscriptionResult<List<Measurements.PointMeasurementValue>, Measurements.MeasurementNotification>> getCurrentValuesAndSubscribe(final List<Model.ModelUUID> pointUuids) {
+        return transport.request(pointUuids, new StandInTransport.Answer<SubscriptionResult<List<Measurements.PointMeasurementValue>, Measurements.MeasurementNotification>>() {
+            @Override
+            public SubscriptionResult<List<Measurements.PointMeasurementValue>, Measurements.MeasurementNotification> answer() {
+                final Set<Model.ModelUUID> subscribed = new HashSet<Model.ModelUUID>(pointUuids);
+                return topic.subscribe(currentValues(pointUuids), new StandInTransport.Filter<Measurements.MeasurementNotification>() {
+                    @Override
+                    public boolean accept(Measurements.MeasurementNotification notification) {
+                        return subscribed.contains(notification.getPointUuid());
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public synchronized ListenableFuture<Measurements.PointMeasurementValues> getHistory(final MeasurementRequests.MeasurementHistoryQuery query) {
+        return transport.request(query, new StandInTransport.Answer<Measurements.PointMeasurementValues>() {
+            @Override
+            public Measurements.PointMeasurementValues answer() {
+                if (!pointNames.containsKey(query.getPointUuid())) {
+                    throw new IllegalArgumentException("Point not found: " + query.getPointUuid().getValue());
+                }
+                final int limit = query.hasLimit() ? query.getLimit() : ModelHandler.DEFAULT_PAGE_SIZE;
+                final boolean latest = !query.hasLatest() || query.getLatest();
+
+                final List<Measurements.Measurement> matched = new ArrayList<Measurements.Measurement>();
+                final ArrayDeque<Measurements.Measurement> values = history.get(query.getPointUuid());
+                if (values != null) {
+                    final Iterator<Measurements.Measurement> iterator = latest ? values.descendingIterator() : values.iterator();
+                    while (iterator.hasNext() && matched.size() < limit) {
+                        final Measurements.Measurement measurement = iterator.next();
+                        if (query.hasTimeFrom() && measurement.getTime() < query.getTimeFrom()) {
+                            continue;
+                        }
+                        if (query.hasTimeTo() && measurement.getTime() > query.getTimeTo()) {
+                            continue;
+                        }
+                        matched.add(measurement);
+                    }
+                }
+
+                final Measurements.PointMeasurementValues.Builder result = Measurements.PointMeasurementValues.newBuilder()
+                        .setPointUuid(query.getPointUuid());
+                for (int i = 0; i < matched.size(); i++) {
+                    result.addValue(matched.get(latest ? matched.size() - 1 - i : i));
+                }
+                return result.build();
+            }
+        });
+    }
+
+    private List<Measurements.PointMeasurementValue> currentValues(List<Model.ModelUUID> pointUuids) {
+        final List<Measurements.PointMeasurementValue> values = new ArrayList<Measurements.PointMeasurementValue>(pointUuids.size());
+        for (Model.ModelUUID uuid : pointUuids) {
+            final Measurements.Measurement measurement = current.get(uuid);
+            if (measurement != null) {
+                values.add(Measurements.PointMeasurementValue.newBuilder()
+                        .setPointUuid(uuid)
+                        .setValue(measurement)
+                        .build());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Stores measurements as current values and in history, and notifies subscribers.
+     */
+    synchronized void publish(List<Measurements.PointMeasurementValue> values) {
+        for (Measurements.PointMeasurementValue value : values) {
+            final String name = pointNames.get(value.getPointUuid());
+            if (name == null) {
+                throw new IllegalArgumentException("Point not found: " + value.getPointUuid().getValue());
+            }
+
+            current.put(value.getPointUuid(), value.getValue());
+
+            ArrayDeque<Measurements.Measurement> stored = history.get(value.getPointUuid());
+            if (stored == null) {
+                stored = new ArrayDeque<Measurements.Measurement>();
+                history.put(value.getPointUuid(), stored);
+            }
+            stored.addLast(value.getValue());
+            if (stored.size() > historyDepth) {
+                stored.removeFirst();
+            }
+
+            topic.publish(Measurements.MeasurementNotification.newBuilder()
+                    .setPointUuid(value.getPointUuid())
+                    .setPointName(name)
+                    .setValue(value.getValue())
+                    .build());
+        }
+    }
+}
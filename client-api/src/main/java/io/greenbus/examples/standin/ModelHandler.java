@@ -0,0 +1,558 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.standin;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.greenbus.client.service.proto.Envelope;
+import io.greenbus.client.service.proto.FrontEnd;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.client.service.proto.ModelRequests;
+import io.greenbus.japi.client.service.ModelService;
+import io.greenbus.msg.japi.SubscriptionResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory model service: entity, point, command, endpoint and edge queries over a StandInModel,
+ * with endpoint enabling and entity key values that can be changed.
+ */
+class ModelHandler implements ModelService.Client {
+
+    static final int DEFAULT_PAGE_SIZE = 100;
+
+    private final StandInModel model;
+    private final FrontEndHandler frontEnd;
+    private final Map<Model.ModelUUID, Model.Endpoint> endpoints = new LinkedHashMap<Model.ModelUUID, Model.Endpoint>();
+    private final Map<Model.ModelUUID, Set<Model.ModelUUID>> sourcedBy = new HashMap<Model.ModelUUID, Set<Model.ModelUUID>>();
+    private final Map<ModelRequests.EntityKeyPair, Model.EntityKeyValue> keyValues = new LinkedHashMap<ModelRequests.EntityKeyPair, Model.EntityKeyValue>();
+
+    private final StandInTransport.Topic<Model.EntityNotification> entityTopic;
+    private final StandInTransport.Topic<Model.EntityEdgeNotification> edgeTopic;
+    private final StandInTransport.Topic<Model.EntityKeyValueNotification> keyValueTopic;
+    private final StandInTransport transport;
+
+    ModelHandler(StandInModel model, FrontEndHandler frontEnd, StandInTransport transport) {
+        this.model = model;
+        this.frontEnd = frontEnd;
+        this.transport = transport;
+        this.entityTopic = transport.topic();
+        this.edgeTopic = transport.topic();
+        this.keyValueTopic = transport.topic();
+
+        for (Model.Endpoint endpoint : model.getEndpoints()) {
+            endpoints.put(endpoint.getUuid(), endpoint);
+        }
+        for (Model.EntityEdge edge : model.getEdges()) {
+            if (edge.getRelationship().equals(StandInModel.SOURCE)) {
+                Set<Model.ModelUUID> sourced = sourcedBy.get(edge.getParent());
+                if (sourced == null) {
+                    sourced = new HashSet<Model.ModelUUID>();
+                    sourcedBy.put(edge.getParent(), sourced);
+                }
+                sourced.add(edge.getChild());
+            }
+        }
+    }
+
+    @Override
+    public synchronized ListenableFuture<List<Model.Entity>> entityQuery(final ModelRequests.EntityQuery query) {
+        return transport.request(query, new StandInTransport.Answer<List<Model.Entity>>() {
+            @Override
+            public List<Model.Entity> answer() {
+                final List<Model.Entity> matched = new ArrayList<Model.Entity>();
+                for (Model.Entity entity : model.getEntities()) {
+                    if (matchesTypes(entity, query.hasTypeParams() ? query.getTypeParams() : null)) {
+                        matched.add(entity);
+                    }
+                }
+                return page(matched, matched, query.hasPagingParams() ? query.getPagingParams() : null);
+            }
+        });
+    }
+
+    @Override
+    public synchronized ListenableFuture<List<Model.Entity>> get(final ModelRequests.EntityKeySet keys) {
+        return transport.request(keys, new StandInTransport.Answer<List<Model.Entity>>() {
+            @Override
+            public List<Model.Entity> answer() {
+                return entities(keys);
+            }
+        });
+    }
+
+    @Override
+    public synchronized ListenableFuture<List<Model.Entity>> relationshipFlatQuery(final ModelRequests.EntityRelationshipFlatQuery query) {
+        return transport.request(query, new StandInTransport.Answer<List<Model.Entity>>() {
+            @Override
+            public List<Model.Entity> answer() {
+                final Set<Model.ModelUUID> starts = new HashSet<Model.ModelUUID>(query.getStartUuidsList());
+                for (String name : query.getStartNamesList()) {
+                    final Model.Entity entity = model.getEntity(name);
+                    if (entity != null) {
+                        starts.add(entity.getUuid());
+                    }
+                }
+                final boolean descendants = !query.hasDescendantOf() || query.getDescendantOf();
+
+                final Set<Model.ModelUUID> reached = new HashSet<Model.ModelUUID>();
+                final List<Model.Entity> matched = new ArrayList<Model.Entity>();
+                for (Model.EntityEdge edge : model.getEdges()) {
+                    if (!edge.getRelationship().equals(query.getRelationship())) {
+                        continue;
+                    }
+                    if (query.hasDepthLimit() && edge.getDistance() > query.getDepthLimit()) {
+                        continue;
+                    }
+                    final Model.ModelUUID from = descendants ? edge.getParent() : edge.getChild();
+                    final Model.ModelUUID to = descendants ? edge.getChild() : edge.getParent();
+                    if (!starts.contains(from) || !reached.add(to)) {
+                        continue;
+                    }
+                    final Model.Entity entity = model.getEntity(to);
+                    if (query.getEndTypesCount() == 0 || !Collections.disjoint(entity.getTypesList(), query.getEndTypesList())) {
+                        matched.add(entity);
+                    }
+                }
+                return page(matched, matched, query.hasPagingParams() ? query.getPagingParams() : null);
+            }
+        });
+    }
+
+    @Override
+    public synchronized ListenableFuture<List<Model.EntityEdge>> edgeQuery(final ModelRequests.EntityEdgeQuery query) {
+        return transport.request(query, new StandInTransport.Answer<List<Model.EntityEdge>>() {
+            @Override
+            public List<Model.EntityEdge> answer() {
+                final long lastId = query.hasLastId() ? Long.parseLong(query.getLastId().getValue()) : 0;
+                final int pageSize = query.hasPageSize() ? query.getPageSize() : DEFAULT_PAGE_SIZE;
+
+                final List<Model.EntityEdge> matched = new ArrayList<Model.EntityEdge>();
+                for (Model.EntityEdge edge : model.getEdges()) {
+                    if (matched.size() >= pageSize) {
+                        break;
+                    }
+                    if (Long.parseLong(edge.getId().getValue()) <= lastId) {
+                        continue;
+                    }
+                    if (query.getParentUuidsCount() > 0 && !query.getParentUuidsList().contains(edge.getParent())) {
+                        continue;
+                    }
+                    if (query.getChildUuidsCount() > 0 && !query.getChildUuidsList().contains(edge.getChild())) {
+                        continue;
+                    }
+                    if (query.getRelationshipsCount() > 0 && !query.getRelationshipsList().contains(edge.getRelationship())) {
+                        continue;
+                    }
+                    if (query.hasDepthLimit() && edge.getDistance() > query.getDepthLimit()) {
+                        continue;
+                    }
+                    matched.add(edge);
+                }
+                return matched;
+            }
+        });
+    }
+
+    @Override
+    public synchronized ListenableFuture<List<Model.Point>> pointQuery(final ModelRequests.PointQuery query) {
+        return transport.request(query, new StandInTransport.Answer<List<Model.Point>>() {
+            @Override
+            public List<Model.Point> answer() {
+                final List<Model.Point> matched = new ArrayList<Model.Point>();
+                final List<Model.Entity> keys = new ArrayList<Model.Entity>();
+                for (Model.Point point : model.getPoints()) {
+                    final Model.Entity entity = model.getEntity(point.getUuid());
+                    if (!matchesTypes(entity, query.hasTypeParams() ? query.getTypeParams() : null)) {
+                        continue;
+                    }
+                    if (query.getPointCategoriesCount() > 0 && !query.getPointCategoriesList().contains(point.getPointCategory())) {
+                        continue;
+                    }
+                    if (query.getUnitsCount() > 0 && !query.getUnitsList().contains(point.getUnit())) {
+                        continue;
+                    }
+                    matched.add(point);
+                    keys.add(entity);
+                }
+                return page(matched, keys, query.hasPagingParams() ? query.getPagingParams() : null);
+            }
+        });
+    }
+
+    @Override
+    public synchronized ListenableFuture<List<Model.Point>> getPoints(final ModelRequests.EntityKeySet keys) {
+        return transport.request(keys, new StandInTransport.Answer<List<Model.Point>>() {
+            @Override
+            public List<Model.Point> answer() {
+                final Set<Model.ModelUUID> uuids = new HashSet<Model.ModelUUID>();
+                for (Model.Entity entity : entities(keys)) {
+                    uuids.add(entity.getUuid());
+                }
+                final List<Model.Point> found = new ArrayList<Model.Point>();
+                for (Model.Point point : model.getPoints()) {
+                    if (uuids.contains(point.getUuid())) {
+                        found.add(point);
+                    }
+                }
+                return found;
+            }
+        });
+    }
+
+    @Override
+    public synchronized ListenableFuture<List<Model.Command>> commandQuery(final ModelRequests.CommandQuery query) {
+        return transport.request(query, new StandInTransport.Answer<List<Model.Command>>() {
+            @Override
+            public List<Model.Command> answer() {
+                final List<Model.Command> matched = new ArrayList<Model.Command>();
+                final List<Model.Entity> keys = new ArrayList<Model.Entity>();
+                for (Model.Command command : model.getCommands()) {
+                    final Model.Entity entity = model.getEntity(command.getUuid());
+                    if (!matchesTypes(entity, query.hasTypeParams() ? query.getTypeParams() : null)) {
+                        continue;
+                    }
+                    if (query.getCommandCategoriesCount() > 0 && !query.getCommandCategoriesList().contains(command.getCommandCategory())) {
+                        continue;
+                    }
+                    matched.add(command);
+                    keys.add(entity);
+                }
+                return page(matched, keys, query.hasPagingParams() ? query.getPagingParams() : null);
+            }
+        });
+    }
+
+    @Override
+    public synchronized ListenableFuture<List<Model.Endpoint>> endpointQuery(final ModelRequests.EndpointQuery query) {
+        return transport.request(query, new StandInTransport.Answer<List<Model.Endpoint>>() {
+            @Override
+            public List<Model.Endpoint> answer() {
+                final List<Model.Endpoint> matched = new ArrayList<Model.Endpoint>();
+                final List<Model.Entity> keys = new ArrayList<Model.Entity>();
+                for (Model.Endpoint endpoint : endpoints.values()) {
+                    final Model.Entity entity = model.getEntity(endpoint.getUuid());
+                    if (!matchesTypes(entity, query.hasTypeParams() ? query.getTypeParams() : null)) {
+                        continue;
+                    }
+                    if (query.getProtocolsCount() > 0 && !query.getProtocolsList().contains(endpoint.getProtocol())) {
+                        continue;
+                    }
+                    if (query.hasDisabled() && query.getDisabled() != endpoint.getDisabled()) {
+                        continue;
+                    }
+                    matched.add(endpoint);
+                    keys.add(entity);
+                }
+                return page(matched, keys, query.hasPagingParams() ? query.getPagingParams() : null);
+            }
+        });
+    }
+
+    @Override
+    public synchronized ListenableFuture<List<Model.Endpoint>> putEndpointDisabled(final List<ModelRequests.EndpointDisabledUpdate> updates) {
+        return transport.request(updates, new StandInTransport.Answer<List<Model.Endpoint>>() {
+            @Override
+            public List<Model.Endpoint> answer() {
+                final List<Model.Endpoint> updated = new ArrayList<Model.Endpoint>();
+                for (ModelRequests.EndpointDisabledUpdate update : updates) {
+                    final Model.Endpoint endpoint = endpoints.get(update.getEndpointUuid());
+                    if (endpoint == null) {
+                        throw new IllegalArgumentException("Endpoint not found: " + update.getEndpointUuid().getValue());
+                    }
+                    final Model.Endpoint changed = endpoint.toBuilder().setDisabled(update.getDisabled()).build();
+                    endpoints.put(changed.getUuid(), changed);
+                    updated.add(changed);
+
+                    // The front end drops or restores the connection
+                    frontEnd.setStatus(changed.getUuid(), changed.getName(),
+                            changed.getDisabled() ? FrontEnd.FrontEndConnectionStatus.Status.COMMS_DOWN : FrontEnd.FrontEndConnectionStatus.Status.COMMS_UP);
+                }
+                return updated;
+            }
+        });
+    }
+
+    @Override
+    public synchronized ListenableFuture<List<ModelRequests.EntityKeyPair>> getEntityKeys(final List<Model.ModelUUID> uuids) {
+        return transport.request(uuids, new StandInTransport.Answer<List<ModelRequests.EntityKeyPair>>() {
+            @Override
+            public List<ModelRequests.EntityKeyPair> answer() {
+                final List<ModelRequests.EntityKeyPair> found = new ArrayList<ModelRequests.EntityKeyPair>();
+                for (ModelRequests.EntityKeyPair pair : keyValues.keySet()) {
+                    if (uuids.contains(pair.getUuid())) {
+                        found.add(pair);
+                    }
+                }
+                return found;
+            }
+        });
+    }
+
+    @Override
+    public synchronized ListenableFuture<List<Model.EntityKeyValue>> getEntityKeyValues(final List<ModelRequests.EntityKeyPair> pairs) {
+        return transport.request(pairs, new StandInTransport.Answer<List<Model.EntityKeyValue>>() {
+            @Override
+            public List<Model.EntityKeyValue> answer() {
+                final List<Model.EntityKeyValue> found = new ArrayList<Model.EntityKeyValue>();
+                for (ModelRequests.EntityKeyPair pair : pairs) {
+                    final Model.EntityKeyValue keyValue = keyValues.get(pair);
+                    if (keyValue != null) {
+                        found.add(keyValue);
+                    }
+                }
+                return found;
+            }
+        });
+    }
+
+    @Override
+    public synchronized ListenableFuture<List<Model.EntityKeyValue>> putEntityKeyValues(final List<Model.EntityKeyValue> values) {
+        return transport.request(values, new StandInTransport.Answer<List<Model.EntityKeyValue>>() {
+            @Override
+            public List<Model.EntityKeyValue> answer() {
+                for (Model.EntityKeyValue value : values) {
+                    if (model.getEntity(value.getUuid()) == null) {
+                        throw new IllegalArgumentException("Entity not found: " + value.getUuid().getValue());
+                    }
+                }
+                for (Model.EntityKeyValue value : values) {
+                    final Model.EntityKeyValue previous = keyValues.put(pair(value), value);
+                    keyValueTopic.publish(Model.EntityKeyValueNotification.newBuilder()
+                            .setEventType(previous == null ? Envelope.SubscriptionEventType.ADDED : Envelope.SubscriptionEventType.MODIFIED)
+                            .setValue(value)
+                            .build());
+                }
+                return values;
+            }
+        });
+    }
+
+    @Override
+    public synchronized ListenableFuture<List<Model.EntityKeyValue>> deleteEntityKeyValues(final List<ModelRequests.EntityKeyPair> pairs) {
+        return transport.request(pairs, new StandInTransport.Answer<List<Model.EntityKeyValue>>() {
+            @Override
+            public List<Model.EntityKeyValue> answer() {
+                final List<Model.EntityKeyValue> removed = new ArrayList<Model.EntityKeyValue>();
+                for (ModelRequests.EntityKeyPair pair : pairs) {
+                    final Model.EntityKeyValue value = keyValues.remove(pair(pair.getUuid(), pair.getKey()));
+                    if (value != null) {
+                        removed.add(value);
+                        keyValueTopic.publish(Model.EntityKeyValueNotification.newBuilder()
+                                .setEventType(Envelope.SubscriptionEventType.REMOVED)
+                                .setValue(value)
+                                .build());
+                    }
+                }
+                return removed;
+            }
+        });
+    }
+
+    @Override
+    public synchronized ListenableFuture<SubscriptionResult<List<Model.Entity>, Model.EntityNotification>> subscribeToEntities(final ModelRequests.EntitySubscriptionQuery query) {
+        return transport.request(query, new StandInTransport.Answer<SubscriptionResult<List<Model.Entity>, Model.EntityNotification>>() {
+            @Override
+            public SubscriptionResult<List<Model.Entity>, Model.EntityNotification> answer() {
+                final List<Model.Entity> current = new ArrayList<Model.Entity>();
+                for (Model.Entity entity : model.getEntities()) {
+                    if (matchesKeys(entity, query.getUuidsList(), query.getNamesList())) {
+                        current.add(entity);
+                    }
+                }
+                return entityTopic.subscribe(current, new StandInTransport.Filter<Model.EntityNotification>() {
+                    @Override
+                    public boolean accept(Model.EntityNotification notification) {
+                        return matchesKeys(notification.getValue(), query.getUuidsList(), query.getNamesList());
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public synchronized ListenableFuture<SubscriptionResult<List<Model.EntityEdge>, Model.EntityEdgeNotification>> subscribeToEdges(final ModelRequests.EntityEdgeSubscriptionQuery query) {
+        return transport.request(query, new StandInTransport.Answer<SubscriptionResult<List<Model.EntityEdge>, Model.EntityEdgeNotification>>() {
+            @Override
+            public SubscriptionResult<List<Model.EntityEdge>, Model.EntityEdgeNotification> answer() {
+                final List<Model.EntityEdge> current = new ArrayList<Model.EntityEdge>();
+                for (Model.EntityEdge edge : model.getEdges()) {
+                    if (matchesFilters(edge, query.getFiltersList())) {
+                        current.add(edge);
+                    }
+                }
+                return edgeTopic.subscribe(current, new StandInTransport.Filter<Model.EntityEdgeNotification>() {
+                    @Override
+                    public boolean accept(Model.EntityEdgeNotification notification) {
+                        return matchesFilters(notification.getValue(), query.getFiltersList());
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public synchronized ListenableFuture<SubscriptionResult<List<Model.EntityKeyValue>, Model.EntityKeyValueNotification>> subscribeToEntityKeyValues(final ModelRequests.EntityKeyValueSubscriptionQuery query) {
+        return transport.request(query, new StandInTransport.Answer<SubscriptionResult<List<Model.EntityKeyValue>, Model.EntityKeyValueNotification>>() {
+            @Override
+            public SubscriptionResult<List<Model.EntityKeyValue>, Model.EntityKeyValueNotification> answer() {
+                final Set<Model.ModelUUID> uuids = new HashSet<Model.ModelUUID>(query.getUuidsList());
+                for (Model.ModelUUID endpointUuid : query.getEndpointUuidsList()) {
+                    final Set<Model.ModelUUID> sourced = sourcedBy.get(endpointUuid);
+                    if (sourced != null) {
+                        uuids.addAll(sourced);
+                    }
+                }
+                final Set<ModelRequests.EntityKeyPair> pairs = new HashSet<ModelRequests.EntityKeyPair>();
+                for (ModelRequests.EntityKeyPair pair : query.getKeyPairsList()) {
+                    pairs.add(pair(pair.getUuid(), pair.getKey()));
+                }
+
+                final StandInTransport.Filter<Model.EntityKeyValueNotification> filter = new StandInTransport.Filter<Model.EntityKeyValueNotification>() {
+                    @Override
+                    public boolean accept(Model.EntityKeyValueNotification notification) {
+                        final Model.EntityKeyValue value = notification.getValue();
+                        return uuids.contains(value.getUuid()) || pairs.contains(pair(value));
+                    }
+                };
+
+                final List<Model.EntityKeyValue> current = new ArrayList<Model.EntityKeyValue>();
+                for (Model.EntityKeyValue value : keyValues.values()) {
+                    if (uuids.contains(value.getUuid()) || pairs.contains(pair(value))) {
+                        current.add(value);
+                    }
+                }
+                return keyValueTopic.subscribe(current, filter);
+            }
+        });
+    }
+
+    private List<Model.Entity> entities(ModelRequests.EntityKeySet keys) {
+        final List<Model.Entity> found = new ArrayList<Model.Entity>();
+        for (Model.ModelUUID uuid : keys.getUuidsList()) {
+            final Model.Entity entity = model.getEntity(uuid);
+            if (entity != null) {
+                found.add(entity);
+            }
+        }
+        for (String name : keys.getNamesList()) {
+            final Model.Entity entity = model.getEntity(name);
+            if (entity != null) {
+                found.add(entity);
+            }
+        }
+        return found;
+    }
+
+    private static ModelRequests.EntityKeyPair pair(Model.EntityKeyValue value) {
+        return pair(value.getUuid(), value.getKey());
+    }
+
+    private static ModelRequests.EntityKeyPair pair(Model.ModelUUID uuid, String key) {
+        return ModelRequests.EntityKeyPair.newBuilder()
+                .setUuid(uuid)
+                .setKey(key)
+                .build();
+    }
+
+    private static boolean matchesTypes(Model.Entity entity, ModelRequests.EntityTypeParams params) {
+        if (params == null) {
+            return true;
+        }
+        if (params.getIncludeTypesCount() > 0 && Collections.disjoint(entity.getTypesList(), params.getIncludeTypesList())) {
+            return false;
+        }
+        if (!entity.getTypesList().containsAll(params.getMatchTypesList())) {
+            return false;
+        }
+        return Collections.disjoint(entity.getTypesList(), params.getFilterOutTypesList());
+    }
+
+    private static boolean matchesKeys(Model.Entity entity, List<Model.ModelUUID> uuids, List<String> names) {
+        if (uuids.isEmpty() && names.isEmpty()) {
+            return true;
+        }
+        return uuids.contains(entity.getUuid()) || names.contains(entity.getName());
+    }
+
+    private static boolean matchesFilters(Model.EntityEdge edge, List<ModelRequests.EntityEdgeFilter> filters) {
+        if (filters.isEmpty()) {
+            return true;
+        }
+        for (ModelRequests.EntityEdgeFilter filter : filters) {
+            if ((!filter.hasParentUuid() || filter.getParentUuid().equals(edge.getParent())) &&
+                    (!filter.hasChildUuid() || filter.getChildUuid().equals(edge.getChild())) &&
+                    (!filter.hasRelationship() || filter.getRelationship().equals(edge.getRelationship())) &&
+                    (!filter.hasDistance() || filter.getDistance() == edge.getDistance())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Orders items by the name or UUID of their entities and returns the page after the last key.
+     */
+    private static <T> List<T> page(List<T> items, final List<Model.Entity> keys, ModelRequests.EntityPagingParams paging) {
+        final boolean byName = paging == null || !paging.hasPageByName() || paging.getPageByName();
+        final int pageSize = paging != null && paging.hasPageSize() ? paging.getPageSize() : DEFAULT_PAGE_SIZE;
+
+        final List<Integer> order = new ArrayList<Integer>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return key(keys.get(a), byName).compareTo(key(keys.get(b), byName));
+            }
+        });
+
+        String after = null;
+        if (paging != null) {
+            if (byName && paging.hasLastName()) {
+                after = paging.getLastName();
+            } else if (!byName && paging.hasLastUuid()) {
+                after = paging.getLastUuid().getValue();
+            }
+        }
+
+        final List<T> page = new ArrayList<T>(Math.min(pageSize, items.size()));
+        for (Integer index : order) {
+            if (page.size() >= pageSize) {
+                break;
+            }
+            if (after == null || key(keys.get(index), byName).compareTo(after) > 0) {
+                page.add(items.get(index));
+            }
+        }
+        return page;
+    }
+
+    private static String key(Model.Entity entity, boolean byName) {
+        return byName ? entity.getName() : entity.getUuid().getValue();
+    }
+}
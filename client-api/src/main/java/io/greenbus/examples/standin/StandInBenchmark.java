@@ -0,0 +1,196 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.standin;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.greenbus.client.service.proto.Commands;
+import io.greenbus.client.service.proto.EventRequests;
+import io.greenbus.client.service.proto.Events;
+import io.greenbus.client.service.proto.FrontEnd;
+import io.greenbus.client.service.proto.Measurements;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.client.service.proto.ModelRequests;
+import io.greenbus.examples.reactive.ReactiveClient;
+import io.greenbus.msg.japi.SubscriptionHandler;
+import io.greenbus.msg.japi.SubscriptionResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the client workflows of the examples against StandInServices: paging through the model,
+ * reading current values, receiving measurement notifications, executing commands and acknowledging
+ * alarms. No broker is required, and the model and measurement values are the same on every run.
+ *
+ * Arguments: round-trip time in microseconds (default 1000), and number of equipment (default 100).
+ */
+public class StandInBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+    private static final long TIMEOUT_MILLIS = 60000;
+
+    public static void main(String[] args) throws Exception {
+
+        final long latencyMicros = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+        final int equipmentCount = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        final StandInServices services = new StandInServices(new StandInSettings()
+                .setEquipmentCount(equipmentCount)
+                .setLatencyMicros(latencyMicros)
+                .setJitterMicros(latencyMicros / 10)
+                .setCommandExecutionMicros(latencyMicros));
+
+        final StandInModel model = services.getModel();
+        final ReactiveClient client = new ReactiveClient(services.getModelClient(), services.getMeasurementClient(),
+                services.getEventClient(), services.getCommandClient(), services.getFrontEndClient(), 1000);
+
+        System.out.print("\n=== Stand-In Benchmark (" + model.getEntities().size() + " entities, " + latencyMicros + " us round trip) ===\n\n");
+
+        try {
+            pageModel(client);
+            currentValues(services, client);
+            measurementNotifications(services);
+            commands(services, client);
+            alarms(services, client);
+        } finally {
+            services.shutdown();
+        }
+    }
+
+    private static void pageModel(ReactiveClient client) throws Exception {
+        long start = System.nanoTime();
+        final List<Model.Entity> entities = ReactiveClient.collect(client.entities(ModelRequests.EntityQuery.newBuilder().build(), PAGE_SIZE), PAGE_SIZE)
+                .get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        report("Entity paging", entities.size(), "entities", start);
+
+        start = System.nanoTime();
+        final List<Model.Point> points = ReactiveClient.collect(client.points(ModelRequests.PointQuery.newBuilder().build(), PAGE_SIZE), PAGE_SIZE)
+                .get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        report("Point paging", points.size(), "points", start);
+    }
+
+    private static void currentValues(StandInServices services, ReactiveClient client) throws Exception {
+        final List<Model.Point> points = services.getModel().getPoints();
+        services.publishMeasurements(points.size() * 10);
+
+        final ModelRequests.EntityKeySet.Builder keys = ModelRequests.EntityKeySet.newBuilder();
+        for (Model.Point point : points) {
+            keys.addUuids(point.getUuid());
+        }
+
+        final long start = System.nanoTime();
+        final List<Measurements.PointMeasurementValue> values = client.currentValues(keys.build()).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        report("Current values", values.size(), "values", start);
+    }
+
+    private static void measurementNotifications(StandInServices services) throws Exception {
+        final List<Model.ModelUUID> uuids = new ArrayList<Model.ModelUUID>();
+        for (Model.Point point : services.getModel().getPoints()) {
+            uuids.add(point.getUuid());
+        }
+
+        final int count = 100000;
+        final CountDownLatch received = new CountDownLatch(count);
+        final SubscriptionResult<List<Measurements.PointMeasurementValue>, Measurements.MeasurementNotification> result =
+                services.getMeasurementClient().getCurrentValuesAndSubscribe(uuids).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        result.getSubscription().start(new SubscriptionHandler<Measurements.MeasurementNotification>() {
+            @Override
+            public void handle(Measurements.MeasurementNotification notification) {
+                received.countDown();
+            }
+        });
+
+        final long start = System.nanoTime();
+        services.publishMeasurements(count);
+        received.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        report("Measurement notifications", count - (int) received.getCount(), "notifications", start);
+
+        result.getSubscription().cancel();
+    }
+
+    private static void commands(StandInServices services, ReactiveClient client) throws Exception {
+        final List<Model.Command> commands = services.getModel().getCommands();
+
+        long start = System.nanoTime();
+        int succeeded = count(executeAll(client, commands), Commands.CommandStatus.SUCCESS);
+        report("Command execution, all endpoints up (" + succeeded + " succeeded)", commands.size(), "commands", start);
+
+        // Commands on a disconnected endpoint time out
+        final Model.Endpoint endpoint = services.getModel().getEndpoints().get(0);
+        services.setConnectionStatus(endpoint, FrontEnd.FrontEndConnectionStatus.Status.COMMS_DOWN);
+
+        start = System.nanoTime();
+        succeeded = count(executeAll(client, commands), Commands.CommandStatus.SUCCESS);
+        report("Command execution, " + endpoint.getName() + " down (" + succeeded + " succeeded)", commands.size(), "commands", start);
+
+        services.setConnectionStatus(endpoint, FrontEnd.FrontEndConnectionStatus.Status.COMMS_UP);
+    }
+
+    private static void alarms(StandInServices services, ReactiveClient client) throws Exception {
+        final int count = 1000;
+        services.raiseAlarms(count);
+
+        final long start = System.nanoTime();
+        final List<Events.Alarm> unacknowledged = ReactiveClient.collect(client.alarms(EventRequests.AlarmQuery.newBuilder()
+                .addAlarmStates(Events.Alarm.State.UNACK_AUDIBLE)
+                .build(), PAGE_SIZE), PAGE_SIZE).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        final List<EventRequests.AlarmStateUpdate> updates = new ArrayList<EventRequests.AlarmStateUpdate>(unacknowledged.size());
+        for (Events.Alarm alarm : unacknowledged) {
+            updates.add(EventRequests.AlarmStateUpdate.newBuilder()
+                    .setAlarmId(alarm.getId())
+                    .setAlarmState(Events.Alarm.State.ACKNOWLEDGED)
+                    .build());
+        }
+        final List<Events.Alarm> acknowledged = services.getEventClient().putAlarmState(updates).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        report("Alarm acknowledgement", acknowledged.size(), "alarms", start);
+    }
+
+    private static List<Commands.CommandResult> executeAll(ReactiveClient client, List<Model.Command> commands) throws Exception {
+        final List<ListenableFuture<Commands.CommandResult>> futures = new ArrayList<ListenableFuture<Commands.CommandResult>>(commands.size());
+        for (Model.Command command : commands) {
+            futures.add(client.execute(Commands.CommandRequest.newBuilder()
+                    .setCommandUuid(command.getUuid())
+                    .build()));
+        }
+
+        final List<Commands.CommandResult> results = new ArrayList<Commands.CommandResult>(futures.size());
+        for (ListenableFuture<Commands.CommandResult> future : futures) {
+            results.add(future.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        }
+        return results;
+    }
+
+    private static int count(List<Commands.CommandResult> results, Commands.CommandStatus status) {
+        int count = 0;
+        for (Commands.CommandResult result : results) {
+            if (result.getStatus() == status) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void report(String name, int items, String unit, long start) {
+        final double millis = (System.nanoTime() - start) / 1000000.0;
+        System.out.println(name + ": " + items + " " + unit + " in " + millis + " ms, " + (long) (items / (millis / 1000.0)) + " " + unit + "/s");
+    }
+}
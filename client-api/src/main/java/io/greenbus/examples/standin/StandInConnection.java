@@ -0,0 +1,324 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.standin;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import io.greenbus.client.service.proto.Envelope;
+import io.greenbus.japi.client.ServiceConnection;
+import io.greenbus.msg.japi.Session;
+import io.greenbus.msg.japi.Subscription;
+import io.greenbus.msg.japi.SubscriptionHandler;
+import io.greenbus.msg.japi.SubscriptionResult;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A stand-in broker connection, and the Sessions logged in on it.
+ *
+ * Sessions carry encoded requests, as the service clients of the japi send them, and are answered by
+ * the stand-in services through the StandInRouter. Each connection decodes requests, runs the service
+ * handlers and encodes responses on its own thread, as a real connection serializes its traffic, so
+ * the throughput of one connection, and how it scales with more of them, is measured rather than
+ * configured. Responses are completed after the round-trip time of the transport.
+ *
+ * Any login is accepted. Sessions keep their headers, but the headers and destination of a request do
+ * not affect its response.
+ */
+class StandInConnection implements ServiceConnection {
+
+    private static final AtomicInteger connectionCount = new AtomicInteger(0);
+
+    private final StandInRouter router;
+    private final StandInTransport transport;
+    private final ExecutorService thread;
+    private final Set<SettableFuture<?>> pending = Collections.newSetFromMap(new ConcurrentHashMap<SettableFuture<?>, Boolean>());
+
+    StandInConnection(StandInRouter router, StandInTransport transport) {
+        this.router = router;
+        this.transport = transport;
+        final String name = "standin-connection-" + connectionCount.incrementAndGet();
+        this.thread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return A new Session with no headers, after the round-trip time
+     */
+    @Override
+    public ListenableFuture<Session> login(String user, String password) {
+        return transport.request(null, new StandInTransport.Answer<Session>() {
+            @Override
+            public Session answer() {
+                return session();
+            }
+        });
+    }
+
+    /**
+     * @return A new Session with no headers
+     */
+    Session session() {
+        return new StandInSession(new HashMap<String, String>());
+    }
+
+    /**
+     * Closes the connection. Requests not yet answered, and any made later, fail with an IOException.
+     */
+    @Override
+    public void disconnect() {
+        thread.shutdownNow();
+        for (SettableFuture<?> response : pending) {
+            response.setException(new IOException("Connection closed"));
+        }
+    }
+
+    private class StandInSession implements Session {
+        private final Map<String, String> headers;
+
+        StandInSession(Map<String, String> headers) {
+            this.headers = headers;
+        }
+
+        @Override
+        public synchronized Map<String, String> getHeaders() {
+            return new HashMap<String, String>(headers);
+        }
+
+        @Override
+        public synchronized void addHeader(String key, String value) {
+            headers.put(key, value);
+        }
+
+        @Override
+        public synchronized void removeHeader(String key, String value) {
+            if (value.equals(headers.get(key))) {
+                headers.remove(key);
+            }
+        }
+
+        @Override
+        public synchronized void addHeaders(Map<String, String> added) {
+            headers.putAll(added);
+        }
+
+        @Override
+        public synchronized void clearHeaders() {
+            headers.clear();
+        }
+
+        @Override
+        public ListenableFuture<byte[]> request(String requestId, Map<String, String> headers, Optional<String> destination, byte[] payload) {
+            return StandInConnection.this.request(requestId, payload);
+        }
+
+        @Override
+        public ListenableFuture<SubscriptionResult<byte[], byte[]>> subscribe(String requestId, Map<String, String> headers, Optional<String> destination, byte[] payload) {
+            return StandInConnection.this.subscribe(requestId, payload);
+        }
+
+        @Override
+        public synchronized Session spawn() {
+            return new StandInSession(new HashMap<String, String>(headers));
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "StandInSession" + headers;
+        }
+    }
+
+    private ListenableFuture<byte[]> request(String requestId, byte[] payload) {
+        return dispatch(requestId, payload, new Reply<byte[]>() {
+            @Override
+            public byte[] encode(Object result) throws Exception {
+                return router.response(result);
+            }
+
+            @Override
+            public byte[] error(Envelope.Status status, Throwable error) {
+                return router.error(status, error);
+            }
+        });
+    }
+
+    private ListenableFuture<SubscriptionResult<byte[], byte[]>> subscribe(String requestId, byte[] payload) {
+        return dispatch(requestId, payload, new Reply<SubscriptionResult<byte[], byte[]>>() {
+            @Override
+            public SubscriptionResult<byte[], byte[]> encode(Object result) throws Exception {
+                return encoded((SubscriptionResult<?, ?>) result);
+            }
+
+            @Override
+            public SubscriptionResult<byte[], byte[]> error(Envelope.Status status, Throwable error) throws Exception {
+                throw error instanceof Exception ? (Exception) error : new IllegalStateException(error);
+            }
+        });
+    }
+
+    /**
+     * How the result of a service client, or its failure, is returned to the Session.
+     */
+    private interface Reply<T> {
+        T encode(Object result) throws Exception;
+
+        T error(Envelope.Status status, Throwable error) throws Exception;
+    }
+
+    /**
+     * Decodes a request and passes it to its service client on the connection thread, and encodes the
+     * result on the connection thread once it is complete.
+     */
+    private <T> ListenableFuture<T> dispatch(final String requestId, final byte[] payload, final Reply<T> reply) {
+        final SettableFuture<T> response = SettableFuture.create();
+        pending.add(response);
+        response.addListener(new Runnable() {
+            @Override
+            public void run() {
+                pending.remove(response);
+            }
+        }, MoreExecutors.sameThreadExecutor());
+
+        execute(response, new Runnable() {
+            @Override
+            public void run() {
+                final StandInRouter.Route route;
+                final Object argument;
+                try {
+                    route = router.route(requestId);
+                    argument = router.decode(route, payload);
+                } catch (Exception ex) {
+                    complete(response, reply, Envelope.Status.BAD_REQUEST, ex);
+                    return;
+                }
+
+                final ListenableFuture<?> result;
+                try {
+                    result = (ListenableFuture<?>) route.method.invoke(route.client, argument);
+                } catch (InvocationTargetException ex) {
+                    complete(response, reply, StandInRouter.status(ex.getCause()), ex.getCause());
+                    return;
+                } catch (Exception ex) {
+                    complete(response, reply, Envelope.Status.INTERNAL_ERROR, ex);
+                    return;
+                }
+
+                result.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        execute(response, new Runnable() {
+                            @Override
+                            public void run() {
+                                final Object value;
+                                try {
+                                    value = result.get();
+                                } catch (ExecutionException ex) {
+                                    complete(response, reply, StandInRouter.status(ex.getCause()), ex.getCause());
+                                    return;
+                                } catch (Exception ex) {
+                                    complete(response, reply, Envelope.Status.INTERNAL_ERROR, ex);
+                                    return;
+                                }
+                                try {
+                                    response.set(reply.encode(value));
+                                } catch (Exception ex) {
+                                    response.setException(ex);
+                                }
+                            }
+                        });
+                    }
+                }, MoreExecutors.sameThreadExecutor());
+            }
+        });
+        return response;
+    }
+
+    private static <T> void complete(SettableFuture<T> response, Reply<T> reply, Envelope.Status status, Throwable error) {
+        try {
+            response.set(reply.error(status, error));
+        } catch (Exception ex) {
+            response.setException(ex);
+        }
+    }
+
+    private void execute(SettableFuture<?> response, Runnable work) {
+        try {
+            thread.execute(work);
+        } catch (RejectedExecutionException ex) {
+            response.setException(new IOException("Connection closed"));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private SubscriptionResult<byte[], byte[]> encoded(SubscriptionResult<?, ?> result) throws Exception {
+        return new StandInTransport.Result<byte[], byte[]>(
+                router.response(result.getResult()),
+                new EncodedSubscription((Subscription<Object>) result.getSubscription()));
+    }
+
+    /**
+     * Passes the notifications of a subscription to the Session in encoded form.
+     */
+    private class EncodedSubscription implements Subscription<byte[]> {
+        private final Subscription<Object> subscription;
+
+        EncodedSubscription(Subscription<Object> subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void start(final SubscriptionHandler<byte[]> handler) {
+            subscription.start(new SubscriptionHandler<Object>() {
+                @Override
+                public void handle(Object notification) {
+                    try {
+                        handler.handle(router.serialize(notification));
+                    } catch (Exception ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void cancel() {
+            subscription.cancel();
+        }
+    }
+}
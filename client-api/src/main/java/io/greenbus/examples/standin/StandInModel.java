@@ -0,0 +1,184 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.standin;
+
+import io.greenbus.client.service.proto.Model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * A generated system model: a root entity owning equipment, which own points and commands, with the
+ * points and commands spread across endpoints.
+ *
+ * Every "owns" and "source" edge is present at each distance, as the model service stores them, so
+ * the root is the parent of every point and command at distance 2. UUIDs are derived from the seed,
+ * so the same settings always give the same model.
+ */
+public class StandInModel {
+
+    public static final String OWNS = "owns";
+    public static final String SOURCE = "source";
+
+    private final List<Model.Entity> entities = new ArrayList<Model.Entity>();
+    private final Map<Model.ModelUUID, Model.Entity> entitiesByUuid = new HashMap<Model.ModelUUID, Model.Entity>();
+    private final Map<String, Model.Entity> entitiesByName = new HashMap<String, Model.Entity>();
+    private final List<Model.Point> points = new ArrayList<Model.Point>();
+    private final List<Model.Command> commands = new ArrayList<Model.Command>();
+    private final List<Model.Endpoint> endpoints = new ArrayList<Model.Endpoint>();
+    private final List<Model.EntityEdge> edges = new ArrayList<Model.EntityEdge>();
+    private final Model.Entity root;
+
+    public StandInModel(StandInSettings settings) {
+        final Random random = new Random(settings.getSeed());
+
+        root = entity(random, "StandIn", "Root");
+
+        for (int i = 0; i < settings.getEndpointCount(); i++) {
+            final Model.Entity entity = entity(random, "Endpoint" + i, "Endpoint");
+            endpoints.add(Model.Endpoint.newBuilder()
+                    .setUuid(entity.getUuid())
+                    .setName(entity.getName())
+                    .addAllTypes(entity.getTypesList())
+                    .setProtocol("standin")
+                    .setDisabled(false)
+                    .build());
+        }
+
+        for (int i = 0; i < settings.getEquipmentCount(); i++) {
+            final Model.Entity equipment = entity(random, "Equipment" + i, "Equipment");
+            edge(root, equipment, OWNS, 1);
+
+            final Model.Endpoint endpoint = endpoints.isEmpty() ? null : endpoints.get(i % endpoints.size());
+
+            for (int j = 0; j < settings.getPointsPerEquipment(); j++) {
+                final Model.PointCategory category = Model.PointCategory.values()[j % Model.PointCategory.values().length];
+                final Model.Entity entity = entity(random, equipment.getName() + ".Point" + j, "Point", category.name());
+                edge(equipment, entity, OWNS, 1);
+                edge(root, entity, OWNS, 2);
+
+                final Model.Point.Builder point = Model.Point.newBuilder()
+                        .setUuid(entity.getUuid())
+                        .setName(entity.getName())
+                        .addAllTypes(entity.getTypesList())
+                        .setPointCategory(category)
+                        .setUnit(unit(category));
+                if (endpoint != null) {
+                    point.setEndpointUuid(endpoint.getUuid());
+                    edge(entitiesByUuid.get(endpoint.getUuid()), entity, SOURCE, 1);
+                }
+                points.add(point.build());
+            }
+
+            for (int j = 0; j < settings.getCommandsPerEquipment(); j++) {
+                final Model.CommandCategory category = j % 2 == 0 ? Model.CommandCategory.CONTROL : Model.CommandCategory.SETPOINT_DOUBLE;
+                final Model.Entity entity = entity(random, equipment.getName() + ".Command" + j, "Command");
+                edge(equipment, entity, OWNS, 1);
+                edge(root, entity, OWNS, 2);
+
+                final Model.Command.Builder command = Model.Command.newBuilder()
+                        .setUuid(entity.getUuid())
+                        .setName(entity.getName())
+                        .addAllTypes(entity.getTypesList())
+                        .setDisplayName(entity.getName())
+                        .setCommandCategory(category);
+                if (endpoint != null) {
+                    command.setEndpointUuid(endpoint.getUuid());
+                    edge(entitiesByUuid.get(endpoint.getUuid()), entity, SOURCE, 1);
+                }
+                commands.add(command.build());
+            }
+        }
+    }
+
+    public Model.Entity getRoot() {
+        return root;
+    }
+
+    public List<Model.Entity> getEntities() {
+        return Collections.unmodifiableList(entities);
+    }
+
+    public Model.Entity getEntity(Model.ModelUUID uuid) {
+        return entitiesByUuid.get(uuid);
+    }
+
+    public Model.Entity getEntity(String name) {
+        return entitiesByName.get(name);
+    }
+
+    public List<Model.Point> getPoints() {
+        return Collections.unmodifiableList(points);
+    }
+
+    public List<Model.Command> getCommands() {
+        return Collections.unmodifiableList(commands);
+    }
+
+    /**
+     * @return Endpoints as generated, all enabled
+     */
+    public List<Model.Endpoint> getEndpoints() {
+        return Collections.unmodifiableList(endpoints);
+    }
+
+    public List<Model.EntityEdge> getEdges() {
+        return Collections.unmodifiableList(edges);
+    }
+
+    private Model.Entity entity(Random random, String name, String... types) {
+        final Model.Entity.Builder builder = Model.Entity.newBuilder()
+                .setUuid(Model.ModelUUID.newBuilder().setValue(new UUID(random.nextLong(), random.nextLong()).toString()))
+                .setName(name);
+        for (String type : types) {
+            builder.addTypes(type);
+        }
+        final Model.Entity entity = builder.build();
+        entities.add(entity);
+        entitiesByUuid.put(entity.getUuid(), entity);
+        entitiesByName.put(entity.getName(), entity);
+        return entity;
+    }
+
+    private void edge(Model.Entity parent, Model.Entity child, String relationship, int distance) {
+        edges.add(Model.EntityEdge.newBuilder()
+                .setId(Model.ModelID.newBuilder().setValue(Integer.toString(edges.size() + 1)))
+                .setParent(parent.getUuid())
+                .setChild(child.getUuid())
+                .setRelationship(relationship)
+                .setDistance(distance)
+                .build());
+    }
+
+    private static String unit(Model.PointCategory category) {
+        switch (category) {
+            case ANALOG:
+                return "kW";
+            case COUNTER:
+                return "count";
+            default:
+                return "status";
+        }
+    }
+}
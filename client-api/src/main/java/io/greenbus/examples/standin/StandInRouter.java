@@ -0,0 +1,202 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.standin;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnknownFieldSet;
+import io.greenbus.client.service.proto.Envelope;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps the requests a Session sends to the methods of the stand-in service clients, and encodes the
+ * envelopes of requests and responses.
+ *
+ * A request id names the service and method, e.g. "io.greenbus.client.service.ModelService.entityQuery";
+ * the last two parts select the client and its method. The payload of the ServiceRequest envelope is a
+ * request message whose first field is the parameter of the method, and the payload of the ServiceResponse
+ * is a response message whose first field holds the result, repeated for a list. Messages are converted
+ * with their parseFrom and toByteArray methods, so any generated message type can be carried.
+ *
+ * Routes are built when a client is added. A request id names a method but not its parameter types, so
+ * the route is the overload that takes only the request; overloads with further parameters, such as
+ * headers, are the same request. A client with two such overloads of one name cannot be routed and is
+ * rejected.
+ */
+class StandInRouter {
+
+    // The request and response messages in envelope payloads wrap their parameter or result in field 1
+    private static final int WRAPPED = 1;
+
+    private final Map<String, Route> routes = new ConcurrentHashMap<String, Route>();
+    private final Map<Class<?>, Method> parsers = new ConcurrentHashMap<Class<?>, Method>();
+    private final Map<Class<?>, Method> serializers = new ConcurrentHashMap<Class<?>, Method>();
+
+    /**
+     * @param service Name of the service in request ids, e.g. "ModelService"
+     * @param clientInterface Client interface of the service
+     * @param client Stand-in implementation of the client interface
+     * @throws IllegalArgumentException If a method of the client interface has two overloads that take only the request
+     */
+    <T> void add(String service, Class<T> clientInterface, T client) {
+        final Map<String, Route> added = new HashMap<String, Route>();
+        for (Method method : clientInterface.getMethods()) {
+            if (method.getParameterTypes().length != 1) {
+                continue;
+            }
+            final String requestId = service + "." + method.getName();
+            if (added.containsKey(requestId)) {
+                throw new IllegalArgumentException("Stand-in cannot route overloaded " + clientInterface.getName() + "." + method.getName());
+            }
+            final boolean list = method.getParameterTypes()[0] == List.class;
+            final Class<?> messageType = list ?
+                    (Class<?>) ((ParameterizedType) method.getGenericParameterTypes()[0]).getActualTypeArguments()[0] :
+                    method.getParameterTypes()[0];
+            added.put(requestId, new Route(client, method, messageType, list));
+        }
+        routes.putAll(added);
+    }
+
+    /**
+     * @return Route of the request id
+     * @throws IllegalArgumentException If no stand-in service has the method
+     */
+    Route route(String requestId) {
+        final int methodStart = requestId.lastIndexOf('.');
+        final int serviceStart = methodStart < 0 ? -1 : requestId.lastIndexOf('.', methodStart - 1);
+        final Route route = routes.get(requestId.substring(serviceStart + 1));
+        if (route == null) {
+            throw new IllegalArgumentException("Stand-in does not support " + requestId);
+        }
+        return route;
+    }
+
+    /**
+     * Decodes the parameter of a request from its ServiceRequest envelope.
+     */
+    Object decode(Route route, byte[] envelope) throws Exception {
+        final List<ByteString> wrapped = wrapped(Envelope.ServiceRequest.parseFrom(envelope).getPayload());
+        if (!route.list) {
+            return parse(route.messageType, wrapped.isEmpty() ? ByteString.EMPTY : wrapped.get(wrapped.size() - 1));
+        }
+        final List<Object> values = new ArrayList<Object>(wrapped.size());
+        for (ByteString bytes : wrapped) {
+            values.add(parse(route.messageType, bytes));
+        }
+        return values;
+    }
+
+    /**
+     * Encodes a result, a single message or a list of them, in a ServiceResponse envelope.
+     */
+    byte[] response(Object result) throws Exception {
+        final UnknownFieldSet.Field.Builder field = UnknownFieldSet.Field.newBuilder();
+        if (result instanceof List) {
+            for (Object value : (List<?>) result) {
+                field.addLengthDelimited(ByteString.copyFrom(serialize(value)));
+            }
+        } else if (result != null) {
+            field.addLengthDelimited(ByteString.copyFrom(serialize(result)));
+        }
+        final UnknownFieldSet payload = UnknownFieldSet.newBuilder()
+                .addField(WRAPPED, field.build())
+                .build();
+
+        return Envelope.ServiceResponse.newBuilder()
+                .setStatus(Envelope.Status.OK)
+                .setPayload(payload.toByteString())
+                .build()
+                .toByteArray();
+    }
+
+    /**
+     * @return ServiceResponse envelope reporting a failed request
+     */
+    byte[] error(Envelope.Status status, Throwable error) {
+        return Envelope.ServiceResponse.newBuilder()
+                .setStatus(status)
+                .setErrorMessage(String.valueOf(error.getMessage()))
+                .build()
+                .toByteArray();
+    }
+
+    /**
+     * @return Status of the response to a request whose handler failed
+     */
+    static Envelope.Status status(Throwable error) {
+        return error instanceof IllegalArgumentException || error instanceof IllegalStateException ?
+                Envelope.Status.BAD_REQUEST : Envelope.Status.INTERNAL_ERROR;
+    }
+
+    /**
+     * @return Encoded form of a notification or result message
+     */
+    byte[] serialize(Object message) throws Exception {
+        Method method = serializers.get(message.getClass());
+        if (method == null) {
+            method = message.getClass().getMethod("toByteArray");
+            serializers.put(message.getClass(), method);
+        }
+        return (byte[]) method.invoke(message);
+    }
+
+    private Object parse(Class<?> type, ByteString bytes) throws Exception {
+        Method method = parsers.get(type);
+        if (method == null) {
+            method = type.getMethod("parseFrom", byte[].class);
+            parsers.put(type, method);
+        }
+        return method.invoke(null, (Object) bytes.toByteArray());
+    }
+
+    /**
+     * @return Every occurrence of the wrapped field of a request message
+     */
+    private static List<ByteString> wrapped(ByteString message) throws Exception {
+        final UnknownFieldSet fields = UnknownFieldSet.parseFrom(message);
+        if (!fields.hasField(WRAPPED)) {
+            return Collections.emptyList();
+        }
+        return fields.getField(WRAPPED).getLengthDelimitedList();
+    }
+
+    /**
+     * A client method and how to decode its parameter.
+     */
+    static class Route {
+        final Object client;
+        final Method method;
+        final Class<?> messageType;
+        final boolean list;
+
+        Route(Object client, Method method, Class<?> messageType, boolean list) {
+            this.client = client;
+            this.method = method;
+            this.messageType = messageType;
+            this.list = list;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.standin;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.greenbus.client.service.proto.Commands;
+import io.greenbus.client.service.proto.EventRequests;
+import io.greenbus.client.service.proto.Events;
+import io.greenbus.client.service.proto.FrontEnd;
+import io.greenbus.client.service.proto.Measurements;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.japi.client.ServiceConnection;
+import io.greenbus.japi.client.service.CommandService;
+import io.greenbus.japi.client.service.EventService;
+import io.greenbus.japi.client.service.FrontEndService;
+import io.greenbus.japi.client.service.MeasurementService;
+import io.greenbus.japi.client.service.ModelService;
+import io.greenbus.msg.japi.Session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * In-process stand-in for the GreenBus services, for running client code and benchmarks on one
+ * machine without a broker or the service stack.
+ *
+ * The model is generated from StandInSettings, and the services hold their state in memory. Every
+ * request goes through a loopback transport that adds the configured round-trip time, so latency-bound
+ * code behaves much as it does against a real deployment. Measurements, alarms and connection status
+ * changes are driven by the methods of this class rather than by front ends.
+ *
+ * Code written against the Client interfaces can use the stand-in clients directly. Code that takes a
+ * Session can be given one from session(), or log in through connection(): the service clients of the
+ * japi send their encoded requests through it, and the stand-in decodes them, answers them and encodes
+ * the responses, on a thread of its own for each connection.
+ */
+public class StandInServices {
+
+    /**
+     * Executes the command requests for an endpoint, as its front end would.
+     */
+    public interface CommandExecutor {
+        ListenableFuture<Commands.CommandResult> issue(String commandName, Commands.CommandRequest request);
+    }
+
+    private final StandInSettings settings;
+    private final StandInTransport transport;
+    private final StandInModel model;
+    private final FrontEndHandler frontEndHandler;
+    private final MeasurementHandler measurementHandler;
+    private final EventHandler eventHandler;
+    private final CommandHandler commandHandler;
+
+    private final ModelService.Client modelClient;
+    private final MeasurementService.Client measurementClient;
+    private final EventService.Client eventClient;
+    private final CommandService.Client commandClient;
+    private final FrontEndService.Client frontEndClient;
+    private final StandInRouter router = new StandInRouter();
+
+    private final ThreadRandom random;
+    private final double[] analogValues;
+    private final long[] counterValues;
+    private final boolean[] statusValues;
+    private long lastTime = 0;
+
+    public StandInServices(StandInSettings settings) {
+        this.settings = settings;
+        this.transport = new StandInTransport(settings);
+        this.model = new StandInModel(settings);
+
+        this.frontEndHandler = new FrontEndHandler(model, settings.getClock(), transport);
+        this.measurementHandler = new MeasurementHandler(model, settings.getHistoryDepth(), transport);
+        this.eventHandler = new EventHandler(settings, transport);
+
+        this.commandHandler = new CommandHandler(model, frontEndHandler, transport, settings);
+
+        this.modelClient = new ModelHandler(model, frontEndHandler, transport);
+        this.measurementClient = measurementHandler;
+        this.eventClient = eventHandler;
+        this.commandClient = commandHandler;
+        this.frontEndClient = frontEndHandler;
+
+        router.add("ModelService", ModelService.Client.class, modelClient);
+        router.add("MeasurementService", MeasurementService.Client.class, measurementClient);
+        router.add("EventService", EventService.Client.class, eventClient);
+        router.add("CommandService", CommandService.Client.class, commandClient);
+        router.add("FrontEndService", FrontEndService.Client.class, frontEndClient);
+
+        final int pointCount = model.getPoints().size();
+        this.random = new ThreadRandom(settings.getSeed(), "measurements");
+        this.analogValues = new double[pointCount];
+        this.counterValues = new long[pointCount];
+        this.statusValues = new boolean[pointCount];
+    }
+
+    public StandInModel getModel() {
+        return model;
+    }
+
+    public ModelService.Client getModelClient() {
+        return modelClient;
+    }
+
+    public MeasurementService.Client getMeasurementClient() {
+        return measurementClient;
+    }
+
+    public EventService.Client getEventClient() {
+        return eventClient;
+    }
+
+    public CommandService.Client getCommandClient() {
+        return commandClient;
+    }
+
+    public FrontEndService.Client getFrontEndClient() {
+        return frontEndClient;
+    }
+
+    /**
+     * @return A connection that accepts any login, after the configured round-trip time. Its Sessions
+     * are served by a thread of their own, until the connection is disconnected.
+     */
+    public ServiceConnection connection() {
+        return new StandInConnection(router, transport);
+    }
+
+    /**
+     * @return A logged-in Session on a connection of its own
+     */
+    public Session session() {
+        return new StandInConnection(router, transport).session();
+    }
+
+    /**
+     * Publishes a new value for a number of points, chosen at random. Analog points follow a random walk,
+     * counters increase and status points toggle. The sequence is determined by the seed and the
+     * calling thread.
+     *
+     * @param count Number of measurements
+     * @return Measurements published
+     */
+    public synchronized List<Measurements.PointMeasurementValue> publishMeasurements(int count) {
+        final List<Model.Point> points = model.getPoints();
+        final List<Measurements.PointMeasurementValue> values = new ArrayList<Measurements.PointMeasurementValue>(count);
+
+        final Random random = this.random.get();
+        for (int i = 0; i < count; i++) {
+            final int index = random.nextInt(points.size());
+            final Model.Point point = points.get(index);
+
+            // Strictly increasing, so history queries by time range are unambiguous
+            lastTime = Math.max(lastTime + 1, settings.getClock().currentTimeMillis());
+
+            final Measurements.Measurement.Builder measurement = Measurements.Measurement.newBuilder()
+                    .setUnit(point.getUnit())
+                    .setTime(lastTime);
+            switch (point.getPointCategory()) {
+                case ANALOG:
+                    analogValues[index] += random.nextGaussian();
+                    measurement.setType(Measurements.Measurement.Type.DOUBLE).setDoubleVal(analogValues[index]);
+                    break;
+                case COUNTER:
+                    counterValues[index] += 1 + random.nextInt(10);
+                    measurement.setType(Measurements.Measurement.Type.INT).setIntVal(counterValues[index]);
+                    break;
+                default:
+                    statusValues[index] = !statusValues[index];
+                    measurement.setType(Measurements.Measurement.Type.BOOL).setBoolVal(statusValues[index]);
+                    break;
+            }
+
+            values.add(Measurements.PointMeasurementValue.newBuilder()
+                    .setPointUuid(point.getUuid())
+                    .setValue(measurement.build())
+                    .build());
+        }
+
+        measurementHandler.publish(values);
+        return values;
+    }
+
+    /**
+     * Publishes the given measurements, e.g. to replay recorded data.
+     */
+    public void publishMeasurements(List<Measurements.PointMeasurementValue> values) {
+        measurementHandler.publish(values);
+    }
+
+    /**
+     * Posts events of the first alarm event type, raising an alarm for each.
+     *
+     * @param count Number of alarms
+     * @return Events posted
+     */
+    public List<Events.Event> raiseAlarms(int count) {
+        final String eventType = settings.getAlarmEventTypes().iterator().next();
+        final List<Model.Point> points = model.getPoints();
+
+        final List<EventRequests.EventTemplate> templates = new ArrayList<EventRequests.EventTemplate>(count);
+        for (int i = 0; i < count; i++) {
+            final Model.Point point = points.get(i % points.size());
+            templates.add(EventRequests.EventTemplate.newBuilder()
+                    .setEventType(eventType)
+                    .setEntityUuid(point.getUuid())
+                    .addArgs(Events.Attribute.newBuilder()
+                            .setName("point")
+                            .setValueString(point.getName()))
+                    .build());
+        }
+        return eventHandler.post(templates);
+    }
+
+    /**
+     * Changes the connection status of an endpoint, as its front end would. Commands on an endpoint
+     * that is not COMMS_UP time out.
+     */
+    public void setConnectionStatus(Model.Endpoint endpoint, FrontEnd.FrontEndConnectionStatus.Status status) {
+        frontEndHandler.setStatus(endpoint.getUuid(), endpoint.getName(), status);
+    }
+
+    /**
+     * Passes the command requests for an endpoint to an executor, such as the command acceptor of a
+     * front-end protocol, while the endpoint is COMMS_UP.
+     *
+     * @param executor Executor for the endpoint's commands, or null to go back to immediate success
+     */
+    public void setCommandExecutor(Model.Endpoint endpoint, CommandExecutor executor) {
+        commandHandler.setExecutor(endpoint.getUuid(), executor);
+    }
+
+    /**
+     * Changes the fraction of requests that fail, e.g. to inject failures once a benchmark is set up.
+     */
+    public void setFailureRate(double failureRate) {
+        transport.setFailureRate(failureRate);
+    }
+
+    /**
+     * @return Number of requests made to the stand-in services
+     */
+    public long getRequestCount() {
+        return transport.getRequestCount();
+    }
+
+    /**
+     * @return Number of command locks currently held, including expired ones not yet removed
+     */
+    public int getCommandLockCount() {
+        return commandHandler.getLockCount();
+    }
+
+    /**
+     * Stops the transport threads. Outstanding requests are not completed.
+     */
+    public void shutdown() {
+        transport.shutdown();
+    }
+}
@@ -0,0 +1,261 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.standin;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Size of the generated model and behavior of the loopback transport for StandInServices.
+ *
+ * The defaults give a small model with no injected latency. Setters return this object so that
+ * settings can be chained.
+ */
+public class StandInSettings {
+
+    /**
+     * Source of the time the services stamp on measurements, events, statuses and lock expiry.
+     */
+    public interface Clock {
+        long currentTimeMillis();
+    }
+
+    /**
+     * The system clock, used by default.
+     */
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private int equipmentCount = 10;
+    private int pointsPerEquipment = 10;
+    private int commandsPerEquipment = 2;
+    private int endpointCount = 2;
+    private int historyDepth = 1000;
+
+    private long latencyMicros = 0;
+    private long jitterMicros = 0;
+    private long commandExecutionMicros = 0;
+    private long itemMicros = 0;
+    private long microsPerMegabyte = 0;
+    private double failureRate = 0;
+    private int transportThreads = 2;
+    private long seed = 1;
+    private Clock clock = SYSTEM_CLOCK;
+
+    private String agentName = "system";
+    private Set<String> alarmEventTypes = new HashSet<String>(Arrays.asList("Scada.OutOfNominal"));
+
+    public int getEquipmentCount() {
+        return equipmentCount;
+    }
+
+    /**
+     * @param equipmentCount Number of equipment entities under the root
+     */
+    public StandInSettings setEquipmentCount(int equipmentCount) {
+        this.equipmentCount = equipmentCount;
+        return this;
+    }
+
+    public int getPointsPerEquipment() {
+        return pointsPerEquipment;
+    }
+
+    /**
+     * @param pointsPerEquipment Number of points owned by each equipment entity
+     */
+    public StandInSettings setPointsPerEquipment(int pointsPerEquipment) {
+        this.pointsPerEquipment = pointsPerEquipment;
+        return this;
+    }
+
+    public int getCommandsPerEquipment() {
+        return commandsPerEquipment;
+    }
+
+    /**
+     * @param commandsPerEquipment Number of commands owned by each equipment entity, alternating controls and setpoints
+     */
+    public StandInSettings setCommandsPerEquipment(int commandsPerEquipment) {
+        this.commandsPerEquipment = commandsPerEquipment;
+        return this;
+    }
+
+    public int getEndpointCount() {
+        return endpointCount;
+    }
+
+    /**
+     * @param endpointCount Number of endpoints; points and commands are spread across them
+     */
+    public StandInSettings setEndpointCount(int endpointCount) {
+        this.endpointCount = endpointCount;
+        return this;
+    }
+
+    public int getHistoryDepth() {
+        return historyDepth;
+    }
+
+    /**
+     * @param historyDepth Number of measurements kept in the history of each point
+     */
+    public StandInSettings setHistoryDepth(int historyDepth) {
+        this.historyDepth = historyDepth;
+        return this;
+    }
+
+    public long getLatencyMicros() {
+        return latencyMicros;
+    }
+
+    /**
+     * @param latencyMicros Round-trip time added to every request and notification
+     */
+    public StandInSettings setLatencyMicros(long latencyMicros) {
+        this.latencyMicros = latencyMicros;
+        return this;
+    }
+
+    public long getJitterMicros() {
+        return jitterMicros;
+    }
+
+    /**
+     * @param jitterMicros Upper bound of a random amount added to the round-trip time of each request
+     */
+    public StandInSettings setJitterMicros(long jitterMicros) {
+        this.jitterMicros = jitterMicros;
+        return this;
+    }
+
+    public long getCommandExecutionMicros() {
+        return commandExecutionMicros;
+    }
+
+    /**
+     * @param commandExecutionMicros Time a front end takes to execute a command request, on top of the round trip
+     */
+    public StandInSettings setCommandExecutionMicros(long commandExecutionMicros) {
+        this.commandExecutionMicros = commandExecutionMicros;
+        return this;
+    }
+
+    public long getItemMicros() {
+        return itemMicros;
+    }
+
+    /**
+     * @param itemMicros Time added to a request for each element of its list parameter, e.g. per alarm acknowledged
+     */
+    public StandInSettings setItemMicros(long itemMicros) {
+        this.itemMicros = itemMicros;
+        return this;
+    }
+
+    public long getMicrosPerMegabyte() {
+        return microsPerMegabyte;
+    }
+
+    /**
+     * @param microsPerMegabyte Transfer time added to a request for each megabyte of its encoded parameter and response
+     */
+    public StandInSettings setMicrosPerMegabyte(long microsPerMegabyte) {
+        this.microsPerMegabyte = microsPerMegabyte;
+        return this;
+    }
+
+    public double getFailureRate() {
+        return failureRate;
+    }
+
+    /**
+     * @param failureRate Fraction of requests that fail, without being handled, after the round-trip time
+     */
+    public StandInSettings setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+        return this;
+    }
+
+    public int getTransportThreads() {
+        return transportThreads;
+    }
+
+    /**
+     * @param transportThreads Number of threads completing responses, as the connection threads of a real client would
+     */
+    public StandInSettings setTransportThreads(int transportThreads) {
+        this.transportThreads = transportThreads;
+        return this;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @param seed Seed for the generated model, and with the thread name for measurement values and jitter
+     */
+    public StandInSettings setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * @param clock Source of the current time, e.g. a ManualClock to repeat time-dependent behavior exactly
+     */
+    public StandInSettings setClock(Clock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    public String getAgentName() {
+        return agentName;
+    }
+
+    /**
+     * @param agentName Agent recorded on posted events and command locks
+     */
+    public StandInSettings setAgentName(String agentName) {
+        this.agentName = agentName;
+        return this;
+    }
+
+    public Set<String> getAlarmEventTypes() {
+        return Collections.unmodifiableSet(alarmEventTypes);
+    }
+
+    /**
+     * @param alarmEventTypes Event types that raise an alarm when posted
+     */
+    public StandInSettings setAlarmEventTypes(Set<String> alarmEventTypes) {
+        this.alarmEventTypes = new HashSet<String>(alarmEventTypes);
+        return this;
+    }
+}
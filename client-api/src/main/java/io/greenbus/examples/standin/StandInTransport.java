@@ -0,0 +1,371 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.standin;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import io.greenbus.msg.japi.Subscription;
+import io.greenbus.msg.japi.SubscriptionHandler;
+import io.greenbus.msg.japi.SubscriptionResult;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loopback transport between the stand-in service handlers and their callers.
+ *
+ * Each handler implements the client interface of its service, and answers a request through
+ * request(): the answer is computed on the caller's thread and the returned future completes after
+ * the configured round-trip time on one of the transport threads, as the connection threads of a real
+ * client would. An answer that throws fails the future rather than the call.
+ *
+ * Requests can be given a cost per element of their list parameter and per megabyte transferred, and
+ * a fraction of them can be made to fail, as set in StandInSettings.
+ *
+ * Subscription notifications are delivered in order, on a single thread, after the base round-trip
+ * time. Notifications published before a subscription is started are held until it is.
+ */
+public class StandInTransport {
+
+    /**
+     * Selects the notifications a subscription receives.
+     */
+    public interface Filter<A> {
+        boolean accept(A notification);
+    }
+
+    /**
+     * Computes the response to a request, on the caller's thread.
+     */
+    interface Answer<T> {
+        T answer();
+    }
+
+    private final long latencyMicros;
+    private final long jitterMicros;
+    private final long itemMicros;
+    private final long microsPerMegabyte;
+    private volatile double failureRate;
+    private final AtomicLong requestCount = new AtomicLong(0);
+    private final Map<Class<?>, Method> sizes = new ConcurrentHashMap<Class<?>, Method>();
+    private final ThreadRandom random;
+    private final ScheduledExecutorService responses;
+    private final ScheduledExecutorService notifications;
+
+    public StandInTransport(StandInSettings settings) {
+        this.latencyMicros = settings.getLatencyMicros();
+        this.jitterMicros = settings.getJitterMicros();
+        this.itemMicros = settings.getItemMicros();
+        this.microsPerMegabyte = settings.getMicrosPerMegabyte();
+        this.failureRate = settings.getFailureRate();
+        this.random = new ThreadRandom(settings.getSeed(), "jitter");
+        this.responses = Executors.newScheduledThreadPool(settings.getTransportThreads(), threadFactory("standin-response-"));
+        this.notifications = Executors.newSingleThreadScheduledExecutor(threadFactory("standin-notification-"));
+    }
+
+    /**
+     * Answers a request after the round-trip time and the cost of the request, or fails it if it is
+     * chosen to fail.
+     *
+     * @param parameter Parameter of the request, a message or a list of them, or null
+     * @param answer Computes the response
+     * @return Response to the request
+     */
+    <T> ListenableFuture<T> request(Object parameter, Answer<T> answer) {
+        requestCount.incrementAndGet();
+        if (failureRate > 0 && random.get().nextDouble() < failureRate) {
+            return respond(null, new IllegalStateException("Simulated service failure"), 0);
+        }
+
+        final T response;
+        try {
+            response = answer.answer();
+        } catch (RuntimeException ex) {
+            return respond(null, ex, cost(parameter, null));
+        }
+        return respond(response, null, cost(parameter, response));
+    }
+
+    /**
+     * Answers a request whose response completes later, e.g. when a front end executes it.
+     */
+    <T> ListenableFuture<T> requestLater(Object parameter, Answer<ListenableFuture<T>> answer) {
+        return Futures.dereference(request(parameter, answer));
+    }
+
+    /**
+     * Completes a future after an additional delay, for handlers whose response takes longer than the round trip.
+     */
+    public <T> ListenableFuture<T> later(final T response, long delayMicros) {
+        if (delayMicros <= 0) {
+            return Futures.immediateFuture(response);
+        }
+        final SettableFuture<T> future = SettableFuture.create();
+        responses.schedule(new Runnable() {
+            @Override
+            public void run() {
+                future.set(response);
+            }
+        }, delayMicros, TimeUnit.MICROSECONDS);
+        return future;
+    }
+
+    /**
+     * @return A new topic that subscriptions can be made to
+     */
+    public <A> Topic<A> topic() {
+        return new Topic<A>();
+    }
+
+    /**
+     * @param failureRate Fraction of requests that fail from now on
+     */
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * @return Number of requests made to the stand-in services
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public void shutdown() {
+        responses.shutdownNow();
+        notifications.shutdownNow();
+    }
+
+    /**
+     * Notifications of one kind, published by a handler to every matching subscription.
+     */
+    public class Topic<A> {
+        private final List<StandInSubscription<A>> subscriptions = new CopyOnWriteArrayList<StandInSubscription<A>>();
+
+        private Topic() {
+        }
+
+        /**
+         * @param result Initial result of the subscription
+         * @param filter Selects the notifications the subscription receives
+         * @return Subscription result, to be the response of a handler
+         */
+        public <R> SubscriptionResult<R, A> subscribe(R result, Filter<A> filter) {
+            final StandInSubscription<A> subscription = new StandInSubscription<A>(this, filter);
+            subscriptions.add(subscription);
+            return new Result<R, A>(result, subscription);
+        }
+
+        public void publish(A notification) {
+            for (StandInSubscription<A> subscription : subscriptions) {
+                if (subscription.filter.accept(notification)) {
+                    subscription.deliver(notification);
+                }
+            }
+        }
+
+        public boolean hasSubscriptions() {
+            return !subscriptions.isEmpty();
+        }
+    }
+
+    /**
+     * Subscription to a topic.
+     */
+    class StandInSubscription<A> implements Subscription<A> {
+        private final Topic<A> topic;
+        private final Filter<A> filter;
+        private final List<A> pending = new ArrayList<A>();
+        private SubscriptionHandler<A> handler = null;
+        private boolean cancelled = false;
+
+        StandInSubscription(Topic<A> topic, Filter<A> filter) {
+            this.topic = topic;
+            this.filter = filter;
+        }
+
+        @Override
+        public void start(final SubscriptionHandler<A> handler) {
+            notifications.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final List<A> held;
+                    synchronized (StandInSubscription.this) {
+                        if (cancelled || StandInSubscription.this.handler != null) {
+                            return;
+                        }
+                        StandInSubscription.this.handler = handler;
+                        held = new ArrayList<A>(pending);
+                        pending.clear();
+                    }
+                    for (A notification : held) {
+                        handler.handle(notification);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                pending.clear();
+            }
+            topic.subscriptions.remove(this);
+        }
+
+        void deliver(final A notification) {
+            notifications.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    final SubscriptionHandler<A> current;
+                    synchronized (StandInSubscription.this) {
+                        if (cancelled) {
+                            return;
+                        }
+                        if (handler == null) {
+                            pending.add(notification);
+                            return;
+                        }
+                        current = handler;
+                    }
+                    current.handle(notification);
+                }
+            }, latencyMicros, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    /**
+     * Initial result of a subscription, and the subscription.
+     */
+    static class Result<R, A> implements SubscriptionResult<R, A> {
+        private final R result;
+        private final Subscription<A> subscription;
+
+        Result(R result, Subscription<A> subscription) {
+            this.result = result;
+            this.subscription = subscription;
+        }
+
+        @Override
+        public R getResult() {
+            return result;
+        }
+
+        @Override
+        public Subscription<A> getSubscription() {
+            return subscription;
+        }
+    }
+
+    private <T> ListenableFuture<T> respond(final T response, final Throwable failure, long costMicros) {
+        final SettableFuture<T> future = SettableFuture.create();
+
+        final Runnable complete = new Runnable() {
+            @Override
+            public void run() {
+                if (failure != null) {
+                    future.setException(failure);
+                } else {
+                    future.set(response);
+                }
+            }
+        };
+
+        final long delay = roundTripMicros() + costMicros;
+        if (delay <= 0) {
+            complete.run();
+        } else {
+            responses.schedule(complete, delay, TimeUnit.MICROSECONDS);
+        }
+        return future;
+    }
+
+    /**
+     * @return Time to handle the elements of a request and transfer it and its response
+     */
+    private long cost(Object parameter, Object response) {
+        long micros = 0;
+        if (itemMicros > 0 && parameter instanceof List) {
+            micros += itemMicros * ((List<?>) parameter).size();
+        }
+        if (microsPerMegabyte > 0) {
+            micros += (size(parameter) + size(response)) * microsPerMegabyte / (1024 * 1024);
+        }
+        return micros;
+    }
+
+    /**
+     * @return Encoded size of a message, or of the messages in a list
+     */
+    private long size(Object value) {
+        if (value instanceof List) {
+            long bytes = 0;
+            for (Object element : (List<?>) value) {
+                bytes += size(element);
+            }
+            return bytes;
+        }
+        if (value == null || value instanceof ListenableFuture) {
+            return 0;
+        }
+        try {
+            Method method = sizes.get(value.getClass());
+            if (method == null) {
+                method = value.getClass().getMethod("getSerializedSize");
+                sizes.put(value.getClass(), method);
+            }
+            return (Integer) method.invoke(value);
+        } catch (NoSuchMethodException ex) {
+            return 0;
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private long roundTripMicros() {
+        if (jitterMicros <= 0) {
+            return latencyMicros;
+        }
+        return latencyMicros + (long) (random.get().nextDouble() * jitterMicros);
+    }
+
+    private static ThreadFactory threadFactory(final String prefix) {
+        final AtomicInteger count = new AtomicInteger(0);
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
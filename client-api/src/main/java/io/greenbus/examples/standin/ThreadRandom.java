@@ -0,0 +1,41 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.standin;
+
+import java.util.Random;
+
+/**
+ * One random number generator per thread, so threads of the stand-in do not contend for a shared one.
+ *
+ * Each generator is seeded from the settings seed, the name of the stream and the name of the thread,
+ * so a run with the same seed and thread names repeats its sequences.
+ */
+class ThreadRandom extends ThreadLocal<Random> {
+
+    private final long seed;
+
+    ThreadRandom(long seed, String stream) {
+        this.seed = seed * 31 + stream.hashCode();
+    }
+
+    @Override
+    protected Random initialValue() {
+        return new Random(seed ^ (Thread.currentThread().getName().hashCode() * 0x9E3779B97F4A7C15L));
+    }
+}
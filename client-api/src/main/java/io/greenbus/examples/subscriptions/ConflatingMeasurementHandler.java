@@ -0,0 +1,207 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.subscriptions;
+
+import io.greenbus.client.service.proto.Measurements;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.msg.japi.SubscriptionHandler;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Conflates measurement notifications per point for a slow downstream handler.
+ *
+ * The messaging thread only records the newest notification for each point; a delivery thread
+ * hands pending points to the downstream handler in the order they first became pending. If a
+ * point updates several times before the handler gets to it, only its latest value is delivered,
+ * so a consumer that falls behind catches up to current values instead of working through a stale
+ * backlog.
+ *
+ * Memory is one slot per point with an undelivered value, regardless of how large a burst is; a slot
+ * is released as soon as its value is handed to the delivery thread.
+ */
+public class ConflatingMeasurementHandler implements SubscriptionHandler<Measurements.MeasurementNotification> {
+
+    private final SubscriptionHandler<Measurements.MeasurementNotification> downstream;
+    private final NotificationErrorHandler errorHandler;
+
+    private final Map<Model.ModelUUID, Slot> slots = new HashMap<Model.ModelUUID, Slot>();
+    private final ArrayDeque<Slot> pending = new ArrayDeque<Slot>();
+    private final Thread deliveryThread;
+    private boolean running = false;
+
+    private long received = 0;
+    private long delivered = 0;
+    private long latencyTotalNanos = 0;
+    private long latencyMaxNanos = 0;
+
+    /**
+     * @param downstream Handler that receives the conflated notifications, on the delivery thread
+     * @param errorHandler Receives exceptions thrown by the downstream handler, on the delivery thread
+     */
+    public ConflatingMeasurementHandler(SubscriptionHandler<Measurements.MeasurementNotification> downstream, NotificationErrorHandler errorHandler) {
+        this.downstream = downstream;
+        this.errorHandler = errorHandler;
+        this.deliveryThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                deliver();
+            }
+        }, "conflating-handler");
+        this.deliveryThread.setDaemon(true);
+    }
+
+    /**
+     * Starts the delivery thread.
+     */
+    public synchronized void start() {
+        if (!running) {
+            running = true;
+            deliveryThread.start();
+        }
+    }
+
+    /**
+     * Stops the delivery thread. Pending values that have not been delivered are discarded.
+     */
+    public synchronized void shutdown() {
+        running = false;
+        notifyAll();
+    }
+
+    /**
+     * Records a notification from the messaging thread, replacing any undelivered value for the same point.
+     *
+     * @param event Measurement notification
+     */
+    @Override
+    public synchronized void handle(Measurements.MeasurementNotification event) {
+        received++;
+
+        Slot slot = slots.get(event.getPointUuid());
+        if (slot == null) {
+            slot = new Slot(event.getPointUuid());
+            slots.put(event.getPointUuid(), slot);
+            pending.addLast(slot);
+            notifyAll();
+        }
+
+        slot.notification = event;
+        slot.arrivalNanos = System.nanoTime();
+    }
+
+    /**
+     * @return Number of notifications received from the subscription
+     */
+    public synchronized long getReceivedCount() {
+        return received;
+    }
+
+    /**
+     * @return Number of notifications delivered to the downstream handler
+     */
+    public synchronized long getDeliveredCount() {
+        return delivered;
+    }
+
+    /**
+     * @return Number of notifications replaced by a newer value before delivery
+     */
+    public synchronized long getConflatedCount() {
+        return received - delivered - pending.size();
+    }
+
+    /**
+     * @return Received notifications per delivered notification; 1.0 means nothing has been conflated
+     */
+    public synchronized double getConflationRatio() {
+        return delivered == 0 ? 1.0 : (double) (received - pending.size()) / delivered;
+    }
+
+    /**
+     * @return Number of points with a value waiting to be delivered
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * @return Mean time in milliseconds between a delivered value arriving and reaching the downstream handler
+     */
+    public synchronized double getAverageLatencyMillis() {
+        return delivered == 0 ? 0.0 : latencyTotalNanos / (delivered * 1000000.0);
+    }
+
+    /**
+     * @return Largest time in milliseconds between a delivered value arriving and reaching the downstream handler
+     */
+    public synchronized double getMaxLatencyMillis() {
+        return latencyMaxNanos / 1000000.0;
+    }
+
+    private void deliver() {
+        while (true) {
+            final Measurements.MeasurementNotification notification;
+
+            synchronized (this) {
+                while (running && pending.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+
+                final Slot slot = pending.pollFirst();
+                slots.remove(slot.pointUuid);
+                notification = slot.notification;
+
+                final long latency = System.nanoTime() - slot.arrivalNanos;
+                latencyTotalNanos += latency;
+                latencyMaxNanos = Math.max(latencyMaxNanos, latency);
+                delivered++;
+            }
+
+            try {
+                downstream.handle(notification);
+            } catch (Throwable ex) {
+                errorHandler.handleError("conflating-handler", notification, ex);
+                if (ex instanceof Error) {
+                    shutdown();
+                    throw (Error) ex;
+                }
+            }
+        }
+    }
+
+    private static class Slot {
+        private final Model.ModelUUID pointUuid;
+        private Measurements.MeasurementNotification notification;
+        private long arrivalNanos;
+
+        Slot(Model.ModelUUID pointUuid) {
+            this.pointUuid = pointUuid;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.subscriptions;
+
+/**
+ * Receives the failures of a subscription handler that a dispatching wrapper runs on the caller's
+ * behalf, so the application decides how they are logged or counted.
+ */
+public interface NotificationErrorHandler {
+
+    /**
+     * Called on the thread that ran the failed handler.
+     *
+     * @param source Name of the handler or consumer that failed
+     * @param notification Notification being handled
+     * @param error Exception or error thrown by the handler
+     */
+    void handleError(String source, Object notification, Throwable error);
+}
@@ -0,0 +1,412 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.subscriptions;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.greenbus.client.service.proto.Measurements;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.japi.client.service.MeasurementService;
+import io.greenbus.msg.japi.Session;
+import io.greenbus.msg.japi.Subscription;
+import io.greenbus.msg.japi.SubscriptionHandler;
+import io.greenbus.msg.japi.SubscriptionResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A measurement subscription that survives connection loss without gaps.
+ *
+ * The wrapper keeps a cache of the last value passed downstream for every point. Whenever the
+ * subscription is (re-)established, the new subscription is started first and its notifications are
+ * buffered while the current values returned with it are reconciled against the cache. Only values
+ * that actually differ from the cache are passed downstream, followed by the buffered notifications
+ * that are still news. Downstream consumers therefore see every change made while disconnected,
+ * without the whole snapshot being replayed to them.
+ *
+ * Connection loss can be reported by the application (for example from a connected application
+ * manager's callbacks) through connectionLost() and connected(), or detected by a periodic health
+ * check that probes the measurement service and resubscribes on the application's current Session.
+ *
+ * Exceptions thrown by the downstream handler are passed to the error handler and delivery continues.
+ * An Error is passed to the error handler too, but then cancels the wrapper, health check included,
+ * and is rethrown: the downstream state cannot be trusted after it.
+ */
+public class ResilientMeasurementSubscription {
+
+    /**
+     * Supplies the Session to resubscribe on after the health check detects connection loss.
+     */
+    public interface SessionSource {
+
+        /**
+         * @return The application's current Session, which may be a new one after a reconnect
+         * @throws Exception If no Session is available; the health check tries again on its next run
+         */
+        Session getSession() throws Exception;
+    }
+
+    private final List<Model.ModelUUID> pointUuids;
+    private final SubscriptionHandler<Measurements.MeasurementNotification> downstream;
+    private final NotificationErrorHandler errorHandler;
+
+    private final Map<Model.ModelUUID, Measurements.Measurement> cache = new HashMap<Model.ModelUUID, Measurements.Measurement>();
+    private final Map<Model.ModelUUID, String> pointNames = new HashMap<Model.ModelUUID, String>();
+    private final Object resyncLock = new Object();
+
+    private MeasurementService.Client client = null;
+    private Subscription<Measurements.MeasurementNotification> subscription = null;
+    private int generation = 0;
+    private boolean live = false;
+    private boolean resyncing = false;
+    private List<Measurements.MeasurementNotification> buffered = new ArrayList<Measurements.MeasurementNotification>();
+    private ScheduledFuture<?> healthCheck = null;
+
+    private long resyncCount = 0;
+    private long connectionLossCount = 0;
+    private long lastResyncNanos = 0;
+    private long lastResyncChanged = 0;
+
+    /**
+     * @param points Points to subscribe to; their names are set on the notifications passed downstream
+     * @param downstream Handler that receives the de-duplicated stream of changes
+     * @param errorHandler Receives exceptions thrown by the downstream handler
+     */
+    public ResilientMeasurementSubscription(List<Model.Point> points, SubscriptionHandler<Measurements.MeasurementNotification> downstream,
+                                            NotificationErrorHandler errorHandler) {
+        this.pointUuids = new ArrayList<Model.ModelUUID>(points.size());
+        for (Model.Point point : points) {
+            pointUuids.add(point.getUuid());
+            pointNames.put(point.getUuid(), point.getName());
+        }
+        this.downstream = downstream;
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Subscribes using the given client, reconciling current values against the cache and passing
+     * only the changes downstream. Called for the initial subscription and after every reconnect.
+     *
+     * @param client Measurement service interface for the current connection
+     * @param timeout Time allowed for the subscription request
+     * @param unit Unit of the timeout
+     * @throws Exception If the subscription request fails
+     */
+    public void connected(MeasurementService.Client client, long timeout, TimeUnit unit) throws Exception {
+        synchronized (resyncLock) {
+            final int gen;
+            synchronized (this) {
+                cancelSubscription();
+                this.client = client;
+                gen = ++generation;
+                live = false;
+                resyncing = true;
+                buffered = new ArrayList<Measurements.MeasurementNotification>();
+            }
+
+            try {
+                final long start = System.nanoTime();
+
+                final ListenableFuture<SubscriptionResult<List<Measurements.PointMeasurementValue>, Measurements.MeasurementNotification>> future =
+                        client.getCurrentValuesAndSubscribe(pointUuids);
+
+                final SubscriptionResult<List<Measurements.PointMeasurementValue>, Measurements.MeasurementNotification> result;
+                try {
+                    result = future.get(timeout, unit);
+                } catch (Exception ex) {
+                    release(future);
+                    throw ex;
+                }
+
+                synchronized (this) {
+                    if (gen != generation) {
+                        // Connection was lost again while subscribing
+                        result.getSubscription().cancel();
+                        return;
+                    }
+                    subscription = result.getSubscription();
+                }
+
+                // Start delivery immediately so nothing published after the snapshot is missed; it is buffered until reconciled
+                result.getSubscription().start(new GenerationHandler(gen));
+
+                long changed = reconcile(result.getResult());
+                changed += drainBuffered(gen);
+
+                synchronized (this) {
+                    resyncCount++;
+                    lastResyncNanos = System.nanoTime() - start;
+                    lastResyncChanged = changed;
+                }
+            } finally {
+                synchronized (this) {
+                    resyncing = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Notifies the wrapper that the connection has been lost. Notifications from the old subscription
+     * are ignored from this point on.
+     */
+    public synchronized void connectionLost() {
+        generation++;
+        live = false;
+        connectionLossCount++;
+        cancelSubscription();
+    }
+
+    /**
+     * Periodically probes the measurement service. A failed probe is treated as connection loss, and
+     * the subscription is re-established on the following checks with a client for the Session the
+     * source supplies at that time.
+     *
+     * @param scheduler Executor to run the health check on
+     * @param sessions Source of the Session to resubscribe on
+     * @param period Time between checks, also used as the probe timeout
+     * @param unit Unit of the period
+     */
+    public synchronized void startHealthCheck(ScheduledExecutorService scheduler, final SessionSource sessions, final long period, final TimeUnit unit) {
+        if (healthCheck != null) {
+            healthCheck.cancel(false);
+        }
+        healthCheck = scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                checkHealth(sessions, period, unit);
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Stops the health check and cancels the subscription.
+     */
+    public synchronized void cancel() {
+        if (healthCheck != null) {
+            healthCheck.cancel(false);
+            healthCheck = null;
+        }
+        generation++;
+        live = false;
+        cancelSubscription();
+    }
+
+    /**
+     * @return True if the subscription is established and reconciled
+     */
+    public synchronized boolean isLive() {
+        return live;
+    }
+
+    /**
+     * @return Number of completed (re-)subscriptions, including the initial one
+     */
+    public synchronized long getResyncCount() {
+        return resyncCount;
+    }
+
+    /**
+     * @return Number of times connection loss was reported or detected
+     */
+    public synchronized long getConnectionLossCount() {
+        return connectionLossCount;
+    }
+
+    /**
+     * @return Time taken by the most recent (re-)subscription, from request to live, in milliseconds
+     */
+    public synchronized double getLastResyncMillis() {
+        return lastResyncNanos / 1000000.0;
+    }
+
+    /**
+     * @return Number of changes passed downstream by the most recent (re-)subscription
+     */
+    public synchronized long getLastResyncChangedCount() {
+        return lastResyncChanged;
+    }
+
+    /**
+     * Compares current values against the cache and passes the ones that differ downstream.
+     *
+     * Only called while not live, when the subscription handler does not touch the cache.
+     *
+     * @param snapshot Current values returned with the subscription
+     * @return Number of values passed downstream
+     */
+    private int reconcile(List<Measurements.PointMeasurementValue> snapshot) {
+        int changed = 0;
+        for (Measurements.PointMeasurementValue pointValue : snapshot) {
+            final Measurements.Measurement cached = cache.get(pointValue.getPointUuid());
+            if (cached == null || !cached.equals(pointValue.getValue())) {
+                cache.put(pointValue.getPointUuid(), pointValue.getValue());
+
+                final Measurements.MeasurementNotification.Builder builder = Measurements.MeasurementNotification.newBuilder()
+                        .setPointUuid(pointValue.getPointUuid())
+                        .setValue(pointValue.getValue());
+
+                final String name = pointNames.get(pointValue.getPointUuid());
+                if (name != null) {
+                    builder.setPointName(name);
+                }
+
+                emit(builder.build());
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    private int drainBuffered(int gen) {
+        int changed = 0;
+        while (true) {
+            final List<Measurements.MeasurementNotification> batch;
+            synchronized (this) {
+                if (gen != generation) {
+                    return changed;
+                }
+                if (buffered.isEmpty()) {
+                    live = true;
+                    return changed;
+                }
+                batch = buffered;
+                buffered = new ArrayList<Measurements.MeasurementNotification>();
+            }
+
+            for (Measurements.MeasurementNotification notification : batch) {
+                if (apply(notification, true)) {
+                    changed++;
+                }
+            }
+        }
+    }
+
+    private boolean apply(Measurements.MeasurementNotification notification, boolean skipStale) {
+        final Measurements.Measurement cached = cache.get(notification.getPointUuid());
+
+        // Buffered notifications may already be reflected in (or be older than) the reconciled snapshot
+        if (skipStale && cached != null &&
+                (cached.equals(notification.getValue()) || notification.getValue().getTime() < cached.getTime())) {
+            return false;
+        }
+
+        cache.put(notification.getPointUuid(), notification.getValue());
+        pointNames.put(notification.getPointUuid(), notification.getPointName());
+        emit(notification);
+        return true;
+    }
+
+    private void emit(Measurements.MeasurementNotification notification) {
+        try {
+            downstream.handle(notification);
+        } catch (Throwable ex) {
+            errorHandler.handleError("resilient-subscription", notification, ex);
+            if (ex instanceof Error) {
+                cancel();
+                throw (Error) ex;
+            }
+        }
+    }
+
+    /**
+     * If the request completes after we've given up on it, releases the subscription in the broker.
+     */
+    private static void release(final ListenableFuture<SubscriptionResult<List<Measurements.PointMeasurementValue>, Measurements.MeasurementNotification>> future) {
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    future.get().getSubscription().cancel();
+                } catch (Exception ignored) {
+                }
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    private void checkHealth(SessionSource sessions, long timeout, TimeUnit unit) {
+        final MeasurementService.Client current;
+        final boolean wasLive;
+        synchronized (this) {
+            if (resyncing) {
+                return;
+            }
+            current = client;
+            wasLive = live;
+        }
+        if (current == null) {
+            return;
+        }
+
+        try {
+            if (wasLive) {
+                if (!pointUuids.isEmpty()) {
+                    current.getCurrentValues(Arrays.asList(pointUuids.get(0))).get(timeout, unit);
+                }
+            } else {
+                // The old client's connection may be gone for good; resubscribe on whatever Session is current now
+                connected(MeasurementService.client(sessions.getSession()), timeout, unit);
+            }
+        } catch (Exception ex) {
+            if (wasLive) {
+                connectionLost();
+            }
+        }
+    }
+
+    private void cancelSubscription() {
+        if (subscription != null) {
+            try {
+                subscription.cancel();
+            } catch (RuntimeException ex) {
+                // Connection may already be gone
+            }
+            subscription = null;
+        }
+    }
+
+    private class GenerationHandler implements SubscriptionHandler<Measurements.MeasurementNotification> {
+        private final int gen;
+
+        GenerationHandler(int gen) {
+            this.gen = gen;
+        }
+
+        @Override
+        public void handle(Measurements.MeasurementNotification event) {
+            synchronized (ResilientMeasurementSubscription.this) {
+                if (gen != generation) {
+                    return;
+                }
+                if (!live) {
+                    buffered.add(event);
+                    return;
+                }
+                apply(event, false);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.subscriptions;
+
+import io.greenbus.client.service.proto.Measurements;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.examples.standin.StandInServices;
+import io.greenbus.examples.standin.StandInSettings;
+import io.greenbus.msg.japi.SubscriptionHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the cost of resynchronizing a ResilientMeasurementSubscription, from the subscription
+ * request to the subscription being live again.
+ *
+ * Runs against StandInServices with 100,000 points (or the number given as the first argument) and a
+ * round-trip time of 1000 microseconds (or the second argument). Every point is given a value and the
+ * subscription made once to fill the cache; then, repeatedly, the connection is dropped, 1% of the
+ * values change, and the subscription is re-established, as after a short disconnect. Reports the time
+ * per resync and the number of changes passed downstream.
+ */
+public class ResyncBenchmark {
+
+    private static final int POINTS_PER_EQUIPMENT = 100;
+
+    public static void main(String[] args) throws Exception {
+
+        final int pointCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final long latencyMicros = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+        final int iterations = 20;
+
+        final StandInServices services = new StandInServices(new StandInSettings()
+                .setEquipmentCount(Math.max(1, pointCount / POINTS_PER_EQUIPMENT))
+                .setPointsPerEquipment(POINTS_PER_EQUIPMENT)
+                .setLatencyMicros(latencyMicros));
+
+        final List<Model.Point> points = services.getModel().getPoints();
+
+        System.out.print("\n=== Resync Benchmark (" + points.size() + " points, " + latencyMicros + " us round trip) ===\n\n");
+
+        try {
+            final long now = System.currentTimeMillis();
+            final List<Measurements.PointMeasurementValue> initial = new ArrayList<Measurements.PointMeasurementValue>(points.size());
+            for (int i = 0; i < points.size(); i++) {
+                initial.add(pointValue(points.get(i).getUuid(), i, now));
+            }
+            services.publishMeasurements(initial);
+
+            // Counts what is passed downstream without any other work
+            final AtomicLong emitted = new AtomicLong(0);
+            final ResilientMeasurementSubscription subscription = new ResilientMeasurementSubscription(points, new SubscriptionHandler<Measurements.MeasurementNotification>() {
+                @Override
+                public void handle(Measurements.MeasurementNotification event) {
+                    emitted.incrementAndGet();
+                }
+            }, new SubscriptionsExample.ErrorPrinter());
+
+            // Initial subscription: every value is new
+            long start = System.nanoTime();
+            subscription.connected(services.getMeasurementClient(), 60000, TimeUnit.MILLISECONDS);
+            System.out.println("Initial sync: " + (System.nanoTime() - start) / 1000000.0 + " ms, emitted: " + emitted.get());
+
+            long totalNanos = 0;
+            long totalEmitted = 0;
+            for (int iteration = 1; iteration <= iterations; iteration++) {
+
+                subscription.connectionLost();
+
+                // 1% of the points changed while disconnected
+                final List<Measurements.PointMeasurementValue> changes = new ArrayList<Measurements.PointMeasurementValue>();
+                for (int i = iteration % 100; i < points.size(); i += 100) {
+                    changes.add(pointValue(points.get(i).getUuid(), i + iteration, now + iteration));
+                }
+                services.publishMeasurements(changes);
+
+                emitted.set(0);
+                start = System.nanoTime();
+                subscription.connected(services.getMeasurementClient(), 60000, TimeUnit.MILLISECONDS);
+                final long elapsed = System.nanoTime() - start;
+
+                // Skip the first few iterations while the JIT warms up
+                if (iteration > 5) {
+                    totalNanos += elapsed;
+                    totalEmitted += emitted.get();
+                }
+            }
+
+            subscription.cancel();
+
+            final int measured = iterations - 5;
+            System.out.println("Resync: " + (totalNanos / measured) / 1000000.0 + " ms average, emitted: " + totalEmitted / measured + " per resync");
+        } finally {
+            services.shutdown();
+        }
+    }
+
+    private static Measurements.PointMeasurementValue pointValue(Model.ModelUUID uuid, double value, long time) {
+        return Measurements.PointMeasurementValue.newBuilder()
+                .setPointUuid(uuid)
+                .setValue(Measurements.Measurement.newBuilder()
+                        .setType(Measurements.Measurement.Type.DOUBLE)
+                        .setDoubleVal(value)
+                        .setTime(time))
+                .build();
+    }
+}
@@ -0,0 +1,430 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.subscriptions;
+
+import io.greenbus.msg.japi.Subscription;
+import io.greenbus.msg.japi.SubscriptionHandler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Dispatches subscription notifications through a pre-allocated ring buffer.
+ *
+ * The messaging thread only publishes notifications into the ring; each registered consumer
+ * (historian, alarm engine, UI, ...) runs on its own thread and reads the ring at its own pace.
+ * A slow consumer therefore no longer stalls delivery to the others, or to the broker.
+ *
+ * When the ring is full (the slowest consumer is a full ring behind) the OverflowPolicy decides
+ * whether the messaging thread waits for space or the new notification is dropped.
+ *
+ * Consumers must be added before the dispatcher is started. Notifications published before then are held
+ * in the ring for the consumers, until it is full; later ones are dropped and counted. Exceptions thrown by a consumer's handler
+ * are passed to the NotificationErrorHandler and the consumer carries on; an Error stops the dispatcher,
+ * so publishers waiting for that consumer are released rather than blocked forever.
+ *
+ * @param <A> Subscription notification type
+ */
+public class RingBufferDispatcher<A> implements SubscriptionHandler<A> {
+
+    /**
+     * How consumer threads wait for new notifications to be published.
+     */
+    public enum WaitStrategy {
+        /** Park on a lock condition until signalled by the publisher; lowest CPU usage. */
+        BLOCKING,
+        /** Spin, then yield, then sleep briefly between checks. */
+        SLEEPING,
+        /** Spin, then yield between checks. */
+        YIELDING,
+        /** Spin continuously; lowest latency, occupies a core per consumer. */
+        BUSY_SPIN
+    }
+
+    /**
+     * What happens to a new notification when the ring is full.
+     */
+    public enum OverflowPolicy {
+        /** The publishing (messaging) thread waits until the slowest consumer frees a slot. */
+        BLOCK,
+        /** The new notification is discarded and counted. */
+        DROP_NEWEST
+    }
+
+    private static final int SPIN_TRIES = 100;
+    private static final long SLEEP_NANOS = 100 * 1000;
+
+    private final Object[] entries;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final OverflowPolicy overflowPolicy;
+    private final NotificationErrorHandler errorHandler;
+
+    private final AtomicLong cursor = new AtomicLong(-1);
+    private final AtomicLong dropped = new AtomicLong(0);
+    private final Map<String, Consumer> consumers = new LinkedHashMap<String, Consumer>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition published = lock.newCondition();
+    private final Object clearLock = new Object();
+
+    private volatile List<Consumer> gatingConsumers = Collections.emptyList();
+    private long gatingSequenceCache = -1;
+    private long clearedSequence = -1;
+    private volatile boolean running = false;
+
+    /**
+     * @param capacity Number of slots in the ring, must be a power of two
+     * @param waitStrategy How consumers wait for new notifications
+     * @param overflowPolicy What to do when the ring is full
+     * @param errorHandler Receives exceptions thrown by consumers' handlers, on the consumer's thread
+     */
+    public RingBufferDispatcher(int capacity, WaitStrategy waitStrategy, OverflowPolicy overflowPolicy, NotificationErrorHandler errorHandler) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.entries = new Object[capacity];
+        this.mask = capacity - 1;
+        this.waitStrategy = waitStrategy;
+        this.overflowPolicy = overflowPolicy;
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Registers a consumer that will see every published notification, in order, on its own thread.
+     *
+     * @param name Name of the consumer, used for the thread name and lag reporting
+     * @param handler Handler invoked for each notification
+     */
+    public synchronized void addConsumer(String name, SubscriptionHandler<A> handler) {
+        if (running) {
+            throw new IllegalStateException("Consumers must be added before the dispatcher is started");
+        }
+        if (consumers.containsKey(name)) {
+            throw new IllegalArgumentException("Consumer already registered: " + name);
+        }
+        consumers.put(name, new Consumer(name, handler));
+    }
+
+    /**
+     * Starts the consumer threads.
+     */
+    public synchronized void start() {
+        if (consumers.isEmpty()) {
+            throw new IllegalStateException("No consumers registered");
+        }
+        if (running) {
+            return;
+        }
+        gatingConsumers = new ArrayList<Consumer>(consumers.values());
+        running = true;
+        for (Consumer consumer : gatingConsumers) {
+            consumer.thread.start();
+        }
+    }
+
+    /**
+     * Starts the consumer threads and then the subscription, with this dispatcher as its handler.
+     *
+     * @param subscription Subscription to dispatch notifications from
+     */
+    public void start(Subscription<A> subscription) {
+        start();
+        subscription.start(this);
+    }
+
+    /**
+     * Stops the consumer threads once they have processed everything already published.
+     *
+     * The subscription feeding the dispatcher should be cancelled first.
+     */
+    public void shutdown() {
+        running = false;
+        signalConsumers();
+        for (Consumer consumer : gatingConsumers) {
+            LockSupport.unpark(consumer.thread);
+        }
+    }
+
+    /**
+     * Publishes a notification to the ring. Called by the messaging thread.
+     *
+     * @param event Subscription notification
+     */
+    @Override
+    public void handle(A event) {
+        synchronized (entries) {
+            final long next = cursor.get() + 1;
+            final long wrapPoint = next - entries.length;
+
+            if (wrapPoint > gatingSequenceCache) {
+                long minSequence = minimumConsumerSequence();
+                if (wrapPoint > minSequence) {
+                    if (overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+                        dropped.incrementAndGet();
+                        return;
+                    }
+                    minSequence = awaitCapacity(wrapPoint);
+                    if (wrapPoint > minSequence) {
+                        // Shut down while waiting
+                        dropped.incrementAndGet();
+                        return;
+                    }
+                }
+                gatingSequenceCache = minSequence;
+            }
+
+            synchronized (clearLock) {
+                entries[(int) (next & mask)] = event;
+                cursor.set(next);
+            }
+        }
+
+        if (waitStrategy == WaitStrategy.BLOCKING) {
+            signalConsumers();
+        }
+    }
+
+    /**
+     * @return Names of the registered consumers
+     */
+    public synchronized List<String> getConsumerNames() {
+        return new ArrayList<String>(consumers.keySet());
+    }
+
+    /**
+     * Number of published notifications a consumer has not yet processed.
+     *
+     * @param name Name of the consumer
+     * @return Lag in notifications
+     */
+    public long getLag(String name) {
+        return cursor.get() - consumer(name).sequence.get();
+    }
+
+    /**
+     * @param name Name of the consumer
+     * @return Number of notifications the consumer has processed
+     */
+    public long getProcessedCount(String name) {
+        return consumer(name).sequence.get() + 1;
+    }
+
+    /**
+     * @param name Name of the consumer
+     * @return Number of notifications for which the consumer's handler threw an exception
+     */
+    public long getErrorCount(String name) {
+        return consumer(name).errors.get();
+    }
+
+    /**
+     * @return True if the consumer threads have been started and the dispatcher has not been shut down
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return Number of notifications published to the ring
+     */
+    public long getPublishedCount() {
+        return cursor.get() + 1;
+    }
+
+    /**
+     * @return Number of notifications discarded because the ring was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return Number of slots in the ring
+     */
+    public int getCapacity() {
+        return entries.length;
+    }
+
+    private synchronized Consumer consumer(String name) {
+        final Consumer consumer = consumers.get(name);
+        if (consumer == null) {
+            throw new IllegalArgumentException("No consumer registered: " + name);
+        }
+        return consumer;
+    }
+
+    private long minimumConsumerSequence() {
+        final List<Consumer> gating = gatingConsumers;
+        if (gating.isEmpty()) {
+            // Not started: consumers will begin at the first notification, so nothing has been consumed
+            return -1;
+        }
+        long min = Long.MAX_VALUE;
+        for (Consumer consumer : gating) {
+            min = Math.min(min, consumer.sequence.get());
+        }
+        return min;
+    }
+
+    /**
+     * Releases the notifications every consumer has processed, so the ring does not keep them reachable
+     * until their slots are reused.
+     */
+    private void clearConsumed() {
+        // Not the publisher's lock, which it holds while waiting for consumers to free a slot
+        synchronized (clearLock) {
+            final long consumed = minimumConsumerSequence();
+            final long latest = cursor.get();
+            while (clearedSequence < consumed) {
+                clearedSequence++;
+                // The publisher may already have reused the slot for a later notification
+                if (clearedSequence + entries.length > latest) {
+                    entries[(int) (clearedSequence & mask)] = null;
+                }
+            }
+        }
+    }
+
+    private long awaitCapacity(long wrapPoint) {
+        int counter = 0;
+        long minSequence = minimumConsumerSequence();
+        while (wrapPoint > minSequence && running) {
+            counter = idle(counter);
+            minSequence = minimumConsumerSequence();
+        }
+        return minSequence;
+    }
+
+    private long awaitPublished(long sequence) throws InterruptedException {
+        long available = cursor.get();
+        if (available >= sequence) {
+            return available;
+        }
+
+        if (waitStrategy == WaitStrategy.BLOCKING) {
+            lock.lock();
+            try {
+                while ((available = cursor.get()) < sequence && running) {
+                    published.await();
+                }
+            } finally {
+                lock.unlock();
+            }
+        } else {
+            int counter = 0;
+            while ((available = cursor.get()) < sequence && running) {
+                counter = idle(counter);
+            }
+        }
+
+        return available;
+    }
+
+    private int idle(int counter) {
+        switch (waitStrategy) {
+            case BUSY_SPIN:
+                return counter;
+            case YIELDING:
+                if (counter < SPIN_TRIES) {
+                    return counter + 1;
+                }
+                Thread.yield();
+                return counter;
+            default:
+                // Publishers waiting for capacity in BLOCKING mode are not signalled by consumers, so sleep
+                if (counter < SPIN_TRIES) {
+                    return counter + 1;
+                } else if (counter < 2 * SPIN_TRIES) {
+                    Thread.yield();
+                    return counter + 1;
+                }
+                LockSupport.parkNanos(SLEEP_NANOS);
+                return counter;
+        }
+    }
+
+    private void signalConsumers() {
+        lock.lock();
+        try {
+            published.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private class Consumer implements Runnable {
+        private final String name;
+        private final SubscriptionHandler<A> handler;
+        private final AtomicLong sequence = new AtomicLong(-1);
+        private final AtomicLong errors = new AtomicLong(0);
+        private final Thread thread;
+
+        Consumer(String name, SubscriptionHandler<A> handler) {
+            this.name = name;
+            this.handler = handler;
+            this.thread = new Thread(this, "ring-dispatcher-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+            long next = sequence.get() + 1;
+            try {
+                while (true) {
+                    final long available = awaitPublished(next);
+                    if (available < next) {
+                        // Only returns short of the requested sequence when shut down and drained
+                        return;
+                    }
+
+                    // Process everything published so far as a batch, then release the slots
+                    while (next <= available) {
+                        final A event = (A) entries[(int) (next & mask)];
+                        try {
+                            handler.handle(event);
+                        } catch (Throwable ex) {
+                            errors.incrementAndGet();
+                            errorHandler.handleError(name, event, ex);
+                            if (ex instanceof Error) {
+                                // The consumer cannot be trusted to continue; stop rather than leave publishers waiting on it
+                                sequence.set(next);
+                                shutdown();
+                                throw (Error) ex;
+                            }
+                        }
+                        next++;
+                    }
+                    sequence.set(available);
+                    clearConsumed();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.subscriptions;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.greenbus.client.service.proto.Measurements;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.japi.client.service.MeasurementService;
+import io.greenbus.msg.japi.Subscription;
+import io.greenbus.msg.japi.SubscriptionHandler;
+import io.greenbus.msg.japi.SubscriptionResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Subscribes to measurements for a very large set of points by splitting it into shards.
+ *
+ * Each shard is a separate getCurrentValuesAndSubscribe request of at most shardSize points, and all
+ * shard requests are in flight at once. The initial values of the shards are merged into a single
+ * snapshot. Notifications for each shard are handed to that shard's own executor, so shards are
+ * handled in parallel while the updates for any one point stay in order.
+ *
+ * A shard whose request fails or times out does not affect the others; it is reported by
+ * getFailedShards() and can be re-requested with retryFailedShards().
+ *
+ * The handler is called concurrently from the shard threads and must be thread-safe. Notifications that
+ * arrive after cancel() are discarded.
+ */
+public class ShardedMeasurementSubscription {
+
+    private final MeasurementService.Client client;
+    private final SubscriptionHandler<Measurements.MeasurementNotification> handler;
+    private final List<Shard> shards = new ArrayList<Shard>();
+    private volatile boolean closed = false;
+
+    /**
+     * @param client Measurement service interface
+     * @param pointUuids Points to subscribe to
+     * @param shardSize Maximum number of points in each subscription request
+     * @param handler Handler for notifications from all shards
+     */
+    public ShardedMeasurementSubscription(MeasurementService.Client client, List<Model.ModelUUID> pointUuids, int shardSize,
+                                          SubscriptionHandler<Measurements.MeasurementNotification> handler) {
+        if (shardSize < 1) {
+            throw new IllegalArgumentException("Shard size must be positive: " + shardSize);
+        }
+        this.client = client;
+        this.handler = handler;
+
+        for (int start = 0; start < pointUuids.size(); start += shardSize) {
+            final List<Model.ModelUUID> shardPoints = new ArrayList<Model.ModelUUID>(pointUuids.subList(start, Math.min(start + shardSize, pointUuids.size())));
+            shards.add(new Shard(shards.size(), shardPoints));
+        }
+    }
+
+    /**
+     * Issues the subscription requests for all shards concurrently and starts each successful shard.
+     *
+     * @param timeout Time allowed for all shard requests to complete
+     * @param unit Unit of the timeout
+     * @return Merged initial values of the shards that succeeded
+     * @throws InterruptedException If interrupted while waiting; requests still in flight are released
+     */
+    public List<Measurements.PointMeasurementValue> start(long timeout, TimeUnit unit) throws InterruptedException {
+        return subscribe(shards, timeout, unit);
+    }
+
+    /**
+     * Re-issues the subscription requests of the shards that failed.
+     *
+     * @param timeout Time allowed for all shard requests to complete
+     * @param unit Unit of the timeout
+     * @return Merged initial values of the shards that succeeded on this attempt
+     * @throws InterruptedException If interrupted while waiting; requests still in flight are released
+     */
+    public List<Measurements.PointMeasurementValue> retryFailedShards(long timeout, TimeUnit unit) throws InterruptedException {
+        return subscribe(getFailedShards(), timeout, unit);
+    }
+
+    /**
+     * @return All shards, in the order of the original point list
+     */
+    public List<Shard> getShards() {
+        return Collections.unmodifiableList(shards);
+    }
+
+    /**
+     * @return Shards whose most recent subscription request failed
+     */
+    public synchronized List<Shard> getFailedShards() {
+        final List<Shard> failed = new ArrayList<Shard>();
+        for (Shard shard : shards) {
+            if (shard.failure != null) {
+                failed.add(shard);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Cancels the subscriptions of all shards and stops their executors.
+     */
+    public synchronized void cancel() {
+        closed = true;
+        for (Shard shard : shards) {
+            shard.cancel();
+        }
+    }
+
+    private List<Measurements.PointMeasurementValue> subscribe(List<Shard> toSubscribe, long timeout, TimeUnit unit) throws InterruptedException {
+
+        // Put every request in flight before waiting on any of them
+        final List<ListenableFuture<SubscriptionResult<List<Measurements.PointMeasurementValue>, Measurements.MeasurementNotification>>> futures =
+                new ArrayList<ListenableFuture<SubscriptionResult<List<Measurements.PointMeasurementValue>, Measurements.MeasurementNotification>>>();
+        for (Shard shard : toSubscribe) {
+            futures.add(client.getCurrentValuesAndSubscribe(shard.pointUuids));
+        }
+
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        final List<Measurements.PointMeasurementValue> snapshot = new ArrayList<Measurements.PointMeasurementValue>();
+
+        for (int i = 0; i < toSubscribe.size(); i++) {
+            final Shard shard = toSubscribe.get(i);
+            final ListenableFuture<SubscriptionResult<List<Measurements.PointMeasurementValue>, Measurements.MeasurementNotification>> future = futures.get(i);
+
+            try {
+                final SubscriptionResult<List<Measurements.PointMeasurementValue>, Measurements.MeasurementNotification> result =
+                        future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+
+                if (shard.started(result.getSubscription(), handler, this)) {
+                    snapshot.addAll(result.getResult());
+                }
+
+            } catch (ExecutionException ex) {
+                shard.failed(ex.getCause());
+            } catch (TimeoutException ex) {
+                shard.failed(ex);
+                release(future);
+            } catch (InterruptedException ex) {
+                // Give up on this shard and every one after it without leaving their subscriptions open in the broker
+                for (int j = i; j < toSubscribe.size(); j++) {
+                    toSubscribe.get(j).failed(ex);
+                    release(futures.get(j));
+                }
+                throw ex;
+            }
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * If the request completes after we've given up on it, releases the subscription in the broker.
+     */
+    private static void release(final ListenableFuture<SubscriptionResult<List<Measurements.PointMeasurementValue>, Measurements.MeasurementNotification>> future) {
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    future.get().getSubscription().cancel();
+                } catch (Exception ignored) {
+                }
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    /**
+     * A subset of the points, subscribed to with a single request and handled on a single thread.
+     */
+    public static class Shard {
+        private final int index;
+        private final List<Model.ModelUUID> pointUuids;
+        private Subscription<Measurements.MeasurementNotification> subscription = null;
+        private ExecutorService executor = null;
+        private volatile boolean closed = false;
+        private volatile Throwable failure = null;
+
+        Shard(int index, List<Model.ModelUUID> pointUuids) {
+            this.index = index;
+            this.pointUuids = pointUuids;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public List<Model.ModelUUID> getPointUuids() {
+            return Collections.unmodifiableList(pointUuids);
+        }
+
+        public synchronized boolean isSubscribed() {
+            return subscription != null;
+        }
+
+        /**
+         * @return Cause of the most recent failed subscription request, or null
+         */
+        public Throwable getFailure() {
+            return failure;
+        }
+
+        /**
+         * @return False if the subscription was cancelled instead because the owner has been cancelled
+         */
+        synchronized boolean started(Subscription<Measurements.MeasurementNotification> subscription,
+                                     final SubscriptionHandler<Measurements.MeasurementNotification> handler,
+                                     ShardedMeasurementSubscription owner) {
+            // Owner sets closed before cancelling each shard under the shard's lock, so this check cannot miss it
+            if (owner.closed) {
+                subscription.cancel();
+                return false;
+            }
+            this.failure = null;
+            this.closed = false;
+            this.subscription = subscription;
+            this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "measurement-shard-" + index);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+            final ExecutorService shardExecutor = executor;
+            subscription.start(new SubscriptionHandler<Measurements.MeasurementNotification>() {
+                @Override
+                public void handle(final Measurements.MeasurementNotification event) {
+                    if (closed) {
+                        return;
+                    }
+                    try {
+                        shardExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                handler.handle(event);
+                            }
+                        });
+                    } catch (RejectedExecutionException ex) {
+                        // Lost a race with cancel(); the shard is closed and the notification is not wanted
+                        if (!closed) {
+                            throw ex;
+                        }
+                    }
+                }
+            });
+            return true;
+        }
+
+        synchronized void failed(Throwable cause) {
+            this.failure = cause;
+        }
+
+        synchronized void cancel() {
+            closed = true;
+            if (subscription != null) {
+                subscription.cancel();
+                subscription = null;
+            }
+            if (executor != null) {
+                executor.shutdown();
+                executor = null;
+            }
+        }
+    }
+}
@@ -25,13 +25,17 @@ import io.greenbus.client.service.proto.Measurements;
 import io.greenbus.client.service.proto.Measurements.Measurement;
 import io.greenbus.client.service.proto.Model;
 import io.greenbus.client.service.proto.ModelRequests;
+import io.greenbus.examples.measurements.MeasurementWriter;
 import io.greenbus.japi.client.service.MeasurementService;
 import io.greenbus.japi.client.service.ModelService;
 
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Example: Subscriptions
@@ -58,7 +62,19 @@ public class SubscriptionsExample {
             // Measurement associated with the event
             Measurement measurement = event.getValue();
 
-            System.out.println("Measurement: " + event.getPointName() + ", " + buildValueString(measurement));
+            System.out.println("Measurement: " + event.getPointName() + ", " + MeasurementWriter.valueString(measurement));
+        }
+    }
+
+    /**
+     * Reports notifications that a subscriber failed to handle.
+     *
+     */
+    public static class ErrorPrinter implements NotificationErrorHandler {
+
+        @Override
+        public void handleError(String source, Object notification, Throwable error) {
+            System.out.println("Handler " + source + " failed: " + error);
         }
     }
 
@@ -97,7 +113,7 @@ public class SubscriptionsExample {
         // Display latest measurements for the points
         for (Measurements.PointMeasurementValue pointMeasurementValue : subscriptionResult.getResult()) {
             System.out.println("Measurement: " + pointMeasurementValue.getPointUuid().getValue() +
-                    ", Value: " + buildValueString(pointMeasurementValue.getValue()) +
+                    ", Value: " + MeasurementWriter.valueString(pointMeasurementValue.getValue()) +
                     ", Time: " + new Date(pointMeasurementValue.getValue().getTime()));
         }
 
@@ -113,17 +129,221 @@ public class SubscriptionsExample {
 
     }
 
-    private static String buildValueString(Measurement measurement) {
-        if(measurement.getType() == Measurement.Type.BOOL) {
-            return Boolean.toString(measurement.getBoolVal());
-        } else if(measurement.getType() == Measurement.Type.INT) {
-            return Long.toString(measurement.getIntVal());
-        } else if(measurement.getType() == Measurement.Type.DOUBLE) {
-            return Double.toString(measurement.getDoubleVal());
-        } else if(measurement.getType() == Measurement.Type.STRING) {
-            return measurement.getStringVal();
-        } else {
-            return "";
+    /**
+     * Subscribe to Measurements with a Dispatcher
+     *
+     * Subscribes to measurement updates for all points, handing notifications off from the messaging
+     * thread to a ring buffer. Two consumers read the ring independently: one prints measurements, the
+     * other only counts them. Each consumer's lag behind the subscription is reported at the end.
+     *
+     * @param session Logged-in Session object
+     * @throws Exception
+     */
+    public static void subscribeWithDispatcher(Session session) throws Exception  {
+
+        System.out.print("\n=== Measurement Subscription With Dispatcher ===\n\n");
+
+        // Get service interface for points
+        final ModelService.Client modelClient = ModelService.client(session);
+
+        final List<Model.Point> points = modelClient.pointQuery(ModelRequests.PointQuery.newBuilder().build()).get(5000, TimeUnit.MILLISECONDS);
+
+        // Get service interface for measurements
+        final MeasurementService.Client measurementClient = MeasurementService.client(session);
+
+        final ArrayList<Model.ModelUUID> pointUuids = new ArrayList<Model.ModelUUID>();
+        for (Model.Point point: points) {
+            pointUuids.add(point.getUuid());
         }
+
+        final SubscriptionResult<List<Measurements.PointMeasurementValue>, Measurements.MeasurementNotification> subscriptionResult = measurementClient.getCurrentValuesAndSubscribe(pointUuids).get(5000, TimeUnit.MILLISECONDS);
+
+        // Ring of 1024 slots; consumers block on a lock when idle, the messaging thread waits when the ring is full
+        final RingBufferDispatcher<Measurements.MeasurementNotification> dispatcher =
+                new RingBufferDispatcher<Measurements.MeasurementNotification>(1024,
+                        RingBufferDispatcher.WaitStrategy.BLOCKING,
+                        RingBufferDispatcher.OverflowPolicy.BLOCK,
+                        new ErrorPrinter());
+
+        // Each consumer sees every notification, on its own thread
+        final AtomicLong counted = new AtomicLong(0);
+        dispatcher.addConsumer("printer", new MeasurementSubscriber());
+        dispatcher.addConsumer("counter", new SubscriptionHandler<Measurements.MeasurementNotification>() {
+            @Override
+            public void handle(Measurements.MeasurementNotification event) {
+                counted.incrementAndGet();
+            }
+        });
+
+        // Starts the consumer threads, then the subscription with the dispatcher as its handler
+        dispatcher.start(subscriptionResult.getSubscription());
+
+        // Receive new measurements for fifteen seconds
+        Thread.sleep(15 * 1000);
+
+        // Cancel subscription to clean up resources in broker
+        subscriptionResult.getSubscription().cancel();
+
+        // Display how far behind the subscription each consumer is
+        for (String consumer : dispatcher.getConsumerNames()) {
+            System.out.println("Consumer: " + consumer + ", Processed: " + dispatcher.getProcessedCount(consumer) + ", Lag: " + dispatcher.getLag(consumer));
+        }
+        System.out.println("Published: " + dispatcher.getPublishedCount() + ", Dropped: " + dispatcher.getDroppedCount() + ", Counted: " + counted.get());
+
+        dispatcher.shutdown();
+    }
+
+    /**
+     * Subscribe to Measurements with Conflation
+     *
+     * Subscribes to measurement updates for all points through a conflating handler. A deliberately
+     * slow consumer only ever sees the newest value for each point, rather than every update in a burst.
+     *
+     * @param session Logged-in Session object
+     * @throws Exception
+     */
+    public static void subscribeWithConflation(Session session) throws Exception  {
+
+        System.out.print("\n=== Measurement Subscription With Conflation ===\n\n");
+
+        // Get service interface for points
+        final ModelService.Client modelClient = ModelService.client(session);
+
+        final List<Model.Point> points = modelClient.pointQuery(ModelRequests.PointQuery.newBuilder().build()).get(5000, TimeUnit.MILLISECONDS);
+
+        // Get service interface for measurements
+        final MeasurementService.Client measurementClient = MeasurementService.client(session);
+
+        final ArrayList<Model.ModelUUID> pointUuids = new ArrayList<Model.ModelUUID>();
+        for (Model.Point point: points) {
+            pointUuids.add(point.getUuid());
+        }
+
+        final SubscriptionResult<List<Measurements.PointMeasurementValue>, Measurements.MeasurementNotification> subscriptionResult = measurementClient.getCurrentValuesAndSubscribe(pointUuids).get(5000, TimeUnit.MILLISECONDS);
+
+        // A consumer that takes 100 milliseconds per measurement, such as a busy HMI display
+        final MeasurementSubscriber printer = new MeasurementSubscriber();
+        final ConflatingMeasurementHandler conflatingHandler = new ConflatingMeasurementHandler(new SubscriptionHandler<Measurements.MeasurementNotification>() {
+            @Override
+            public void handle(Measurements.MeasurementNotification event) {
+                printer.handle(event);
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, new ErrorPrinter());
+
+        conflatingHandler.start();
+        subscriptionResult.getSubscription().start(conflatingHandler);
+
+        // Receive new measurements for fifteen seconds
+        Thread.sleep(15 * 1000);
+
+        // Cancel subscription to clean up resources in broker
+        subscriptionResult.getSubscription().cancel();
+        conflatingHandler.shutdown();
+
+        // Display how much the slow consumer was spared
+        System.out.println("Received: " + conflatingHandler.getReceivedCount() +
+                ", Delivered: " + conflatingHandler.getDeliveredCount() +
+                ", Conflated: " + conflatingHandler.getConflatedCount() +
+                ", Ratio: " + conflatingHandler.getConflationRatio());
+        System.out.println("Delivery latency (ms) average: " + conflatingHandler.getAverageLatencyMillis() +
+                ", max: " + conflatingHandler.getMaxLatencyMillis());
+    }
+
+    /**
+     * Subscribe to Measurements in Shards
+     *
+     * Subscribes to measurement updates for all points, splitting the points into shards of at most
+     * 1000 points. Shard requests are issued concurrently and each shard's notifications are handled
+     * on its own thread.
+     *
+     * @param session Logged-in Session object
+     * @throws Exception
+     */
+    public static void subscribeSharded(Session session) throws Exception  {
+
+        System.out.print("\n=== Sharded Measurement Subscription ===\n\n");
+
+        // Get service interface for points
+        final ModelService.Client modelClient = ModelService.client(session);
+
+        final List<Model.Point> points = modelClient.pointQuery(ModelRequests.PointQuery.newBuilder().build()).get(5000, TimeUnit.MILLISECONDS);
+
+        // Get service interface for measurements
+        final MeasurementService.Client measurementClient = MeasurementService.client(session);
+
+        final ArrayList<Model.ModelUUID> pointUuids = new ArrayList<Model.ModelUUID>();
+        for (Model.Point point: points) {
+            pointUuids.add(point.getUuid());
+        }
+
+        // MeasurementSubscriber only prints, so it is safe to call from several shard threads at once
+        final ShardedMeasurementSubscription subscription = new ShardedMeasurementSubscription(measurementClient, pointUuids, 1000, new MeasurementSubscriber());
+
+        final List<Measurements.PointMeasurementValue> currentValues = subscription.start(5000, TimeUnit.MILLISECONDS);
+
+        System.out.println("Shards: " + subscription.getShards().size() + ", Failed: " + subscription.getFailedShards().size() + ", Current values: " + currentValues.size());
+
+        // Shards that failed can be retried without disturbing the ones that succeeded
+        if (!subscription.getFailedShards().isEmpty()) {
+            final List<Measurements.PointMeasurementValue> retriedValues = subscription.retryFailedShards(5000, TimeUnit.MILLISECONDS);
+            System.out.println("Retried, Failed: " + subscription.getFailedShards().size() + ", Current values: " + retriedValues.size());
+        }
+
+        // Receive new measurements for fifteen seconds
+        Thread.sleep(15 * 1000);
+
+        // Cancel the subscriptions of all shards to clean up resources in broker
+        subscription.cancel();
+    }
+
+    /**
+     * Resilient Measurement Subscription
+     *
+     * Subscribes to measurement updates for all points through a wrapper that re-subscribes after
+     * connection loss. A health check probes the measurement service every five seconds; after a
+     * reconnect only the values that changed while disconnected are passed to the subscriber.
+     *
+     * @param session Logged-in Session object
+     * @throws Exception
+     */
+    public static void subscribeResilient(final Session session) throws Exception  {
+
+        System.out.print("\n=== Resilient Measurement Subscription ===\n\n");
+
+        // Get service interface for points
+        final ModelService.Client modelClient = ModelService.client(session);
+
+        final List<Model.Point> points = modelClient.pointQuery(ModelRequests.PointQuery.newBuilder().build()).get(5000, TimeUnit.MILLISECONDS);
+
+        final ResilientMeasurementSubscription subscription = new ResilientMeasurementSubscription(points, new MeasurementSubscriber(), new ErrorPrinter());
+
+        // Initial subscription; every current value is new to the subscriber
+        subscription.connected(MeasurementService.client(session), 5000, TimeUnit.MILLISECONDS);
+
+        System.out.println("Subscribed in " + subscription.getLastResyncMillis() + " ms, values: " + subscription.getLastResyncChangedCount());
+
+        // Detect connection loss and resubscribe in the background
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        subscription.startHealthCheck(scheduler, new ResilientMeasurementSubscription.SessionSource() {
+            @Override
+            public Session getSession() {
+                // A connected application manager would supply the Session of its latest connection
+                return session;
+            }
+        }, 5000, TimeUnit.MILLISECONDS);
+
+        // Receive new measurements for fifteen seconds
+        Thread.sleep(15 * 1000);
+
+        // Cancel subscription to clean up resources in broker
+        subscription.cancel();
+        scheduler.shutdown();
+
+        System.out.println("Connection losses: " + subscription.getConnectionLossCount() + ", Resyncs: " + subscription.getResyncCount());
     }
 }
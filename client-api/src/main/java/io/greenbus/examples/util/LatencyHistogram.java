@@ -0,0 +1,142 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.util;
+
+/**
+ * A latency histogram with a fixed relative precision over the whole range of a long, in the manner
+ * of HdrHistogram.
+ *
+ * Values are counted in buckets that double in width with each power of two, each split into 128
+ * linear sub-buckets, so a reported percentile is within 1% of the recorded value no matter whether
+ * it is microseconds or minutes. Recording is constant time and allocation free. All methods are
+ * thread safe.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final long[] counts = new long[(64 - SUB_BITS + 1) * SUB_BUCKETS];
+    private long count = 0;
+    private long totalNanos = 0;
+    private long minNanos = Long.MAX_VALUE;
+    private long maxNanos = 0;
+
+    /**
+     * @param nanos Latency in nanoseconds; negative values are recorded as zero
+     */
+    public synchronized void record(long nanos) {
+        final long value = Math.max(0, nanos);
+        counts[index(value)]++;
+        count++;
+        totalNanos += value;
+        minNanos = Math.min(minNanos, value);
+        maxNanos = Math.max(maxNanos, value);
+    }
+
+    /**
+     * Adds the counts of another histogram to this one.
+     */
+    public void add(LatencyHistogram other) {
+        final LatencyHistogram copy = other.copy();
+        synchronized (this) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += copy.counts[i];
+            }
+            count += copy.count;
+            totalNanos += copy.totalNanos;
+            minNanos = Math.min(minNanos, copy.minNanos);
+            maxNanos = Math.max(maxNanos, copy.maxNanos);
+        }
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized double getMeanMillis() {
+        return count == 0 ? 0.0 : totalNanos / (count * 1000000.0);
+    }
+
+    public synchronized double getMinMillis() {
+        return count == 0 ? 0.0 : minNanos / 1000000.0;
+    }
+
+    public synchronized double getMaxMillis() {
+        return maxNanos / 1000000.0;
+    }
+
+    /**
+     * @param percentile Percentile between 0 and 100
+     * @return Highest value that could have been recorded in the bucket containing the percentile, in milliseconds
+     */
+    public synchronized double getPercentileMillis(double percentile) {
+        if (count == 0) {
+            return 0.0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), maxNanos) / 1000000.0;
+            }
+        }
+        return getMaxMillis();
+    }
+
+    public synchronized LatencyHistogram copy() {
+        final LatencyHistogram copy = new LatencyHistogram();
+        System.arraycopy(counts, 0, copy.counts, 0, counts.length);
+        copy.count = count;
+        copy.totalNanos = totalNanos;
+        copy.minNanos = minNanos;
+        copy.maxNanos = maxNanos;
+        return copy;
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+        count = 0;
+        totalNanos = 0;
+        minNanos = Long.MAX_VALUE;
+        maxNanos = 0;
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+        final long sub = index % SUB_BUCKETS;
+        final long width = 1L << (exponent - SUB_BITS);
+        return (1L << exponent) + (sub + 1) * width - 1;
+    }
+}
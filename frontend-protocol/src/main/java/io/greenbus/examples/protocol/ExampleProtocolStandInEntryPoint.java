@@ -0,0 +1,82 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.protocol;
+
+import io.greenbus.client.service.proto.CommandRequests;
+import io.greenbus.client.service.proto.Commands;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.examples.standin.StandInServices;
+import io.greenbus.examples.standin.StandInSettings;
+import io.greenbus.japi.client.service.CommandService;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Entry point for running the example protocol against the in-process stand-in services.
+ *
+ *  Adds the example protocol for the stand-in endpoints, issues a command request on each, and
+ *  shuts the protocol down again.
+ */
+public class ExampleProtocolStandInEntryPoint {
+
+    public static void main(String[] args) throws Exception {
+
+        final StandInSettings settings = new StandInSettings();
+        final StandInServices services = new StandInServices(settings);
+
+        // Manage the example protocol in place of FrontendProtocolManager
+        final StandInProtocolRunner<ExampleProtocolConfiguration> runner = new StandInProtocolRunner<ExampleProtocolConfiguration>(
+                services,
+                new ExampleProtocolMaster(),
+                new ExampleProtocolConfigurer(),
+                Arrays.asList("protocolConfig"));
+
+        try {
+            final List<Model.Endpoint> endpoints = runner.start();
+            System.out.println("Protocol added for " + endpoints.size() + " endpoints");
+
+            // Issue a command on each endpoint; the request is handled by the protocol's command acceptor
+            final CommandService.Client commandClient = services.getCommandClient();
+            for (Model.Endpoint endpoint : endpoints) {
+                for (Model.Command command : services.getModel().getCommands()) {
+                    if (command.hasEndpointUuid() && command.getEndpointUuid().equals(endpoint.getUuid())) {
+                        final Commands.CommandLock lock = commandClient.selectCommands(CommandRequests.CommandSelect.newBuilder()
+                                .addCommandUuids(command.getUuid())
+                                .build()).get(5000, TimeUnit.MILLISECONDS);
+                        try {
+                            final Commands.CommandResult result = commandClient.issueCommandRequest(Commands.CommandRequest.newBuilder()
+                                    .setCommandUuid(command.getUuid())
+                                    .build()).get(5000, TimeUnit.MILLISECONDS);
+                            System.out.println("Command " + command.getName() + ": " + result.getStatus());
+                        } finally {
+                            commandClient.deleteCommandLocks(Collections.singletonList(lock.getId())).get(5000, TimeUnit.MILLISECONDS);
+                        }
+                        break;
+                    }
+                }
+            }
+        } finally {
+            runner.shutdown();
+            services.shutdown();
+        }
+    }
+}
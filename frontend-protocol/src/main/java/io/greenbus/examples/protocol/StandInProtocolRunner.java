@@ -0,0 +1,136 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.protocol;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.greenbus.client.service.proto.Commands;
+import io.greenbus.client.service.proto.FrontEnd;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.client.service.proto.ModelRequests;
+import io.greenbus.examples.standin.StandInServices;
+import io.greenbus.japi.frontend.MasterProtocol;
+import io.greenbus.japi.frontend.ProtocolCommandAcceptor;
+import io.greenbus.japi.frontend.ProtocolConfigurer;
+import io.greenbus.japi.frontend.ProtocolUpdater;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a front-end protocol against the in-process stand-in services, in place of FrontendProtocolManager,
+ * so a protocol implementation can be exercised without a broker.
+ *
+ * Every endpoint of the stand-in model is offered to the protocol: its configuration key values are read
+ * through the model service and evaluated by the configurer, and endpoints with a configuration are added
+ * to the master. Status updates from the protocol change the endpoint's connection status in the stand-in,
+ * and command requests for the endpoint are passed to the protocol's command acceptor.
+ *
+ * add(), remove() and shutdown() are called by the thread that calls start() and shutdown().
+ *
+ * @param <C> Protocol configuration type
+ */
+public class StandInProtocolRunner<C> {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private final StandInServices services;
+    private final MasterProtocol<C> master;
+    private final ProtocolConfigurer<C> configurer;
+    private final List<String> configKeys;
+    private final List<Model.Endpoint> added = new ArrayList<Model.Endpoint>();
+
+    /**
+     * @param services Stand-in services
+     * @param master Protocol implementation
+     * @param configurer Reads the protocol configuration of an endpoint
+     * @param configKeys Keys of the key values that hold the protocol configuration
+     */
+    public StandInProtocolRunner(StandInServices services, MasterProtocol<C> master, ProtocolConfigurer<C> configurer, List<String> configKeys) {
+        this.services = services;
+        this.master = master;
+        this.configurer = configurer;
+        this.configKeys = configKeys;
+    }
+
+    /**
+     * Adds every endpoint with a valid configuration to the protocol.
+     *
+     * @return Endpoints added
+     */
+    public synchronized List<Model.Endpoint> start() throws Exception {
+        for (Model.Endpoint endpoint : services.getModel().getEndpoints()) {
+
+            final List<ModelRequests.EntityKeyPair> pairs = new ArrayList<ModelRequests.EntityKeyPair>();
+            for (String key : configKeys) {
+                pairs.add(ModelRequests.EntityKeyPair.newBuilder().setUuid(endpoint.getUuid()).setKey(key).build());
+            }
+            final List<Model.EntityKeyValue> keyValues = services.getModelClient().getEntityKeyValues(pairs).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+            final C configuration = configurer.evaluate(endpoint, keyValues);
+            if (configuration == null) {
+                continue;
+            }
+
+            final ProtocolCommandAcceptor acceptor = master.add(endpoint, configuration, new StandInUpdater(endpoint));
+            services.setCommandExecutor(endpoint, new StandInServices.CommandExecutor() {
+                @Override
+                public ListenableFuture<Commands.CommandResult> issue(String commandName, Commands.CommandRequest request) {
+                    return acceptor.issue(commandName, request);
+                }
+            });
+            added.add(endpoint);
+        }
+        return new ArrayList<Model.Endpoint>(added);
+    }
+
+    /**
+     * Removes every endpoint from the protocol and shuts it down. The stand-in services are left running.
+     */
+    public synchronized void shutdown() {
+        for (Model.Endpoint endpoint : added) {
+            services.setCommandExecutor(endpoint, null);
+            master.remove(endpoint.getUuid());
+            services.setConnectionStatus(endpoint, FrontEnd.FrontEndConnectionStatus.Status.COMMS_DOWN);
+        }
+        added.clear();
+        master.shutdown();
+    }
+
+    /**
+     * Applies the updates of the protocol for an endpoint to the stand-in services.
+     */
+    private class StandInUpdater implements ProtocolUpdater {
+        private final Model.Endpoint endpoint;
+
+        StandInUpdater(Model.Endpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public void updateStatus(FrontEnd.FrontEndConnectionStatus.Status status) {
+            services.setConnectionStatus(endpoint, status);
+        }
+
+        @Override
+        public String toString() {
+            return "StandInUpdater(" + endpoint.getName() + ")";
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.loadtest;
+
+import io.greenbus.msg.japi.Session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Generates open-loop load: scenarios are started on a fixed schedule of arrivals, whether or not
+ * earlier runs have finished.
+ *
+ * A closed loop, where each thread starts its next run when the last one returns, sends less load
+ * exactly when the system slows down, so the slow periods are hardly sampled and the reported
+ * percentiles look far better than what callers see (coordinated omission). Here, the arrival times
+ * are fixed in advance and scenario latency is measured from the time each run was scheduled to start.
+ * If the workers fall behind, runs wait in a queue and that wait is part of their latency.
+ *
+ * Runs are executed on a pool of worker threads, each of which blocks on its service calls. The pool
+ * should be large enough to hold every run in flight at the target rate, which is roughly the rate
+ * times the slowest expected latency; the start delay in the report shows when it is not.
+ */
+public class LoadGenerator {
+
+    /**
+     * Spacing of arrivals.
+     */
+    public enum Arrivals {
+
+        /**
+         * Evenly spaced at the target rate
+         */
+        UNIFORM,
+
+        /**
+         * Exponentially distributed gaps with the target mean rate, as from many independent callers
+         */
+        POISSON
+    }
+
+    private final Session session;
+    private final ScenarioMix mix;
+    private final Arrivals arrivals;
+    private final long timeoutMillis;
+    private final ThreadPoolExecutor workers;
+    private final Random random = new Random();
+
+    /**
+     * @param session Logged-in Session object
+     * @param mix Scenarios and their weights
+     * @param arrivals Spacing of arrivals
+     * @param workerThreads Number of threads running scenarios
+     * @param operationTimeout Time to wait for each service call
+     * @param unit Unit of the timeout
+     */
+    public LoadGenerator(Session session, ScenarioMix mix, Arrivals arrivals, int workerThreads, long operationTimeout, TimeUnit unit) {
+        if (mix.getScenarios().isEmpty()) {
+            throw new IllegalArgumentException("Scenario mix is empty");
+        }
+        this.session = session;
+        this.mix = mix;
+        this.arrivals = arrivals;
+        this.timeoutMillis = unit.toMillis(operationTimeout);
+
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "loadtest-worker-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        this.workers.prestartAllCoreThreads();
+    }
+
+    /**
+     * Prepares every scenario in the mix.
+     *
+     * @throws Exception If a scenario could not be prepared
+     */
+    public void prepare() throws Exception {
+        for (Scenario scenario : mix.getScenarios()) {
+            scenario.prepare(session);
+        }
+    }
+
+    /**
+     * Generates load at a fixed rate, then waits for the runs still in flight to finish. Runs that have
+     * not finished by the drain deadline are cancelled before returning, so they do not overlap the
+     * next stage; scenarios must give up when interrupted.
+     *
+     * @param arrivalsPerSecond Target rate of scenario runs
+     * @param duration Time to generate arrivals for
+     * @param unit Unit of the duration
+     * @return Report of the stage
+     * @throws InterruptedException
+     */
+    public LoadReport run(double arrivalsPerSecond, long duration, TimeUnit unit) throws InterruptedException {
+        if (arrivalsPerSecond <= 0.0) {
+            throw new IllegalArgumentException("Arrival rate must be positive: " + arrivalsPerSecond);
+        }
+
+        final LoadStatistics statistics = new LoadStatistics();
+        final OperationTimer timer = new OperationTimer(statistics, timeoutMillis);
+        final AtomicInteger outstanding = new AtomicInteger(0);
+        final AtomicBoolean cutOff = new AtomicBoolean(false);
+        final Set<Thread> running = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+        final double meanGapNanos = 1000000000.0 / arrivalsPerSecond;
+
+        final long start = System.nanoTime();
+        final long durationNanos = unit.toNanos(duration);
+        double offset = 0.0;
+        long arrivalCount = 0;
+        int maxOutstanding = 0;
+
+        while ((long) offset < durationNanos) {
+            final long scheduled = start + (long) offset;
+
+            long wait;
+            while ((wait = scheduled - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            final Scenario scenario = mix.pick(random);
+            maxOutstanding = Math.max(maxOutstanding, outstanding.incrementAndGet());
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    running.add(Thread.currentThread());
+                    try {
+                        if (cutOff.get()) {
+                            return;
+                        }
+                        statistics.getStartDelay().record(System.nanoTime() - scheduled);
+                        final OperationStats stats = statistics.scenario(scenario.getName());
+                        try {
+                            scenario.run(session, timer);
+                            stats.success(System.nanoTime() - scheduled);
+                        } catch (Exception ex) {
+                            // Runs interrupted at the end of the stage are reported as unfinished instead
+                            if (!cutOff.get()) {
+                                stats.failure(ex, System.nanoTime() - scheduled);
+                            }
+                        }
+                    } finally {
+                        running.remove(Thread.currentThread());
+                        outstanding.decrementAndGet();
+                    }
+                }
+            });
+            arrivalCount++;
+
+            offset += arrivals == Arrivals.POISSON ? -Math.log(1.0 - random.nextDouble()) * meanGapNanos : meanGapNanos;
+        }
+
+        // Late runs are the ones that matter most; wait for them rather than cutting them off
+        final long drainDeadline = System.nanoTime() + durationNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (outstanding.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        final long elapsed = System.nanoTime() - start;
+        final int unfinished = outstanding.get();
+
+        // Runs left over would keep loading the system during the next stage; drop the queued ones
+        // and interrupt the rest, then wait for the workers to be free
+        if (unfinished > 0) {
+            cutOff.set(true);
+            final List<Runnable> queued = new ArrayList<Runnable>();
+            workers.getQueue().drainTo(queued);
+            outstanding.addAndGet(-queued.size());
+            for (Thread thread : running) {
+                thread.interrupt();
+            }
+            while (outstanding.get() > 0) {
+                Thread.sleep(10);
+            }
+        }
+
+        return new LoadReport(arrivalsPerSecond, arrivalCount, unfinished, maxOutstanding, elapsed, statistics);
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+}
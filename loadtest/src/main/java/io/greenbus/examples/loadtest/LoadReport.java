@@ -0,0 +1,130 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.loadtest;
+
+import io.greenbus.examples.util.LatencyHistogram;
+
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Results of one stage of a load test: throughput and latency percentiles for each scenario and each
+ * operation.
+ */
+public class LoadReport {
+
+    private static final double[] PERCENTILES = { 50.0, 90.0, 99.0, 99.9 };
+
+    private final double targetRate;
+    private final long arrivals;
+    private final int unfinished;
+    private final int maxOutstanding;
+    private final long elapsedNanos;
+    private final LoadStatistics statistics;
+
+    LoadReport(double targetRate, long arrivals, int unfinished, int maxOutstanding, long elapsedNanos, LoadStatistics statistics) {
+        this.targetRate = targetRate;
+        this.arrivals = arrivals;
+        this.unfinished = unfinished;
+        this.maxOutstanding = maxOutstanding;
+        this.elapsedNanos = elapsedNanos;
+        this.statistics = statistics;
+    }
+
+    public double getTargetRate() {
+        return targetRate;
+    }
+
+    /**
+     * @return Number of scenario runs started
+     */
+    public long getArrivals() {
+        return arrivals;
+    }
+
+    /**
+     * @return Number of runs still in flight at the end of the stage, which were cancelled
+     */
+    public int getUnfinished() {
+        return unfinished;
+    }
+
+    /**
+     * @return Greatest number of runs in flight or queued at once
+     */
+    public int getMaxOutstanding() {
+        return maxOutstanding;
+    }
+
+    public double getElapsedSeconds() {
+        return elapsedNanos / 1000000000.0;
+    }
+
+    public LoadStatistics getStatistics() {
+        return statistics;
+    }
+
+    public void print(PrintStream out) {
+        out.println(String.format("Target rate: %.1f/s, runs: %d, elapsed: %.1f s, peak in flight: %d, unfinished: %d",
+                targetRate, arrivals, getElapsedSeconds(), maxOutstanding, unfinished));
+
+        final LatencyHistogram startDelay = statistics.getStartDelay();
+        out.println(String.format("Start delay (ms): p50 %.2f, p99 %.2f, max %.2f",
+                startDelay.getPercentileMillis(50.0), startDelay.getPercentileMillis(99.0), startDelay.getMaxMillis()));
+
+        out.println();
+        out.println("Scenarios (latency from scheduled start, ms)");
+        printTable(out, statistics.getScenarios());
+
+        out.println();
+        out.println("Operations (latency from call, ms)");
+        printTable(out, statistics.getOperations());
+    }
+
+    private void printTable(PrintStream out, List<OperationStats> rows) {
+        out.println(String.format("%-24s %9s %9s %7s %9s %9s %9s %9s %9s",
+                "", "count", "per sec", "errors", "p50", "p90", "p99", "p99.9", "max"));
+
+        for (OperationStats row : rows) {
+            final LatencyHistogram latency = row.getLatency().copy();
+            final StringBuilder line = new StringBuilder(String.format("%-24s %9d %9.1f %7d",
+                    row.getName(), latency.getCount(), latency.getCount() / getElapsedSeconds(), row.getErrorCount()));
+            for (double percentile : PERCENTILES) {
+                line.append(String.format(" %9.2f", latency.getPercentileMillis(percentile)));
+            }
+            line.append(String.format(" %9.2f", latency.getMaxMillis()));
+            out.println(line);
+
+            if (row.getErrorCount() > 0) {
+                // Failures and timeouts are often the slowest calls; leaving them out flatters the tail
+                final LatencyHistogram all = row.getAllLatency().copy();
+                final StringBuilder allLine = new StringBuilder(String.format("%-24s %9d %9s %7s", "  all outcomes", all.getCount(), "", ""));
+                for (double percentile : PERCENTILES) {
+                    allLine.append(String.format(" %9.2f", all.getPercentileMillis(percentile)));
+                }
+                allLine.append(String.format(" %9.2f", all.getMaxMillis()));
+                out.println(allLine);
+            }
+
+            if (row.getLastError() != null) {
+                out.println("    last error: " + row.getLastError());
+            }
+        }
+    }
+}
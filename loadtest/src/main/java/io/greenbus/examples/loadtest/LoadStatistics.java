@@ -0,0 +1,88 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.loadtest;
+
+import io.greenbus.examples.util.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Statistics collected during one stage of a load test.
+ */
+public class LoadStatistics {
+
+    private final ConcurrentMap<String, OperationStats> scenarios = new ConcurrentHashMap<String, OperationStats>();
+    private final ConcurrentMap<String, OperationStats> operations = new ConcurrentHashMap<String, OperationStats>();
+    private final LatencyHistogram startDelay = new LatencyHistogram();
+
+    /**
+     * @return Statistics for the scenario, with latency measured from the time each run was scheduled to start
+     */
+    public OperationStats scenario(String name) {
+        return getOrCreate(scenarios, name);
+    }
+
+    /**
+     * @return Statistics for the operation, with latency measured from the time each call was made
+     */
+    public OperationStats operation(String name) {
+        return getOrCreate(operations, name);
+    }
+
+    /**
+     * @return Time between when each run was scheduled to start and when a worker started it
+     */
+    public LatencyHistogram getStartDelay() {
+        return startDelay;
+    }
+
+    public List<OperationStats> getScenarios() {
+        return sorted(scenarios);
+    }
+
+    public List<OperationStats> getOperations() {
+        return sorted(operations);
+    }
+
+    private static OperationStats getOrCreate(ConcurrentMap<String, OperationStats> map, String name) {
+        final OperationStats existing = map.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        final OperationStats created = new OperationStats(name);
+        final OperationStats raced = map.putIfAbsent(name, created);
+        return raced != null ? raced : created;
+    }
+
+    private static List<OperationStats> sorted(ConcurrentMap<String, OperationStats> map) {
+        final List<OperationStats> list = new ArrayList<OperationStats>(map.values());
+        Collections.sort(list, new Comparator<OperationStats>() {
+            @Override
+            public int compare(OperationStats a, OperationStats b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+        return list;
+    }
+}
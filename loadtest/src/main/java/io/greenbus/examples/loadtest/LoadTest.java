@@ -0,0 +1,150 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.loadtest;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.greenbus.examples.loadtest.scenarios.AlarmLifecycleScenario;
+import io.greenbus.examples.loadtest.scenarios.CommandExecutionScenario;
+import io.greenbus.examples.loadtest.scenarios.EventPublishingScenario;
+import io.greenbus.examples.loadtest.scenarios.HistoryQueryScenario;
+import io.greenbus.examples.loadtest.scenarios.KeyValueScenario;
+import io.greenbus.japi.client.ServiceConnection;
+import io.greenbus.japi.client.ServiceConnectionFactory;
+import io.greenbus.msg.amqp.japi.AmqpSettings;
+import io.greenbus.msg.japi.Session;
+import io.greenbus.msg.qpid.QpidBroker;
+import io.greenbus.util.UserSettings;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the example workflows as a weighted, open-loop load test and prints latency percentiles and
+ * throughput for each scenario and operation.
+ *
+ * Configuration is read from system properties:
+ *
+ * loadtest.mix       Scenario weights, default "alarms:1,commands:1,history:4,keyvalues:2,events:2"
+ * loadtest.rates     Comma-separated arrival rates per second, one stage each, default "50"
+ * loadtest.duration  Seconds per stage, default 60
+ * loadtest.warmup    Seconds of unreported load at the first rate, default 10
+ * loadtest.arrivals  UNIFORM or POISSON, default UNIFORM
+ * loadtest.threads   Worker threads, default 200
+ * loadtest.timeout   Milliseconds to wait for each service call, default 5000
+ *
+ * The connection settings are the same as for the examples.
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+
+        // Load configuration files from paths provided in environment variables or in default locations
+        final String configBaseDir = System.getProperty("io.greenbus.config.base", "");
+        final String amqpConfigPath = System.getProperty("io.greenbus.config.amqp", configBaseDir + "io.greenbus.msg.amqp.cfg");
+        final String userConfigPath = System.getProperty("io.greenbus.config.user", configBaseDir + "io.greenbus.user.cfg");
+
+        // Load broker settings from config file
+        final AmqpSettings amqpSettings = new AmqpSettings(amqpConfigPath);
+
+        // Load user settings (login credentials) from config file
+        final UserSettings userSettings = UserSettings.load(userConfigPath);
+
+        // Create ServiceConnection to the Qpid broker
+        final ServiceConnection connection = ServiceConnectionFactory.create(amqpSettings, QpidBroker.instance(), 10000);
+
+        // Get a Session object that has a valid auth token. Causes a service call to login
+        final ListenableFuture<Session> loginFuture = connection.login(userSettings.user(), userSettings.password());
+
+        final Session session = loginFuture.get(5000, TimeUnit.MILLISECONDS);
+
+        try {
+            run(session);
+        } finally {
+
+            // Disconnect from AMQP and shut down thread pools
+            connection.disconnect();
+        }
+
+        System.exit(0);
+    }
+
+    public static void run(Session session) throws Exception {
+
+        final ScenarioMix mix = parseMix(System.getProperty("loadtest.mix", "alarms:1,commands:1,history:4,keyvalues:2,events:2"));
+        final String[] rates = System.getProperty("loadtest.rates", "50").split(",");
+        final long duration = Long.parseLong(System.getProperty("loadtest.duration", "60"));
+        final long warmup = Long.parseLong(System.getProperty("loadtest.warmup", "10"));
+        final LoadGenerator.Arrivals arrivals = LoadGenerator.Arrivals.valueOf(System.getProperty("loadtest.arrivals", "UNIFORM").toUpperCase());
+        final int threads = Integer.parseInt(System.getProperty("loadtest.threads", "200"));
+        final long timeout = Long.parseLong(System.getProperty("loadtest.timeout", "5000"));
+
+        System.out.print("\n=== Load Test ===\n\n");
+        for (Scenario scenario : mix.getScenarios()) {
+            System.out.println(String.format("Scenario %s: %.0f%%", scenario.getName(), mix.getShare(scenario) * 100.0));
+        }
+
+        final LoadGenerator generator = new LoadGenerator(session, mix, arrivals, threads, timeout, TimeUnit.MILLISECONDS);
+        try {
+            generator.prepare();
+
+            if (warmup > 0) {
+                System.out.println("\nWarming up for " + warmup + " s");
+                generator.run(Double.parseDouble(rates[0].trim()), warmup, TimeUnit.SECONDS);
+            }
+
+            for (String rate : rates) {
+                System.out.print("\n--- " + rate.trim() + " runs/s, " + arrivals + " arrivals, " + duration + " s ---\n\n");
+                final LoadReport report = generator.run(Double.parseDouble(rate.trim()), duration, TimeUnit.SECONDS);
+                report.print(System.out);
+            }
+        } finally {
+            generator.shutdown();
+        }
+    }
+
+    /**
+     * @param mix Comma-separated name:weight pairs
+     */
+    private static ScenarioMix parseMix(String mix) {
+        final ScenarioMix result = new ScenarioMix();
+        for (String entry : mix.split(",")) {
+            final String[] parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Scenario weights must be name:weight pairs: " + entry);
+            }
+            result.add(scenario(parts[0].trim()), Double.parseDouble(parts[1].trim()));
+        }
+        return result;
+    }
+
+    private static Scenario scenario(String name) {
+        if (name.equals("alarms")) {
+            return new AlarmLifecycleScenario("Scada.OutOfNominal");
+        } else if (name.equals("commands")) {
+            return new CommandExecutionScenario();
+        } else if (name.equals("history")) {
+            return new HistoryQueryScenario(100);
+        } else if (name.equals("keyvalues")) {
+            return new KeyValueScenario();
+        } else if (name.equals("events")) {
+            return new EventPublishingScenario("System.UserLogin");
+        } else {
+            throw new IllegalArgumentException("Unknown scenario: " + name);
+        }
+    }
+}
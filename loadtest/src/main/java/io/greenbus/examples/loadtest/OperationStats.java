@@ -0,0 +1,77 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.loadtest;
+
+import io.greenbus.examples.util.LatencyHistogram;
+
+/**
+ * Latency and error counts for one operation or scenario.
+ */
+public class OperationStats {
+
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram allLatency = new LatencyHistogram();
+    private long errors = 0;
+    private String lastError = null;
+
+    public OperationStats(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Latency of the successful calls
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return Latency of every call, including those that failed or timed out
+     */
+    public LatencyHistogram getAllLatency() {
+        return allLatency;
+    }
+
+    public synchronized long getErrorCount() {
+        return errors;
+    }
+
+    /**
+     * @return Message of the most recent error, or null if there were none
+     */
+    public synchronized String getLastError() {
+        return lastError;
+    }
+
+    void success(long nanos) {
+        latency.record(nanos);
+        allLatency.record(nanos);
+    }
+
+    synchronized void failure(Throwable error, long nanos) {
+        allLatency.record(nanos);
+        errors++;
+        lastError = error.getClass().getSimpleName() + (error.getMessage() != null ? ": " + error.getMessage() : "");
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.loadtest;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits for service calls made by a scenario and records their latency under an operation name.
+ */
+public class OperationTimer {
+
+    private final LoadStatistics statistics;
+    private final long timeoutMillis;
+
+    OperationTimer(LoadStatistics statistics, long timeoutMillis) {
+        this.statistics = statistics;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Waits for the result of a service call and records its latency. If the call fails or times out,
+     * an error is counted as well and the cause is thrown.
+     *
+     * @param operation Name of the operation
+     * @param start Value of System.nanoTime() taken just before the call was made
+     * @param future Result of the call
+     * @return The result
+     * @throws Exception The cause of the failure, or a TimeoutException
+     */
+    public <T> T await(String operation, long start, ListenableFuture<T> future) throws Exception {
+        final OperationStats stats = statistics.operation(operation);
+        try {
+            final T result = future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            stats.success(System.nanoTime() - start);
+            return result;
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+            stats.failure(cause, System.nanoTime() - start);
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw ex;
+        } catch (InterruptedException ex) {
+            // Cut off at the end of a stage; not a result of the call
+            future.cancel(false);
+            throw ex;
+        } catch (Exception ex) {
+            future.cancel(false);
+            stats.failure(ex, System.nanoTime() - start);
+            throw ex;
+        }
+    }
+}
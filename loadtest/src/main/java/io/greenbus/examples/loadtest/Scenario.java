@@ -0,0 +1,52 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.loadtest;
+
+import io.greenbus.msg.japi.Session;
+
+/**
+ * One workflow that the load generator runs repeatedly and concurrently.
+ *
+ * Implementations must be safe to run from many threads at once. Each service call is timed through
+ * the OperationTimer so that it is reported as an operation of its own.
+ */
+public interface Scenario {
+
+    /**
+     * @return Name used in the report and in the mix configuration
+     */
+    String getName();
+
+    /**
+     * Called once before any load is generated, to look up the model objects the scenario works with.
+     *
+     * @param session Logged-in Session object
+     * @throws Exception
+     */
+    void prepare(Session session) throws Exception;
+
+    /**
+     * Runs the workflow once.
+     *
+     * @param session Logged-in Session object
+     * @param timer Times and records each service call
+     * @throws Exception If any step failed; the run is counted as an error
+     */
+    void run(Session session, OperationTimer timer) throws Exception;
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.loadtest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Scenarios and their relative weights. Each arrival runs one scenario, chosen at random in proportion
+ * to its weight.
+ */
+public class ScenarioMix {
+
+    private final List<Scenario> scenarios = new ArrayList<Scenario>();
+    private final List<Double> cumulativeWeights = new ArrayList<Double>();
+    private double totalWeight = 0.0;
+
+    /**
+     * @param scenario Scenario
+     * @param weight Relative weight; zero leaves the scenario out
+     * @return This mix
+     */
+    public ScenarioMix add(Scenario scenario, double weight) {
+        if (weight < 0.0) {
+            throw new IllegalArgumentException("Weight must not be negative: " + weight);
+        }
+        if (weight > 0.0) {
+            totalWeight += weight;
+            scenarios.add(scenario);
+            cumulativeWeights.add(totalWeight);
+        }
+        return this;
+    }
+
+    public List<Scenario> getScenarios() {
+        return Collections.unmodifiableList(scenarios);
+    }
+
+    /**
+     * @return Fraction of arrivals that run the scenario
+     */
+    public double getShare(Scenario scenario) {
+        final int index = scenarios.indexOf(scenario);
+        if (index < 0) {
+            return 0.0;
+        }
+        final double previous = index == 0 ? 0.0 : cumulativeWeights.get(index - 1);
+        return (cumulativeWeights.get(index) - previous) / totalWeight;
+    }
+
+    Scenario pick(Random random) {
+        final double point = random.nextDouble() * totalWeight;
+        for (int i = 0; i < scenarios.size(); i++) {
+            if (point < cumulativeWeights.get(i)) {
+                return scenarios.get(i);
+            }
+        }
+        return scenarios.get(scenarios.size() - 1);
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.loadtest.scenarios;
+
+import io.greenbus.client.service.proto.EventRequests;
+import io.greenbus.client.service.proto.Events;
+import io.greenbus.examples.loadtest.OperationTimer;
+import io.greenbus.examples.loadtest.Scenario;
+import io.greenbus.japi.client.service.EventService;
+import io.greenbus.msg.japi.Session;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The alarm lifecycle of AlarmsExample.alarmLifecycle: raises an alarm by posting an event of a type
+ * configured to raise one, then finds an unacknowledged alarm, acknowledges it and removes it.
+ *
+ * Concurrent runs claim different alarms so they do not fail on each other's state changes. A claim
+ * is released when the run is done with the alarm, so the set of claims stays as small as the number
+ * of runs in progress. If every unacknowledged alarm is claimed, a run only raises one and makes the
+ * query.
+ */
+public class AlarmLifecycleScenario implements Scenario {
+
+    private final String alarmEventType;
+    private final Set<String> claimed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * @param alarmEventType Configured event type that raises an alarm
+     */
+    public AlarmLifecycleScenario(String alarmEventType) {
+        this.alarmEventType = alarmEventType;
+    }
+
+    @Override
+    public String getName() {
+        return "alarms";
+    }
+
+    @Override
+    public void prepare(Session session) throws Exception {
+    }
+
+    @Override
+    public void run(Session session, OperationTimer timer) throws Exception {
+        final EventService.Client client = EventService.client(session);
+
+        final EventRequests.EventTemplate eventTemplate = EventRequests.EventTemplate.newBuilder()
+                .setEventType(alarmEventType)
+                .setSubsystem("system")
+                .build();
+
+        final long raiseStart = System.nanoTime();
+        timer.await("alarms.raise", raiseStart, client.postEvents(Arrays.asList(eventTemplate)));
+
+        final EventRequests.AlarmQuery query = EventRequests.AlarmQuery.newBuilder()
+                .addAlarmStates(Events.Alarm.State.UNACK_AUDIBLE)
+                .addAlarmStates(Events.Alarm.State.UNACK_SILENT)
+                .setPageSize(20)
+                .build();
+
+        final long queryStart = System.nanoTime();
+        final List<Events.Alarm> alarms = timer.await("alarms.query", queryStart, client.alarmQuery(query));
+
+        Events.Alarm alarm = null;
+        for (Events.Alarm candidate : alarms) {
+            if (claimed.add(candidate.getId().getValue())) {
+                alarm = candidate;
+                break;
+            }
+        }
+        if (alarm == null) {
+            return;
+        }
+
+        try {
+            final EventRequests.AlarmStateUpdate ackUpdate = EventRequests.AlarmStateUpdate.newBuilder()
+                    .setAlarmId(alarm.getId())
+                    .setAlarmState(Events.Alarm.State.ACKNOWLEDGED)
+                    .build();
+
+            final long ackStart = System.nanoTime();
+            timer.await("alarms.acknowledge", ackStart, client.putAlarmState(Arrays.asList(ackUpdate)));
+
+            final EventRequests.AlarmStateUpdate removeUpdate = EventRequests.AlarmStateUpdate.newBuilder()
+                    .setAlarmId(alarm.getId())
+                    .setAlarmState(Events.Alarm.State.REMOVED)
+                    .build();
+
+            final long removeStart = System.nanoTime();
+            timer.await("alarms.remove", removeStart, client.putAlarmState(Arrays.asList(removeUpdate)));
+        } finally {
+            // Removed alarms no longer match the query; one left unacknowledged by a failure is free to be tried again
+            claimed.remove(alarm.getId().getValue());
+        }
+    }
+}
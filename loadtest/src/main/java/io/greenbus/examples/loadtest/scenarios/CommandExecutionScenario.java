@@ -0,0 +1,98 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.loadtest.scenarios;
+
+import io.greenbus.client.service.proto.CommandRequests;
+import io.greenbus.client.service.proto.Commands;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.client.service.proto.ModelRequests;
+import io.greenbus.examples.loadtest.OperationTimer;
+import io.greenbus.examples.loadtest.Scenario;
+import io.greenbus.japi.client.service.CommandService;
+import io.greenbus.japi.client.service.ModelService;
+import io.greenbus.msg.japi.Session;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The control execution of CommandsExample.executeControl: selects a control, issues it and deletes
+ * the lock.
+ *
+ * Runs take the configured controls in turn. Two runs on the same control at once conflict on the
+ * select, which is counted as an error, so the rate should be kept well below the number of controls
+ * divided by the execution time. Issued controls time out unless a front end is connected.
+ */
+public class CommandExecutionScenario implements Scenario {
+
+    private final AtomicLong next = new AtomicLong(0);
+    private List<Model.Command> commands;
+
+    @Override
+    public String getName() {
+        return "commands";
+    }
+
+    @Override
+    public void prepare(Session session) throws Exception {
+        final ModelService.Client modelClient = ModelService.client(session);
+
+        final ModelRequests.CommandQuery commandQuery = ModelRequests.CommandQuery.newBuilder()
+                .addCommandCategories(Model.CommandCategory.CONTROL)
+                .setPagingParams(
+                        ModelRequests.EntityPagingParams.newBuilder()
+                                .setPageSize(1000)
+                                .build())
+                .build();
+
+        commands = modelClient.commandQuery(commandQuery).get(5000, TimeUnit.MILLISECONDS);
+        if (commands.isEmpty()) {
+            throw new IllegalStateException("No controls configured");
+        }
+    }
+
+    @Override
+    public void run(Session session, OperationTimer timer) throws Exception {
+        final CommandService.Client client = CommandService.client(session);
+
+        final Model.Command command = commands.get((int) (next.getAndIncrement() % commands.size()));
+
+        final CommandRequests.CommandSelect commandSelect = CommandRequests.CommandSelect.newBuilder()
+                .addCommandUuids(command.getUuid())
+                .build();
+
+        final long selectStart = System.nanoTime();
+        final Commands.CommandLock lock = timer.await("commands.select", selectStart, client.selectCommands(commandSelect));
+
+        try {
+            final Commands.CommandRequest request = Commands.CommandRequest.newBuilder()
+                    .setCommandUuid(command.getUuid())
+                    .build();
+
+            final long issueStart = System.nanoTime();
+            timer.await("commands.issue", issueStart, client.issueCommandRequest(request));
+
+        } finally {
+            final long deleteStart = System.nanoTime();
+            timer.await("commands.unlock", deleteStart, client.deleteCommandLocks(Arrays.asList(lock.getId())));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.loadtest.scenarios;
+
+import io.greenbus.client.service.proto.EventRequests;
+import io.greenbus.examples.loadtest.OperationTimer;
+import io.greenbus.examples.loadtest.Scenario;
+import io.greenbus.japi.client.service.EventService;
+import io.greenbus.msg.japi.Session;
+
+import java.util.Arrays;
+
+/**
+ * The event publication of EventPublishingExample.publishEvent: posts a single event.
+ */
+public class EventPublishingScenario implements Scenario {
+
+    private final String eventType;
+
+    /**
+     * @param eventType Configured event type to post
+     */
+    public EventPublishingScenario(String eventType) {
+        this.eventType = eventType;
+    }
+
+    @Override
+    public String getName() {
+        return "events";
+    }
+
+    @Override
+    public void prepare(Session session) throws Exception {
+    }
+
+    @Override
+    public void run(Session session, OperationTimer timer) throws Exception {
+        final EventService.Client client = EventService.client(session);
+
+        final EventRequests.EventTemplate eventTemplate = EventRequests.EventTemplate.newBuilder()
+                .setEventType(eventType)
+                .setSubsystem("system")
+                .build();
+
+        final long start = System.nanoTime();
+        timer.await("events.post", start, client.postEvents(Arrays.asList(eventTemplate)));
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.loadtest.scenarios;
+
+import io.greenbus.client.service.proto.MeasurementRequests;
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.client.service.proto.ModelRequests;
+import io.greenbus.examples.loadtest.OperationTimer;
+import io.greenbus.examples.loadtest.Scenario;
+import io.greenbus.japi.client.service.MeasurementService;
+import io.greenbus.japi.client.service.ModelService;
+import io.greenbus.msg.japi.Session;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The history query of MeasurementHistoryExample.getMeasurementHistory: the latest measurements of a
+ * point, taking the points in turn.
+ */
+public class HistoryQueryScenario implements Scenario {
+
+    private final int limit;
+    private final AtomicLong next = new AtomicLong(0);
+    private List<Model.Point> points;
+
+    /**
+     * @param limit Number of measurements requested per query
+     */
+    public HistoryQueryScenario(int limit) {
+        this.limit = limit;
+    }
+
+    @Override
+    public String getName() {
+        return "history";
+    }
+
+    @Override
+    public void prepare(Session session) throws Exception {
+        final ModelService.Client modelClient = ModelService.client(session);
+
+        points = modelClient.pointQuery(ModelRequests.PointQuery.newBuilder()
+                .setPagingParams(
+                        ModelRequests.EntityPagingParams.newBuilder()
+                                .setPageSize(1000)).build())
+                .get(5000, TimeUnit.MILLISECONDS);
+        if (points.isEmpty()) {
+            throw new IllegalStateException("No points configured");
+        }
+    }
+
+    @Override
+    public void run(Session session, OperationTimer timer) throws Exception {
+        final MeasurementService.Client client = MeasurementService.client(session);
+
+        final Model.Point point = points.get((int) (next.getAndIncrement() % points.size()));
+
+        final MeasurementRequests.MeasurementHistoryQuery historyQuery = MeasurementRequests.MeasurementHistoryQuery.newBuilder()
+                .setPointUuid(point.getUuid())
+                .setLimit(limit)
+                .build();
+
+        final long start = System.nanoTime();
+        timer.await("history.query", start, client.getHistory(historyQuery));
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2011 Green Energy Corp.
+ *
+ * Licensed to Green Energy Corp (www.greenenergycorp.com) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. Green Energy
+ * Corp licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.greenbus.examples.loadtest.scenarios;
+
+import io.greenbus.client.service.proto.Model;
+import io.greenbus.client.service.proto.ModelRequests;
+import io.greenbus.examples.loadtest.OperationTimer;
+import io.greenbus.examples.loadtest.Scenario;
+import io.greenbus.japi.client.service.ModelService;
+import io.greenbus.msg.japi.Session;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The key value round trip of KeyValuesExample.createUpdateRemove, followed by a read: creates a key
+ * value, updates it, reads it back and deletes it.
+ *
+ * Every run uses its own key on the same entity, so runs do not interfere with each other.
+ */
+public class KeyValueScenario implements Scenario {
+
+    private final AtomicLong next = new AtomicLong(0);
+    private Model.Entity entity;
+
+    @Override
+    public String getName() {
+        return "keyvalues";
+    }
+
+    @Override
+    public void prepare(Session session) throws Exception {
+        final ModelService.Client client = ModelService.client(session);
+
+        entity = client.entityQuery(ModelRequests.EntityQuery.newBuilder()
+                .setPagingParams(ModelRequests.EntityPagingParams.newBuilder()
+                        .setPageSize(1))
+                .build())
+                .get(5000, TimeUnit.MILLISECONDS)
+                .get(0);
+    }
+
+    @Override
+    public void run(Session session, OperationTimer timer) throws Exception {
+        final ModelService.Client client = ModelService.client(session);
+
+        final String key = "loadtest." + next.getAndIncrement();
+
+        final long createStart = System.nanoTime();
+        timer.await("keyvalues.create", createStart, client.putEntityKeyValues(Arrays.asList(keyValue(key, "Load test data"))));
+
+        final long updateStart = System.nanoTime();
+        timer.await("keyvalues.update", updateStart, client.putEntityKeyValues(Arrays.asList(keyValue(key, "Load test data updated"))));
+
+        final ModelRequests.EntityKeyPair keyPair = ModelRequests.EntityKeyPair.newBuilder()
+                .setUuid(entity.getUuid())
+                .setKey(key)
+                .build();
+
+        final long getStart = System.nanoTime();
+        timer.await("keyvalues.get", getStart, client.getEntityKeyValues(Arrays.asList(keyPair)));
+
+        final long deleteStart = System.nanoTime();
+        timer.await("keyvalues.delete", deleteStart, client.deleteEntityKeyValues(Arrays.asList(keyPair)));
+    }
+
+    private Model.EntityKeyValue keyValue(String key, String value) {
+        return Model.EntityKeyValue.newBuilder()
+                .setUuid(entity.getUuid())
+                .setKey(key)
+                .setValue(
+                        Model.StoredValue.newBuilder()
+                                .setStringValue(value)
+                                .build())
+                .build();
+    }
+}